@@ -0,0 +1,157 @@
+package ar.com.falberca.duplicate.finder.app.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds a file tree following a {@link TreeProfile}. The same profile always builds the same tree, the content of 
+ * the files is taken from a random generator seeded with the profile seed, so scans of different versions can be 
+ * compared using the same workload.
+ * 
+ * Unique files get their own random content, duplicates are copies of a unique file, hardlinks and symlinks point to 
+ * a unique file. Files are spread randomly among the directories of the tree.
+ * 
+ * @author fernando
+ */
+public class FileTreeGenerator {
+	
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+	
+	private TreeProfile profile;
+	private Random random;
+	private List<Path> directories = new ArrayList<>();
+	private List<Path> uniqueFiles = new ArrayList<>();
+	private byte[] writeBuffer = new byte[WRITE_BUFFER_SIZE];
+	
+	private long regularFiles;
+	private long duplicates;
+	private long hardlinks;
+	private long symlinks;
+	private long emptyFiles;
+	private long totalBytes;
+	
+	/**
+	 * @param profileRef Profile of the tree
+	 */
+	public FileTreeGenerator(TreeProfile profileRef) {
+		profile = profileRef;
+	}
+	
+	/**
+	 * Builds the tree under <code>rootDirectory</code>, which must be empty
+	 * 
+	 * @param rootDirectory Root of the tree
+	 * @throws IOException Throws an exception if a file or directory can't be created
+	 */
+	public void generate(Path rootDirectory) throws IOException {
+		random = new Random(profile.getSeed());
+		createDirectories(rootDirectory);
+		
+		double hardlinkBound = profile.getEmptyRatio() + profile.getHardlinkRatio();
+		double symlinkBound = hardlinkBound + profile.getSymlinkRatio();
+		
+		for (int index = 0; index < profile.getFiles(); index++) {
+			Path directory = directories.get(random.nextInt(directories.size()));
+			Path file = directory.resolve("f" + index);
+			double kind = random.nextDouble();
+			
+			if (kind < profile.getEmptyRatio()) {
+				Files.createFile(file);
+				emptyFiles++;
+			}
+			else if (kind < hardlinkBound && !uniqueFiles.isEmpty()) {
+				Files.createLink(file, randomUniqueFile());
+				hardlinks++;
+			}
+			else if (kind < symlinkBound && !uniqueFiles.isEmpty()) {
+				Files.createSymbolicLink(file, randomUniqueFile());
+				symlinks++;
+			}
+			else if (random.nextDouble() < profile.getDuplicateRatio() && !uniqueFiles.isEmpty()) {
+				Files.copy(randomUniqueFile(), file);
+				totalBytes += Files.size(file);
+				regularFiles++;
+				duplicates++;
+			}
+			else {
+				totalBytes += writeUniqueFile(file, profile.size(random.nextDouble(), random.nextDouble()));
+				uniqueFiles.add(file);
+				regularFiles++;
+			}
+		}
+	}
+	
+	/*
+	 * Creates the directories, every directory is created below a random directory that is not at the maximum depth
+	 */
+	private void createDirectories(Path rootDirectory) throws IOException {
+		List<Integer> depths = new ArrayList<>();
+		directories.add(rootDirectory);
+		depths.add(0);
+		
+		List<Integer> parents = new ArrayList<>();
+		parents.add(0);
+		
+		for (int index = 1; index < profile.getDirectories(); index++) {
+			int parent = parents.get(random.nextInt(parents.size()));
+			Path directory = Files.createDirectory(directories.get(parent).resolve("d" + index));
+			int depth = depths.get(parent) + 1;
+			directories.add(directory);
+			depths.add(depth);
+			if (depth < profile.getDepth()) {
+				parents.add(directories.size() - 1);
+			}
+		}
+	}
+	
+	private Path randomUniqueFile() {
+		return uniqueFiles.get(random.nextInt(uniqueFiles.size()));
+	}
+	
+	private long writeUniqueFile(Path file, long size) throws IOException {
+		try (OutputStream output = Files.newOutputStream(file)) {
+			long remaining = size;
+			while (remaining > 0) {
+				int length = (int) Math.min(remaining, writeBuffer.length);
+				random.nextBytes(writeBuffer);
+				output.write(writeBuffer, 0, length);
+				remaining -= length;
+			}
+		}
+		return size;
+	}
+
+	public long getEntries() {
+		return regularFiles + hardlinks + symlinks + emptyFiles;
+	}
+
+	public long getRegularFiles() {
+		return regularFiles;
+	}
+
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	public long getHardlinks() {
+		return hardlinks;
+	}
+
+	public long getSymlinks() {
+		return symlinks;
+	}
+
+	public long getEmptyFiles() {
+		return emptyFiles;
+	}
+
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+}
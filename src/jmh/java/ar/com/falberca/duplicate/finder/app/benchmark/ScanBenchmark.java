@@ -0,0 +1,249 @@
+package ar.com.falberca.duplicate.finder.app.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.FinderApp;
+
+/**
+ * Runs whole scans of {@link FinderApp} over a tree built by {@link FileTreeGenerator} and records the wall time, 
+ * files per second, MB per second, peak heap and GC time of each run. 
+ * 
+ * Usage: <code>ScanBenchmark profile [-iterations n] [-tree directory] [-results file] [FinderApp options]</code>
+ * 
+ * The tree is generated in a temporary directory that is deleted at the end, unless <code>-tree</code> is given. 
+ * In that case the tree is kept and reused by the next runs if the directory is not empty. The first iteration may 
+ * read the files from disk while the next ones usually find them in the page cache. When <code>-results</code> is 
+ * given a CSV line is appended to the file for every run. Options not known by the harness are given to 
+ * {@link FinderApp}, <code>-rootDir</code> and <code>-output</code> are set by the harness.
+ * 
+ * @author fernando
+ */
+public class ScanBenchmark {
+	
+	private static final String RESULTS_HEADER = "profile,iteration,entries,bytes,wallMillis,filesPerSecond," + 
+												 "megabytesPerSecond,peakHeapBytes,gcMillis,gcCount,options";
+	
+	private static final double MEGABYTE = 1024d * 1024d;
+	
+	private final Logger logger = LoggerFactory.getLogger(ScanBenchmark.class);
+	
+	private TreeProfile profile;
+	private int iterations = 3;
+	private Path treeDirectory;
+	private Path resultsFile;
+	private List<String> finderOptions = new ArrayList<>();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("Usage: ScanBenchmark profile [-iterations n] [-tree directory] [-results file] " + 
+							   "[FinderApp options]");
+			System.exit(1);
+		}
+		new ScanBenchmark(args).run();
+	}
+	
+	private ScanBenchmark(String[] args) throws IOException {
+		profile = TreeProfile.load(args[0]);
+		for (int index = 1; index < args.length; index++) {
+			if ("-iterations".equals(args[index]) && index + 1 < args.length) {
+				iterations = Integer.parseInt(args[++index]);
+			}
+			else if ("-tree".equals(args[index]) && index + 1 < args.length) {
+				treeDirectory = Paths.get(args[++index]);
+			}
+			else if ("-results".equals(args[index]) && index + 1 < args.length) {
+				resultsFile = Paths.get(args[++index]);
+			}
+			else {
+				finderOptions.add(args[index]);
+			}
+		}
+		if (!finderOptions.contains("-parallel")) {
+			finderOptions.addAll(Arrays.asList("-parallel", 
+											   String.valueOf(Runtime.getRuntime().availableProcessors())));
+		}
+	}
+	
+	private void run() throws Exception {
+		boolean temporaryTree = treeDirectory == null;
+		Path rootDirectory = temporaryTree ? Files.createTempDirectory("scan-benchmark") : treeDirectory;
+		Path outputFile = Files.createTempFile("scan-benchmark", ".jsonl");
+		
+		try {
+			FileTreeGenerator generator = new FileTreeGenerator(profile);
+			long entries;
+			long totalBytes;
+			if (!temporaryTree && Files.isDirectory(rootDirectory) && !isEmpty(rootDirectory)) {
+				logger.info("Reusing the tree of directory {}", rootDirectory);
+				entries = countEntries(rootDirectory);
+				totalBytes = sumSizes(rootDirectory);
+			}
+			else {
+				Files.createDirectories(rootDirectory);
+				long start = System.nanoTime();
+				generator.generate(rootDirectory);
+				entries = generator.getEntries();
+				totalBytes = generator.getTotalBytes();
+				logger.info("Tree of profile '{}' generated in {} ms. Entries: {}, regular files: {}, duplicates: {}, " + 
+							"hardlinks: {}, symlinks: {}, empty files: {}, MB: {}", 
+							profile.getName(), 
+							TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), 
+							entries, 
+							generator.getRegularFiles(), 
+							generator.getDuplicates(), 
+							generator.getHardlinks(), 
+							generator.getSymlinks(), 
+							generator.getEmptyFiles(), 
+							String.format(Locale.ROOT, "%.1f", totalBytes / MEGABYTE));
+			}
+			
+			for (int iteration = 1; iteration <= iterations; iteration++) {
+				runScan(iteration, rootDirectory, outputFile, entries, totalBytes);
+			}
+		}
+		finally {
+			Files.deleteIfExists(outputFile);
+			if (temporaryTree) {
+				delete(rootDirectory);
+			}
+		}
+	}
+	
+	/*
+	 * Runs a single scan. Heap peaks are reset and the GC counters are read before and after the scan
+	 */
+	private void runScan(int iteration, Path rootDirectory, Path outputFile, long entries, long totalBytes) 
+			throws Exception {
+		List<String> args = new ArrayList<>(finderOptions);
+		args.addAll(Arrays.asList("-rootDir", rootDirectory.toString(), "-output", outputFile.toString()));
+		
+		System.gc();
+		List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				heapPools.add(pool);
+			}
+		}
+		long gcMillis = -gcTime();
+		long gcCount = -gcCount();
+		
+		long start = System.nanoTime();
+		new BenchmarkedFinderApp().scan(args.toArray(new String[args.size()]));
+		long wallNanos = System.nanoTime() - start;
+		
+		gcMillis += gcTime();
+		gcCount += gcCount();
+		long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+		
+		double seconds = wallNanos / 1e9;
+		long wallMillis = TimeUnit.NANOSECONDS.toMillis(wallNanos);
+		double filesPerSecond = entries / seconds;
+		double megabytesPerSecond = totalBytes / MEGABYTE / seconds;
+		
+		logger.info("Scan {} of profile '{}': wall time {} ms, {} files/s, {} MB/s, peak heap {} MB, GC {} ms in {} " + 
+					"collections", 
+					iteration, 
+					profile.getName(), 
+					wallMillis, 
+					String.format(Locale.ROOT, "%.0f", filesPerSecond), 
+					String.format(Locale.ROOT, "%.1f", megabytesPerSecond), 
+					String.format(Locale.ROOT, "%.1f", peakHeap / MEGABYTE), 
+					gcMillis, 
+					gcCount);
+		
+		if (resultsFile != null) {
+			appendResult(String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.1f,%.2f,%d,%d,%d,\"%s\"", 
+									   profile.getName(), iteration, entries, totalBytes, wallMillis, 
+									   filesPerSecond, megabytesPerSecond, peakHeap, gcMillis, gcCount, 
+									   String.join(" ", finderOptions)));
+		}
+	}
+	
+	private void appendResult(String result) throws IOException {
+		if (resultsFile.getParent() != null) {
+			Files.createDirectories(resultsFile.getParent());
+		}
+		boolean newFile = !Files.exists(resultsFile);
+		try (Writer writer = Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8, 
+													 StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			if (newFile) {
+				writer.write(RESULTS_HEADER);
+				writer.write(System.lineSeparator());
+			}
+			writer.write(result);
+			writer.write(System.lineSeparator());
+		}
+	}
+	
+	private static long gcTime() {
+		return ManagementFactory.getGarbageCollectorMXBeans()
+								.stream()
+								.mapToLong(GarbageCollectorMXBean::getCollectionTime)
+								.sum();
+	}
+	
+	private static long gcCount() {
+		return ManagementFactory.getGarbageCollectorMXBeans()
+								.stream()
+								.mapToLong(GarbageCollectorMXBean::getCollectionCount)
+								.sum();
+	}
+	
+	private static boolean isEmpty(Path directory) throws IOException {
+		try (Stream<Path> entries = Files.list(directory)) {
+			return !entries.findAny().isPresent();
+		}
+	}
+	
+	private static long countEntries(Path directory) throws IOException {
+		try (Stream<Path> entries = Files.walk(directory)) {
+			return entries.filter(path -> !Files.isDirectory(path)).count();
+		}
+	}
+	
+	private static long sumSizes(Path directory) throws IOException {
+		try (Stream<Path> entries = Files.walk(directory)) {
+			return entries.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+		}
+	}
+	
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> entries = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) entries.sorted(Comparator.reverseOrder())::iterator) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+	
+	/*
+	 * Gives access to the command line execution of the application
+	 */
+	private static class BenchmarkedFinderApp extends FinderApp {
+		
+		private void scan(String[] args) throws Exception {
+			execute(args);
+		}
+	}
+
+}
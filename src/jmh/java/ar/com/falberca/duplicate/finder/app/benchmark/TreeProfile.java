@@ -0,0 +1,176 @@
+package ar.com.falberca.duplicate.finder.app.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Describes the file tree built by {@link FileTreeGenerator}. Profiles are properties files, the ones in the 
+ * <code>profiles</code> resource directory can be loaded by name so every run of a profile scans the same tree. 
+ * 
+ * Supported keys:
+ * <ul>
+ * <li><code>files</code>: number of entries of the tree, including links and empty files</li>
+ * <li><code>directories</code>: number of directories, files are spread among them</li>
+ * <li><code>depth</code>: maximum depth of the directories below the root</li>
+ * <li><code>sizes</code>: size distribution as a list of <code>upperBound:weight</code> buckets, sizes are uniform 
+ * between the previous bound and the upper bound of the bucket</li>
+ * <li><code>duplicateRatio</code>: fraction of the regular files that are copies of another file</li>
+ * <li><code>hardlinkRatio</code>, <code>symlinkRatio</code>, <code>emptyRatio</code>: fraction of the entries that 
+ * are hardlinks, symlinks or empty files</li>
+ * <li><code>seed</code>: seed of the random generator</li>
+ * </ul>
+ * 
+ * @author fernando
+ */
+public class TreeProfile {
+	
+	private static final String PROFILES_RESOURCE = "/profiles/";
+	private static final String PROFILE_EXTENSION = ".properties";
+	
+	private String name;
+	private int files;
+	private int directories;
+	private int depth;
+	private List<SizeBucket> sizeBuckets = new ArrayList<>();
+	private long totalWeight;
+	private double duplicateRatio;
+	private double hardlinkRatio;
+	private double symlinkRatio;
+	private double emptyRatio;
+	private long seed;
+	
+	private TreeProfile(String nameRef, Properties properties) {
+		name = nameRef;
+		files = Integer.parseInt(properties.getProperty("files", "1000"));
+		directories = Integer.parseInt(properties.getProperty("directories", "100"));
+		depth = Integer.parseInt(properties.getProperty("depth", "4"));
+		duplicateRatio = Double.parseDouble(properties.getProperty("duplicateRatio", "0.1"));
+		hardlinkRatio = Double.parseDouble(properties.getProperty("hardlinkRatio", "0"));
+		symlinkRatio = Double.parseDouble(properties.getProperty("symlinkRatio", "0"));
+		emptyRatio = Double.parseDouble(properties.getProperty("emptyRatio", "0"));
+		seed = Long.parseLong(properties.getProperty("seed", "1"));
+		
+		long lowerBound = 0;
+		for (String bucket : properties.getProperty("sizes", "4096:1").split(",")) {
+			String[] boundAndWeight = bucket.trim().split(":");
+			long upperBound = Long.parseLong(boundAndWeight[0].trim());
+			long weight = Long.parseLong(boundAndWeight[1].trim());
+			if (upperBound <= lowerBound || weight < 1)
+				throw new IllegalArgumentException("Invalid size bucket in profile " + name + ": " + bucket);
+			sizeBuckets.add(new SizeBucket(lowerBound + 1, upperBound, weight));
+			totalWeight += weight;
+			lowerBound = upperBound;
+		}
+		
+		if (files < 1 || directories < 1 || depth < 1)
+			throw new IllegalArgumentException("Invalid number of files, directories or depth in profile " + name);
+		if (hardlinkRatio + symlinkRatio + emptyRatio >= 1)
+			throw new IllegalArgumentException("Links and empty files take all the entries of profile " + name);
+	}
+	
+	/**
+	 * Loads a profile from a properties file or, if there is no such file, from the bundled profiles
+	 * 
+	 * @param profile Path of a properties file or name of a bundled profile
+	 * @return Returns the profile
+	 * @throws IOException Throws an exception if the profile can't be read
+	 */
+	public static TreeProfile load(String profile) throws IOException {
+		Properties properties = new Properties();
+		Path profilePath = Paths.get(profile);
+		if (Files.isRegularFile(profilePath)) {
+			try (Reader reader = Files.newBufferedReader(profilePath, StandardCharsets.UTF_8)) {
+				properties.load(reader);
+			}
+			String fileName = profilePath.getFileName().toString();
+			return new TreeProfile(fileName.replace(PROFILE_EXTENSION, ""), properties);
+		}
+		
+		try (InputStream input = TreeProfile.class.getResourceAsStream(PROFILES_RESOURCE + profile + 
+																	   PROFILE_EXTENSION)) {
+			if (input == null)
+				throw new IllegalArgumentException("Profile not found: " + profile);
+			properties.load(input);
+		}
+		return new TreeProfile(profile, properties);
+	}
+	
+	/**
+	 * Returns a size taken from the size distribution
+	 * 
+	 * @param randomValue Random value between 0 and 1
+	 * @param otherRandomValue Random value between 0 and 1 used for the size inside the bucket
+	 * @return Returns the size, always greater than zero
+	 */
+	public long size(double randomValue, double otherRandomValue) {
+		long weight = (long) (randomValue * totalWeight);
+		for (SizeBucket bucket : sizeBuckets) {
+			if (weight < bucket.weight)
+				return bucket.lowerBound + (long) (otherRandomValue * (bucket.upperBound - bucket.lowerBound));
+			weight -= bucket.weight;
+		}
+		SizeBucket lastBucket = sizeBuckets.get(sizeBuckets.size() - 1);
+		return lastBucket.upperBound;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getFiles() {
+		return files;
+	}
+
+	public int getDirectories() {
+		return directories;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public double getDuplicateRatio() {
+		return duplicateRatio;
+	}
+
+	public double getHardlinkRatio() {
+		return hardlinkRatio;
+	}
+
+	public double getSymlinkRatio() {
+		return symlinkRatio;
+	}
+
+	public double getEmptyRatio() {
+		return emptyRatio;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+	
+	/*
+	 * Range of sizes and its weight in the distribution
+	 */
+	private static class SizeBucket {
+		
+		private final long lowerBound;
+		private final long upperBound;
+		private final long weight;
+		
+		private SizeBucket(long lowerBound, long upperBound, long weight) {
+			this.lowerBound = lowerBound;
+			this.upperBound = upperBound;
+			this.weight = weight;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package ar.com.falberca.duplicate.finder.app.files;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Attributes of a regular file that doesn't exist, so benchmarks can create any number of {@link FileInfo} 
+ * instances with the sizes they need without touching the file system.
+ * 
+ * @author fernando
+ */
+public class BenchmarkFileAttributes implements BasicFileAttributes {
+	
+	private static final FileTime LAST_MODIFIED = FileTime.fromMillis(0);
+	
+	private final long size;
+	private final Object fileKey;
+	
+	/**
+	 * @param sizeRef Size of the file
+	 * @param fileKeyRef Key of the file, unique for every file
+	 */
+	public BenchmarkFileAttributes(long sizeRef, Object fileKeyRef) {
+		size = sizeRef;
+		fileKey = fileKeyRef;
+	}
+
+	@Override
+	public FileTime lastModifiedTime() {
+		return LAST_MODIFIED;
+	}
+
+	@Override
+	public FileTime lastAccessTime() {
+		return LAST_MODIFIED;
+	}
+
+	@Override
+	public FileTime creationTime() {
+		return LAST_MODIFIED;
+	}
+
+	@Override
+	public boolean isRegularFile() {
+		return true;
+	}
+
+	@Override
+	public boolean isDirectory() {
+		return false;
+	}
+
+	@Override
+	public boolean isSymbolicLink() {
+		return false;
+	}
+
+	@Override
+	public boolean isOther() {
+		return false;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public Object fileKey() {
+		return fileKey;
+	}
+
+}
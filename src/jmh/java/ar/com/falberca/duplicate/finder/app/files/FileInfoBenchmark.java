@@ -0,0 +1,67 @@
+package ar.com.falberca.duplicate.finder.app.files;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of creating a {@link FileInfo} for every file found by the walkers. <code>fromPath</code> 
+ * splits a full path as the path constructor does, <code>fromDirectory</code> uses an interned directory as the 
+ * walkers do. <code>getPath</code> measures building the full path again, which is done when files are opened or 
+ * reported.
+ * 
+ * @author fernando
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileInfoBenchmark {
+	
+	private Path path;
+	private String directory;
+	private String name;
+	private BasicFileAttributes attributes;
+	private FileInfo fileInfo;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		path = Paths.get("/home/user/documents/projects/duplicate-finder/src/main/java/FileInfo.java");
+		DirectoryTable directoryTable = new DirectoryTable();
+		directory = directoryTable.getPath(directoryTable.intern(path.getParent()));
+		name = path.getFileName().toString();
+		attributes = new BenchmarkFileAttributes(4096, path);
+		fileInfo = new FileInfo(directory, name, attributes);
+	}
+	
+	@Benchmark
+	public FileInfo fromPath() {
+		return new FileInfo(path, attributes);
+	}
+	
+	@Benchmark
+	public FileInfo fromDirectory() {
+		return new FileInfo(directory, name, attributes);
+	}
+	
+	@Benchmark
+	public String getPath() {
+		return fileInfo.getPath();
+	}
+
+}
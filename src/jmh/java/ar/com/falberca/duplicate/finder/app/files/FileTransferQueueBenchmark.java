@@ -0,0 +1,108 @@
+package ar.com.falberca.duplicate.finder.app.files;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the hand-off of files between walkers and consumers through a {@link FileTransferQueue}. Every 
+ * invocation transfers {@value #FILES} files from <code>producers</code> threads to <code>consumers</code> threads 
+ * through a new queue, the score is the throughput in files per second.
+ * 
+ * @author fernando
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileTransferQueueBenchmark {
+	
+	private static final int FILES = 256 * 1024;
+	
+	@Param({"1", "2", "4"})
+	private int producers;
+	
+	@Param({"1", "2", "4", "8"})
+	private int consumers;
+	
+	private FileInfo[] files;
+	private ExecutorService executor;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		files = new FileInfo[FILES];
+		String directory = "/benchmark";
+		for (int index = 0; index < FILES; index++) {
+			files[index] = new FileInfo(directory, "file" + index, new BenchmarkFileAttributes(index, index));
+		}
+		executor = Executors.newFixedThreadPool(producers + consumers);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public long transfer() throws Exception {
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		
+		List<Future<Long>> consumerTasks = new ArrayList<>();
+		for (int consumer = 0; consumer < consumers; consumer++) {
+			consumerTasks.add(executor.submit(() -> {
+				List<FileInfo> batch = new ArrayList<>();
+				long sizes = 0;
+				while (fileQueue.takeBatch(batch)) {
+					for (FileInfo fileInfo : batch) {
+						sizes += fileInfo.getSize();
+					}
+				}
+				return sizes;
+			}));
+		}
+		
+		List<Future<?>> producerTasks = new ArrayList<>();
+		for (int producer = 0; producer < producers; producer++) {
+			int first = producer;
+			producerTasks.add(executor.submit(() -> {
+				for (int index = first; index < FILES; index += producers) {
+					fileQueue.put(files[index]);
+				}
+				return null;
+			}));
+		}
+		
+		for (Future<?> producerTask : producerTasks) {
+			producerTask.get();
+		}
+		fileQueue.close();
+		
+		long sizes = 0;
+		for (Future<Long> consumerTask : consumerTasks) {
+			sizes += consumerTask.get();
+		}
+		return sizes;
+	}
+
+}
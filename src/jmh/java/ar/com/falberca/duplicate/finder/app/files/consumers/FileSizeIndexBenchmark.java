@@ -0,0 +1,92 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ar.com.falberca.duplicate.finder.app.files.BenchmarkFileAttributes;
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Measures the contention of the consumers adding files to a {@link FileSizeIndex}. Every invocation adds 
+ * {@value #FILES} files to a new index from <code>threads</code> threads. Files get one of 
+ * <code>distinctSizes</code> sizes, few sizes means big buckets and more threads competing for the same stripe. 
+ * The score is the throughput in files per second.
+ * 
+ * @author fernando
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileSizeIndexBenchmark {
+	
+	private static final int FILES = 256 * 1024;
+	
+	@Param({"1", "2", "4", "8"})
+	private int threads;
+	
+	@Param({"16", "65536"})
+	private int distinctSizes;
+	
+	private FileInfo[] files;
+	private ExecutorService executor;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		files = new FileInfo[FILES];
+		String directory = "/benchmark";
+		for (int index = 0; index < FILES; index++) {
+			BenchmarkFileAttributes attributes = new BenchmarkFileAttributes(1 + index % distinctSizes, index);
+			files[index] = new FileInfo(directory, "file" + index, attributes);
+		}
+		executor = Executors.newFixedThreadPool(threads);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public FileSizeIndex add() throws Exception {
+		FileSizeIndex fileSizeIndex = new FileSizeIndex();
+		
+		List<Future<?>> tasks = new ArrayList<>();
+		for (int thread = 0; thread < threads; thread++) {
+			int first = thread;
+			tasks.add(executor.submit(() -> {
+				for (int index = first; index < FILES; index += threads) {
+					fileSizeIndex.add(files[index]);
+				}
+			}));
+		}
+		
+		for (Future<?> task : tasks) {
+			task.get();
+		}
+		return fileSizeIndex;
+	}
+
+}
@@ -0,0 +1,84 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of the available {@link HashAlgorithm} over a mix of file sizes. The 
+ * <code>hashBuffer</code> benchmark measures the CPU cost of each algorithm over content already in memory, 
+ * <code>hashFile</code> measures a {@link FileHashingEngine} reading a file from the page cache. 
+ * 
+ * Results are reported in operations per second, bytes per second is the score multiplied by the file size.
+ * 
+ * @author fernando
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentHasherBenchmark {
+	
+	@Param({"md5", "sha256", "xxhash64", "murmur3"})
+	private String algorithm;
+	
+	@Param({"4096", "65536", "1048576", "16777216"})
+	private int fileSize;
+	
+	private ContentHasher contentHasher;
+	private ByteBuffer content;
+	private FileHashingEngine hashingEngine;
+	private File contentFile;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		byte[] randomContent = new byte[fileSize];
+		new Random(fileSize).nextBytes(randomContent);
+		
+		content = ByteBuffer.allocateDirect(fileSize);
+		content.put(randomContent);
+		
+		contentHasher = HashAlgorithm.fromName(algorithm).createHasher();
+		
+		contentFile = File.createTempFile("content-hasher-benchmark", ".tmp");
+		Files.write(contentFile.toPath(), randomContent);
+		hashingEngine = new FileHashingEngine(HashAlgorithm.fromName(algorithm).createHasher(), 
+											  FileHashingEngine.DEFAULT_MAPPING_THRESHOLD);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		contentFile.delete();
+	}
+	
+	@Benchmark
+	public byte[] hashBuffer() {
+		content.rewind();
+		contentHasher.update(content);
+		return contentHasher.digest();
+	}
+	
+	@Benchmark
+	public byte[] hashFile() throws Exception {
+		return hashingEngine.hash(contentFile.toPath());
+	}
+
+}
@@ -3,14 +3,19 @@ package ar.com.falberca.duplicate.finder.app;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
-import java.util.Observable;
-import java.util.Observer;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -23,13 +28,38 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ar.com.falberca.duplicate.finder.app.directory.walkers.DirectoryWalker;
+import ar.com.falberca.duplicate.finder.app.directory.walkers.ForkJoinDirectoryWalker;
 import ar.com.falberca.duplicate.finder.app.directory.walkers.JDKDirectoryWalker;
+import ar.com.falberca.duplicate.finder.app.directory.walkers.WalkCheckpoint;
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
 import ar.com.falberca.duplicate.finder.app.events.EventType;
-import ar.com.falberca.duplicate.finder.app.files.FileInfo;
-import ar.com.falberca.duplicate.finder.app.files.consumers.ConsumerProviderFunctionFactory;
+import ar.com.falberca.duplicate.finder.app.events.PipelineEvent;
+import ar.com.falberca.duplicate.finder.app.events.ProgressEvent;
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+import ar.com.falberca.duplicate.finder.app.files.consumers.AsyncDigestComparisonStage;
+import ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage;
+import ar.com.falberca.duplicate.finder.app.files.consumers.ConsumerThreadMode;
+import ar.com.falberca.duplicate.finder.app.files.consumers.DigestComparisonStage;
+import ar.com.falberca.duplicate.finder.app.files.consumers.DirectComparisonStage;
 import ar.com.falberca.duplicate.finder.app.files.consumers.DuplicateConsumerProviderFactory;
+import ar.com.falberca.duplicate.finder.app.files.consumers.ExternalMemorySettings;
 import ar.com.falberca.duplicate.finder.app.files.consumers.FileConsumerCoordinator;
+import ar.com.falberca.duplicate.finder.app.files.consumers.SampleComparisonStage;
+import ar.com.falberca.duplicate.finder.app.files.consumers.VerificationComparisonStage;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter;
 import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilterBuilder;
+import ar.com.falberca.duplicate.finder.app.files.filters.PathPatterns;
+import ar.com.falberca.duplicate.finder.app.files.hashing.AsyncHashingPipeline;
+import ar.com.falberca.duplicate.finder.app.files.hashing.FileHashingEngine;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashAlgorithm;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache;
+import ar.com.falberca.duplicate.finder.app.files.hashing.TreeHashingScheduler;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+import ar.com.falberca.duplicate.finder.app.results.AsyncResultSink;
+import ar.com.falberca.duplicate.finder.app.results.LoggerResultSink;
+import ar.com.falberca.duplicate.finder.app.results.ResultFormat;
+import ar.com.falberca.duplicate.finder.app.results.ResultSink;
 
 /**
  * Application main class, will be responsible for managing the directory walker and file consumer.
@@ -37,14 +67,61 @@ import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilterBui
  * @author fernando
  *
  */
-public class FinderApp implements Observer {
+public class FinderApp {
 	
 	private static final String ROOT_DIR_PARAM = "rootDir";
 	private static final String PARALLEL_PARAM = "parallel";
 	private static final String SKIP_LINKS = "skipLinks";
 	private static final String SKIP_EMPTY_FILES = "skipEmpty";
+	private static final String MAPPING_THRESHOLD_PARAM = "mmapThreshold";
+	private static final String HASH_ALGORITHM_PARAM = "hash";
+	private static final String HASH_CACHE_PARAM = "hashCache";
+	private static final String WALKER_THREADS_PARAM = "walkerThreads";
+	private static final String OUTPUT_PARAM = "output";
+	private static final String OUTPUT_FORMAT_PARAM = "outputFormat";
+	private static final String ROTATIONAL_READS_PARAM = "rotationalReads";
+	private static final String THREAD_MODE_PARAM = "threadMode";
+	private static final String COMPARISON_TASKS_PARAM = "comparisonTasks";
+	private static final String ASYNC_HASH_THREADS_PARAM = "asyncHashThreads";
+	private static final String ASYNC_HASH_MEMORY_PARAM = "asyncHashMemory";
+	private static final String HEAP_BUDGET_PARAM = "heapBudget";
+	private static final String SPILL_DIR_PARAM = "spillDir";
+	private static final String CHECKPOINT_PARAM = "checkpoint";
+	private static final String RESUME_PARAM = "resume";
+	private static final String INCLUDE_PARAM = "include";
+	private static final String EXCLUDE_PARAM = "exclude";
+	private static final String EXCLUDE_DIR_PARAM = "excludeDir";
+	private static final String MIN_SIZE_PARAM = "minSize";
+	private static final String MAX_SIZE_PARAM = "maxSize";
+	private static final String VERIFY_PARAM = "verify";
+	private static final String TREE_HASH_THRESHOLD_PARAM = "treeHashThreshold";
+	
+	private static final long MEGABYTE = 1024L * 1024L;
 	
 	private CountDownLatch countDown = new CountDownLatch(1);
+	private long mappingThreshold = FileHashingEngine.DEFAULT_MAPPING_THRESHOLD;
+	private HashAlgorithm hashAlgorithm = HashAlgorithm.MD5;
+	private String hashCacheFile = null;
+	private int walkerThreads = 0;
+	private String outputFile = null;
+	private ResultFormat outputFormat = ResultFormat.JSON_LINES;
+	private List<String> additionalRootDirectories = Collections.emptyList();
+	private int rotationalReads = DeviceReadScheduler.DEFAULT_ROTATIONAL_CONCURRENCY;
+	private ConsumerThreadMode threadMode = ConsumerThreadMode.PLATFORM;
+	private int comparisonTasks = FileConsumerCoordinator.DEFAULT_COMPARISON_TASKS;
+	private int asyncHashThreads = 0;
+	private long asyncHashMemory = AsyncHashingPipeline.DEFAULT_MAX_IN_FLIGHT_BYTES;
+	private long heapBudget = Runtime.getRuntime().maxMemory() / 2;
+	private String spillDirectory = System.getProperty("java.io.tmpdir");
+	private String checkpointFile = null;
+	private boolean resume = false;
+	private List<String> includePatterns = Collections.emptyList();
+	private List<String> excludePatterns = Collections.emptyList();
+	private List<String> excludedDirectoryPatterns = Collections.emptyList();
+	private long minSize = 0;
+	private long maxSize = Long.MAX_VALUE;
+	private boolean verify = false;
+	private long treeHashThreshold = 0;
 	private final Logger logger = LoggerFactory.getLogger(FinderApp.class);
 
 	public static void main(String[] args) throws Exception {
@@ -78,10 +155,180 @@ public class FinderApp implements Observer {
 		}
 		
 		String rootDirectory = line.getOptionValue(ROOT_DIR_PARAM);
+		String[] rootDirectories = line.getOptionValues(ROOT_DIR_PARAM);
+		if (rootDirectories != null && rootDirectories.length > 1) {
+			additionalRootDirectories = Arrays.asList(rootDirectories).subList(1, rootDirectories.length);
+		}
 		Number numberOfThreads = (Number) line.getParsedOptionValue(PARALLEL_PARAM);
 		boolean skipLinks = line.hasOption(SKIP_LINKS);
 		boolean skipEmptyFiles = line.hasOption(SKIP_EMPTY_FILES);
 		
+		if (line.hasOption(MAPPING_THRESHOLD_PARAM)) {
+			Number mappingThresholdMB = (Number) line.getParsedOptionValue(MAPPING_THRESHOLD_PARAM);
+			if (mappingThresholdMB == null || mappingThresholdMB.longValue() < 1) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid memory mapping threshold: " + 
+												   line.getOptionValue(MAPPING_THRESHOLD_PARAM));
+			}
+			mappingThreshold = mappingThresholdMB.longValue() * MEGABYTE;
+		}
+		
+		if (line.hasOption(HASH_ALGORITHM_PARAM)) {
+			try {
+				hashAlgorithm = HashAlgorithm.fromName(line.getOptionValue(HASH_ALGORITHM_PARAM));
+			}
+			catch(IllegalArgumentException ex) {
+				printUsage(commandLineOptions);
+				throw ex;
+			}
+		}
+		
+		hashCacheFile = line.getOptionValue(HASH_CACHE_PARAM);
+		
+		if (line.hasOption(WALKER_THREADS_PARAM)) {
+			Number walkerThreadsValue = (Number) line.getParsedOptionValue(WALKER_THREADS_PARAM);
+			if (walkerThreadsValue == null || walkerThreadsValue.intValue() < 1) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid number of walker threads: " + 
+												   line.getOptionValue(WALKER_THREADS_PARAM));
+			}
+			walkerThreads = walkerThreadsValue.intValue();
+		}
+		
+		outputFile = line.getOptionValue(OUTPUT_PARAM);
+		
+		if (line.hasOption(ROTATIONAL_READS_PARAM)) {
+			Number rotationalReadsValue = (Number) line.getParsedOptionValue(ROTATIONAL_READS_PARAM);
+			if (rotationalReadsValue == null || rotationalReadsValue.intValue() < 1) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid number of rotational device reads: " + 
+												   line.getOptionValue(ROTATIONAL_READS_PARAM));
+			}
+			rotationalReads = rotationalReadsValue.intValue();
+		}
+		
+		if (line.hasOption(OUTPUT_FORMAT_PARAM)) {
+			try {
+				outputFormat = ResultFormat.fromName(line.getOptionValue(OUTPUT_FORMAT_PARAM));
+			}
+			catch(IllegalArgumentException ex) {
+				printUsage(commandLineOptions);
+				throw ex;
+			}
+		}
+		
+		if (line.hasOption(THREAD_MODE_PARAM)) {
+			try {
+				threadMode = ConsumerThreadMode.fromName(line.getOptionValue(THREAD_MODE_PARAM));
+			}
+			catch(IllegalArgumentException ex) {
+				printUsage(commandLineOptions);
+				throw ex;
+			}
+			
+			if (!threadMode.isAvailable()) {
+				logger.warn("Thread mode {} is not available in Java {}, using {} threads", 
+							threadMode.getModeName(), 
+							System.getProperty("java.version"), 
+							ConsumerThreadMode.PLATFORM.getModeName());
+				threadMode = ConsumerThreadMode.PLATFORM;
+			}
+		}
+		
+		if (line.hasOption(COMPARISON_TASKS_PARAM)) {
+			Number comparisonTasksValue = (Number) line.getParsedOptionValue(COMPARISON_TASKS_PARAM);
+			if (comparisonTasksValue == null || comparisonTasksValue.intValue() < 1) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid number of comparison tasks: " + 
+												   line.getOptionValue(COMPARISON_TASKS_PARAM));
+			}
+			comparisonTasks = comparisonTasksValue.intValue();
+			
+			if (threadMode != ConsumerThreadMode.VIRTUAL) {
+				logger.warn("Comparison tasks are limited in virtual thread mode only, -{} ignored", 
+							COMPARISON_TASKS_PARAM);
+			}
+		}
+		
+		if (line.hasOption(ASYNC_HASH_THREADS_PARAM)) {
+			Number asyncHashThreadsValue = (Number) line.getParsedOptionValue(ASYNC_HASH_THREADS_PARAM);
+			if (asyncHashThreadsValue == null || asyncHashThreadsValue.intValue() < 1) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid number of asynchronous hashing threads: " + 
+												   line.getOptionValue(ASYNC_HASH_THREADS_PARAM));
+			}
+			asyncHashThreads = asyncHashThreadsValue.intValue();
+		}
+		
+		if (line.hasOption(ASYNC_HASH_MEMORY_PARAM)) {
+			Number asyncHashMemoryMB = (Number) line.getParsedOptionValue(ASYNC_HASH_MEMORY_PARAM);
+			if (asyncHashMemoryMB == null || 
+					asyncHashMemoryMB.longValue() * MEGABYTE < 2L * AsyncHashingPipeline.DEFAULT_CHUNK_SIZE) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid asynchronous hashing memory: " + 
+												   line.getOptionValue(ASYNC_HASH_MEMORY_PARAM));
+			}
+			asyncHashMemory = asyncHashMemoryMB.longValue() * MEGABYTE;
+		}
+		
+		if (line.hasOption(HEAP_BUDGET_PARAM)) {
+			Number heapBudgetMB = (Number) line.getParsedOptionValue(HEAP_BUDGET_PARAM);
+			if (heapBudgetMB == null || heapBudgetMB.longValue() < 0) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid heap budget: " + line.getOptionValue(HEAP_BUDGET_PARAM));
+			}
+			heapBudget = heapBudgetMB.longValue() * MEGABYTE;
+		}
+		
+		if (line.hasOption(SPILL_DIR_PARAM)) {
+			spillDirectory = line.getOptionValue(SPILL_DIR_PARAM);
+			if (!new File(spillDirectory).isDirectory()) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Spill directory " + spillDirectory + " is not a directory");
+			}
+		}
+		
+		checkpointFile = line.getOptionValue(CHECKPOINT_PARAM);
+		resume = line.hasOption(RESUME_PARAM);
+		if (resume && checkpointFile == null) {
+			printUsage(commandLineOptions);
+			throw new IllegalArgumentException("A checkpoint file is required for resuming a scan");
+		}
+		
+		verify = line.hasOption(VERIFY_PARAM);
+		
+		if (line.hasOption(TREE_HASH_THRESHOLD_PARAM)) {
+			Number treeHashThresholdMB = (Number) line.getParsedOptionValue(TREE_HASH_THRESHOLD_PARAM);
+			if (treeHashThresholdMB == null || treeHashThresholdMB.longValue() < 1) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid tree hashing threshold: " + 
+												   line.getOptionValue(TREE_HASH_THRESHOLD_PARAM));
+			}
+			treeHashThreshold = treeHashThresholdMB.longValue() * MEGABYTE;
+		}
+		
+		includePatterns = parsePatterns(line, INCLUDE_PARAM, commandLineOptions);
+		excludePatterns = parsePatterns(line, EXCLUDE_PARAM, commandLineOptions);
+		excludedDirectoryPatterns = parsePatterns(line, EXCLUDE_DIR_PARAM, commandLineOptions);
+		
+		if (line.hasOption(MIN_SIZE_PARAM)) {
+			Number minSizeValue = (Number) line.getParsedOptionValue(MIN_SIZE_PARAM);
+			if (minSizeValue == null || minSizeValue.longValue() < 0) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid minimum size: " + line.getOptionValue(MIN_SIZE_PARAM));
+			}
+			minSize = minSizeValue.longValue();
+		}
+		
+		if (line.hasOption(MAX_SIZE_PARAM)) {
+			Number maxSizeValue = (Number) line.getParsedOptionValue(MAX_SIZE_PARAM);
+			if (maxSizeValue == null || maxSizeValue.longValue() < minSize) {
+				printUsage(commandLineOptions);
+				throw new IllegalArgumentException("Invalid maximum size: " + line.getOptionValue(MAX_SIZE_PARAM));
+			}
+			maxSize = maxSizeValue.longValue();
+		}
+		
 		Supplier<String> messageSupplier = () -> {
 			printUsage(commandLineOptions);
 			return "Missing required parameter.";
@@ -96,7 +343,8 @@ public class FinderApp implements Observer {
 	/**
 	 * Initiates the processing of the given <code>rootDirecotry</code> directory using 
 	 * <code>numberOfThreads</code>. Additionally, symlinks and empty files can be skipped setting
-	 * <code>skipLinks</code> and <code>skipEmptyFiles</code> options.
+	 * <code>skipLinks</code> and <code>skipEmptyFiles</code> options. If several root directories were given in the 
+	 * command line, the others are processed in the same scan.
 	 *   
 	 * @param rootDirectory Base directory for searching duplicates
 	 * @param numberOfThreads Number of threads for processing files
@@ -111,36 +359,170 @@ public class FinderApp implements Observer {
 		
 		long startTime = System.nanoTime();
 
-		checkArgumentValues(rootDirectory, numberOfThreads);
+		List<String> rootDirectories = new ArrayList<>();
+		rootDirectories.add(rootDirectory);
+		rootDirectories.addAll(additionalRootDirectories);
+		
+		for (String directory : rootDirectories) {
+			checkArgumentValues(directory, numberOfThreads);
+		}
+		
+		logger.info("Executing search of duplicate file under directories: {} with number of threads: {} and hash: {}", 
+					rootDirectories, 
+					numberOfThreads,
+					hashAlgorithm.getAlgorithmName());
+		
+		//Files are digested by a shared asynchronous pipeline just if it was requested
+		AsyncHashingPipeline hashingPipeline = asyncHashThreads == 0 ? null : 
+				new AsyncHashingPipeline(hashAlgorithm::createHasher, 
+										 asyncHashThreads, 
+										 AsyncHashingPipeline.DEFAULT_CHUNK_SIZE, 
+										 asyncHashMemory);
 		
-		logger.info("Executing search of duplicate file under directory: {} with number of threads: {}", 
-					rootDirectory, 
-					numberOfThreads);
+		//Reads are limited per device, rotational disks get few concurrent reads so they don't thrash seeking. Other 
+		//devices get a read per consumer thread or comparison task, or a read per file in flight when the pipeline is 
+		//used
+		int deviceReads = threadMode == ConsumerThreadMode.VIRTUAL ? Math.max(numberOfThreads, comparisonTasks) : 
+				numberOfThreads;
+		
+		//Very big files are hashed as trees of segments that idle consumers help to digest, just if it was requested. 
+		//Segments are digested by as many workers as reads of a device.
+		TreeHashingScheduler treeHashing = createTreeHashing(hashingPipeline, deviceReads);
+
+		List<Path> rootDirectoryPaths = new ArrayList<>();
+		rootDirectories.forEach(directory -> rootDirectoryPaths.add(Paths.get(directory)));
+		DeviceReadScheduler readScheduler = new DeviceReadScheduler(rootDirectoryPaths, 
+																	rotationalReads, 
+																	hashingPipeline == null ? deviceReads : 
+																	Math.max(deviceReads, 
+																			 hashingPipeline.getMaxFilesInFlight()));
 		
-		//Shared queue between the producer (directory walker) and the consumer (file coordinator)
-		BlockingQueue<FileInfo> fileQueue = new LinkedBlockingQueue<>();
+		//Shared bounded queue between the producer (directory walker) and the consumer (file coordinator)
+		FileTransferQueue fileQueue = new FileTransferQueue();
 
-		ConsumerProviderFunctionFactory consumerProviderFunctionFactory = new DuplicateConsumerProviderFactory();
+		//Events of the walker and the consumers are delivered by the bus thread, progress is logged every second
+		EventBus eventBus = new EventBus();
+
+		//Metrics of the scan can be watched through JMX while it runs
+		ScanMetrics scanMetrics = ScanMetrics.start(fileQueue);
+
+		//Digests depend on the algorithm, the sample size and the tree segments, a cache created with other values is 
+		//discarded
+		String digestDescription = hashAlgorithm.getAlgorithmName() + "/" + SampleComparisonStage.DEFAULT_SAMPLE_SIZE + 
+				(treeHashing == null ? "" : "/tree:" + treeHashThreshold + "/" + treeHashing.getSegmentSize());
+		//A checkpointed scan without a hash cache keeps its digests next to the checkpoint, so a resumed scan doesn't 
+		//read again the files hashed before it was killed
+		Path checkpointDigests = checkpointFile == null || hashCacheFile != null || walkerThreads > 0 ? null : 
+				WalkCheckpoint.digestsFileOf(Paths.get(checkpointFile));
+		if (checkpointDigests != null && !resume) {
+			Files.deleteIfExists(checkpointDigests);
+		}
+		Path hashCachePath = hashCacheFile != null ? Paths.get(hashCacheFile) : checkpointDigests;
+		HashCache hashCache = hashCachePath == null ? null : HashCache.open(hashCachePath, digestDescription);
+		
+		//Results are written by a background thread, consumers never wait for the console or the output file
+		ResultSink resultSink = new AsyncResultSink(outputFile == null ? new LoggerResultSink() : 
+				outputFormat.createSink(Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8)));
+		
+		//Regular files are spilled to disk if the in-memory index passes the heap budget, their size groups are read 
+		//back one at a time by the same comparison stages
+		ExternalMemorySettings externalMemory = new ExternalMemorySettings(Paths.get(spillDirectory), heapBudget);
+		
+		//Stages are created once per consumer thread, so every thread gets its own hashers and hashing engine
+		DuplicateConsumerProviderFactory consumerProviderFunctionFactory = new DuplicateConsumerProviderFactory(
+				() -> Arrays.asList(new SampleComparisonStage(hashAlgorithm.createHasher(), 
+															  SampleComparisonStage.DEFAULT_SAMPLE_SIZE, 
+															  hashCache, 
+															  readScheduler), 
+									createDigestStage(hashingPipeline, treeHashing, hashCache, readScheduler)), 
+				resultSink, 
+				eventBus, 
+				externalMemory);
+		if (treeHashing != null) {
+			consumerProviderFunctionFactory.setTreeHashing(treeHashing);
+		}
 		
 		FileConsumerCoordinator fileConsumerCoordinator = new FileConsumerCoordinator(fileQueue, 
 																					  consumerProviderFunctionFactory, 
-																					  numberOfThreads);
-		fileConsumerCoordinator.addObserver(this);
+																					  numberOfThreads, 
+																					  threadMode, 
+																					  eventBus);
+		fileConsumerCoordinator.setComparisonTasks(comparisonTasks);
+		eventBus.subscribe(event -> handleEvent(event, fileConsumerCoordinator));
 		fileConsumerCoordinator.consume();
 
-		DirectoryWalker dirWalker = new JDKDirectoryWalker(rootDirectory, 
-														   fileQueue, 
-														   FileConditionFilterBuilder.create()
-														   							 .links(skipLinks)
-														   							 .emptyFiles(skipEmptyFiles)
-														   							 .build());
-		dirWalker.addObserver(fileConsumerCoordinator);
+		List<FileConditionFilter> filters = FileConditionFilterBuilder.create()
+																	  .links(skipLinks)
+																	  .emptyFiles(skipEmptyFiles)
+																	  .sizeRange(minSize, maxSize)
+																	  .include(includePatterns)
+																	  .exclude(excludePatterns)
+																	  .excludeDirectories(excludedDirectoryPatterns)
+																	  .build();
+		
+		//Directories are listed in parallel just if it was requested, a single walker thread is enough for local disks
+		DirectoryWalker dirWalker;
+		WalkCheckpoint checkpoint = null;
+		if (walkerThreads > 0) {
+			dirWalker = new ForkJoinDirectoryWalker(rootDirectories, fileQueue, filters, walkerThreads, eventBus);
+			if (checkpointFile != null) {
+				logger.warn("Checkpoints are recorded by the single thread walker only, the scan can't be resumed");
+			}
+		}
+		else {
+			JDKDirectoryWalker jdkWalker = new JDKDirectoryWalker(rootDirectories, fileQueue, filters, eventBus);
+			checkpoint = createCheckpoint();
+			jdkWalker.setCheckpoint(checkpoint);
+			dirWalker = jdkWalker;
+		}
 		dirWalker.walkDirectory();
 		
 		logger.info("Waiting for results...");
 		
 		countDown.await();
 		
+		//Every file was compared, a new scan starts from the beginning
+		if (checkpoint != null) {
+			checkpoint.close();
+			Files.deleteIfExists(Paths.get(checkpointFile));
+		}
+		
+		eventBus.close();
+		
+		resultSink.close();
+		
+		if (hashCache != null) {
+			hashCache.close();
+		}
+		
+		if (checkpointDigests != null) {
+			Files.deleteIfExists(checkpointDigests);
+		}
+		
+		if (hashingPipeline != null) {
+			hashingPipeline.close();
+		}
+		
+		scanMetrics.stop();
+		logger.info("Scan metrics. Files walked: {}, files filtered: {}, files hashed: {}, MB hashed: {}", 
+					scanMetrics.getFilesWalked(), 
+					scanMetrics.getFilesFiltered(), 
+					scanMetrics.getFilesHashed(), 
+					scanMetrics.getBytesHashed() / MEGABYTE);
+		long verifiedGroups = scanMetrics.getVerifiedGroups();
+		logger.info("Duplicate groups: {}, verified byte by byte: {}, unverified: {}, hash collisions: {}", 
+					scanMetrics.getDuplicateGroups(), 
+					verifiedGroups, 
+					scanMetrics.getDuplicateGroups() - verifiedGroups, 
+					scanMetrics.getHashCollisions());
+		logger.info("Latencies. Walk: [{}], hash: [{}], index insert: [{}]", 
+					scanMetrics.getWalkLatency(), 
+					scanMetrics.getHashLatency(), 
+					scanMetrics.getIndexInsertLatency());
+		logger.info("Consumer busy time: {} ms, idle time: {} ms", 
+					Arrays.toString(scanMetrics.getWorkerBusyMillis()), 
+					Arrays.toString(scanMetrics.getWorkerIdleMillis()));
+		
 		long estimatedTime = System.nanoTime() - startTime;
 		
 		logger.info("Operation done. Time elapsed: {} seconds", 
@@ -149,16 +531,86 @@ public class FinderApp implements Observer {
 	}
 
 	/*
-	 * (non-Javadoc)
-	 * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
+	 * Logs the scan progress and releases the main thread when the consumers finished, invoked by the bus thread
 	 */
-	@Override
-	public void update(Observable observable, Object eventType) {
-		if (EventType.FINISHED.equals(eventType)) {
+	private void handleEvent(PipelineEvent event, FileConsumerCoordinator fileConsumerCoordinator) {
+		if (EventType.PROGRESS == event.getType()) {
+			ProgressEvent progress = (ProgressEvent) event;
+			logger.info("Progress. Files done: {} of {}, MB done: {} of {}, estimated remaining time: {} seconds", 
+						progress.getFilesDone(), 
+						progress.getFilesDiscovered(), 
+						progress.getBytesDone() / MEGABYTE, 
+						progress.getBytesDiscovered() / MEGABYTE, 
+						progress.getEstimatedRemainingSeconds());
+		}
+		else if (EventType.FINISHED == event.getType() && event.getSource() == fileConsumerCoordinator) {
 			countDown.countDown();
 		}
 	}
 	
+	/*
+	 * Creates or resumes the checkpoint of the walk if a checkpoint file was given
+	 */
+	private WalkCheckpoint createCheckpoint() throws IOException {
+		if (checkpointFile == null)
+			return null;
+		
+		Path checkpointPath = Paths.get(checkpointFile);
+		return resume ? WalkCheckpoint.resume(checkpointPath, WalkCheckpoint.DEFAULT_FLUSH_INTERVAL_MILLIS) : 
+						WalkCheckpoint.create(checkpointPath, WalkCheckpoint.DEFAULT_FLUSH_INTERVAL_MILLIS);
+	}
+	
+	/*
+	 * Creates the stage that compares whole files, small groups are compared directly and bigger ones are digested 
+	 * using the asynchronous pipeline if there is one. Digest groups are verified byte by byte if it was requested.
+	 */
+	private ComparisonStage createDigestStage(AsyncHashingPipeline hashingPipeline, TreeHashingScheduler treeHashing, 
+											  HashCache hashCache, DeviceReadScheduler readScheduler) {
+		ComparisonStage digestStage;
+		if (hashingPipeline != null) {
+			digestStage = new AsyncDigestComparisonStage(hashingPipeline, hashCache, readScheduler);
+		}
+		else {
+			digestStage = new DigestComparisonStage(createHashingEngine(treeHashing), hashCache, readScheduler);
+		}
+		if (verify) {
+			digestStage = new VerificationComparisonStage(digestStage, 
+														  VerificationComparisonStage.DEFAULT_CHUNK_SIZE, 
+														  VerificationComparisonStage.DEFAULT_MAX_OPEN_FILES, 
+														  readScheduler);
+		}
+		return new DirectComparisonStage(digestStage, 
+										 DirectComparisonStage.DEFAULT_MAX_DIRECT_FILES, 
+										 DirectComparisonStage.DEFAULT_CHUNK_SIZE, 
+										 readScheduler);
+	}
+	
+	/*
+	 * Returns null if tree hashing was not requested, or if files are digested by the asynchronous pipeline
+	 */
+	private TreeHashingScheduler createTreeHashing(AsyncHashingPipeline hashingPipeline, int maxWorkers) {
+		if (treeHashThreshold == 0)
+			return null;
+		
+		if (hashingPipeline != null) {
+			logger.warn("Files digested by the asynchronous pipeline are not hashed as trees, threshold ignored");
+			return null;
+		}
+		return new TreeHashingScheduler(hashAlgorithm::createHasher, 
+										Math.min(TreeHashingScheduler.DEFAULT_SEGMENT_SIZE, treeHashThreshold / 2), 
+										treeHashThreshold, 
+										maxWorkers);
+	}
+	
+	/*
+	 * Creates the engine of a consumer thread, files of at least the tree threshold are hashed by segments
+	 */
+	private FileHashingEngine createHashingEngine(TreeHashingScheduler treeHashing) {
+		FileHashingEngine hashingEngine = new FileHashingEngine(hashAlgorithm.createHasher(), mappingThreshold);
+		hashingEngine.setTreeHashing(treeHashing);
+		return hashingEngine;
+	}
+	
 	private void checkArgumentValues(String rootDirectory, int numberOfThreads) {
 		
 		File rootDirectoryFile = new File(rootDirectory);
@@ -175,7 +627,8 @@ public class FinderApp implements Observer {
 	private Options createCLIParameters() {
 		Options options = new Options();
 		options.addOption( Option.builder(ROOT_DIR_PARAM)
-								 .desc("Root Directory for searching duplicates.")
+								 .desc("Root Directory for searching duplicates. " + 
+									   "Can be repeated for scanning several directories.")
 								 .hasArg(true)
 								 .build());		
 		
@@ -195,9 +648,173 @@ public class FinderApp implements Observer {
 								 .hasArg(false)
 								 .build());			
 		
+		options.addOption( Option.builder(MAPPING_THRESHOLD_PARAM)
+								 .desc("Size in MB from which files are memory mapped for hashing. Default: " + 
+									   FileHashingEngine.DEFAULT_MAPPING_THRESHOLD / MEGABYTE)
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(HASH_ALGORITHM_PARAM)
+								 .desc("Hash algorithm used for comparing files by content: " + 
+									   HashAlgorithm.availableNames() + ". Default: " + 
+									   HashAlgorithm.MD5.getAlgorithmName())
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(HASH_CACHE_PARAM)
+								 .desc("File used for caching digests between executions. Files that didn't change " + 
+									   "since the previous execution are not read again.")
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(OUTPUT_PARAM)
+								 .desc("File where the duplicate groups are written. By default duplicates are logged.")
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(OUTPUT_FORMAT_PARAM)
+								 .desc("Format of the output file: " + ResultFormat.availableNames() + ". Default: " + 
+									   ResultFormat.JSON_LINES.getFormatName())
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(ROTATIONAL_READS_PARAM)
+								 .desc("Number of files read at the same time from a rotational disk. Default: " + 
+									   DeviceReadScheduler.DEFAULT_ROTATIONAL_CONCURRENCY)
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(THREAD_MODE_PARAM)
+								 .desc("Threads consuming files: " + ConsumerThreadMode.availableNames() + ". " + 
+									   "Virtual threads need Java 21 and let a high parallel value read many files " + 
+									   "at the same time from network file systems. Default: " + 
+									   ConsumerThreadMode.PLATFORM.getModeName())
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(COMPARISON_TASKS_PARAM)
+								 .desc("Number of groups of files compared at the same time on virtual threads, " + 
+									   "independently of the parallel value. Default: " + 
+									   FileConsumerCoordinator.DEFAULT_COMPARISON_TASKS)
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(ASYNC_HASH_THREADS_PARAM)
+								 .desc("Digests whole files with asynchronous reads using that number of hashing " + 
+									   "threads, the next chunk of a file is read while the previous one is digested.")
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(ASYNC_HASH_MEMORY_PARAM)
+								 .desc("Size in MB of the buffers of the files being digested asynchronously. " + 
+									   "Default: " + AsyncHashingPipeline.DEFAULT_MAX_IN_FLIGHT_BYTES / MEGABYTE)
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(HEAP_BUDGET_PARAM)
+								 .desc("Size in MB of the heap used by the index of files. When the index passes " + 
+									   "it, files are spilled to sorted files on disk. Default: half of the maximum " + 
+									   "heap")
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(SPILL_DIR_PARAM)
+								 .desc("Directory of the files spilled when the heap budget is passed. " + 
+									   "Default: the temporary directory")
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(CHECKPOINT_PARAM)
+								 .desc("File where the walked directories and the files found are recorded, so a " + 
+									   "killed scan can be resumed. It's removed when the scan finishes.")
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(RESUME_PARAM)
+								 .desc("Resumes the scan recorded in the checkpoint file, directories completed by " + 
+									   "the previous scan are not walked again.")
+								 .hasArg(false)
+								 .build());
+		
+		options.addOption( Option.builder(VERIFY_PARAM)
+								 .desc("Compares byte by byte the files with the same digest before reporting them, " + 
+									   "so hash collisions are never reported as duplicates.")
+								 .hasArg(false)
+								 .build());
+		
+		options.addOption( Option.builder(TREE_HASH_THRESHOLD_PARAM)
+								 .desc("Size in MB from which files are hashed as a tree of segments digested in " + 
+									   "parallel by the idle consumer threads. Segments are of " + 
+									   TreeHashingScheduler.DEFAULT_SEGMENT_SIZE / MEGABYTE + " MB, or half the " + 
+									   "threshold if it's smaller. Disabled by default.")
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(INCLUDE_PARAM)
+								 .desc("Processes just the files whose name matches the glob, or whose path matches " + 
+									   "a glob with separators or a regex: prefixed expression. Can be repeated.")
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(EXCLUDE_PARAM)
+								 .desc("Skips the files that match the pattern, same syntax as include. " + 
+									   "Can be repeated.")
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(EXCLUDE_DIR_PARAM)
+								 .desc("Skips the whole subtree of the directories that match the pattern, like " + 
+									   ".git or node_modules, without listing them. Can be repeated.")
+								 .hasArg(true)
+								 .build());
+		
+		options.addOption( Option.builder(MIN_SIZE_PARAM)
+								 .desc("Minimum size in bytes of the files processed.")
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(MAX_SIZE_PARAM)
+								 .desc("Maximum size in bytes of the files processed.")
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
+		options.addOption( Option.builder(WALKER_THREADS_PARAM)
+								 .desc("Number of threads listing directories in parallel. By default directories " + 
+									   "are listed by a single thread.")
+								 .hasArg(true)
+								 .type(Number.class)
+								 .build());
+		
 		return options;
 	}
 	
+	/*
+	 * Returns the values of a repeatable pattern option, checking they can be compiled
+	 */
+	private List<String> parsePatterns(CommandLine line, String param, Options commandLineOptions) {
+		if (!line.hasOption(param))
+			return Collections.emptyList();
+		
+		List<String> patterns = Arrays.asList(line.getOptionValues(param));
+		try {
+			PathPatterns.compile(patterns);
+		}
+		catch(PatternSyntaxException ex) {
+			printUsage(commandLineOptions);
+			throw new IllegalArgumentException("Invalid " + param + " pattern: " + ex.getPattern(), ex);
+		}
+		return patterns;
+	}
+	
 	/*
 	 * Prints the command line usage
 	 */
@@ -0,0 +1,220 @@
+package ar.com.falberca.duplicate.finder.app.directory.walkers;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.events.DirectoryDoneEvent;
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
+import ar.com.falberca.duplicate.finder.app.events.EventType;
+import ar.com.falberca.duplicate.finder.app.events.PipelineEvent;
+import ar.com.falberca.duplicate.finder.app.files.DirectoryTable;
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+import ar.com.falberca.duplicate.finder.app.files.filters.EntryConditionFilter;
+import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+
+/**
+ * Base class of the directory walkers that add the files found to a shared {@link FileTransferQueue}. Just the 
+ * files that match all the {@link FileConditionFilter} criteria are added to the queue. The 
+ * {@link EntryConditionFilter} are evaluated by the walkers before creating the file reference and before listing 
+ * a directory, so the subtrees excluded are never enumerated.
+ * 
+ * Walkers can traverse several root directories, a root inside another root is skipped so its files are not 
+ * added twice. Walkers publish their events to an {@link EventBus} and close the queue once the walk is finished.
+ * 
+ * @author fernando
+ */
+public abstract class AbstractDirectoryWalker implements DirectoryWalker {
+	
+	private final Logger logger = LoggerFactory.getLogger(AbstractDirectoryWalker.class);
+	
+	protected List<Path> rootDirectoryPaths = new ArrayList<>();
+	protected DirectoryTable directoryTable = new DirectoryTable();
+	private FileTransferQueue fileQueue;
+	private List<FileConditionFilter> filters = new ArrayList<>();
+	private List<EntryConditionFilter> entryFilters = new ArrayList<>();
+	private EventBus eventBus;
+	
+	/**
+	 * @param rootDirectories Base directories for searching files
+	 * @param fileQueueRef Shared transfer queue
+	 * @param filtersRef List of filters to be applied
+	 * @param eventBusRef Bus where the walker events are published
+	 */
+	protected AbstractDirectoryWalker(List<String> rootDirectories, FileTransferQueue fileQueueRef, 
+									  List<FileConditionFilter> filtersRef, EventBus eventBusRef) {
+		List<Path> normalizedRoots = new ArrayList<>();
+		for (String rootDirectory : rootDirectories) {
+			normalizedRoots.add(Paths.get(rootDirectory).toAbsolutePath().normalize());
+		}
+		
+		for (Path rootDirectoryPath : normalizedRoots) {
+			boolean nested = normalizedRoots.stream()
+											.anyMatch(other -> !other.equals(rootDirectoryPath) && 
+															   rootDirectoryPath.startsWith(other));
+			if (nested) {
+				logger.warn("Root directory {} is skipped because it's inside other root directory", rootDirectoryPath);
+			}
+			else if (!rootDirectoryPaths.contains(rootDirectoryPath)) {
+				rootDirectoryPaths.add(rootDirectoryPath);
+			}
+		}
+		fileQueue = fileQueueRef;
+		List<FileConditionFilter> allFilters = filtersRef == null ? Collections.emptyList() : filtersRef;
+		for (FileConditionFilter filter : allFilters) {
+			if (filter instanceof EntryConditionFilter) {
+				entryFilters.add((EntryConditionFilter) filter);
+			}
+			else {
+				filters.add(filter);
+			}
+		}
+		eventBus = eventBusRef;
+	}
+	
+	/**
+	 * Evaluates the directory filters, root directories are always walked
+	 * 
+	 * @param directory Absolute path of the directory
+	 * @return Returns true if the directory must be walked, false if its whole subtree must be skipped
+	 */
+	protected boolean acceptsDirectory(Path directory) {
+		for (EntryConditionFilter filter : entryFilters) {
+			if (!filter.evaluateDirectory(directory) && !rootDirectoryPaths.contains(directory)) {
+				logger.debug("Directory skipped: {}", directory);
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Evaluates the filters of the directory entries, a file that doesn't pass them is accounted as filtered
+	 * 
+	 * @param file Absolute path of the file
+	 * @param attributes Attributes of the file, links are not followed
+	 * @param walkLatencyNanos Time taken to read the directory entry of the file and its attributes
+	 * @return Returns true if a file reference must be created and added to the queue
+	 */
+	protected boolean acceptsEntry(Path file, BasicFileAttributes attributes, long walkLatencyNanos) {
+		for (EntryConditionFilter filter : entryFilters) {
+			if (!filter.evaluateEntry(file, attributes)) {
+				logger.debug("File skipped: {}", file);
+				ScanMetrics.current().fileWalked(walkLatencyNanos, true);
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Evaluates the entry filters on a file that wasn't walked, like a file replayed from a checkpoint, and the 
+	 * directory filters on its directory and the parents of its directory. A file that doesn't pass them is accounted 
+	 * as filtered.
+	 * 
+	 * @param fileInfo File reference
+	 * @param acceptedDirectories Directories already evaluated, shared by the calls for the files of the same walk
+	 * @return Returns true if the file must be added to the queue
+	 */
+	protected boolean acceptsFile(FileInfo fileInfo, Map<String, Boolean> acceptedDirectories) {
+		boolean accepted = acceptedDirectories.computeIfAbsent(fileInfo.getDirectory(), 
+															   directory -> acceptsDirectoryTree(Paths.get(directory)));
+		for (int index = 0; accepted && index < entryFilters.size(); index++) {
+			accepted = entryFilters.get(index).evaluate(fileInfo);
+		}
+		if (!accepted) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("File skipped: {}", fileInfo.getPath());
+			}
+			ScanMetrics.current().fileWalked(0, true);
+		}
+		return accepted;
+	}
+	
+	/*
+	 * Evaluates the directory filters on the directory and its parents up to the root that contains it
+	 */
+	private boolean acceptsDirectoryTree(Path directory) {
+		for (Path current = directory; current != null; current = current.getParent()) {
+			if (!acceptsDirectory(current))
+				return false;
+			if (rootDirectoryPaths.contains(current))
+				return true;
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds the file to the queue only if pass the filtering criteria, entry filters must be evaluated before
+	 * 
+	 * @param fileInfo File reference
+	 * @param walkLatencyNanos Time taken to read the directory entry of the file and its attributes
+	 * @return Returns true if the file was added to the queue
+	 */
+	protected boolean addFileToQueue(FileInfo fileInfo, long walkLatencyNanos) {
+		try {
+			//The path of the file is built only when it's logged
+			boolean debugEnabled = logger.isDebugEnabled();
+			if (debugEnabled) {
+				logger.debug("File received: {}", fileInfo.getPath());
+			}
+			boolean accepted = filters.stream().allMatch(filter -> filter.evaluate(fileInfo));
+			ScanMetrics.current().fileWalked(walkLatencyNanos, !accepted);
+			if (accepted) {
+				eventBus.getProgress().fileDiscovered(fileInfo.getSize());
+				fileQueue.put(fileInfo);
+				if (debugEnabled) {
+					logger.debug("Queued file: {}", fileInfo.getPath());
+				}
+			}
+			return accepted;
+		}
+		catch(InterruptedException ex) {
+			throw new IllegalStateException("The thread was interrupted while trying to adding a file element to the"
+					+ " queue",ex);
+		}
+	}
+	
+	/**
+	 * Publishes an event of type {@link EventType}
+	 * 
+	 * @param eventType Type of event to be published
+	 */
+	protected void triggerEvent(EventType eventType) {
+		eventBus.publish(new PipelineEvent(this, eventType));
+	}
+	
+	/**
+	 * Publishes the event of a directory whose entries were all read
+	 * 
+	 * @param directory Path of the directory
+	 */
+	protected void directoryDone(Path directory) {
+		eventBus.publish(new DirectoryDoneEvent(this, directory.toString()));
+	}
+	
+	/**
+	 * Closes the queue, so consumers stop once they take the files already queued, and publishes the FINISHED 
+	 * event. Must be called once, by the thread that finished the walk.
+	 */
+	protected void finishWalk() {
+		try {
+			fileQueue.close();
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			logger.error("Interrupted while closing the file queue, consumers may not stop", ex);
+		}
+		triggerEvent(EventType.FINISHED);
+	}
+
+}
@@ -2,16 +2,16 @@ package ar.com.falberca.duplicate.finder.app.directory.walkers;
 
 import java.io.IOException;
 
-import ar.com.falberca.duplicate.finder.app.observer.ObservableSupport;
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
 
 /**
  * An object that encapsulates the logic for traversing a file system.
- * Objects that depends on updates or events from this object can be added
- * as observers.
+ * Objects that depends on updates or events from this object can subscribe
+ * to the {@link EventBus} given to the walker.
  * 
  * @author fernando
  */
-public interface DirectoryWalker extends ObservableSupport {
+public interface DirectoryWalker {
 	
 	void walkDirectory() throws IOException;
 	
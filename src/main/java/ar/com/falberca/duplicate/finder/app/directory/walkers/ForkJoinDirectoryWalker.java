@@ -0,0 +1,202 @@
+package ar.com.falberca.duplicate.finder.app.directory.walkers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
+import ar.com.falberca.duplicate.finder.app.events.EventType;
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanEvents;
+
+/**
+ * DirectoryWalker implementation that lists directories in parallel using a work-stealing {@link ForkJoinPool}.
+ * Every directory is listed by a separate task and its subdirectories are forked as new tasks, so trees with many
+ * directories or file systems with high latency, such as network mounts, are traversed using several threads.
+ *
+ * As {@link JDKDirectoryWalker} does, symlinks are not followed, hardlinks are treated as regular files and files
+ * are added to the queue just if they match the filters criteria. The traversal runs without blocking the main
+ * thread and the FINISHED event is triggered once, after every directory task has completed.
+ *
+ * @author fernando
+ */
+public class ForkJoinDirectoryWalker extends AbstractDirectoryWalker {
+
+	private final Logger logger = LoggerFactory.getLogger(ForkJoinDirectoryWalker.class);
+
+	private int parallelism;
+
+	/**
+	 * Creates an instance of this walker using <code>rootDirectory</code> as base directory and
+	 * <code>fileQueueRef</code> as a shared queue for others consumers.
+	 *
+	 * @param rootDirectory Base directory for searching files
+	 * @param fileQueueRef Shared transfer queue
+	 * @param filtersRef List of filters to be applied
+	 * @param parallelism Number of threads listing directories
+	 * @param eventBusRef Bus where the walker events are published
+	 */
+	public ForkJoinDirectoryWalker(String rootDirectory, FileTransferQueue fileQueueRef,
+								   List<FileConditionFilter> filtersRef, int parallelism, EventBus eventBusRef) {
+		this(Collections.singletonList(rootDirectory), fileQueueRef, filtersRef, parallelism, eventBusRef);
+	}
+
+	/**
+	 * Creates an instance of this walker that traverses all the directories of <code>rootDirectories</code> in the 
+	 * same pool.
+	 *
+	 * @param rootDirectories Base directories for searching files
+	 * @param fileQueueRef Shared transfer queue
+	 * @param filtersRef List of filters to be applied
+	 * @param parallelism Number of threads listing directories
+	 * @param eventBusRef Bus where the walker events are published
+	 */
+	public ForkJoinDirectoryWalker(List<String> rootDirectories, FileTransferQueue fileQueueRef,
+								   List<FileConditionFilter> filtersRef, int parallelism, EventBus eventBusRef) {
+		super(rootDirectories, fileQueueRef, filtersRef, eventBusRef);
+
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Invalid walker parallelism: " + parallelism);
+
+		this.parallelism = parallelism;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.directory.walkers.DirectoryWalker#walkDirectory()
+	 */
+	@Override
+	public void walkDirectory() {
+		triggerEvent(EventType.STARTED);
+		logger.info("Asynchronous parallel file system walker task was started with parallelism: {}", parallelism);
+
+		Runnable task = () -> {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			List<ForkJoinTask<Void>> rootTasks = new ArrayList<>();
+			for (Path rootDirectory : rootDirectoryPaths) {
+				rootTasks.add(pool.submit(new DirectoryTask(rootDirectory, -1)));
+			}
+			for (int index = 0; index < rootTasks.size(); index++) {
+				try {
+					rootTasks.get(index).join();
+				}
+				catch(RuntimeException ex) {
+					logger.error("Error traversing the file tree:" + rootDirectoryPaths.get(index), ex);
+				}
+			}
+			//Tasks forked by a failed task may still be queueing files, the queue is closed once the pool is empty
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
+			catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				logger.error("Interrupted while waiting for the directory tasks, the walk may be incomplete", ex);
+			}
+			logger.info("File system traversing task finished.");
+			finishWalk();
+		};
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.submit(task);
+		executor.shutdown();
+	}
+
+	/*
+	 * Lists a single directory adding its files to the queue and forking a task for each subdirectory. The task
+	 * completes when all its subdirectory tasks are completed. Subdirectories are interned by the id of their parent 
+	 * and their name, root directories by their whole path.
+	 */
+	private class DirectoryTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+		private final int parentId;
+
+		private DirectoryTask(Path directory, int parentId) {
+			this.directory = directory;
+			this.parentId = parentId;
+		}
+
+		@Override
+		protected void compute() {
+			List<DirectoryTask> subdirectoryTasks = new ArrayList<>();
+			int directoryId = parentId < 0 ? directoryTable.intern(directory) : 
+					directoryTable.intern(parentId, directory.getFileName().toString());
+			String directoryPath = directoryTable.getPath(directoryId);
+			Object directoryVisit = ScanEvents.beginDirectoryVisit();
+
+			//Walk latency of a file is the time since the previous entry was done, reading the entry and its attributes
+			long entryStart = System.nanoTime();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					try {
+						BasicFileAttributes attributes = Files.readAttributes(entry,
+																			  BasicFileAttributes.class,
+																			  LinkOption.NOFOLLOW_LINKS);
+						if (attributes.isDirectory()) {
+							if (acceptsDirectory(entry)) {
+								DirectoryTask subdirectoryTask = new DirectoryTask(entry, directoryId);
+								subdirectoryTask.fork();
+								subdirectoryTasks.add(subdirectoryTask);
+							}
+						}
+						else {
+							long walkLatency = System.nanoTime() - entryStart;
+							if (acceptsEntry(entry, attributes, walkLatency)) {
+								addFileToQueue(new FileInfo(directoryPath, entry.getFileName().toString(), attributes), 
+											   walkLatency);
+							}
+						}
+					}
+					catch(IOException ex) {
+						logger.error("Error visiting file " + entry.toString(), ex);
+					}
+					entryStart = System.nanoTime();
+				}
+			}
+			catch(IOException | DirectoryIteratorException ex) {
+				logger.error("Error visiting file " + directory.toString(), ex);
+			}
+			ScanEvents.endDirectoryVisit(directoryVisit, directory);
+			directoryDone(directory);
+
+			//Every subdirectory task is joined, even when a sibling failed, before reporting the first failure
+			RuntimeException failure = null;
+			for (DirectoryTask subdirectoryTask : subdirectoryTasks) {
+				try {
+					subdirectoryTask.join();
+				}
+				catch(RuntimeException ex) {
+					if (failure == null) {
+						failure = ex;
+					}
+					else if (failure != ex) {
+						failure.addSuppressed(ex);
+					}
+				}
+			}
+			if (failure != null)
+				throw failure;
+		}
+	}
+}
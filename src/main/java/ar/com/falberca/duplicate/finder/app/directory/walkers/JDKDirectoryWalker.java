@@ -5,41 +5,48 @@ import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Observable;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
 import ar.com.falberca.duplicate.finder.app.events.EventType;
 import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
 import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter;
 import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilterBuilder;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanEvents;
 
 /**
  * DirectoryWalker implementation that use JDK Files class for visiting files. This implementation
  * executes the file visitor in a separate thread without blocking the main thread.
  * 
- * A {@link BlockingQueue} is used for receiving the files that were found traversing the directory structure. You can
- * also apply filtering to the files that the visitor finds using {@link FileConditionFilter} classes or building a 
- * list of filters using {@link FileConditionFilterBuilder}
+ * A {@link FileTransferQueue} is used for receiving the files that were found traversing the directory structure. 
+ * You can also apply filtering to the files that the visitor finds using {@link FileConditionFilter} classes or 
+ * building a list of filters using {@link FileConditionFilterBuilder}
+ * 
+ * If a {@link WalkCheckpoint} is set, the queued files and the completed directories are recorded in it. A resumed 
+ * checkpoint replays the files of the completed directories before the walk starts and their subtrees are skipped.
+ * Directories excluded by the filters are skipped the same way, without listing them.
  * 
  * @author fernando
  */
-public class JDKDirectoryWalker extends Observable implements DirectoryWalker {
+public class JDKDirectoryWalker extends AbstractDirectoryWalker {
 	
 	private final Logger logger = LoggerFactory.getLogger(JDKDirectoryWalker.class);
 	
-	private Path rootDirectoryPath;
-	private BlockingQueue<FileInfo> fileQueue;
-	private List<FileConditionFilter> filters;
+	private WalkCheckpoint checkpoint;
 	
 	/**
 	 * Creates an instance of this walker using <code>rootDirectory</code> as base directory and 
@@ -47,14 +54,36 @@ public class JDKDirectoryWalker extends Observable implements DirectoryWalker {
 	 * will be added to the queue.
 	 * 
 	 * @param rootDirectory Base directory for searching files
-	 * @param fileQueueRef Shared blocking queue
+	 * @param fileQueueRef Shared transfer queue
+	 * @param filtersRef List of filters to be applied
+	 * @param eventBusRef Bus where the walker events are published
+	 */
+	public JDKDirectoryWalker(String rootDirectory, FileTransferQueue fileQueueRef, 
+							  List<FileConditionFilter> filtersRef, EventBus eventBusRef) {
+		this(Collections.singletonList(rootDirectory), fileQueueRef, filtersRef, eventBusRef);
+	}
+	
+	/**
+	 * Creates an instance of this walker that traverses every directory of <code>rootDirectories</code>, one after 
+	 * the other.
+	 * 
+	 * @param rootDirectories Base directories for searching files
+	 * @param fileQueueRef Shared transfer queue
 	 * @param filtersRef List of filters to be applied
+	 * @param eventBusRef Bus where the walker events are published
 	 */
-	public JDKDirectoryWalker(String rootDirectory, BlockingQueue<FileInfo> fileQueueRef, 
-							  List<FileConditionFilter> filtersRef) {
-		rootDirectoryPath = Paths.get(rootDirectory);
-		fileQueue = fileQueueRef;
-		filters = filtersRef;
+	public JDKDirectoryWalker(List<String> rootDirectories, FileTransferQueue fileQueueRef, 
+							  List<FileConditionFilter> filtersRef, EventBus eventBusRef) {
+		super(rootDirectories, fileQueueRef, filtersRef, eventBusRef);
+	}
+	
+	/**
+	 * Records the walk in <code>checkpointRef</code>, must be set before the walk starts
+	 * 
+	 * @param checkpointRef Checkpoint of the walk, created or resumed
+	 */
+	public void setCheckpoint(WalkCheckpoint checkpointRef) {
+		checkpoint = checkpointRef;
 	}
 	
 	/*
@@ -68,16 +97,19 @@ public class JDKDirectoryWalker extends Observable implements DirectoryWalker {
 		triggerEvent(EventType.STARTED);
 		logger.info("Asynchronous file system walker task was started");
 		Runnable task = () -> {
-			try {
-				Files.walkFileTree(rootDirectoryPath, 
-								   Collections.<FileVisitOption>emptySet(), 
-						           Integer.MAX_VALUE, new JDKFileVisitor());
-			}
-			catch(IOException ex) {
-				logger.error("Error traversing the file tree:" + rootDirectoryPath, ex);
+			replayCheckpoint();
+			for (Path rootDirectoryPath : rootDirectoryPaths) {
+				try {
+					Files.walkFileTree(rootDirectoryPath, 
+									   Collections.<FileVisitOption>emptySet(), 
+							           Integer.MAX_VALUE, new JDKFileVisitor());
+				}
+				catch(IOException ex) {
+					logger.error("Error traversing the file tree:" + rootDirectoryPath, ex);
+				}
 			}
-			triggerEvent(EventType.FINISHED);
 			logger.info("File system traversing task finished.");
+			finishWalk();
 		};
 		
 		ExecutorService executor = Executors.newSingleThreadExecutor();
@@ -86,50 +118,116 @@ public class JDKDirectoryWalker extends Observable implements DirectoryWalker {
 	}
 
 	/*
-	 * Adds the file to the queue only if pass the filtering criteria
+	 * Queues the files of the directories completed by a previous scan, they were already recorded. The filters are 
+	 * evaluated again since the previous scan could have used others.
 	 */
-	private void addFileToQueue(FileInfo fileInfo) {
+	private void replayCheckpoint() {
+		if (checkpoint == null || checkpoint.getReplayFiles() == 0)
+			return;
+		
+		Map<String, Boolean> acceptedDirectories = new HashMap<>();
 		try {
-			logger.debug("File received: {}", fileInfo.getPath());
-			if (filters.stream().allMatch(filter -> filter.evaluate(fileInfo))) {
-				fileQueue.put(fileInfo);
-				logger.debug("Queued file: {}", fileInfo.getPath());
-			}
+			checkpoint.replay(fileInfo -> {
+				if (acceptsFile(fileInfo, acceptedDirectories)) {
+					addFileToQueue(fileInfo, 0);
+				}
+			});
+			logger.info("Files of the completed directories replayed from the checkpoint: {}", 
+						checkpoint.getReplayFiles());
 		}
-		catch(InterruptedException ex) {
-			throw new IllegalStateException("The thread was interrupted while trying to adding a file element to the"
-					+ " queue",ex);
+		catch(IOException ex) {
+			logger.error("Error replaying the checkpoint, completed directories were partially queued", ex);
 		}
 	}
-	
-	/**
-	 * Trigger an event of type {@link EventType}
-	 * 
-	 * @param eventType Type of event to be triggered
-	 */
-	private void triggerEvent(EventType eventType) {
-		setChanged();
-		notifyObservers(eventType);
-	}
 
 	/*
 	 * Simple file visitor implementation for adding files to the queue or reporting
-	 * error about them.
+	 * error about them. Keeps the directories being visited so files reference the shared path of their directory.
+	 * The walk latency of a file is the time since the previous callback returned, when the walker was reading it.
+	 * A directory is complete if it and all its subdirectories were read without errors, an incomplete directory 
+	 * makes its parents incomplete.
 	 */
 	private class JDKFileVisitor extends SimpleFileVisitor<Path> {
 		
+		private Deque<String> directories = new ArrayDeque<>();
+		private Deque<Integer> directoryIds = new ArrayDeque<>();
+		private Deque<Boolean> completeDirectories = new ArrayDeque<>();
+		//Directory visit events are null while disabled, so they are kept in a list instead of a deque
+		private List<Object> directoryVisits = new ArrayList<>();
+		private long lastVisit = System.nanoTime();
+		
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+			if (checkpoint != null && checkpoint.isDirectoryDone(dir)) {
+				logger.debug("Directory {} was completed by a previous scan", dir);
+				return FileVisitResult.SKIP_SUBTREE;
+			}
+			if (!acceptsDirectory(dir)) {
+				lastVisit = System.nanoTime();
+				return FileVisitResult.SKIP_SUBTREE;
+			}
+			
+			//Subdirectories are interned by the id of their parent and their name
+			int directoryId = directoryIds.isEmpty() ? directoryTable.intern(dir) : 
+					directoryTable.intern(directoryIds.peek(), dir.getFileName().toString());
+			directoryIds.push(directoryId);
+			directories.push(directoryTable.getPath(directoryId));
+			completeDirectories.push(true);
+			directoryVisits.add(ScanEvents.beginDirectoryVisit());
+			lastVisit = System.nanoTime();
+			return FileVisitResult.CONTINUE;
+		}
+		
+		@Override
+		public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+			directories.pop();
+			directoryIds.pop();
+			ScanEvents.endDirectoryVisit(directoryVisits.remove(directoryVisits.size() - 1), dir);
+			directoryDone(dir);
+			//A directory that couldn't be read completely is walked again when the scan is resumed
+			boolean complete = completeDirectories.pop() && exc == null;
+			if (!complete) {
+				directoryIncomplete();
+			}
+			else if (checkpoint != null) {
+				checkpoint.directoryDone(dir);
+			}
+			lastVisit = System.nanoTime();
+			return FileVisitResult.CONTINUE;
+		}
+		
 		public FileVisitResult visitFile(Path file, BasicFileAttributes attr) {
-			JDKDirectoryWalker.this.addFileToQueue(new FileInfo(file, attr));
+			long walkLatency = System.nanoTime() - lastVisit;
+			if (!acceptsEntry(file, attr, walkLatency)) {
+				lastVisit = System.nanoTime();
+				return FileVisitResult.CONTINUE;
+			}
+			String directory = directories.isEmpty() ? 
+					directoryTable.getPath(directoryTable.intern(file.getParent())) : directories.peek();
+			FileInfo fileInfo = new FileInfo(directory, file.getFileName().toString(), attr);
+			if (JDKDirectoryWalker.this.addFileToQueue(fileInfo, walkLatency) && checkpoint != null) {
+				checkpoint.fileQueued(fileInfo);
+			}
+			lastVisit = System.nanoTime();
 			return FileVisitResult.CONTINUE;
 		}
 
 		@Override
 		public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
 			logger.error("Error visiting file " + file.toString(), exc);
+			directoryIncomplete();
 			return FileVisitResult.CONTINUE;
 		}
 		
-		
+		/*
+		 * Marks the directory being visited as incomplete, if any
+		 */
+		private void directoryIncomplete() {
+			if (!completeDirectories.isEmpty()) {
+				completeDirectories.pop();
+				completeDirectories.push(false);
+			}
+		}
 		
 	}
 }
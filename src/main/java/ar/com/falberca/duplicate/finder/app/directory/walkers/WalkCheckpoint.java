@@ -0,0 +1,483 @@
+package ar.com.falberca.duplicate.finder.app.directory.walkers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * On disk checkpoint of a directory walk, so a scan that was killed can be resumed without walking again the
+ * directories that were completed.
+ *
+ * The checkpoint file is a binary journal: a header followed by a record for every file queued by the walker and a
+ * record for every directory whose subtree was completely walked. The path of the directory of the files is written
+ * once, in a path record before the first file of the directory, and the file records refer to it by its index.
+ * Records are handed over to a background writer
+ * thread, so neither the walker nor the consumers wait for the disk, and the file is flushed and forced to disk
+ * periodically. A killed scan loses at most the records of the last interval.
+ *
+ * Resuming a checkpoint compacts the journal keeping just the completed directories and the files found inside
+ * them, the other directories are walked again. The kept files are replayed to the walker queue, which rebuilds the
+ * duplicate index without opening any file, and the completed subtrees are skipped by the walker.
+ *
+ * @author fernando
+ */
+public class WalkCheckpoint implements Closeable {
+
+	/**
+	 * Default time between two writes of the checkpoint to disk, 30 seconds
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 30_000;
+
+	private static final int MAGIC = 0x44464350;
+	private static final int VERSION = 2;
+	private static final int FILE_RECORD = 0;
+	private static final int DIRECTORY_RECORD = 1;
+	private static final int PATH_RECORD = 2;
+	private static final String DIGESTS_SUFFIX = ".digests";
+	private static final int QUEUE_CAPACITY = 64 * 1024;
+
+	/*
+	 * Marker added when the checkpoint is closed
+	 */
+	private static final Object END_OF_RECORDS = new Object();
+
+	private final Logger logger = LoggerFactory.getLogger(WalkCheckpoint.class);
+
+	private final Path checkpointFile;
+	private final long flushIntervalMillis;
+	private final Set<String> doneDirectories = new HashSet<>();
+	private final BlockingQueue<Object> pendingRecords = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private long replayFiles = 0;
+	private long validRecords = 0;
+	private Map<String, Integer> directoryIds;
+	private FileOutputStream fileOutput;
+	private DataOutputStream output;
+	private Thread writerThread;
+	private volatile IOException writeError;
+
+	/*
+	 * Use WalkCheckpoint.create or WalkCheckpoint.resume for creating instances
+	 */
+	private WalkCheckpoint(Path checkpointFileRef, long flushIntervalMillis) {
+		checkpointFile = checkpointFileRef;
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * Creates an empty checkpoint, replacing the file if it exists
+	 *
+	 * @param checkpointFile Location of the checkpoint file
+	 * @param flushIntervalMillis Time between two writes of the checkpoint to disk
+	 * @return Returns the checkpoint, ready to record the walk
+	 * @throws IOException Throws an exception if the checkpoint file can't be written
+	 */
+	public static WalkCheckpoint create(Path checkpointFile, long flushIntervalMillis) throws IOException {
+		WalkCheckpoint checkpoint = new WalkCheckpoint(checkpointFile, flushIntervalMillis);
+		checkpoint.rewrite(null);
+		checkpoint.startWriter();
+		return checkpoint;
+	}
+
+	/**
+	 * Loads the checkpoint of a previous scan, keeping the completed directories and their files, and continues
+	 * recording the walk in the same file. If there is no checkpoint, or it can't be read, an empty one is created.
+	 *
+	 * @param checkpointFile Location of the checkpoint file
+	 * @param flushIntervalMillis Time between two writes of the checkpoint to disk
+	 * @return Returns the checkpoint, ready to replay the completed files and to record the walk
+	 * @throws IOException Throws an exception if the checkpoint file can't be written
+	 */
+	public static WalkCheckpoint resume(Path checkpointFile, long flushIntervalMillis) throws IOException {
+		WalkCheckpoint checkpoint = new WalkCheckpoint(checkpointFile, flushIntervalMillis);
+		if (checkpoint.loadDoneDirectories()) {
+			checkpoint.rewrite(checkpointFile);
+		}
+		else {
+			checkpoint.doneDirectories.clear();
+			checkpoint.rewrite(null);
+		}
+		checkpoint.startWriter();
+
+		checkpoint.logger.info("Walk checkpoint {} resumed with {} completed directories and {} files",
+							   checkpointFile,
+							   checkpoint.doneDirectories.size(),
+							   checkpoint.replayFiles);
+		return checkpoint;
+	}
+
+	/**
+	 * Location of the hash cache kept next to a checkpoint, so the files hashed before the scan was killed are not
+	 * read again when it's resumed
+	 *
+	 * @param checkpointFile Location of the checkpoint file
+	 * @return Returns the location of the digests of the checkpoint
+	 */
+	public static Path digestsFileOf(Path checkpointFile) {
+		return checkpointFile.resolveSibling(checkpointFile.getFileName() + DIGESTS_SUFFIX);
+	}
+
+	/**
+	 * @param directory Directory found by the walker
+	 * @return Returns true if the subtree of the directory was completed by a previous scan
+	 */
+	public boolean isDirectoryDone(Path directory) {
+		return doneDirectories.contains(directory.toAbsolutePath().toString());
+	}
+
+	/**
+	 * @return Returns the number of files of the completed directories, the files replayed on resume
+	 */
+	public long getReplayFiles() {
+		return replayFiles;
+	}
+
+	/**
+	 * Reads the files of the completed directories, must be called once before recording the walk. Files of the
+	 * same directory share their directory path.
+	 *
+	 * @param action Action invoked for each file, usually adds the file to the walker queue
+	 * @throws IOException Throws an exception if the checkpoint file can't be read
+	 */
+	public void replay(Consumer<FileInfo> action) throws IOException {
+		List<String> directories = new ArrayList<>();
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(checkpointFile)))) {
+			readHeader(input);
+			//Compacted journals start with the files and their paths, the directories are written after them
+			long file = 0;
+			while (file < replayFiles) {
+				if (input.readUnsignedByte() == PATH_RECORD) {
+					directories.add(input.readUTF());
+					continue;
+				}
+				action.accept(readFile(input, directories));
+				file++;
+			}
+		}
+	}
+
+	/**
+	 * Records a file added to the walker queue, waits only if the writer is behind by many records
+	 *
+	 * @param fileInfo File reference
+	 */
+	public void fileQueued(FileInfo fileInfo) {
+		enqueue(fileInfo);
+	}
+
+	/**
+	 * Records a directory whose subtree was completely walked, every file of the subtree was already recorded
+	 *
+	 * @param directory Path of the directory
+	 */
+	public void directoryDone(Path directory) {
+		enqueue(directory.toAbsolutePath().toString());
+	}
+
+	/**
+	 * Writes the pending records, forces them to disk and stops the writer thread. Errors of the writer are
+	 * rethrown.
+	 */
+	@Override
+	public void close() throws IOException {
+		enqueue(END_OF_RECORDS);
+		try {
+			writerThread.join();
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the checkpoint to be written", ex);
+		}
+
+		try {
+			output.close();
+		}
+		catch(IOException ex) {
+			if (writeError == null) {
+				writeError = ex;
+			}
+		}
+
+		if (writeError != null)
+			throw writeError;
+	}
+
+	private void enqueue(Object record) {
+		try {
+			pendingRecords.put(record);
+		}
+		catch(InterruptedException ex) {
+			throw new IllegalStateException("The thread was interrupted while recording the checkpoint", ex);
+		}
+	}
+
+	private void startWriter() {
+		writerThread = new Thread(this::writeRecords, "checkpoint-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/*
+	 * Writer thread loop, the checkpoint is forced to disk every interval and when it's closed. Once writing fails
+	 * the remaining records are discarded, but they are still taken so the walker never waits for a dead writer.
+	 */
+	private void writeRecords() {
+		long nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+		while (true) {
+			Object record;
+			try {
+				record = pendingRecords.poll(Math.max(0, nextFlush - System.currentTimeMillis()),
+											 TimeUnit.MILLISECONDS);
+			}
+			catch(InterruptedException ex) {
+				logger.error("Checkpoint writer was interrupted, pending records are discarded");
+				return;
+			}
+
+			if (record == END_OF_RECORDS) {
+				sync();
+				return;
+			}
+			if (record != null) {
+				write(record);
+			}
+			if (System.currentTimeMillis() >= nextFlush) {
+				sync();
+				nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+			}
+		}
+	}
+
+	private void write(Object record) {
+		if (writeError != null)
+			return;
+
+		try {
+			if (record instanceof FileInfo) {
+				writeFile(output, (FileInfo) record);
+			}
+			else {
+				writeDirectory(output, (String) record);
+			}
+		}
+		catch(IOException ex) {
+			logger.error("Error writing the checkpoint, the remaining records are discarded", ex);
+			writeError = ex;
+		}
+	}
+
+	private void sync() {
+		if (writeError != null)
+			return;
+
+		try {
+			output.flush();
+			fileOutput.getChannel().force(false);
+		}
+		catch(IOException ex) {
+			logger.error("Error writing the checkpoint, the remaining records are discarded", ex);
+			writeError = ex;
+		}
+	}
+
+	/*
+	 * Reads the completed directories of the journal, returns false if the file doesn't exist or it isn't a
+	 * checkpoint. A truncated or corrupted journal keeps the directories of its complete records before the first 
+	 * bad one, the number of those records is kept so the copy of the files stops at the same record.
+	 */
+	private boolean loadDoneDirectories() throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(checkpointFile)))) {
+			if (!readHeader(input)) {
+				logger.warn("File {} is not a walk checkpoint, the scan starts from the beginning", checkpointFile);
+				return false;
+			}
+
+			int paths = 0;
+			while (true) {
+				int type = input.read();
+				if (type < 0)
+					return true;
+
+				boolean valid = true;
+				if (type == FILE_RECORD) {
+					int directoryId = skipFile(input);
+					valid = directoryId >= 0 && directoryId < paths;
+				}
+				else if (type == PATH_RECORD) {
+					input.readUTF();
+					paths++;
+				}
+				else if (type == DIRECTORY_RECORD) {
+					doneDirectories.add(input.readUTF());
+				}
+				else {
+					valid = false;
+				}
+
+				if (!valid) {
+					logger.warn("Walk checkpoint {} is corrupted, just the records before the corruption are kept",
+								checkpointFile);
+					return true;
+				}
+				validRecords++;
+			}
+		}
+		catch(NoSuchFileException ex) {
+			logger.info("Walk checkpoint {} doesn't exist, the scan starts from the beginning", checkpointFile);
+			return false;
+		}
+		catch(EOFException ex) {
+			logger.warn("Walk checkpoint {} is truncated, just the complete records are kept", checkpointFile);
+			return true;
+		}
+		catch(UTFDataFormatException ex) {
+			logger.warn("Walk checkpoint {} is corrupted, just the records before the corruption are kept",
+						checkpointFile);
+			return true;
+		}
+	}
+
+	/*
+	 * Writes a new journal with the files of the completed directories of the source journal followed by the
+	 * completed directories, and leaves it open for appending records. The paths are numbered again.
+	 */
+	private void rewrite(Path sourceFile) throws IOException {
+		Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+
+		replayFiles = 0;
+		directoryIds = new HashMap<>();
+		try (DataOutputStream temporaryOutput = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(temporaryFile)))) {
+			temporaryOutput.writeInt(MAGIC);
+			temporaryOutput.writeInt(VERSION);
+
+			if (sourceFile != null) {
+				copyDoneFiles(sourceFile, temporaryOutput);
+			}
+			for (String directory : doneDirectories) {
+				writeDirectory(temporaryOutput, directory);
+			}
+		}
+
+		Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		fileOutput = new FileOutputStream(checkpointFile.toFile(), true);
+		output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+	}
+
+	/*
+	 * Copies the file records whose directory was completed, reads just the valid records found loading the 
+	 * completed directories, so every completed directory had all its file records copied
+	 */
+	private void copyDoneFiles(Path sourceFile, DataOutputStream out) throws IOException {
+		List<String> directories = new ArrayList<>();
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(sourceFile)))) {
+			readHeader(input);
+			for (long record = 0; record < validRecords; record++) {
+				int type = input.readUnsignedByte();
+				if (type == DIRECTORY_RECORD) {
+					input.readUTF();
+					continue;
+				}
+				if (type == PATH_RECORD) {
+					directories.add(input.readUTF());
+					continue;
+				}
+
+				FileInfo fileInfo = readFile(input, directories);
+				if (doneDirectories.contains(fileInfo.getDirectory())) {
+					writeFile(out, fileInfo);
+					replayFiles++;
+				}
+			}
+		}
+	}
+
+	private static boolean readHeader(DataInputStream input) throws IOException {
+		return input.readInt() == MAGIC && input.readInt() == VERSION;
+	}
+
+	/*
+	 * Writes the path record of the directory of the file if it's the first file of the directory
+	 */
+	private void writeFile(DataOutputStream out, FileInfo fileInfo) throws IOException {
+		Integer directoryId = directoryIds.get(fileInfo.getDirectory());
+		if (directoryId == null) {
+			directoryId = directoryIds.size();
+			directoryIds.put(fileInfo.getDirectory(), directoryId);
+			out.writeByte(PATH_RECORD);
+			out.writeUTF(fileInfo.getDirectory());
+		}
+
+		out.writeByte(FILE_RECORD);
+		out.writeInt(directoryId);
+		out.writeUTF(fileInfo.getName());
+		out.writeLong(fileInfo.getSize());
+		out.writeLong(fileInfo.getLastModified());
+		out.writeUTF(Objects.toString(fileInfo.getFileKey(), ""));
+		out.writeBoolean(fileInfo.isLink());
+	}
+
+	private static void writeDirectory(DataOutputStream out, String directory) throws IOException {
+		out.writeByte(DIRECTORY_RECORD);
+		out.writeUTF(directory);
+	}
+
+	/*
+	 * Skips the rest of a file record whose type was already read, returns the index of its directory
+	 */
+	private static int skipFile(DataInputStream input) throws IOException {
+		int directoryId = input.readInt();
+		input.readUTF();
+		input.readLong();
+		input.readLong();
+		input.readUTF();
+		input.readBoolean();
+		return directoryId;
+	}
+
+	/*
+	 * Reads the rest of a file record whose type was already read, the directory is found by its index among the
+	 * paths read before
+	 */
+	private static FileInfo readFile(DataInputStream input, List<String> directories) throws IOException {
+		int directoryId = input.readInt();
+		if (directoryId < 0 || directoryId >= directories.size())
+			throw new IOException("Unknown directory of a file record: " + directoryId);
+
+		String directory = directories.get(directoryId);
+		String name = input.readUTF();
+		long size = input.readLong();
+		long lastModified = input.readLong();
+		String fileKey = input.readUTF();
+		boolean link = input.readBoolean();
+		return new FileInfo(directory, name, size, lastModified, fileKey.isEmpty() ? null : fileKey, link);
+	}
+
+}
@@ -0,0 +1,27 @@
+package ar.com.falberca.duplicate.finder.app.events;
+
+/**
+ * Published by the walkers when all the entries of a directory were read.
+ * 
+ * @author fernando
+ */
+public class DirectoryDoneEvent extends PipelineEvent {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final String directory;
+
+	/**
+	 * @param source Walker that listed the directory
+	 * @param directoryRef Path of the directory
+	 */
+	public DirectoryDoneEvent(Object source, String directoryRef) {
+		super(source, EventType.DIRECTORY_DONE);
+		directory = directoryRef;
+	}
+
+	public String getDirectory() {
+		return directory;
+	}
+
+}
@@ -0,0 +1,181 @@
+package ar.com.falberca.duplicate.finder.app.events;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the events of the pipeline components to the listeners without blocking the components. Publishing an 
+ * event just adds it to a lock-free queue, a dispatcher thread takes the events from the queue and invokes the 
+ * listeners, so a slow listener delays other listeners but never the walkers or the consumers.
+ * 
+ * The dispatcher also publishes a {@link ProgressEvent} from the {@link ScanProgress} counters every progress 
+ * interval while the counters change, so the rate of progress events doesn't depend on the number of files. The 
+ * dispatcher is started when the first listener subscribes, events published while there are no listeners are 
+ * discarded. Closing the bus delivers the pending events and a last progress event.
+ * 
+ * @author fernando
+ */
+public class EventBus implements Closeable {
+	
+	/**
+	 * Default time between progress events
+	 */
+	public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 1000;
+	
+	private final Logger logger = LoggerFactory.getLogger(EventBus.class);
+	
+	private final Queue<PipelineEvent> events = new ConcurrentLinkedQueue<>();
+	private final List<PipelineListener> listeners = new CopyOnWriteArrayList<>();
+	private final ScanProgress progress = new ScanProgress();
+	private final long progressIntervalNanos;
+	private final long startNanos = System.nanoTime();
+	private volatile Thread dispatcher;
+	private volatile boolean closed = false;
+	
+	/**
+	 * Creates a bus that publishes progress events every {@value #DEFAULT_PROGRESS_INTERVAL_MILLIS} milliseconds
+	 */
+	public EventBus() {
+		this(DEFAULT_PROGRESS_INTERVAL_MILLIS);
+	}
+	
+	/**
+	 * @param progressIntervalMillis Minimum time between progress events
+	 */
+	public EventBus(long progressIntervalMillis) {
+		if (progressIntervalMillis < 1)
+			throw new IllegalArgumentException("Invalid progress interval: " + progressIntervalMillis);
+		
+		progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMillis);
+	}
+	
+	/**
+	 * Adds a listener of all the events, the dispatcher is started with the first listener
+	 * 
+	 * @param listener Listener reference
+	 */
+	public void subscribe(PipelineListener listener) {
+		if (closed)
+			throw new IllegalStateException("Listeners can't subscribe to a closed event bus");
+		
+		listeners.add(listener);
+		startDispatcher();
+	}
+	
+	/**
+	 * Queues the event for the listeners, never blocks
+	 * 
+	 * @param event Event reference
+	 */
+	public void publish(PipelineEvent event) {
+		Thread dispatcherThread = dispatcher;
+		if (dispatcherThread == null || closed)
+			return;
+		
+		events.offer(event);
+		LockSupport.unpark(dispatcherThread);
+	}
+	
+	/**
+	 * @return Returns the progress counters of the scan
+	 */
+	public ScanProgress getProgress() {
+		return progress;
+	}
+	
+	/**
+	 * Delivers the pending events and a last progress event and stops the dispatcher. Events published after closing 
+	 * are discarded.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		Thread dispatcherThread = dispatcher;
+		if (dispatcherThread == null || dispatcherThread == Thread.currentThread())
+			return;
+		
+		LockSupport.unpark(dispatcherThread);
+		try {
+			dispatcherThread.join();
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private synchronized void startDispatcher() {
+		if (dispatcher == null) {
+			Thread dispatcherThread = new Thread(this::dispatch, "event-dispatcher");
+			dispatcherThread.setDaemon(true);
+			dispatcher = dispatcherThread;
+			dispatcherThread.start();
+		}
+	}
+	
+	/*
+	 * Delivers the queued events until the bus is closed, waking up at least once per progress interval
+	 */
+	private void dispatch() {
+		long nextProgress = System.nanoTime() + progressIntervalNanos;
+		long lastFilesDone = -1;
+		long lastFilesDiscovered = -1;
+		
+		while (true) {
+			boolean closing = closed;
+			
+			PipelineEvent event;
+			while ((event = events.poll()) != null) {
+				deliver(event);
+			}
+			
+			long now = System.nanoTime();
+			if (now - nextProgress >= 0 || closing) {
+				ProgressEvent progressEvent = createProgressEvent(now);
+				if (progressEvent.getFilesDone() != lastFilesDone || 
+					progressEvent.getFilesDiscovered() != lastFilesDiscovered || closing) {
+					lastFilesDone = progressEvent.getFilesDone();
+					lastFilesDiscovered = progressEvent.getFilesDiscovered();
+					deliver(progressEvent);
+				}
+				nextProgress = now + progressIntervalNanos;
+			}
+			
+			if (closing)
+				return;
+			
+			LockSupport.parkNanos(this, Math.max(0, nextProgress - System.nanoTime()));
+		}
+	}
+	
+	private ProgressEvent createProgressEvent(long now) {
+		return new ProgressEvent(this, 
+								 progress.getFilesDiscovered(), 
+								 progress.getBytesDiscovered(), 
+								 progress.getFilesDone(), 
+								 progress.getBytesDone(), 
+								 TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+	}
+	
+	/*
+	 * A failing listener doesn't stop the delivery to the other listeners
+	 */
+	private void deliver(PipelineEvent event) {
+		for (PipelineListener listener : listeners) {
+			try {
+				listener.onEvent(event);
+			}
+			catch(RuntimeException ex) {
+				logger.error("Event listener failed processing event " + event.getType(), ex);
+			}
+		}
+	}
+
+}
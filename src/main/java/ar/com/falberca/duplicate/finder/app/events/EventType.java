@@ -1,13 +1,35 @@
 package ar.com.falberca.duplicate.finder.app.events;
 
 /**
- * Available list of event types that an observable can trigger.
+ * Types of the events published by the pipeline components through an {@link EventBus}.
  * 
  * @author fernando
  */
 public enum EventType {
 	
+	/**
+	 * A component started its work
+	 */
 	STARTED,
+	
+	/**
+	 * A walker finished listing a directory, see {@link DirectoryDoneEvent}
+	 */
+	DIRECTORY_DONE,
+	
+	/**
+	 * Periodic progress of the scan published by the event bus, see {@link ProgressEvent}
+	 */
+	PROGRESS,
+	
+	/**
+	 * A comparison stage finished comparing all the groups, see {@link StageCompletedEvent}
+	 */
+	STAGE_COMPLETED,
+	
+	/**
+	 * A component finished its work
+	 */
 	FINISHED
 
 }
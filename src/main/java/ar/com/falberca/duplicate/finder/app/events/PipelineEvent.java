@@ -0,0 +1,37 @@
+package ar.com.falberca.duplicate.finder.app.events;
+
+import java.util.EventObject;
+
+/**
+ * Event published by a component of the pipeline. The source is the component that published the event.
+ * 
+ * @author fernando
+ */
+public class PipelineEvent extends EventObject {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final EventType type;
+	private final long timestamp = System.currentTimeMillis();
+
+	/**
+	 * @param source Component that publishes the event
+	 * @param typeRef Type of the event
+	 */
+	public PipelineEvent(Object source, EventType typeRef) {
+		super(source);
+		type = typeRef;
+	}
+
+	public EventType getType() {
+		return type;
+	}
+
+	/**
+	 * @return Returns the time when the event was created, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+}
@@ -0,0 +1,14 @@
+package ar.com.falberca.duplicate.finder.app.events;
+
+/**
+ * Receives the events of an {@link EventBus}. Listeners are invoked by the dispatcher thread of the bus, one event 
+ * at a time and in the order they were published.
+ * 
+ * @author fernando
+ */
+@FunctionalInterface
+public interface PipelineListener {
+	
+	void onEvent(PipelineEvent event);
+
+}
@@ -0,0 +1,64 @@
+package ar.com.falberca.duplicate.finder.app.events;
+
+/**
+ * Progress of the scan: files and bytes found by the walkers against files and bytes whose processing is done. A 
+ * file is done once it's known whether it has duplicates, files with a unique size are done as soon as every file 
+ * was found while files with the same size are done when the comparison of their content finishes.
+ * 
+ * @author fernando
+ */
+public class ProgressEvent extends PipelineEvent {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final long filesDiscovered;
+	private final long bytesDiscovered;
+	private final long filesDone;
+	private final long bytesDone;
+	private final long elapsedMillis;
+
+	public ProgressEvent(Object source, long filesDiscovered, long bytesDiscovered, long filesDone, long bytesDone, 
+						 long elapsedMillis) {
+		super(source, EventType.PROGRESS);
+		this.filesDiscovered = filesDiscovered;
+		this.bytesDiscovered = bytesDiscovered;
+		this.filesDone = filesDone;
+		this.bytesDone = bytesDone;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public long getFilesDiscovered() {
+		return filesDiscovered;
+	}
+
+	public long getBytesDiscovered() {
+		return bytesDiscovered;
+	}
+
+	public long getFilesDone() {
+		return filesDone;
+	}
+
+	public long getBytesDone() {
+		return bytesDone;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+	
+	/**
+	 * Estimates the remaining time assuming the bytes left are processed at the rate of the bytes already done. The 
+	 * estimation doesn't include files not found yet.
+	 * 
+	 * @return Returns the remaining seconds or -1 if nothing was done yet
+	 */
+	public long getEstimatedRemainingSeconds() {
+		if (bytesDone == 0 || elapsedMillis == 0)
+			return filesDone > 0 && filesDone == filesDiscovered ? 0 : -1;
+		
+		double bytesPerMilli = bytesDone / (double) elapsedMillis;
+		return (long) (Math.max(0, bytesDiscovered - bytesDone) / bytesPerMilli / 1000);
+	}
+
+}
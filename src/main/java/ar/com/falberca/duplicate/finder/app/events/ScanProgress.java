@@ -0,0 +1,56 @@
+package ar.com.falberca.duplicate.finder.app.events;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the files found and done during a scan, updated by the walkers and consumers and read periodically by 
+ * the {@link EventBus} for publishing {@link ProgressEvent}. Counters are {@link LongAdder} instances so updating 
+ * them from many threads doesn't contend.
+ * 
+ * @author fernando
+ */
+public class ScanProgress {
+	
+	private final LongAdder filesDiscovered = new LongAdder();
+	private final LongAdder bytesDiscovered = new LongAdder();
+	private final LongAdder filesDone = new LongAdder();
+	private final LongAdder bytesDone = new LongAdder();
+	
+	/**
+	 * Records a file found by a walker
+	 * 
+	 * @param size Size of the file
+	 */
+	public void fileDiscovered(long size) {
+		filesDiscovered.increment();
+		bytesDiscovered.add(size);
+	}
+	
+	/**
+	 * Records files whose processing is done
+	 * 
+	 * @param files Number of files
+	 * @param bytes Sum of the size of the files
+	 */
+	public void filesDone(long files, long bytes) {
+		filesDone.add(files);
+		bytesDone.add(bytes);
+	}
+
+	public long getFilesDiscovered() {
+		return filesDiscovered.sum();
+	}
+
+	public long getBytesDiscovered() {
+		return bytesDiscovered.sum();
+	}
+
+	public long getFilesDone() {
+		return filesDone.sum();
+	}
+
+	public long getBytesDone() {
+		return bytesDone.sum();
+	}
+
+}
@@ -0,0 +1,41 @@
+package ar.com.falberca.duplicate.finder.app.events;
+
+/**
+ * Published when a comparison stage finished comparing all the groups of candidate files.
+ * 
+ * @author fernando
+ */
+public class StageCompletedEvent extends PipelineEvent {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final String stageName;
+	private final long comparedFiles;
+	private final long eliminatedFiles;
+
+	/**
+	 * @param source Comparison engine that ran the stage
+	 * @param stageNameRef Name of the stage
+	 * @param comparedFiles Number of files compared by the stage
+	 * @param eliminatedFiles Number of files the stage found different from every other file of their group
+	 */
+	public StageCompletedEvent(Object source, String stageNameRef, long comparedFiles, long eliminatedFiles) {
+		super(source, EventType.STAGE_COMPLETED);
+		stageName = stageNameRef;
+		this.comparedFiles = comparedFiles;
+		this.eliminatedFiles = eliminatedFiles;
+	}
+
+	public String getStageName() {
+		return stageName;
+	}
+
+	public long getComparedFiles() {
+		return comparedFiles;
+	}
+
+	public long getEliminatedFiles() {
+		return eliminatedFiles;
+	}
+
+}
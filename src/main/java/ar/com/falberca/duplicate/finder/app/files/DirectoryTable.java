@@ -0,0 +1,150 @@
+package ar.com.falberca.duplicate.finder.app.files;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the directories where files were found. Every directory is stored once as the id of its parent and its
+ * own name, so the table doesn't keep the absolute path of each directory: deep trees repeat the same prefixes in
+ * every path. Walkers intern a directory once when they visit it, build its path with {@link #getPath(int)} and
+ * share that path with all the {@link FileInfo} instances of the files in the directory, which keep just a reference
+ * to it and their own name.
+ *
+ * Roots of the file system are stored without parent, their name is the root path.
+ *
+ * The table can be shared among walker threads.
+ *
+ * @author fernando
+ */
+public class DirectoryTable {
+
+	/**
+	 * Parent id of the roots of the file system
+	 */
+	public static final int NO_PARENT = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final Map<DirectoryKey, Integer> ids = new HashMap<>();
+	private final List<String> names = new ArrayList<>(INITIAL_CAPACITY);
+	private int[] parents = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Returns the id of the directory, adding it and its parents to the table if it's the first time they are found
+	 *
+	 * @param directory Directory location, relative paths are resolved against the current directory
+	 * @return Returns the id of the directory
+	 */
+	public synchronized int intern(Path directory) {
+		Path absolutePath = directory.toAbsolutePath();
+		int id = intern(NO_PARENT, absolutePath.getRoot().toString());
+		for (Path name : absolutePath) {
+			id = intern(id, name.toString());
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the id of a subdirectory, adding it to the table if it's the first time it's found
+	 *
+	 * @param parentId Id of the parent directory, or {@link #NO_PARENT} for a root of the file system
+	 * @param name Name of the subdirectory
+	 * @return Returns the id of the subdirectory
+	 */
+	public synchronized int intern(int parentId, String name) {
+		DirectoryKey key = new DirectoryKey(parentId, name);
+		Integer id = ids.get(key);
+		if (id != null)
+			return id;
+
+		id = names.size();
+		if (id == parents.length) {
+			parents = Arrays.copyOf(parents, parents.length * 2);
+		}
+		parents[id] = parentId;
+		names.add(name);
+		ids.put(key, id);
+		return id;
+	}
+
+	/**
+	 * Builds the absolute path of a directory from the names of the directory and its parents
+	 *
+	 * @param id Id of the directory
+	 * @return Returns a new instance of the absolute path, the same one {@link Path#toString()} returns
+	 */
+	public synchronized String getPath(int id) {
+		Deque<String> path = new ArrayDeque<>();
+		for (int current = id; current != NO_PARENT; current = parents[current]) {
+			path.push(names.get(current));
+		}
+
+		StringBuilder absolutePath = new StringBuilder(path.pop());
+		for (String name : path) {
+			if (absolutePath.length() > 0 && absolutePath.charAt(absolutePath.length() - 1) != File.separatorChar) {
+				absolutePath.append(File.separatorChar);
+			}
+			absolutePath.append(name);
+		}
+		return absolutePath.toString();
+	}
+
+	/**
+	 * @param id Id of the directory
+	 * @return Returns the id of the parent directory, or {@link #NO_PARENT} for a root of the file system
+	 */
+	public synchronized int getParent(int id) {
+		return parents[id];
+	}
+
+	/**
+	 * @param id Id of the directory
+	 * @return Returns the name of the directory, or the root path for a root of the file system
+	 */
+	public synchronized String getName(int id) {
+		return names.get(id);
+	}
+
+	/**
+	 * @return Returns the number of directories in the table, the parents of the directories found included
+	 */
+	public synchronized int size() {
+		return names.size();
+	}
+
+	/*
+	 * Parent and name of a directory, identifies a directory in the table
+	 */
+	private static class DirectoryKey {
+
+		private final int parentId;
+		private final String name;
+
+		private DirectoryKey(int parentId, String name) {
+			this.parentId = parentId;
+			this.name = name;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof DirectoryKey))
+				return false;
+
+			DirectoryKey otherKey = (DirectoryKey) other;
+			return parentId == otherKey.parentId && name.equals(otherKey.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * parentId + name.hashCode();
+		}
+	}
+
+}
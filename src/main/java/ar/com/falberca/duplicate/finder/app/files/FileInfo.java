@@ -1,33 +1,98 @@
 package ar.com.falberca.duplicate.finder.app.files;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Convenient base class for holding information about files and their attributes 
  * 
+ * The path is not stored as a whole, instances keep a reference to the path of the directory, which is shared by 
+ * every file of the same directory when it's taken from a {@link DirectoryTable}, and the file name. The real path 
+ * is resolved just for symlinks and only the first time it's requested.
+ * 
  * @author fernando
  */
 public class FileInfo {
 
+	private String directory;
 	private String name;
 	private long size;
-	private String path;
-	private String realPath;
+	private long lastModified;
+	private Object fileKey;
 	private boolean link;
+	private volatile String realPath;
+	private volatile boolean realPathResolved = false;
+	
+	/*
+	 * Creates an instance without file, used as marker by the classes of this package
+	 */
+	FileInfo() {
+	}
 	
 	public FileInfo(Path pathRef, BasicFileAttributes attributesRef) {
-		name = pathRef.getFileName().toString();
+		this(pathRef.toAbsolutePath().getParent().toString(), pathRef.getFileName().toString(), attributesRef);
+	}
+	
+	/**
+	 * Creates an instance for a file found in <code>directoryRef</code>
+	 * 
+	 * @param directoryRef Absolute path of the directory, usually the instance built once by 
+	 * {@link DirectoryTable#getPath(int)} and shared by the files of the directory
+	 * @param nameRef File name
+	 * @param attributesRef File attributes, read without following links
+	 */
+	public FileInfo(String directoryRef, String nameRef, BasicFileAttributes attributesRef) {
+		directory = directoryRef;
+		name = nameRef;
 		size = attributesRef.size();
-		path = pathRef.toFile().getAbsolutePath();
+		lastModified = attributesRef.lastModifiedTime().toMillis();
+		fileKey = attributesRef.fileKey();
 		link = attributesRef.isSymbolicLink();
-		try {
-			realPath = pathRef.toRealPath().toFile().getAbsolutePath();
-		}
-		catch(IOException ex) {
-			realPath = null;
-		}
+	}
+	
+	/**
+	 * Creates an instance of a regular file from attributes that were stored, such as the files spilled to disk by 
+	 * the external memory mode
+	 * 
+	 * @param directoryRef Absolute path of the directory
+	 * @param nameRef File name
+	 * @param sizeRef File size
+	 * @param lastModifiedRef Last modified time in milliseconds
+	 * @param fileKeyRef File key or null if the file system doesn't provide one
+	 */
+	public FileInfo(String directoryRef, String nameRef, long sizeRef, long lastModifiedRef, Object fileKeyRef) {
+		this(directoryRef, nameRef, sizeRef, lastModifiedRef, fileKeyRef, false);
+	}
+	
+	/**
+	 * Creates an instance of a regular file or a symlink from attributes that were stored, such as the files of a 
+	 * walk checkpoint
+	 * 
+	 * @param directoryRef Absolute path of the directory
+	 * @param nameRef File name
+	 * @param sizeRef File size
+	 * @param lastModifiedRef Last modified time in milliseconds
+	 * @param fileKeyRef File key or null if the file system doesn't provide one
+	 * @param linkRef True if the file is a symlink, its real path is resolved when it's requested
+	 */
+	public FileInfo(String directoryRef, String nameRef, long sizeRef, long lastModifiedRef, Object fileKeyRef, 
+					boolean linkRef) {
+		directory = directoryRef;
+		name = nameRef;
+		size = sizeRef;
+		lastModified = lastModifiedRef;
+		fileKey = fileKeyRef;
+		link = linkRef;
+	}
+
+	/**
+	 * @return Returns the absolute path of the directory of the file
+	 */
+	public String getDirectory() {
+		return directory;
 	}
 
 	public String getName() {
@@ -38,15 +103,65 @@ public class FileInfo {
 		return size;
 	}
 
+	public long getLastModified() {
+		return lastModified;
+	}
+	
+	/**
+	 * Returns the object that uniquely identifies the file in its file system, such as the device and inode on 
+	 * unix systems. 
+	 * 
+	 * @return Returns the file key or null if the file system doesn't provide one
+	 */
+	public Object getFileKey() {
+		return fileKey;
+	}
+
 	public boolean isLink() {
 		return link;
 	}
 	
+	/**
+	 * Returns the absolute path of the file, built from the directory and the name on every call. Frequent 
+	 * operations use {@link #getDirectory()} and {@link #getName()} instead when they can.
+	 * 
+	 * @return Returns the absolute path of the file
+	 */
 	public String getPath() {
-		return path;
+		return pathOf(directory, name);
 	}	
 
+	/**
+	 * Builds the absolute path of a file, the directory of the files of a root of the file system ends with the 
+	 * separator
+	 * 
+	 * @param directory Absolute path of the directory
+	 * @param name File name
+	 * @return Returns the absolute path of the file
+	 */
+	public static String pathOf(String directory, String name) {
+		return directory.endsWith(File.separator) ? directory + name : directory + File.separator + name;
+	}	
+
+	/**
+	 * Returns the path of the file with all the links resolved. Regular files are not resolved, their path is 
+	 * returned. Symlinks are resolved the first time this method is called.
+	 * 
+	 * @return Returns the real path or null if the file is a broken symlink
+	 */
 	public String getRealPath() {
+		if (!link)
+			return getPath();
+		
+		if (!realPathResolved) {
+			try {
+				realPath = Paths.get(getPath()).toRealPath().toString();
+			}
+			catch(IOException ex) {
+				realPath = null;
+			}
+			realPathResolved = true;
+		}
 		return realPath;
 	}
 
@@ -0,0 +1,201 @@
+package ar.com.falberca.duplicate.finder.app.files;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import ar.com.falberca.duplicate.finder.app.metrics.ScanEvents;
+
+/**
+ * Bounded queue for handing files over from the directory walkers to the consumers. Files are stored in a
+ * preallocated ring buffer ({@link ArrayBlockingQueue}), so queueing a file doesn't allocate a node, and producers
+ * block while the buffer is full instead of growing the heap when walking is faster than hashing.
+ *
+ * Consumers take files in batches: they block until a file is available and then drain the files already queued up
+ * to the batch size. Once the producers finish the queue is closed, an end of stream marker is added after the last
+ * file and every consumer receives it as soon as the files queued before it are taken, without timed polling.
+ * Producers add files holding the read side of a lock and the queue is closed holding the write side, so no file can
+ * be queued after the marker.
+ *
+ * The number of files transferred, the number of times a producer was blocked by a full queue, the time blocked
+ * and the maximum depth reached are kept as metrics.
+ *
+ * @author fernando
+ */
+public class FileTransferQueue {
+
+	/**
+	 * Default maximum number of files waiting in the queue
+	 */
+	public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+	/**
+	 * Default maximum number of files taken by a consumer at once
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	/*
+	 * Marker added after the last file, consumers put it back so it reaches every consumer
+	 */
+	private static final FileInfo END_OF_STREAM = new FileInfo();
+
+	private final BlockingQueue<FileInfo> queue;
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private final int batchSize;
+	private final LongAdder transferredFiles = new LongAdder();
+	private final LongAdder fullQueueStalls = new LongAdder();
+	private final LongAdder fullQueueStallNanos = new LongAdder();
+	private volatile int maxDepth = 0;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a queue using the default capacity and batch size
+	 */
+	public FileTransferQueue() {
+		this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates a queue that holds at most <code>capacity</code> files
+	 *
+	 * @param capacity Maximum number of files waiting in the queue
+	 * @param batchSize Maximum number of files taken by a consumer at once
+	 */
+	public FileTransferQueue(int capacity, int batchSize) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Invalid queue capacity: " + capacity);
+
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+
+		queue = new ArrayBlockingQueue<>(capacity);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Adds a file to the queue, blocking while the queue is full
+	 *
+	 * @param fileInfo File reference
+	 * @throws InterruptedException Throws an exception if the thread is interrupted while waiting for space
+	 */
+	public void put(FileInfo fileInfo) throws InterruptedException {
+		closeLock.readLock().lockInterruptibly();
+		try {
+			if (closed)
+				throw new IllegalStateException("Files can't be added to a closed queue");
+
+			if (!queue.offer(fileInfo)) {
+				long stallStart = System.nanoTime();
+				Object queueWait = ScanEvents.beginQueueWait();
+				queue.put(fileInfo);
+				ScanEvents.endQueueWait(queueWait, "put", 1);
+				fullQueueStalls.increment();
+				fullQueueStallNanos.add(System.nanoTime() - stallStart);
+			}
+			transferredFiles.increment();
+		}
+		finally {
+			closeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Marks the end of the stream, must be called once all the producers finished adding files. Consumers receive
+	 * the files queued before closing the queue. Waits for the producers that are adding a file and blocks while the
+	 * queue is full.
+	 *
+	 * @throws InterruptedException Throws an exception if the thread is interrupted while adding the marker
+	 */
+	public void close() throws InterruptedException {
+		closeLock.writeLock().lockInterruptibly();
+		try {
+			if (!closed) {
+				queue.put(END_OF_STREAM);
+				closed = true;
+			}
+		}
+		finally {
+			closeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Takes the next batch of files, waiting until at least one file is available or the queue is closed
+	 *
+	 * @param batch List where the files are added, it's cleared before adding the files
+	 * @return Returns false if the queue was closed and every file was already taken, in that case the batch is
+	 * empty
+	 * @throws InterruptedException Throws an exception if the thread is interrupted while waiting for files
+	 */
+	public boolean takeBatch(List<FileInfo> batch) throws InterruptedException {
+		batch.clear();
+
+		FileInfo first = queue.take();
+		if (first == END_OF_STREAM) {
+			queue.put(END_OF_STREAM);
+			return false;
+		}
+		updateMaxDepth(getDepth() + 1);
+
+		batch.add(first);
+		queue.drainTo(batch, batchSize - 1);
+
+		//The marker is the last element ever queued, so it can only be at the end of the batch
+		int last = batch.size() - 1;
+		if (batch.get(last) == END_OF_STREAM) {
+			batch.remove(last);
+			queue.put(END_OF_STREAM);
+		}
+		return true;
+	}
+
+	/**
+	 * @return Returns the number of files waiting in the queue
+	 */
+	public int getDepth() {
+		int depth = queue.size();
+		return closed && depth > 0 ? depth - 1 : depth;
+	}
+
+	/**
+	 * @return Returns the maximum number of files that were waiting in the queue at once, sampled when consumers
+	 * take files
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return Returns the number of files added to the queue
+	 */
+	public long getTransferredFiles() {
+		return transferredFiles.sum();
+	}
+
+	/**
+	 * @return Returns the number of times a producer was blocked because the queue was full
+	 */
+	public long getFullQueueStalls() {
+		return fullQueueStalls.sum();
+	}
+
+	/**
+	 * @return Returns the total time in nanoseconds producers were blocked because the queue was full
+	 */
+	public long getFullQueueStallNanos() {
+		return fullQueueStallNanos.sum();
+	}
+
+	/*
+	 * Races between consumers can lose a sample, which is acceptable for a metric
+	 */
+	private void updateMaxDepth(int depth) {
+		if (depth > maxDepth) {
+			maxDepth = depth;
+		}
+	}
+
+}
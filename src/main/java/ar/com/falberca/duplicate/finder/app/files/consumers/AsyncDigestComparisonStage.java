@@ -0,0 +1,156 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.files.devices.StorageDevice;
+import ar.com.falberca.duplicate.finder.app.files.hashing.AsyncHashingPipeline;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache.DigestType;
+
+/**
+ * Comparison stage that digests the whole content of each file using an {@link AsyncHashingPipeline}. All the files
+ * of a group are submitted to the pipeline before waiting for their digests, so the files of a group are read and
+ * digested at the same time by the pipeline threads. Digests are the same as the ones of
+ * {@link DigestComparisonStage} and share the same entries of the {@link HashCache}.
+ *
+ * Every file in flight holds a read permit of its device until its digest is completed, files whose device has no
+ * permit available are submitted after the files of the other devices.
+ *
+ * @author fernando
+ */
+public class AsyncDigestComparisonStage extends KeyedComparisonStage {
+
+	private final Logger logger = LoggerFactory.getLogger(AsyncDigestComparisonStage.class);
+
+	private final AsyncHashingPipeline hashingPipeline;
+	private final HashCache hashCache;
+
+	/**
+	 * Creates a stage that hashes files with <code>hashingPipelineRef</code>, the pipeline can be shared with the
+	 * stages of other threads.
+	 *
+	 * @param hashingPipelineRef Asynchronous hashing pipeline reference
+	 * @param hashCacheRef Cache of digests, can be null if no cache is used
+	 * @param readSchedulerRef Scheduler that limits the concurrent reads of each device
+	 */
+	public AsyncDigestComparisonStage(AsyncHashingPipeline hashingPipelineRef, HashCache hashCacheRef,
+									  DeviceReadScheduler readSchedulerRef) {
+		super(readSchedulerRef);
+		hashingPipeline = hashingPipelineRef;
+		hashCache = hashCacheRef;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#getName()
+	 */
+	@Override
+	public String getName() {
+		return "full digest";
+	}
+
+	/*
+	 * Submits every file that is not cached and then waits for the digests
+	 *
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.KeyedComparisonStage#split(java.util.List)
+	 */
+	@Override
+	public Collection<List<FileInfo>> split(List<FileInfo> candidates) {
+		List<CompletableFuture<byte[]>> digests = new ArrayList<>(candidates.size());
+		boolean[] cached = new boolean[candidates.size()];
+		List<Integer> deferred = new ArrayList<>();
+		for (int index = 0; index < candidates.size(); index++) {
+			FileInfo fileInfo = candidates.get(index);
+			byte[] digest = hashCache == null ? null : hashCache.getDigest(fileInfo, DigestType.FULL);
+			StorageDevice device = getReadScheduler().deviceOf(fileInfo);
+			if (digest != null) {
+				cached[index] = true;
+				digests.add(CompletableFuture.completedFuture(digest));
+			}
+			else if (device.tryAcquire()) {
+				digests.add(submit(fileInfo, device));
+			}
+			else {
+				digests.add(null);
+				deferred.add(index);
+			}
+		}
+		for (int index : deferred) {
+			StorageDevice device = getReadScheduler().deviceOf(candidates.get(index));
+			device.acquire();
+			digests.set(index, submit(candidates.get(index), device));
+		}
+
+		Object[] keys = new Object[candidates.size()];
+		for (int index = 0; index < keys.length; index++) {
+			FileInfo fileInfo = candidates.get(index);
+			try {
+				byte[] digest = digests.get(index).join();
+				if (!cached[index]) {
+					storeDigest(hashCache, DigestType.FULL, fileInfo, digest);
+				}
+				keys[index] = ByteBuffer.wrap(digest);
+			}
+			catch(CompletionException ex) {
+				logger.error("Error ocurred while comparing file: {} on stage: {}", fileInfo.getPath(), getName(),
+							 ex.getCause());
+			}
+		}
+		return groupByKey(candidates, keys);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.KeyedComparisonStage#calculateKey(FileInfo)
+	 */
+	@Override
+	protected Object calculateKey(FileInfo fileInfo) throws Exception {
+		return ByteBuffer.wrap(cachedDigest(hashCache, DigestType.FULL, fileInfo, this::digest));
+	}
+
+	/*
+	 * Waits for the digest of a single file
+	 */
+	private byte[] digest(FileInfo fileInfo) throws IOException {
+		try {
+			return hashingPipeline.hash(Paths.get(fileInfo.getPath())).join();
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for hashing buffers");
+		}
+	}
+
+	/*
+	 * Starts the digest of a file holding a read permit of its device, the permit is released when the digest is
+	 * completed
+	 */
+	private CompletableFuture<byte[]> submit(FileInfo fileInfo, StorageDevice device) {
+		CompletableFuture<byte[]> digest;
+		try {
+			digest = hashingPipeline.hash(Paths.get(fileInfo.getPath()));
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			digest = new CompletableFuture<>();
+			digest.completeExceptionally(ex);
+		}
+		digest.whenComplete((bytes, ex) -> device.release());
+		return digest;
+	}
+
+}
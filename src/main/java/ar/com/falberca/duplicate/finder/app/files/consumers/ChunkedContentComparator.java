@@ -0,0 +1,244 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.files.devices.StorageDevice;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+
+/**
+ * Compares the content of files of the same size byte by byte. The files are read side by side in lockstep chunks
+ * and split at the first chunk where they differ, so files that are not duplicates are not read any further.
+ *
+ * At most <code>maxOpenFiles</code> files are read at the same time, their buffers are allocated once and reused by
+ * every comparison. Bigger groups are compared in batches against their first file, files that don't match it are
+ * compared again among them. The files of a batch hold a read permit of each of their devices while they're read,
+ * permits are acquired in the same order by every thread so batches spanning several devices can't block each other.
+ *
+ * Instances are not shared among threads.
+ *
+ * @author fernando
+ */
+public class ChunkedContentComparator {
+
+	private static final Comparator<StorageDevice> PERMITS_ORDER = Comparator.comparing(StorageDevice::getName)
+																			 .thenComparing(System::identityHashCode);
+
+	private final Logger logger = LoggerFactory.getLogger(ChunkedContentComparator.class);
+
+	private final int chunkSize;
+	private final DeviceReadScheduler readScheduler;
+	//Allocated with the first comparison, threads that never compare files don't hold them
+	private ByteBuffer[] chunks;
+
+	/**
+	 * @param chunkSize Number of bytes of each file compared at a time
+	 * @param maxOpenFiles Maximum number of files read at the same time, at least two
+	 * @param readSchedulerRef Scheduler that limits the concurrent reads of each device
+	 */
+	public ChunkedContentComparator(int chunkSize, int maxOpenFiles, DeviceReadScheduler readSchedulerRef) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+		if (maxOpenFiles < 2)
+			throw new IllegalArgumentException("Invalid number of files compared at the same time: " + maxOpenFiles);
+
+		this.chunkSize = chunkSize;
+		chunks = new ByteBuffer[maxOpenFiles];
+		readScheduler = readSchedulerRef;
+	}
+
+	/**
+	 * Splits a group of files of the same size into the groups of files with the same content. Files that can't be
+	 * read are left out of the result.
+	 *
+	 * @param files Files of the same size
+	 * @return Returns the groups of two or more files with the same content, files keep their order
+	 */
+	public List<List<FileInfo>> split(List<FileInfo> files) {
+		List<List<FileInfo>> groups = new ArrayList<>();
+		List<FileInfo> pending = files;
+		while (pending.size() > chunks.length) {
+			//The reference file is read once per batch, it's likely cached after the first one
+			FileInfo reference = pending.get(0);
+			List<FileInfo> matching = new ArrayList<>();
+			List<FileInfo> rest = new ArrayList<>();
+			for (int start = 1; start < pending.size(); start += chunks.length - 1) {
+				List<FileInfo> batch = new ArrayList<>(chunks.length);
+				batch.add(reference);
+				batch.addAll(pending.subList(start, Math.min(start + chunks.length - 1, pending.size())));
+
+				List<FileInfo> referenceGroup = null;
+				for (List<FileInfo> group : compareBatch(batch)) {
+					if (group.get(0) == reference) {
+						referenceGroup = group;
+					}
+				}
+				for (FileInfo file : batch.subList(1, batch.size())) {
+					(referenceGroup != null && referenceGroup.contains(file) ? matching : rest).add(file);
+				}
+			}
+			if (!matching.isEmpty()) {
+				matching.add(0, reference);
+				groups.add(matching);
+			}
+			pending = rest;
+		}
+		if (pending.size() > 1) {
+			groups.addAll(compareBatch(pending));
+		}
+		return groups;
+	}
+
+	/*
+	 * Compares a batch of at most maxOpenFiles files holding the read permits of their devices
+	 */
+	private List<List<FileInfo>> compareBatch(List<FileInfo> batch) {
+		List<StorageDevice> devices = new ArrayList<>(batch.size());
+		for (FileInfo file : batch) {
+			StorageDevice device = readScheduler.deviceOf(file);
+			if (!devices.contains(device)) {
+				devices.add(device);
+			}
+		}
+		devices.sort(PERMITS_ORDER);
+
+		devices.forEach(StorageDevice::acquire);
+		try {
+			return compareChunks(batch);
+		}
+		finally {
+			devices.forEach(StorageDevice::release);
+		}
+	}
+
+	/*
+	 * Reads the files chunk by chunk, splitting the groups of files whose chunks differ, until no group with two or
+	 * more files is left or the files were read completely
+	 */
+	private List<List<FileInfo>> compareChunks(List<FileInfo> batch) {
+		FileChannel[] channels = new FileChannel[batch.size()];
+		try {
+			List<List<Integer>> groups = new ArrayList<>();
+			List<Integer> opened = new ArrayList<>(batch.size());
+			for (int index = 0; index < channels.length; index++) {
+				channels[index] = open(batch.get(index));
+				if (channels[index] != null) {
+					opened.add(index);
+					if (chunks[index] == null) {
+						chunks[index] = ByteBuffer.allocateDirect(chunkSize);
+					}
+				}
+			}
+			if (opened.size() > 1) {
+				groups.add(opened);
+			}
+
+			//All the files have the same size
+			long size = batch.get(0).getSize();
+			for (long position = 0; position < size && !groups.isEmpty(); position += chunkSize) {
+				List<List<Integer>> matchingGroups = new ArrayList<>();
+				for (List<Integer> group : groups) {
+					List<Integer> readFiles = new ArrayList<>(group.size());
+					for (int index : group) {
+						if (readChunk(batch.get(index), channels[index], chunks[index], position)) {
+							readFiles.add(index);
+						}
+					}
+					splitByChunk(readFiles, matchingGroups);
+				}
+				groups = matchingGroups;
+			}
+
+			List<List<FileInfo>> duplicates = new ArrayList<>(groups.size());
+			for (List<Integer> group : groups) {
+				List<FileInfo> files = new ArrayList<>(group.size());
+				group.forEach(index -> files.add(batch.get(index)));
+				duplicates.add(files);
+			}
+			return duplicates;
+		}
+		finally {
+			for (FileChannel channel : channels) {
+				close(channel);
+			}
+		}
+	}
+
+	/*
+	 * Adds to matchingGroups the subgroups of files with equal chunks, files with a distinct chunk are left out
+	 */
+	private void splitByChunk(List<Integer> group, List<List<Integer>> matchingGroups) {
+		List<Integer> pending = group;
+		while (pending.size() > 1) {
+			ByteBuffer first = chunks[pending.get(0)];
+			List<Integer> matching = new ArrayList<>(pending.size());
+			List<Integer> different = new ArrayList<>(pending.size());
+			for (int index : pending) {
+				(first.equals(chunks[index]) ? matching : different).add(index);
+			}
+			if (matching.size() > 1) {
+				matchingGroups.add(matching);
+			}
+			pending = different;
+		}
+	}
+
+	/*
+	 * Returns null if the file can't be opened
+	 */
+	private FileChannel open(FileInfo fileInfo) {
+		try {
+			return FileChannel.open(Paths.get(fileInfo.getPath()), StandardOpenOption.READ);
+		}
+		catch(IOException ex) {
+			logger.error("Error ocurred while comparing file: {}", fileInfo.getPath(), ex);
+			return null;
+		}
+	}
+
+	/*
+	 * Reads a chunk of at most the chunk size starting at position, returns false if the file can't be read. The
+	 * chunk is shorter at the end of the file or if the file was truncated, so it won't match the other chunks.
+	 */
+	private boolean readChunk(FileInfo fileInfo, FileChannel channel, ByteBuffer chunk, long position) {
+		try {
+			chunk.clear();
+			while (chunk.hasRemaining()) {
+				int read = channel.read(chunk, position + chunk.position());
+				if (read < 0)
+					break;
+			}
+			chunk.flip();
+			ScanMetrics.current().bytesHashed(chunk.remaining());
+			return true;
+		}
+		catch(IOException ex) {
+			logger.error("Error ocurred while comparing file: {}", fileInfo.getPath(), ex);
+			return false;
+		}
+	}
+
+	private void close(FileChannel channel) {
+		if (channel == null)
+			return;
+
+		try {
+			channel.close();
+		}
+		catch(IOException ex) {
+			logger.warn("Error closing a compared file", ex);
+		}
+	}
+
+}
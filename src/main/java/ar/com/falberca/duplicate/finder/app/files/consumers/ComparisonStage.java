@@ -0,0 +1,57 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.util.Collection;
+import java.util.List;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * A step of the {@link StagedComparisonEngine}. Every stage receives a group of files that matched in all the
+ * previous stages and splits it into the groups of files that also match in this stage. Cheaper stages should be
+ * placed first so expensive comparisons are applied just to the files that could not be eliminated before.
+ *
+ * Instances are not shared among threads, so implementations can keep reusable buffers as state.
+ *
+ * @author fernando
+ */
+public interface ComparisonStage {
+
+	/**
+	 * Name used for reporting the stage statistics
+	 *
+	 * @return Returns the name of the stage
+	 */
+	String getName();
+
+	/**
+	 * Splits a group of candidate files into subgroups of files that match under this stage criteria. Files that
+	 * can't be compared, for instance because of I/O errors, are left out of the result.
+	 *
+	 * @param candidates Group of files that matched in every previous stage
+	 * @return Returns the groups of matching files, groups with a single file can be included
+	 */
+	Collection<List<FileInfo>> split(List<FileInfo> candidates);
+
+	/**
+	 * Returns true if this stage compares files of the given size by their whole content, as a full digest does. 
+	 * Groups of those files that match in this stage skip the following stages, unless one of them verifies the 
+	 * content.
+	 *
+	 * @param size Size of the files of a group
+	 * @return Returns true if the whole content of the files is compared
+	 */
+	default boolean comparesWholeContent(long size) {
+		return false;
+	}
+
+	/**
+	 * Returns true if this stage confirms byte by byte the groups it returns, groups compared by their whole content 
+	 * in a previous stage still go through it
+	 *
+	 * @return Returns true if the content of the groups is verified
+	 */
+	default boolean verifiesContent() {
+		return false;
+	}
+
+}
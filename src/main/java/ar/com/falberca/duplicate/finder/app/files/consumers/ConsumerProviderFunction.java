@@ -1,5 +1,7 @@
 package ar.com.falberca.duplicate.finder.app.files.consumers;
 
+import java.util.concurrent.Executor;
+
 import ar.com.falberca.duplicate.finder.app.files.FileInfo;
 
 /**
@@ -11,4 +13,21 @@ public interface ConsumerProviderFunction {
 	
 	void accept(FileInfo fileInfo);
 
+	/**
+	 * Process the work that was deferred while accepting files. It's invoked from the consumer thread once every 
+	 * consumer has accepted its last file.
+	 */
+	void complete();
+
+	/**
+	 * Process the work that was deferred while accepting files running its independent tasks on 
+	 * <code>taskExecutor</code>, it returns once every task was completed. By default the work is processed on the 
+	 * calling thread as in {@link #complete()}.
+	 * 
+	 * @param taskExecutor Executor that limits the tasks running at the same time, it's shared by every consumer
+	 */
+	default void complete(Executor taskExecutor) {
+		complete();
+	}
+
 }
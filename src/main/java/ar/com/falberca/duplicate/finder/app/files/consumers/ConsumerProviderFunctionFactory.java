@@ -9,4 +9,10 @@ public interface ConsumerProviderFunctionFactory {
 	
 	ConsumerProviderFunction createConsumerFunction();
 
+	/**
+	 * Invoked just once when all the consumer functions have accepted their last file and before any of them 
+	 * is completed.
+	 */
+	void allFilesAccepted();
+
 }
@@ -0,0 +1,70 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Kinds of threads used by {@link FileConsumerCoordinator} for consuming files
+ *
+ * @author fernando
+ */
+public enum ConsumerThreadMode {
+
+	/**
+	 * A fixed pool of platform threads, one per consumer. Available in every runtime.
+	 */
+	PLATFORM("platform"),
+
+	/**
+	 * A virtual thread per batch of files and per task of deferred work, the number of consumers and the number of
+	 * tasks running at the same time are limited by separate semaphores. Requires Java 21 or later.
+	 */
+	VIRTUAL("virtual");
+
+	private final String modeName;
+
+	private ConsumerThreadMode(String modeName) {
+		this.modeName = modeName;
+	}
+
+	/**
+	 * Name used for selecting the mode
+	 *
+	 * @return Returns the mode name
+	 */
+	public String getModeName() {
+		return modeName;
+	}
+
+	/**
+	 * @return Returns true if the threads of this mode can be created in the current runtime
+	 */
+	public boolean isAvailable() {
+		return this == PLATFORM || VirtualThreads.isAvailable();
+	}
+
+	/**
+	 * Finds a mode by its name, ignoring the case
+	 *
+	 * @param modeName Name of the mode
+	 * @return Returns the matching mode
+	 * @throws IllegalArgumentException Throws an exception if there is no mode with the given name
+	 */
+	public static ConsumerThreadMode fromName(String modeName) {
+		return Arrays.stream(values())
+					 .filter(mode -> mode.modeName.equalsIgnoreCase(modeName))
+					 .findFirst()
+					 .orElseThrow(() -> new IllegalArgumentException("Unknown thread mode: " + modeName +
+							 										 ". Available modes: " + availableNames()));
+	}
+
+	/**
+	 * Lists the names of all the modes
+	 *
+	 * @return Returns a comma separated list of names
+	 */
+	public static String availableNames() {
+		return Arrays.stream(values()).map(ConsumerThreadMode::getModeName).collect(Collectors.joining(", "));
+	}
+
+}
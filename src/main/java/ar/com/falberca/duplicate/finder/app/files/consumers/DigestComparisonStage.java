@@ -0,0 +1,69 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.files.hashing.FileHashingEngine;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache.DigestType;
+
+/**
+ * Comparison stage that digests the whole content of each file. Files with the same digest are considered to have
+ * the same content. If a {@link HashCache} is given, digests of files that didn't change since they were cached are 
+ * not calculated again.
+ *
+ * @author fernando
+ */
+public class DigestComparisonStage extends KeyedComparisonStage {
+
+	private final FileHashingEngine hashingEngine;
+	private final HashCache hashCache;
+
+	/**
+	 * Creates a stage that hashes files with a default {@link FileHashingEngine}
+	 */
+	public DigestComparisonStage() {
+		this(new FileHashingEngine(), null, DeviceReadScheduler.unlimited());
+	}
+
+	/**
+	 * Creates a stage that hashes files with <code>hashingEngineRef</code>. The engine must not be shared with 
+	 * other threads.
+	 *
+	 * @param hashingEngineRef Hashing engine reference
+	 * @param hashCacheRef Cache of digests, can be null if no cache is used
+	 * @param readSchedulerRef Scheduler that limits the concurrent reads of each device
+	 */
+	public DigestComparisonStage(FileHashingEngine hashingEngineRef, HashCache hashCacheRef, 
+								 DeviceReadScheduler readSchedulerRef) {
+		super(readSchedulerRef);
+		hashingEngine = hashingEngineRef;
+		hashCache = hashCacheRef;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#getName()
+	 */
+	@Override
+	public String getName() {
+		return "full digest";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.KeyedComparisonStage#calculateKey(FileInfo)
+	 */
+	@Override
+	protected Object calculateKey(FileInfo fileInfo) throws Exception {
+		//The permit of the file's device is held while it's hashed, threads helping with its segments need another one
+		return ByteBuffer.wrap(cachedDigest(hashCache, 
+											DigestType.FULL, 
+											fileInfo, 
+											file -> hashingEngine.hash(Paths.get(file.getPath()), 
+																	   getReadScheduler().deviceOf(file))));
+	}
+
+}
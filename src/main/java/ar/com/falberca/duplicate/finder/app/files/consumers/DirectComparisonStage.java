@@ -0,0 +1,98 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.util.Collection;
+import java.util.List;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+
+/**
+ * Comparison stage that compares small groups of files directly instead of digesting them. The files of the group
+ * are read side by side in lockstep chunks and the comparison stops at the first chunk where they differ, so files
+ * of the same size that are not duplicates are usually eliminated reading just their first chunk instead of their
+ * whole content. Groups with more files than {@link #DEFAULT_MAX_DIRECT_FILES}, or the given maximum, are split by
+ * the hashing stage, since every file would have to be compared with the others. Files are compared by a 
+ * {@link ChunkedContentComparator}, so the groups compared directly are also counted as verified.
+ *
+ * @author fernando
+ */
+public class DirectComparisonStage implements ComparisonStage {
+
+	/**
+	 * Default maximum number of files of a group compared directly
+	 */
+	public static final int DEFAULT_MAX_DIRECT_FILES = 3;
+
+	/**
+	 * Default number of bytes of each file compared at a time
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+	private final ComparisonStage hashingStage;
+	private final int maxDirectFiles;
+	private final ChunkedContentComparator comparator;
+
+	/**
+	 * Creates a stage that compares directly groups of up to {@link #DEFAULT_MAX_DIRECT_FILES} files, in chunks of
+	 * {@link #DEFAULT_CHUNK_SIZE} bytes
+	 *
+	 * @param hashingStageRef Stage that splits the bigger groups
+	 */
+	public DirectComparisonStage(ComparisonStage hashingStageRef) {
+		this(hashingStageRef, DEFAULT_MAX_DIRECT_FILES, DEFAULT_CHUNK_SIZE, DeviceReadScheduler.unlimited());
+	}
+
+	/**
+	 * Creates a stage that compares directly groups of up to <code>maxDirectFiles</code> files
+	 *
+	 * @param hashingStageRef Stage that splits the bigger groups, it must not be shared with other threads
+	 * @param maxDirectFiles Maximum number of files of a group compared directly
+	 * @param chunkSize Number of bytes of each file compared at a time
+	 * @param readSchedulerRef Scheduler that limits the concurrent reads of each device
+	 */
+	public DirectComparisonStage(ComparisonStage hashingStageRef, int maxDirectFiles, int chunkSize,
+								 DeviceReadScheduler readSchedulerRef) {
+		hashingStage = hashingStageRef;
+		this.maxDirectFiles = maxDirectFiles;
+		comparator = new ChunkedContentComparator(chunkSize, maxDirectFiles, readSchedulerRef);
+	}
+
+	/*
+	 * Statistics of both ways of comparing the whole content are reported together
+	 *
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#getName()
+	 */
+	@Override
+	public String getName() {
+		return "full content";
+	}
+
+	/*
+	 * Small groups are compared byte by byte to avoid digesting them, not to verify them. The content is verified 
+	 * only if the hashing stage verifies it.
+	 *
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#verifiesContent()
+	 */
+	@Override
+	public boolean verifiesContent() {
+		return hashingStage.verifiesContent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#split(java.util.List)
+	 */
+	@Override
+	public Collection<List<FileInfo>> split(List<FileInfo> candidates) {
+		if (candidates.size() > maxDirectFiles)
+			return hashingStage.split(candidates);
+
+		List<List<FileInfo>> groups = comparator.split(candidates);
+		groups.forEach(group -> ScanMetrics.current().groupVerified());
+		return groups;
+	}
+
+}
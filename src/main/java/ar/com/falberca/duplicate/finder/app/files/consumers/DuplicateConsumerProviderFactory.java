@@ -1,34 +1,83 @@
 package ar.com.falberca.duplicate.finder.app.files.consumers;
 
-import java.io.FileInputStream;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.util.HashMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
+import ar.com.falberca.duplicate.finder.app.events.ScanProgress;
 import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.consumers.StagedComparisonEngine.SourceGroup;
+import ar.com.falberca.duplicate.finder.app.files.hashing.TreeHashingScheduler;
+import ar.com.falberca.duplicate.finder.app.files.spill.PathTable;
+import ar.com.falberca.duplicate.finder.app.files.spill.RecordSorter;
+import ar.com.falberca.duplicate.finder.app.files.spill.RecordSorter.GroupReader;
+import ar.com.falberca.duplicate.finder.app.files.spill.RecordSorter.RecordGroup;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+import ar.com.falberca.duplicate.finder.app.results.DuplicateGroup;
+import ar.com.falberca.duplicate.finder.app.results.DuplicateType;
+import ar.com.falberca.duplicate.finder.app.results.LoggerResultSink;
+import ar.com.falberca.duplicate.finder.app.results.ResultSink;
 
 /**
  * Factory class of {@link ConsumerProviderFunction}. Every consumer created by this factory will share
  * state for holding information about processed files. Each consumer instance can be shared or executed
- * in a multi-threaded environment since access to shared data structures is synchronized.
+ * in a multi-threaded environment since shared data structures are concurrent.
  * 
  * For detecting duplicate files the following rules are applied:
  * <ul>
  *     <li> Empty files are processed by name, meaning that if the file is empty but has the same name that 
  * 		    other empty file it will treated as duplicate </li>
- *     <li> Files are compared by content regardless of the file name, unless the file is empty.</li>
- *     <li> Hardlinks pointing to the same location will treated as duplicates</li>
+ *     <li> Files are compared by content regardless of the file name, unless the file is empty. Just the files 
+ *          that share their size with other files are compared by content.</li>
+ *     <li> Hardlinks pointing to the same file are reported as hardlinks and the file content is compared once,
+ *          regardless of the number of links</li>
  *     <li> Invalid symlinks are skipped</li>
- *     <li> The first file occurrence will be logged not all of them. Meaning that if the file is duplicated 
- *          N times just the first duplication detected will be logged.</li>
+ *     <li> Duplicates are reported as complete groups, every file of a group is a duplicate of the first one. 
+ *          Groups are written to a {@link ResultSink}, by default they are logged.</li>
  * </ul>
  * 
- * MD5 hashing is used for comparing files by content. If lower probability of collision is required a stronger
- * hashing mechanism can by used such as SHA-256 or SHA-512  
+ * Files are compared by content using the {@link ar.com.falberca.duplicate.finder.app.files.hashing.HashAlgorithm}
+ * configured in the comparison stages, MD5 by default. If a lower probability of collision is required SHA-256 can 
+ * be used, and the faster non cryptographic hashes can be combined with a byte by byte verification of the groups.
+ * 
+ * Regular files are not hashed while they are accepted, they are grouped by size using a {@link FileSizeIndex} 
+ * instead. Once every file was accepted, only the files that belong to a size group of two or more members are 
+ * compared by the consumer functions, the rest of them are counted and dropped without being opened. Size groups
+ * are compared using a {@link StagedComparisonEngine}, by default files are first compared by a sample of their 
+ * content and only the files that still match are fully hashed.
+ * 
+ * If {@link ExternalMemorySettings} are given, the factory switches to an external memory mode once the estimated 
+ * size of the in-memory index passes the heap budget. Every regular file is then appended to a {@link PathTable} on 
+ * disk and its (size, path id) record to sorted runs of a {@link RecordSorter}. After every file was accepted the 
+ * size groups are read one at a time from a k-way merge of the runs, as the group source of the same 
+ * {@link StagedComparisonEngine} used in memory, so the files go through the same stages, read limits and hashing 
+ * modes. A size group is read in memory only if it has at most the maximum group files of the settings. Larger 
+ * groups are partitioned on disk by the key of the first stage: the (key, path id) records of their files are sorted 
+ * by another {@link RecordSorter} and the files with the same key are read as a group that continues from the second 
+ * stage. The heap used depends on the number of files of the groups being compared, not on the number of files 
+ * scanned, unless many files of a large size group share the key of the first stage or the first stage has no key.
  * 
  * @author fernando
  */
@@ -36,9 +85,130 @@ public class DuplicateConsumerProviderFactory implements ConsumerProviderFunctio
 	
 	private final Logger logger = LoggerFactory.getLogger(DuplicateConsumerProviderFactory.class);
 	
-	private Map<String, String> regularHashedFilesMap = new HashMap<>();
-	private Map<String, String> emptyFilesMap = new HashMap<>();
-	private Map<String, String> softLinksMap = new HashMap<>();
+	/*
+	 * Rough size of the heap used by each regular file in the in-memory index, without the characters of its name
+	 */
+	static final long ESTIMATED_FILE_BYTES = 112;
+	
+	//Files found for each key, files are referenced by their id in the registry
+	private ConcurrentMap<String, FileIdGroup> emptyFilesMap = new ConcurrentHashMap<>();
+	private ConcurrentMap<String, FileIdGroup> softLinksMap = new ConcurrentHashMap<>();
+	
+	private FileRegistry fileRegistry = new FileRegistry();
+	private FileSizeIndex fileSizeIndex = new FileSizeIndex();
+	private Supplier<List<ComparisonStage>> stagesSupplier;
+	private StagedComparisonEngine comparisonEngine;
+	private ResultSink resultSink;
+	private ScanProgress progress;
+	private LongAdder regularFiles = new LongAdder();
+	private LongAdder regularBytes = new LongAdder();
+	
+	//State of the external memory mode, the index lock is only used when the mode is enabled
+	private volatile ExternalMemorySettings externalMemory;
+	private volatile boolean spilled = false;
+	private ReadWriteLock indexLock = new ReentrantReadWriteLock();
+	private LongAdder estimatedIndexBytes = new LongAdder();
+	private PathTable pathTable;
+	private RecordSorter sizeRecords;
+	private GroupReader sizeGroups;
+	private KeyedComparisonStage partitionStage;
+	private Queue<Partitions> partitions = new ConcurrentLinkedQueue<>();
+	private AtomicInteger createdFunctions = new AtomicInteger();
+	private AtomicInteger runningFunctions = new AtomicInteger();
+	private LongAdder spilledUniqueSizeFiles = new LongAdder();
+	private LongAdder spilledCandidateFiles = new LongAdder();
+	private LongAdder spilledHardlinks = new LongAdder();
+	
+	/**
+	 * Creates a factory that compares files of the same size by a sample of their content first and then 
+	 * by the digest of their whole content.
+	 */
+	public DuplicateConsumerProviderFactory() {
+		this(() -> Arrays.asList(new SampleComparisonStage(), new DigestComparisonStage()));
+	}
+	
+	/**
+	 * Creates a factory that compares files of the same size using the stages returned by 
+	 * <code>comparisonStagesSupplier</code>. 
+	 * 
+	 * @param comparisonStagesSupplier Supplier of new instances of the comparison stages, invoked once per consumer
+	 */
+	public DuplicateConsumerProviderFactory(Supplier<List<ComparisonStage>> comparisonStagesSupplier) {
+		this(comparisonStagesSupplier, new LoggerResultSink());
+	}
+	
+	/**
+	 * Creates a factory that compares files of the same size using the stages returned by 
+	 * <code>comparisonStagesSupplier</code> and writes the duplicate groups to <code>resultSinkRef</code>. 
+	 * 
+	 * @param comparisonStagesSupplier Supplier of new instances of the comparison stages, invoked once per consumer
+	 * @param resultSinkRef Destination of the duplicate groups, it's invoked from all the consumer threads
+	 */
+	public DuplicateConsumerProviderFactory(Supplier<List<ComparisonStage>> comparisonStagesSupplier, 
+											ResultSink resultSinkRef) {
+		this(comparisonStagesSupplier, resultSinkRef, new EventBus());
+	}
+	
+	/**
+	 * Creates a factory that compares files of the same size using the stages returned by 
+	 * <code>comparisonStagesSupplier</code>, writes the duplicate groups to <code>resultSinkRef</code> and 
+	 * publishes the stage events and the progress of the files to <code>eventBusRef</code>. 
+	 * 
+	 * @param comparisonStagesSupplier Supplier of new instances of the comparison stages, invoked once per consumer
+	 * @param resultSinkRef Destination of the duplicate groups, it's invoked from all the consumer threads
+	 * @param eventBusRef Bus of the scan events
+	 */
+	public DuplicateConsumerProviderFactory(Supplier<List<ComparisonStage>> comparisonStagesSupplier, 
+											ResultSink resultSinkRef, 
+											EventBus eventBusRef) {
+		this(comparisonStagesSupplier, resultSinkRef, eventBusRef, null);
+	}
+	
+	/**
+	 * Creates a factory that compares files of the same size using the stages returned by 
+	 * <code>comparisonStagesSupplier</code> while the in-memory index fits in the heap budget of 
+	 * <code>externalMemoryRef</code>, and switches to the external memory mode when it doesn't.
+	 * 
+	 * @param comparisonStagesSupplier Supplier of new instances of the comparison stages, invoked once per consumer
+	 * @param resultSinkRef Destination of the duplicate groups, it's invoked from all the consumer threads
+	 * @param eventBusRef Bus of the scan events
+	 * @param externalMemoryRef Settings of the external memory mode, null if the mode is disabled
+	 */
+	public DuplicateConsumerProviderFactory(Supplier<List<ComparisonStage>> comparisonStagesSupplier, 
+											ResultSink resultSinkRef, 
+											EventBus eventBusRef, 
+											ExternalMemorySettings externalMemoryRef) {
+		stagesSupplier = comparisonStagesSupplier;
+		comparisonEngine = new StagedComparisonEngine(comparisonStagesSupplier, eventBusRef);
+		resultSink = resultSinkRef;
+		progress = eventBusRef.getProgress();
+		externalMemory = externalMemoryRef;
+	}
+	
+	/**
+	 * @return Returns true if the regular files were spilled to disk because the index passed the heap budget
+	 */
+	public boolean isSpilled() {
+		return spilled;
+	}
+
+	/**
+	 * @return Returns the number of regular files that were not compared by content because no other file has their 
+	 * size, they are known once all the files were accepted
+	 */
+	public long getUniqueSizeFiles() {
+		return spilled ? spilledUniqueSizeFiles.sum() : fileSizeIndex.getUniqueSizeFiles();
+	}
+
+	/**
+	 * Sets the scheduler of the files hashed as a tree, consumer threads waiting for comparison work hash the
+	 * segments of the files being hashed by other consumers
+	 *
+	 * @param treeHashingRef Scheduler reference, the same one used by the hashing stages
+	 */
+	public void setTreeHashing(TreeHashingScheduler treeHashingRef) {
+		comparisonEngine.setTreeHashing(treeHashingRef);
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -46,9 +216,427 @@ public class DuplicateConsumerProviderFactory implements ConsumerProviderFunctio
 	 */
 	@Override
 	public ConsumerProviderFunction createConsumerFunction() {
+		createdFunctions.incrementAndGet();
 		return new DuplicateConsumerFunction();
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ConsumerProviderFunctionFactory#allFilesAccepted()
+	 */
+	@Override
+	public void allFilesAccepted() {
+		reportKeyGroups(DuplicateType.EMPTY_FILE, emptyFilesMap);
+		reportKeyGroups(DuplicateType.SYMBOLIC_LINK, softLinksMap);
+		
+		if (spilled) {
+			startSpilledComparison();
+			return;
+		}
+		
+		List<List<FileInfo>> candidateGroups = new ArrayList<>();
+		long collapsedHardlinks = 0;
+		for (List<FileInfo> sizeGroup : fileSizeIndex.getCandidateGroups()) {
+			List<FileInfo> distinctFiles = collapseHardlinks(sizeGroup);
+			collapsedHardlinks += sizeGroup.size() - distinctFiles.size();
+			if (distinctFiles.size() > 1) {
+				candidateGroups.add(distinctFiles);
+			}
+		}
+		candidateGroups.forEach(comparisonEngine::submit);
+		
+		//Files that are not compared by content are done
+		long candidateFiles = candidateGroups.stream().mapToLong(List::size).sum();
+		long candidateBytes = candidateGroups.stream()
+											 .mapToLong(group -> group.size() * group.get(0).getSize())
+											 .sum();
+		progress.filesDone(regularFiles.sum() - candidateFiles, regularBytes.sum() - candidateBytes);
+		
+		logger.info("Files skipped because of their unique size: {}. Files to be compared by content: {} in {} size groups", 
+					fileSizeIndex.getUniqueSizeFiles(), 
+					candidateFiles, 
+					candidateGroups.size());
+		logger.info("Hardlinks skipped because another link to the same file is compared: {}", collapsedHardlinks);
+	}
+	
+	/*
+	 * Adds a regular file to the in-memory index or to the spilled files, the index is spilled when its estimated 
+	 * size passes the heap budget
+	 */
+	private void addToSizeIndex(FileInfo fileInfo) throws IOException {
+		ExternalMemorySettings settings = externalMemory;
+		if (settings == null) {
+			fileSizeIndex.add(fileInfo);
+			return;
+		}
+		
+		indexLock.readLock().lock();
+		try {
+			if (spilled) {
+				spill(fileInfo);
+				return;
+			}
+			fileSizeIndex.add(fileInfo);
+			estimatedIndexBytes.add(ESTIMATED_FILE_BYTES + 2L * fileInfo.getName().length());
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+		
+		if (estimatedIndexBytes.sum() > settings.getHeapBudget()) {
+			spillSizeIndex();
+		}
+	}
+	
+	/*
+	 * Moves the files of the in-memory index to disk, no file is added while they are moved. If the files can't be 
+	 * spilled the mode is disabled and the files are kept in memory.
+	 */
+	private void spillSizeIndex() {
+		indexLock.writeLock().lock();
+		try {
+			if (spilled || externalMemory == null)
+				return;
+			
+			Path spillDirectory = externalMemory.getSpillDirectory();
+			try {
+				pathTable = new PathTable(Files.createTempFile(spillDirectory, "paths", ".table"));
+				sizeRecords = new RecordSorter(spillDirectory, "sizes", 1, externalMemory.getRunRecords());
+				fileSizeIndex.forEachFile(fileInfo -> {
+					try {
+						spill(fileInfo);
+					}
+					catch(IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				});
+			}
+			catch(IOException | UncheckedIOException ex) {
+				logger.error("Files couldn't be spilled to: {}, they are kept in memory", spillDirectory, ex);
+				closeSpilledFiles();
+				externalMemory = null;
+				return;
+			}
+			
+			logger.info("In-memory index passed the heap budget of {} bytes, {} files were spilled to: {}", 
+						externalMemory.getHeapBudget(), 
+						sizeRecords.getRecords(), 
+						spillDirectory);
+			fileSizeIndex = new FileSizeIndex();
+			spilled = true;
+		}
+		finally {
+			indexLock.writeLock().unlock();
+		}
+	}
+	
+	private void spill(FileInfo fileInfo) throws IOException {
+		sizeRecords.add(fileInfo.getSize(), pathTable.append(fileInfo));
+	}
+	
+	/*
+	 * Starts the k-way merge of the size runs, the size groups are the group source of the comparison engine. An 
+	 * instance of the first stage partitions the large size groups, if it's a keyed stage.
+	 */
+	private void startSpilledComparison() {
+		runningFunctions.set(createdFunctions.get());
+		ComparisonStage firstStage = stagesSupplier.get().get(0);
+		partitionStage = firstStage instanceof KeyedComparisonStage ? (KeyedComparisonStage) firstStage : null;
+		try {
+			pathTable.flush();
+			sizeGroups = sizeRecords.merge();
+			logger.info("Spilled files to be merged by size: {} in {} sorted runs", 
+						sizeRecords.getRecords(), 
+						sizeRecords.getRuns());
+			comparisonEngine.setGroupSource(this::nextSpilledGroup);
+		}
+		catch(IOException ex) {
+			logger.error("Spilled files couldn't be merged by size", ex);
+			progress.filesDone(regularFiles.sum(), regularBytes.sum());
+		}
+	}
+	
+	/*
+	 * Reads the partitions of the large size groups first, then size groups from the merge until a group has two or 
+	 * more distinct files. Hardlinks are collapsed before the group is compared. Files that are not compared by 
+	 * content are done. Returns null once every group was read.
+	 */
+	private SourceGroup nextSpilledGroup() {
+		int maxGroupFiles = externalMemory.getMaxGroupFiles();
+		try {
+			while (true) {
+				SourceGroup partition = nextPartition();
+				if (partition != null)
+					return partition;
+				
+				RecordGroup sizeGroup;
+				List<FileInfo> files = null;
+				//The parts of a large size group are read by a single thread
+				synchronized (sizeGroups) {
+					sizeGroup = sizeGroups.next(maxGroupFiles);
+					if (sizeGroup != null && sizeGroup.isPartial()) {
+						if (partitionStage != null) {
+							partition(sizeGroup);
+							continue;
+						}
+						files = readAllParts(sizeGroup);
+					}
+				}
+				if (sizeGroup == null)
+					return nextPartition();
+				
+				long size = sizeGroup.getKey()[0];
+				if (sizeGroup.size() == 1) {
+					spilledUniqueSizeFiles.increment();
+					progress.filesDone(1, size);
+					continue;
+				}
+				
+				if (files == null) {
+					files = read(sizeGroup);
+				}
+				List<FileInfo> distinctFiles = collapseHardlinks(files);
+				spilledHardlinks.add(files.size() - distinctFiles.size());
+				int doneFiles = distinctFiles.size() > 1 ? files.size() - distinctFiles.size() : files.size();
+				progress.filesDone(doneFiles, doneFiles * size);
+				if (distinctFiles.size() > 1) {
+					spilledCandidateFiles.add(distinctFiles.size());
+					return new SourceGroup(distinctFiles);
+				}
+			}
+		}
+		catch(IOException ex) {
+			logger.error("Spilled files couldn't be read", ex);
+		}
+		return null;
+	}
+	
+	private List<FileInfo> read(RecordGroup group) throws IOException {
+		List<FileInfo> files = new ArrayList<>(group.size());
+		for (int index = 0; index < group.size(); index++) {
+			files.add(pathTable.read(group.getPathId(index)));
+		}
+		return files;
+	}
+	
+	/*
+	 * Reads every part of a large size group when the first stage has no key for partitioning it, the whole group is 
+	 * held in memory. Called holding the size groups reader.
+	 */
+	private List<FileInfo> readAllParts(RecordGroup firstPart) throws IOException {
+		logger.warn("Size group of {} bytes has more than {} files and the first stage can't partition it, it's read "
+					+ "in memory", 
+					firstPart.getKey()[0], 
+					externalMemory.getMaxGroupFiles());
+		List<FileInfo> files = read(firstPart);
+		RecordGroup part = firstPart;
+		while (part.isPartial()) {
+			part = sizeGroups.next(externalMemory.getMaxGroupFiles());
+			files.addAll(read(part));
+		}
+		return files;
+	}
+	
+	/*
+	 * Splits a size group with more files than the maximum group files by the key of the first stage. The (key, path 
+	 * id) records of its files are sorted on disk and the files with the same key are read later as partitions, see 
+	 * nextPartition. Called holding the size groups reader, the rest of the group is read in parts of at most the 
+	 * maximum group files. Files whose key can't be calculated are eliminated by the first stage.
+	 */
+	private void partition(RecordGroup firstPart) throws IOException {
+		long size = firstPart.getKey()[0];
+		int maxGroupFiles = externalMemory.getMaxGroupFiles();
+		RecordSorter keyRecords = null;
+		int keyLongs = 0;
+		long comparedFiles = 0;
+		long failedFiles = 0;
+		try {
+			RecordGroup part = firstPart;
+			while (part != null) {
+				for (int index = 0; index < part.size(); index++) {
+					byte[] key = partitionStage.partitionKey(pathTable.read(part.getPathId(index)));
+					comparedFiles++;
+					if (key != null && keyRecords == null) {
+						keyLongs = Math.max(1, (key.length + Long.BYTES - 1) / Long.BYTES);
+						keyRecords = new RecordSorter(externalMemory.getSpillDirectory(), 
+													  "partitions", 
+													  keyLongs, 
+													  Math.min(externalMemory.getRunRecords(), maxGroupFiles));
+					}
+					//Keys of the same stage have the same length
+					if (key == null || key.length > keyLongs * Long.BYTES) {
+						failedFiles++;
+						continue;
+					}
+					keyRecords.add(partitionKey(key, keyLongs), part.getPathId(index));
+				}
+				part = part.isPartial() ? sizeGroups.next(maxGroupFiles) : null;
+			}
+			
+			if (keyRecords != null) {
+				partitions.add(new Partitions(size, keyRecords, keyRecords.merge()));
+			}
+		}
+		catch(IOException ex) {
+			if (keyRecords != null) {
+				keyRecords.close();
+			}
+			throw ex;
+		}
+		finally {
+			spilledCandidateFiles.add(comparedFiles);
+			progress.filesDone(failedFiles, failedFiles * size);
+			comparisonEngine.addStageStatistics(0, comparedFiles, failedFiles);
+		}
+		logger.debug("Size group of {} bytes and {} files partitioned by stage: {}", 
+					 size, 
+					 comparedFiles, 
+					 partitionStage.getName());
+	}
+	
+	/*
+	 * Packs the bytes of a key as big endian longs, so keys are sorted by their bytes
+	 */
+	private static long[] partitionKey(byte[] key, int keyLongs) {
+		long[] longs = new long[keyLongs];
+		for (int index = 0; index < key.length; index++) {
+			longs[index / Long.BYTES] |= (key[index] & 0xFFL) << (8 * (Long.BYTES - 1 - index % Long.BYTES));
+		}
+		return longs;
+	}
+	
+	/*
+	 * Reads the partitions of the large size groups until one has two or more distinct files, it continues from the 
+	 * second stage. Hardlinks of a file have the same key, they are collapsed within each partition. Partitions with a 
+	 * single file were eliminated by the first stage. Returns null once every partition was read.
+	 */
+	private SourceGroup nextPartition() throws IOException {
+		Partitions current;
+		while ((current = partitions.peek()) != null) {
+			RecordGroup partition = current.keyGroups.next();
+			if (partition == null) {
+				if (partitions.remove(current)) {
+					current.close();
+				}
+				continue;
+			}
+			
+			List<FileInfo> files = read(partition);
+			List<FileInfo> distinctFiles = collapseHardlinks(files);
+			spilledHardlinks.add(files.size() - distinctFiles.size());
+			int doneFiles = distinctFiles.size() > 1 ? files.size() - distinctFiles.size() : files.size();
+			progress.filesDone(doneFiles, doneFiles * current.size);
+			comparisonEngine.addStageStatistics(0, 0, doneFiles);
+			if (distinctFiles.size() > 1)
+				return new SourceGroup(distinctFiles, 1);
+		}
+		return null;
+	}
+	
+	/*
+	 * Deletes the spilled files once every consumer compared its groups
+	 */
+	private void finishSpilledComparison() {
+		try {
+			if (sizeGroups != null) {
+				sizeGroups.close();
+			}
+		}
+		catch(IOException ex) {
+			logger.warn("Merge of the spilled files couldn't be closed", ex);
+		}
+		finally {
+			closeSpilledFiles();
+		}
+		
+		logger.info("Files skipped because of their unique size: {}. Files compared by content: {}", 
+					spilledUniqueSizeFiles.sum(), 
+					spilledCandidateFiles.sum());
+		logger.info("Hardlinks skipped because another link to the same file is compared: {}", spilledHardlinks.sum());
+	}
+	
+	/*
+	 * Deletes the spilled files
+	 */
+	private synchronized void closeSpilledFiles() {
+		List<Closeable> spilledFiles = new ArrayList<>(partitions);
+		partitions.clear();
+		spilledFiles.add(pathTable);
+		spilledFiles.add(sizeRecords);
+		for (Closeable spilledFile : spilledFiles) {
+			try {
+				if (spilledFile != null) {
+					spilledFile.close();
+				}
+			}
+			catch(IOException ex) {
+				logger.warn("Spilled file couldn't be deleted", ex);
+			}
+		}
+	}
+	
+	/*
+	 * Keeps a single file of each file key (device and inode), the other links to the same file are reported as 
+	 * hardlinks and are not compared by content since removing them doesn't free disk space. Files without file key 
+	 * are always kept. Keys are compared by their string form, the form of the keys of spilled or checkpointed files.
+	 */
+	private List<FileInfo> collapseHardlinks(List<FileInfo> sizeGroup) {
+		Map<String, List<FileInfo>> linksByKey = new LinkedHashMap<>();
+		List<FileInfo> distinctFiles = new ArrayList<>(sizeGroup.size());
+		for (FileInfo fileInfo : sizeGroup) {
+			if (fileInfo.getFileKey() == null) {
+				distinctFiles.add(fileInfo);
+			}
+			else {
+				linksByKey.computeIfAbsent(fileInfo.getFileKey().toString(), fileKey -> new ArrayList<>(1))
+						  .add(fileInfo);
+			}
+		}
+		
+		for (List<FileInfo> links : linksByKey.values()) {
+			distinctFiles.add(links.get(0));
+			if (links.size() > 1) {
+				report(DuplicateType.HARDLINK, links);
+			}
+		}
+		return distinctFiles;
+	}
+	
+	/*
+	 * Reports the groups of files that share the same key
+	 */
+	private void reportKeyGroups(DuplicateType type, Map<String, FileIdGroup> map) {
+		for (FileIdGroup idGroup : map.values()) {
+			if (idGroup.count > 1) {
+				List<FileInfo> files = new ArrayList<>(idGroup.count);
+				for (int index = 0; index < idGroup.count; index++) {
+					files.add(fileRegistry.get(idGroup.ids[index]));
+				}
+				report(type, files);
+			}
+		}
+	}
+	
+	/*
+	 * Writes a complete duplicate group to the result sink, the files are reported as duplicates of the first one
+	 */
+	private void report(DuplicateType type, List<FileInfo> files) {
+		List<String> paths = files.stream().map(FileInfo::getPath).collect(Collectors.toList());
+		DuplicateGroup duplicateGroup = new DuplicateGroup(type, files.get(0).getSize(), paths);
+		if (DuplicateType.REGULAR_FILE == type) {
+			ScanMetrics.current().duplicateGroupReported();
+		}
+		try {
+			resultSink.accept(duplicateGroup);
+		}
+		catch(IOException ex) {
+			logger.error("Duplicate {} group of file: {} couldn't be written", 
+						 type.getDescription(), 
+						 duplicateGroup.getPaths().get(0), 
+						 ex);
+		}
+	}
+	
 	/*
 	 * Consumer implementation for detecting duplicates among processed files. The duplicate consumer function
 	 * distinguish between regular files, empty files and symlinks. The rules that are applied to the files are 
@@ -65,12 +653,18 @@ public class DuplicateConsumerProviderFactory implements ConsumerProviderFunctio
 			try {
 				if (fileInfo.isLink()) {
 					processLink(fileInfo);
+					progress.filesDone(1, fileInfo.getSize());
 				}
 				else if (fileInfo.isEmpty()) {
 					processEmptyFile(fileInfo);
+					progress.filesDone(1, 0);
 				}
 				else {
-					processRegularFile(fileInfo);
+					regularFiles.increment();
+					regularBytes.add(fileInfo.getSize());
+					long start = System.nanoTime();
+					addToSizeIndex(fileInfo);
+					ScanMetrics.current().indexInsert(System.nanoTime() - start);
 				}
 			}
 			catch(Exception ex) {
@@ -79,12 +673,48 @@ public class DuplicateConsumerProviderFactory implements ConsumerProviderFunctio
 		}
 		
 		/*
-		 * Process a regular file calculating the hashing and searching for similar entries in the global map
+		 * (non-Javadoc)
+		 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ConsumerProviderFunction#complete()
+		 */
+		@Override
+		public void complete() {
+			compare(() -> comparisonEngine.process(this::processDuplicateGroup));
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ConsumerProviderFunction#complete(Executor)
 		 */
-		private void processRegularFile(FileInfo fileInfo) throws Exception {
-			String hash = calculateHash(fileInfo);
+		@Override
+		public void complete(Executor taskExecutor) {
+			compare(() -> comparisonEngine.process(this::processDuplicateGroup, taskExecutor));
+		}
+		
+		/*
+		 * Runs the comparison of the groups, the last consumer finishing it deletes the spilled files
+		 */
+		private void compare(Runnable comparison) {
+			if (!spilled) {
+				comparison.run();
+				return;
+			}
 			
-			processFileKey("regular file", hash, fileInfo, regularHashedFilesMap);
+			try {
+				comparison.run();
+			}
+			finally {
+				if (runningFunctions.decrementAndGet() == 0) {
+					finishSpilledComparison();
+				}
+			}
+		}
+		
+		/*
+		 * Process a group of regular files that matched in every comparison stage, all the files in the group are 
+		 * reported as duplicates of the first one
+		 */
+		private void processDuplicateGroup(List<FileInfo> duplicateGroup) {
+			report(DuplicateType.REGULAR_FILE, duplicateGroup);
 		}
 		
 		/*
@@ -98,59 +728,74 @@ public class DuplicateConsumerProviderFactory implements ConsumerProviderFunctio
 				return;
 			}
 			
-			processFileKey("symbolic link", fileInfo.getRealPath(), fileInfo, softLinksMap);
+			processFileKey(fileInfo.getRealPath(), fileInfo, softLinksMap);
 		}
 		
 		/*
 		 * Process an empty file by name searching for files that are also empty with the same name in the global map
 		 */
 		private void processEmptyFile(FileInfo fileInfo) {
-			processFileKey("empty file", fileInfo.getName(), fileInfo, emptyFilesMap);			
+			processFileKey(fileInfo.getName(), fileInfo, emptyFilesMap);			
 		}
 		
 		/*
-		 * Generic algorithm for searching an specific key in the map. Uses synchronization for getting map entries
-		 * and adding elements to the map. Also if similar entries exists on the map will be reported as duplicate.
+		 * Generic algorithm for grouping files by an specific key. The file is registered and added atomically to the
+		 * group of its key, groups with more than one file are reported once all the files were accepted.
 		 */
-		private void processFileKey(String type, String key, FileInfo fileInfo, Map<String, String> map) {
-			
-			String processedFilePath;
-			
-			synchronized(map) {
-				 processedFilePath = map.get(key);
-				 if (processedFilePath == null) {
-					 map.put(key, fileInfo.getPath());
-				 }
-			}
-			
-			if (processedFilePath != null) {
-				reportDuplicatedFile(type, processedFilePath, fileInfo);
-			}			
+		private void processFileKey(String key, FileInfo fileInfo, ConcurrentMap<String, FileIdGroup> map) {
+			int fileId = fileRegistry.register(fileInfo);
+			map.compute(key, (groupKey, idGroup) -> {
+				FileIdGroup group = idGroup != null ? idGroup : new FileIdGroup();
+				group.add(fileId);
+				return group;
+			});
 		}
 		
-		/*
-		 * Log the duplicate file using a logger
-		 */
-		private void reportDuplicatedFile(String type, String filePath, FileInfo duplicatedFileInfo) {
-			logger.error("Duplicate {} found: {}  with: {}", type, filePath, duplicatedFileInfo.getPath());
-		}
+	}
+	
+	/*
+	 * Partitions of a large size group, the records of its files sorted by the key of the first stage
+	 */
+	private static class Partitions implements Closeable {
 		
+		private final long size;
+		private final RecordSorter keyRecords;
+		private final GroupReader keyGroups;
+		
+		private Partitions(long size, RecordSorter keyRecordsRef, GroupReader keyGroupsRef) {
+			this.size = size;
+			keyRecords = keyRecordsRef;
+			keyGroups = keyGroupsRef;
+		}
+
 		/*
-		 * Calculate the hash of a file using MD5 and a 4MB file buffer stream
+		 * (non-Javadoc)
+		 * @see java.io.Closeable#close()
 		 */
-		private String calculateHash(FileInfo fileInfo) throws Exception {
-			MessageDigest shaDigest = MessageDigest.getInstance("md5");
-			try (DigestInputStream digestStream = 
-					new DigestInputStream(new FileInputStream(fileInfo.getPath()), shaDigest)) {
-				
-				//4MB buffer size, depends on disk IO
-				byte[] buffer = new byte[4000000]; 
-				while (digestStream.available() > 0) {
-					digestStream.read(buffer);
-				}
+		@Override
+		public void close() throws IOException {
+			try {
+				keyGroups.close();
+			}
+			finally {
+				keyRecords.close();
 			}
-			return new String(shaDigest.digest());
 		}
+	}
+	
+	/*
+	 * Ids of the files that share a key, modified only inside the atomic compute operation of the map
+	 */
+	private static class FileIdGroup {
 		
+		private int[] ids = new int[1];
+		private int count = 0;
+		
+		private void add(int id) {
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+			}
+			ids[count++] = id;
+		}
 	}
 }
@@ -0,0 +1,85 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.nio.file.Path;
+
+import ar.com.falberca.duplicate.finder.app.files.spill.RecordSorter;
+
+/**
+ * Settings of the external memory mode of {@link DuplicateConsumerProviderFactory}. Once the estimated size of the
+ * in-memory index passes the heap budget, the regular files are spilled to binary files in the spill directory and
+ * their size groups are read back one at a time by the comparison stages. Size groups with more files than the
+ * maximum group size are partitioned on disk by the first comparison stage before they are read.
+ *
+ * @author fernando
+ */
+public class ExternalMemorySettings {
+
+	/**
+	 * Smallest maximum number of files of a group read in memory, a pair of files is always compared in memory
+	 */
+	public static final int MIN_GROUP_FILES = 2;
+
+	private final Path spillDirectory;
+	private final long heapBudget;
+	private final int runRecords;
+	private final int maxGroupFiles;
+
+	/**
+	 * Creates settings with the default number of records per run and the maximum group size that fits in the heap 
+	 * budget
+	 *
+	 * @param spillDirectoryRef Directory where the spilled files are created
+	 * @param heapBudget Maximum estimated size in bytes of the in-memory index
+	 */
+	public ExternalMemorySettings(Path spillDirectoryRef, long heapBudget) {
+		this(spillDirectoryRef, heapBudget, RecordSorter.DEFAULT_RUN_RECORDS);
+	}
+
+	/**
+	 * Creates settings with the maximum group size that fits in the heap budget
+	 *
+	 * @param spillDirectoryRef Directory where the spilled files are created
+	 * @param heapBudget Maximum estimated size in bytes of the in-memory index
+	 * @param runRecords Number of records sorted in memory before they are written to a run file
+	 */
+	public ExternalMemorySettings(Path spillDirectoryRef, long heapBudget, int runRecords) {
+		this(spillDirectoryRef, 
+			 heapBudget, 
+			 runRecords, 
+			 (int) Math.min(Integer.MAX_VALUE, heapBudget / DuplicateConsumerProviderFactory.ESTIMATED_FILE_BYTES));
+	}
+
+	/**
+	 * @param spillDirectoryRef Directory where the spilled files are created
+	 * @param heapBudget Maximum estimated size in bytes of the in-memory index
+	 * @param runRecords Number of records sorted in memory before they are written to a run file
+	 * @param maxGroupFiles Maximum number of files of a spilled size group read in memory, at least 
+	 * {@link #MIN_GROUP_FILES}
+	 */
+	public ExternalMemorySettings(Path spillDirectoryRef, long heapBudget, int runRecords, int maxGroupFiles) {
+		if (heapBudget < 0)
+			throw new IllegalArgumentException("Invalid heap budget: " + heapBudget);
+
+		spillDirectory = spillDirectoryRef;
+		this.heapBudget = heapBudget;
+		this.runRecords = runRecords;
+		this.maxGroupFiles = Math.max(MIN_GROUP_FILES, maxGroupFiles);
+	}
+
+	public Path getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	public long getHeapBudget() {
+		return heapBudget;
+	}
+
+	public int getRunRecords() {
+		return runRecords;
+	}
+
+	public int getMaxGroupFiles() {
+		return maxGroupFiles;
+	}
+
+}
@@ -1,18 +1,31 @@
 package ar.com.falberca.duplicate.finder.app.files.consumers;
 
-import java.util.Observable;
-import java.util.Observer;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
 import ar.com.falberca.duplicate.finder.app.events.EventType;
+import ar.com.falberca.duplicate.finder.app.events.PipelineEvent;
 import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanEvents;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+import ar.com.falberca.duplicate.finder.app.metrics.WorkerMetrics;
 
 /**
  * Coordinates the execution of multiples consumer functions using a thread pool of executors.
@@ -20,46 +33,89 @@ import ar.com.falberca.duplicate.finder.app.files.FileInfo;
  * {@link ConsumerProviderFunctionFactory} a new instance of {@link ConsumerProviderFunction} will be
  * created and assigned to a specific thread for consuming file events.
  * 
+ * Consumers stop when the walker closes the queue and every file was taken. The last consumer finishing its work 
+ * publishes the FINISHED event, no thread waits for the consumers to terminate.
+ * 
+ * Consumers run on a fixed pool of platform threads by default. In {@link ConsumerThreadMode#VIRTUAL} mode a 
+ * dispatcher takes the batches from the queue and every batch is accepted on a new virtual thread by one of the 
+ * consumer functions, a semaphore with a permit per consumer function limits the batches accepted at the same time. 
+ * Then the consumer functions complete their deferred work as tasks started on new virtual threads, see 
+ * {@link ConsumerProviderFunction#complete(Executor)}. Another semaphore limits the tasks running at the same time to 
+ * the comparison tasks, independently of the number of consumer functions, so a high concurrency for reading files 
+ * from high latency file systems doesn't need hundreds of platform threads nor hundreds of consumer functions.
+ * 
  * @author fernando
  */
-public class FileConsumerCoordinator extends Observable implements Observer {
+public class FileConsumerCoordinator {
+	
+	/**
+	 * Default number of tasks of deferred work running at the same time on virtual threads
+	 */
+	public static final int DEFAULT_COMPARISON_TASKS = 256;
 	
 	private final Logger logger = LoggerFactory.getLogger(FileConsumerCoordinator.class);
 	
-	private volatile boolean interruptExecution = false;
 	private ConsumerProviderFunctionFactory consumerProviderFunctionFactory;
 	private int numberOfThreads;
+	private ConsumerThreadMode threadMode;
+	private int comparisonTasks = DEFAULT_COMPARISON_TASKS;
 	private boolean consumingEvents = false;
 	private ExecutorService executor;
-	private BlockingQueue<FileInfo> fileQueue;
+	private FileTransferQueue fileQueue;
+	private EventBus eventBus;
 	
 	/**
 	 * Creates an instance of this coordinator using a shared queue for exchanging file events and a 
 	 * consumer function factory for customizing the actions associated to each file.
 	 * 
-	 * @param fileQueueRef Blocking queue reference
+	 * @param fileQueueRef Transfer queue reference
 	 * @param consumerProviderRef Consumer provider factory reference
 	 * @param concurrency Number of threads that will be used for processing files
+	 * @param eventBusRef Bus where the coordinator events are published
 	 */
-	public FileConsumerCoordinator(BlockingQueue<FileInfo> fileQueueRef, 
+	public FileConsumerCoordinator(FileTransferQueue fileQueueRef, 
 								   ConsumerProviderFunctionFactory consumerProviderRef, 
-								   int concurrency) {
+								   int concurrency, 
+								   EventBus eventBusRef) {
+		this(fileQueueRef, consumerProviderRef, concurrency, ConsumerThreadMode.PLATFORM, eventBusRef);
+	}
+	
+	/**
+	 * Creates an instance of this coordinator that runs the consumers on the threads of <code>threadModeRef</code>. 
+	 * 
+	 * @param fileQueueRef Transfer queue reference
+	 * @param consumerProviderRef Consumer provider factory reference
+	 * @param concurrency Number of consumer functions processing files at the same time
+	 * @param threadModeRef Kind of threads running the consumer functions
+	 * @param eventBusRef Bus where the coordinator events are published
+	 * @throws IllegalArgumentException Throws an exception if the thread mode is not available in this runtime
+	 */
+	public FileConsumerCoordinator(FileTransferQueue fileQueueRef, 
+								   ConsumerProviderFunctionFactory consumerProviderRef, 
+								   int concurrency, 
+								   ConsumerThreadMode threadModeRef, 
+								   EventBus eventBusRef) {
+		if (!threadModeRef.isAvailable())
+			throw new IllegalArgumentException("Thread mode is not available: " + threadModeRef.getModeName());
+		
 		consumerProviderFunctionFactory = consumerProviderRef;
 		numberOfThreads = concurrency;
+		threadMode = threadModeRef;
 		fileQueue = fileQueueRef;
+		eventBus = eventBusRef;
 	}
-
-	/*
-	 * (non-Javadoc)
-	 * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
+	
+	/**
+	 * Sets the maximum number of tasks of deferred work running at the same time in virtual thread mode, each task 
+	 * usually reads the files of a group. Platform threads complete the deferred work on the consumer threads.
+	 * 
+	 * @param comparisonTasks Maximum number of tasks running at the same time
 	 */
-	@Override
-	public void update(Observable observable, Object eventType) {
-		if (EventType.FINISHED.equals(eventType)) {
-			logger.info("Consumer execution received 'task finished' message from observable");
-			interruptExecution = true;
-			waitForTermination();
-		}
+	public void setComparisonTasks(int comparisonTasks) {
+		if (comparisonTasks < 1)
+			throw new IllegalArgumentException("Invalid number of comparison tasks: " + comparisonTasks);
+		
+		this.comparisonTasks = comparisonTasks;
 	}
 	
 	/**
@@ -72,64 +128,264 @@ public class FileConsumerCoordinator extends Observable implements Observer {
 		
 		triggerEvent(EventType.STARTED);
 		
-		logger.info("Starting pulling files from file queue");
+		logger.info("Starting pulling files from file queue using {} threads", threadMode.getModeName());
 		
 		consumingEvents = true;
 		
+		if (threadMode == ConsumerThreadMode.VIRTUAL) {
+			consumeOnVirtualThreads();
+			return;
+		}
+		
 		executor = Executors.newFixedThreadPool(numberOfThreads);
 		
+		//Deferred work starts only when every consumer has accepted its last file
+		CyclicBarrier filesAcceptedBarrier = new CyclicBarrier(numberOfThreads,
+															   consumerProviderFunctionFactory::allFilesAccepted);
+		AtomicInteger runningConsumers = new AtomicInteger(numberOfThreads);
+
 		IntStream.range(0, numberOfThreads).forEach(index -> {
 			
 			logger.debug("Submitting consumer task. Number: {}", index);
 			
 			Runnable task = () -> {
-				
-				ConsumerProviderFunction providerFuntion = consumerProviderFunctionFactory.createConsumerFunction();
-				
-				while (true) {
-					try {
-						FileInfo fileInfo = fileQueue.poll(1,TimeUnit.SECONDS);
-						if (fileInfo != null)
-							logger.debug("File consumed: {}", fileInfo.getPath());
-							providerFuntion.accept(fileInfo);
-						
-						if (interruptExecution && fileQueue.isEmpty())
-							break;
-					}
-					catch(InterruptedException ex) {
-						//Do nothing, continues execution until interruptException flag is true 
+				try {
+					consumeFiles(filesAcceptedBarrier);
+				}
+				finally {
+					if (runningConsumers.decrementAndGet() == 0) {
+						allConsumersFinished();
 					}
 				}
 			};
 			
 			executor.submit(task);
 		});
+		
+		//Submitted tasks keep running, the threads are released when the last task finishes
+		executor.shutdown();
 	} 
 	
 	/*
-	 * 
+	 * Takes files from the queue until it's closed and drained, then waits for the other consumers and runs the 
+	 * deferred work
 	 */
-	private void waitForTermination() {
+	private void consumeFiles(CyclicBarrier filesAcceptedBarrier) {
+		ConsumerProviderFunction providerFuntion = consumerProviderFunctionFactory.createConsumerFunction();
+		List<FileInfo> batch = new ArrayList<>();
+		WorkerMetrics workerMetrics = ScanMetrics.current().registerWorker();
+		long idleStart = System.nanoTime();
+		Object queueWait = ScanEvents.beginQueueWait();
 		
-		logger.info("Waiting for consumers to finish...");
+		//Blocks until files are available, the loop ends when the walker closed the queue and it was drained
+		try {
+			while (fileQueue.takeBatch(batch)) {
+				long busyStart = System.nanoTime();
+				workerMetrics.addIdle(busyStart - idleStart);
+				ScanEvents.endQueueWait(queueWait, "take", batch.size());
+				for (FileInfo fileInfo : batch) {
+					if (logger.isDebugEnabled()) {
+						if (logger.isDebugEnabled()) {
+					logger.debug("File consumed: {}", fileInfo.getPath());
+				}
+					}
+					providerFuntion.accept(fileInfo);
+				}
+				idleStart = System.nanoTime();
+				workerMetrics.addBusy(idleStart - busyStart);
+				queueWait = ScanEvents.beginQueueWait();
+			}
+			ScanEvents.endQueueWait(queueWait, "take", 0);
+		}
+		catch(InterruptedException ex) {
+			//Keeps the interrupted status so the barrier is broken and the other consumers stop too
+			Thread.currentThread().interrupt();
+		}
 		
-		executor.shutdown();
 		try {
-			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			filesAcceptedBarrier.await();
+		}
+		catch(InterruptedException | BrokenBarrierException ex) {
+			logger.error("Consumer task was interrupted before completing deferred work", ex);
+			return;
+		}
+		finally {
+			workerMetrics.addIdle(System.nanoTime() - idleStart);
+		}
+
+		long busyStart = System.nanoTime();
+		providerFuntion.complete();
+		workerMetrics.addBusy(System.nanoTime() - busyStart);
+	}
+	
+	/*
+	 * Starts the dispatcher of batches, each consumer function is used by a single virtual thread at a time
+	 */
+	private void consumeOnVirtualThreads() {
+		executor = VirtualThreads.newThreadPerTaskExecutor("consumer-");
+		
+		List<ConsumerSlot> slots = new ArrayList<>(numberOfThreads);
+		for (int index = 0; index < numberOfThreads; index++) {
+			slots.add(new ConsumerSlot(consumerProviderFunctionFactory.createConsumerFunction(), 
+									   ScanMetrics.current().registerWorker()));
+		}
+		
+		executor.execute(() -> dispatchBatches(slots));
+	}
+	
+	/*
+	 * Takes batches from the queue until it's closed and drained and accepts each one on a new virtual thread. Once 
+	 * every batch was accepted every consumer function dispatches the tasks of its deferred work from a new virtual 
+	 * thread, the executor is shut down when the last consumer function completed its work.
+	 */
+	private void dispatchBatches(List<ConsumerSlot> slots) {
+		Semaphore permits = new Semaphore(slots.size());
+		Queue<ConsumerSlot> idleSlots = new ConcurrentLinkedQueue<>(slots);
+		
+		try {
+			List<FileInfo> batch = new ArrayList<>();
+			Object queueWait = ScanEvents.beginQueueWait();
+			while (fileQueue.takeBatch(batch)) {
+				ScanEvents.endQueueWait(queueWait, "take", batch.size());
+				
+				//A permit guarantees there is an idle consumer function for the batch
+				permits.acquire();
+				List<FileInfo> files = new ArrayList<>(batch);
+				executor.execute(() -> acceptBatch(files, idleSlots, permits));
+				queueWait = ScanEvents.beginQueueWait();
+			}
+			ScanEvents.endQueueWait(queueWait, "take", 0);
+			
+			//Every permit is back once the last batch was accepted
+			permits.acquire(slots.size());
 		}
 		catch(InterruptedException ex) {
-			//No need to catch this error since Interrupted exception here means that
-			//the execution was stopped from external sources
+			logger.error("Consumer dispatcher was interrupted before completing deferred work", ex);
+			//Batches being accepted finish before the consumers are reported as finished
+			permits.acquireUninterruptibly(slots.size());
+			executor.shutdown();
+			allConsumersFinished();
+			Thread.currentThread().interrupt();
+			return;
 		}
 		
-		triggerEvent(EventType.FINISHED);
+		consumerProviderFunctionFactory.allFilesAccepted();
+		
+		Executor taskExecutor = new BoundedExecutor(executor, comparisonTasks);
+		AtomicInteger runningConsumers = new AtomicInteger(slots.size());
+		for (ConsumerSlot slot : slots) {
+			executor.execute(() -> {
+				try {
+					long busyStart = System.nanoTime();
+					slot.consumerFunction.complete(taskExecutor);
+					slot.workerMetrics.addBusy(System.nanoTime() - busyStart);
+				}
+				finally {
+					if (runningConsumers.decrementAndGet() == 0) {
+						//Every task was completed, no more threads are started
+						executor.shutdown();
+						allConsumersFinished();
+					}
+				}
+			});
+		}
+	}
+	
+	/*
+	 * Accepts a batch using an idle consumer function, the function and the permit are released afterwards
+	 */
+	private void acceptBatch(List<FileInfo> files, Queue<ConsumerSlot> idleSlots, Semaphore permits) {
+		ConsumerSlot slot = idleSlots.poll();
+		try {
+			long busyStart = System.nanoTime();
+			for (FileInfo fileInfo : files) {
+				logger.debug("File consumed: {}", fileInfo.getPath());
+				slot.consumerFunction.accept(fileInfo);
+			}
+			slot.workerMetrics.addBusy(System.nanoTime() - busyStart);
+		}
+		finally {
+			idleSlots.offer(slot);
+			permits.release();
+		}
+	}
+	
+	/*
+	 * Invoked by the last consumer finishing its work
+	 */
+	private void allConsumersFinished() {
+		logger.info("File queue metrics. Files transferred: {}, max depth: {}, full queue stalls: {}, " + 
+					"time stalled: {} ms", 
+					fileQueue.getTransferredFiles(), 
+					fileQueue.getMaxDepth(), 
+					fileQueue.getFullQueueStalls(), 
+					TimeUnit.MILLISECONDS.convert(fileQueue.getFullQueueStallNanos(), TimeUnit.NANOSECONDS));
 		
 		logger.info("All consumers finished their tasks.");
+		
+		triggerEvent(EventType.FINISHED);
 	}
 	
 	private void triggerEvent(EventType eventType) {
-		setChanged();
-		notifyObservers(eventType);
+		eventBus.publish(new PipelineEvent(this, eventType));
+	}
+	
+	/*
+	 * Starts every task on the executor once a permit is available, the calling thread blocks until then
+	 */
+	private static class BoundedExecutor implements Executor {
+		
+		private final Executor executor;
+		private final Semaphore permits;
+		
+		private BoundedExecutor(Executor executorRef, int maxTasks) {
+			executor = executorRef;
+			permits = new Semaphore(maxTasks);
+		}
+		
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+		 */
+		@Override
+		public void execute(Runnable task) {
+			try {
+				permits.acquire();
+			}
+			catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for a task permit", ex);
+			}
+			
+			try {
+				executor.execute(() -> {
+					try {
+						task.run();
+					}
+					finally {
+						permits.release();
+					}
+				});
+			}
+			catch(RejectedExecutionException ex) {
+				permits.release();
+				throw ex;
+			}
+		}
+	}
+	
+	/*
+	 * Consumer function used by the virtual threads and the metrics of its work
+	 */
+	private static class ConsumerSlot {
+		
+		private final ConsumerProviderFunction consumerFunction;
+		private final WorkerMetrics workerMetrics;
+		
+		private ConsumerSlot(ConsumerProviderFunction consumerFunction, WorkerMetrics workerMetrics) {
+			this.consumerFunction = consumerFunction;
+			this.workerMetrics = workerMetrics;
+		}
 	}
 	
 }
@@ -0,0 +1,86 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Assigns a sequential integer id to every registered file, so indexes can reference files by an int instead of
+ * holding their path strings or boxed references. Files are stored in fixed size chunks that are allocated when
+ * needed, registering a file is lock free except when a new chunk must be added.
+ *
+ * The registry can be shared among consumer threads.
+ *
+ * @author fernando
+ */
+public class FileRegistry {
+
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final AtomicInteger nextId = new AtomicInteger();
+	private volatile AtomicReferenceArray<FileInfo>[] chunks = newChunks(16);
+
+	/**
+	 * Registers a file and returns its id, every call returns a new id even if the file was already registered
+	 *
+	 * @param fileInfo File reference
+	 * @return Returns the id of the file
+	 */
+	public int register(FileInfo fileInfo) {
+		int id = nextId.getAndIncrement();
+		if (id < 0)
+			throw new IllegalStateException("Maximum number of registered files reached");
+
+		chunkOf(id).set(id & CHUNK_MASK, fileInfo);
+		return id;
+	}
+
+	/**
+	 * Returns the file registered with the given id
+	 *
+	 * @param id File id returned by {@link #register(FileInfo)}
+	 * @return Returns the file reference
+	 */
+	public FileInfo get(int id) {
+		return chunks[id >>> CHUNK_BITS].get(id & CHUNK_MASK);
+	}
+
+	/**
+	 * @return Returns the number of registered files
+	 */
+	public int size() {
+		return nextId.get();
+	}
+
+	/*
+	 * Returns the chunk that holds the id, adding chunks if it doesn't exist yet
+	 */
+	private AtomicReferenceArray<FileInfo> chunkOf(int id) {
+		int chunkIndex = id >>> CHUNK_BITS;
+		AtomicReferenceArray<FileInfo>[] current = chunks;
+		if (chunkIndex < current.length && current[chunkIndex] != null)
+			return current[chunkIndex];
+
+		synchronized(this) {
+			current = chunks;
+			if (chunkIndex >= current.length) {
+				current = Arrays.copyOf(current, Math.max(current.length * 2, chunkIndex + 1));
+			}
+			if (current[chunkIndex] == null) {
+				current[chunkIndex] = new AtomicReferenceArray<>(CHUNK_SIZE);
+			}
+			chunks = current;
+			return current[chunkIndex];
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static AtomicReferenceArray<FileInfo>[] newChunks(int length) {
+		return new AtomicReferenceArray[length];
+	}
+
+}
@@ -0,0 +1,210 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanEvents;
+
+/**
+ * Groups files by their size in bytes. Since two files with different sizes can't have the same content,
+ * only the files that share their size with at least another file are candidates for being compared by content.
+ * Building this index doesn't require opening any file, just the attributes gathered by the directory walker.
+ *
+ * Files are referenced by the int id assigned by a {@link FileRegistry} and sizes are stored as primitive longs in
+ * open addressing tables, so the index doesn't box sizes nor allocate a list per size. The index is split in 
+ * stripes selected by the hash of the size, each stripe has its own lock so consumer threads adding files of
+ * different sizes rarely wait for each other.
+ *
+ * @author fernando
+ */
+public class FileSizeIndex {
+
+	private static final int STRIPE_BITS = 6;
+
+	private final FileRegistry fileRegistry;
+	private final SizeStripe[] stripes = new SizeStripe[1 << STRIPE_BITS];
+
+	/**
+	 * Creates an index with its own file registry
+	 */
+	public FileSizeIndex() {
+		this(new FileRegistry());
+	}
+
+	/**
+	 * Creates an index that registers the files in <code>fileRegistryRef</code>
+	 *
+	 * @param fileRegistryRef Registry that assigns ids to the indexed files
+	 */
+	public FileSizeIndex(FileRegistry fileRegistryRef) {
+		fileRegistry = fileRegistryRef;
+		for (int index = 0; index < stripes.length; index++) {
+			stripes[index] = new SizeStripe();
+		}
+	}
+
+	/**
+	 * Adds the file to the bucket associated to its size
+	 *
+	 * @param fileInfo File reference
+	 */
+	public void add(FileInfo fileInfo) {
+		int id = fileRegistry.register(fileInfo);
+		int hash = hash(fileInfo.getSize());
+		SizeStripe stripe = stripes[hash >>> (Integer.SIZE - STRIPE_BITS)];
+		Object indexLockWait = ScanEvents.beginIndexLockWait();
+		synchronized(stripe) {
+			ScanEvents.endIndexLockWait(indexLockWait, fileInfo.getSize());
+			stripe.add(fileInfo.getSize(), hash, id);
+		}
+	}
+
+	/**
+	 * Returns the buckets that have two or more files, the only ones that could contain duplicates.
+	 *
+	 * @return Returns a list of files groups where every file in a group has the same size
+	 */
+	public List<List<FileInfo>> getCandidateGroups() {
+		List<List<FileInfo>> candidateGroups = new ArrayList<>();
+		for (SizeStripe stripe : stripes) {
+			synchronized(stripe) {
+				for (int slot = 0; slot < stripe.counts.length; slot++) {
+					if (stripe.counts[slot] > 1) {
+						candidateGroups.add(resolve(stripe.ids[slot], stripe.counts[slot]));
+					}
+				}
+			}
+		}
+		return candidateGroups;
+	}
+
+	/**
+	 * Counts the files whose size is not shared by any other file, those files are never compared by content.
+	 *
+	 * @return Returns the number of files with a unique size
+	 */
+	public long getUniqueSizeFiles() {
+		long uniqueSizeFiles = 0;
+		for (SizeStripe stripe : stripes) {
+			synchronized(stripe) {
+				uniqueSizeFiles += Arrays.stream(stripe.counts).filter(count -> count == 1).count();
+			}
+		}
+		return uniqueSizeFiles;
+	}
+
+	/**
+	 * Visits every indexed file, including the files with a unique size
+	 *
+	 * @param action Action invoked for each file
+	 */
+	public void forEachFile(Consumer<FileInfo> action) {
+		for (SizeStripe stripe : stripes) {
+			synchronized(stripe) {
+				for (int slot = 0; slot < stripe.counts.length; slot++) {
+					if (stripe.counts[slot] == 1) {
+						action.accept(fileRegistry.get(stripe.firstIds[slot]));
+					}
+					else if (stripe.counts[slot] > 1) {
+						resolve(stripe.ids[slot], stripe.counts[slot]).forEach(action);
+					}
+				}
+			}
+		}
+	}
+
+	private List<FileInfo> resolve(int[] ids, int count) {
+		List<FileInfo> group = new ArrayList<>(count);
+		for (int index = 0; index < count; index++) {
+			group.add(fileRegistry.get(ids[index]));
+		}
+		return group;
+	}
+
+	/*
+	 * Spreads the bits of the size, sizes are usually multiples of block sizes
+	 */
+	private static int hash(long size) {
+		long mixed = size * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+
+	/*
+	 * Open addressing table from size to the ids of the files with that size. A slot is empty while its count is 0,
+	 * the ids array of a slot is allocated with the second file, most sizes are unique.
+	 */
+	private static class SizeStripe {
+
+		private long[] sizes = new long[16];
+		private int[] firstIds = new int[16];
+		private int[][] ids = new int[16][];
+		private int[] counts = new int[16];
+		private int usedSlots = 0;
+
+		private void add(long size, int hash, int id) {
+			if (usedSlots * 2 >= sizes.length) {
+				grow();
+			}
+
+			int slot = findSlot(size, hash);
+			int count = counts[slot];
+			if (count == 0) {
+				sizes[slot] = size;
+				firstIds[slot] = id;
+				ids[slot] = null;
+				usedSlots++;
+			}
+			else {
+				if (count == 1) {
+					ids[slot] = new int[] {firstIds[slot], id};
+				}
+				else {
+					if (count == ids[slot].length) {
+						ids[slot] = Arrays.copyOf(ids[slot], count * 2);
+					}
+					ids[slot][count] = id;
+				}
+			}
+			counts[slot] = count + 1;
+		}
+
+		/*
+		 * Linear probing, returns the slot of the size or the empty slot where it must be added
+		 */
+		private int findSlot(long size, int hash) {
+			int mask = sizes.length - 1;
+			int slot = hash & mask;
+			while (counts[slot] != 0 && sizes[slot] != size) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void grow() {
+			long[] oldSizes = sizes;
+			int[] oldFirstIds = firstIds;
+			int[][] oldIds = ids;
+			int[] oldCounts = counts;
+
+			int capacity = oldSizes.length * 2;
+			sizes = new long[capacity];
+			firstIds = new int[capacity];
+			ids = new int[capacity][];
+			counts = new int[capacity];
+
+			for (int oldSlot = 0; oldSlot < oldSizes.length; oldSlot++) {
+				if (oldCounts[oldSlot] != 0) {
+					int slot = findSlot(oldSizes[oldSlot], hash(oldSizes[oldSlot]));
+					sizes[slot] = oldSizes[oldSlot];
+					firstIds[slot] = oldFirstIds[oldSlot];
+					ids[slot] = oldIds[oldSlot];
+					counts[slot] = oldCounts[oldSlot];
+				}
+			}
+		}
+	}
+
+}
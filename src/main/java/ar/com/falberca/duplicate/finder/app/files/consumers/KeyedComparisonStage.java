@@ -0,0 +1,192 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.files.devices.StorageDevice;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache.DigestType;
+
+/**
+ * Base class for stages that compare files by a key calculated independently for each file, such as a digest of
+ * the file content. Files with equal keys are grouped together.
+ *
+ * Keys are calculated holding a read permit of the device of the file. Files whose device has no permit available 
+ * are deferred until the files of the other devices were processed, so a busy device doesn't stop the reads of 
+ * idle ones.
+ *
+ * @author fernando
+ */
+public abstract class KeyedComparisonStage implements ComparisonStage {
+
+	private final Logger logger = LoggerFactory.getLogger(KeyedComparisonStage.class);
+	
+	private final DeviceReadScheduler readScheduler;
+	
+	/**
+	 * @param readSchedulerRef Scheduler that limits the concurrent reads of each device
+	 */
+	protected KeyedComparisonStage(DeviceReadScheduler readSchedulerRef) {
+		readScheduler = readSchedulerRef;
+	}
+
+	/**
+	 * @return Returns the scheduler that limits the concurrent reads of each device
+	 */
+	protected DeviceReadScheduler getReadScheduler() {
+		return readScheduler;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#split(java.util.List)
+	 */
+	@Override
+	public Collection<List<FileInfo>> split(List<FileInfo> candidates) {
+		Object[] keys = new Object[candidates.size()];
+		List<Integer> deferred = new ArrayList<>();
+		for (int index = 0; index < keys.length; index++) {
+			StorageDevice device = readScheduler.deviceOf(candidates.get(index));
+			if (device.tryAcquire()) {
+				keys[index] = calculateKeyAndRelease(candidates.get(index), device);
+			}
+			else {
+				deferred.add(index);
+			}
+		}
+		for (int index : deferred) {
+			StorageDevice device = readScheduler.deviceOf(candidates.get(index));
+			device.acquire();
+			keys[index] = calculateKeyAndRelease(candidates.get(index), device);
+		}
+		
+		return groupByKey(candidates, keys);
+	}
+	
+	/**
+	 * Groups the candidates with equal keys, groups keep the order of the candidates regardless of the order keys 
+	 * were calculated.
+	 * 
+	 * @param candidates Files being compared
+	 * @param keys Key of each candidate, in the same position, or null for files dropped from the comparison
+	 * @return Returns the groups of files
+	 */
+	protected Collection<List<FileInfo>> groupByKey(List<FileInfo> candidates, Object[] keys) {
+		Map<Object, List<FileInfo>> groups = new LinkedHashMap<>();
+		for (int index = 0; index < keys.length; index++) {
+			if (keys[index] != null) {
+				groups.computeIfAbsent(keys[index], key -> new ArrayList<>(2)).add(candidates.get(index));
+			}
+		}
+		return groups.values();
+	}
+	
+	/*
+	 * Calculates the key of a single file waiting for a read permit of its device, groups too large to be held in 
+	 * memory are partitioned on disk by these keys. Returns the bytes of the key, or null if the file is dropped from 
+	 * the comparison or its key is not a byte buffer.
+	 */
+	byte[] partitionKey(FileInfo fileInfo) {
+		StorageDevice device = readScheduler.deviceOf(fileInfo);
+		device.acquire();
+		Object key = calculateKeyAndRelease(fileInfo, device);
+		if (!(key instanceof ByteBuffer))
+			return null;
+
+		ByteBuffer buffer = ((ByteBuffer) key).duplicate();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/*
+	 * Returns null if the key can't be calculated, the file is dropped from the comparison
+	 */
+	private Object calculateKeyAndRelease(FileInfo fileInfo, StorageDevice device) {
+		try {
+			return calculateKey(fileInfo);
+		}
+		catch(Exception ex) {
+			logger.error("Error ocurred while comparing file: {} on stage: {}", fileInfo.getPath(), getName(), ex);
+			return null;
+		}
+		finally {
+			device.release();
+		}
+	}
+
+	/**
+	 * Calculates the key that will be used for comparing the file with the other candidates. Keys must implement
+	 * equals and hashCode.
+	 *
+	 * @param fileInfo File reference
+	 * @return Returns the key of the file
+	 * @throws Exception Throws an exception if the key can't be calculated
+	 */
+	protected abstract Object calculateKey(FileInfo fileInfo) throws Exception;
+
+	/**
+	 * Returns the digest stored in <code>hashCache</code> if the file didn't change, otherwise calculates it using
+	 * <code>digestFunction</code> and stores it in the cache. Failures writing the cache don't prevent the file 
+	 * from being compared.
+	 * 
+	 * @param hashCache Cache reference, can be null if no cache is used
+	 * @param digestType Kind of digest
+	 * @param fileInfo File reference
+	 * @param digestFunction Function that calculates the digest when it's not cached
+	 * @return Returns the digest bytes
+	 * @throws IOException Throws an exception if the digest can't be calculated
+	 */
+	protected byte[] cachedDigest(HashCache hashCache, DigestType digestType, FileInfo fileInfo, 
+								  DigestFunction digestFunction) throws IOException {
+		if (hashCache == null)
+			return digestFunction.digest(fileInfo);
+		
+		byte[] digest = hashCache.getDigest(fileInfo, digestType);
+		if (digest == null) {
+			digest = digestFunction.digest(fileInfo);
+			storeDigest(hashCache, digestType, fileInfo, digest);
+		}
+		return digest;
+	}
+	
+	/**
+	 * Stores a digest calculated by the stage in <code>hashCache</code>, failures are logged
+	 * 
+	 * @param hashCache Cache reference, can be null if no cache is used
+	 * @param digestType Kind of digest
+	 * @param fileInfo File reference
+	 * @param digest Digest bytes
+	 */
+	protected void storeDigest(HashCache hashCache, DigestType digestType, FileInfo fileInfo, byte[] digest) {
+		if (hashCache == null)
+			return;
+		
+		try {
+			hashCache.putDigest(fileInfo, digestType, digest);
+		}
+		catch(IOException ex) {
+			logger.warn("Digest of file: {} couldn't be stored in the hash cache", fileInfo.getPath(), ex);
+		}
+	}
+	
+	/**
+	 * Function that calculates a digest of a file
+	 */
+	@FunctionalInterface
+	protected interface DigestFunction {
+		
+		byte[] digest(FileInfo fileInfo) throws IOException;
+	}
+
+}
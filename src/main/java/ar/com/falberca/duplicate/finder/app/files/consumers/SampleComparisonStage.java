@@ -0,0 +1,135 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.files.hashing.ContentHasher;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashAlgorithm;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache.DigestType;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+
+/**
+ * Cheap comparison stage that fingerprints a file reading just a few KB from its start, middle and end. Files of
+ * the same size that differ in any of those blocks, which is the common case for media files or disk images, are
+ * eliminated without reading their whole content. Files smaller than the three samples are read completely, their 
+ * sample digest is a digest of the whole content so their groups are not read again by the following stages. If a
+ * {@link HashCache} is given, files that didn't change since their sample digest was cached are not read.
+ *
+ * @author fernando
+ */
+public class SampleComparisonStage extends KeyedComparisonStage {
+
+	/**
+	 * Default number of bytes read at each sampled position
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 4096;
+
+	private final int sampleSize;
+	private final ByteBuffer sampleBuffer;
+	private final ContentHasher sampleHasher;
+	private final HashCache hashCache;
+
+	/**
+	 * Creates a stage that digests {@link #DEFAULT_SAMPLE_SIZE} bytes at each sampled position using MD5
+	 */
+	public SampleComparisonStage() {
+		this(HashAlgorithm.MD5.createHasher(), DEFAULT_SAMPLE_SIZE, null, DeviceReadScheduler.unlimited());
+	}
+
+	/**
+	 * Creates a stage that digests <code>sampleSize</code> bytes at each sampled position
+	 *
+	 * @param sampleHasherRef Hasher used for digesting the samples, it must not be shared with other threads
+	 * @param sampleSize Number of bytes read at the start, middle and end of the file
+	 * @param hashCacheRef Cache of digests, can be null if no cache is used
+	 * @param readSchedulerRef Scheduler that limits the concurrent reads of each device
+	 */
+	public SampleComparisonStage(ContentHasher sampleHasherRef, int sampleSize, HashCache hashCacheRef, 
+								 DeviceReadScheduler readSchedulerRef) {
+		super(readSchedulerRef);
+		
+		if (sampleSize < 1)
+			throw new IllegalArgumentException("Invalid sample size: " + sampleSize);
+
+		this.sampleSize = sampleSize;
+		sampleBuffer = ByteBuffer.allocate(sampleSize);
+		sampleHasher = sampleHasherRef;
+		hashCache = hashCacheRef;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#getName()
+	 */
+	@Override
+	public String getName() {
+		return "sample";
+	}
+
+	/*
+	 * Files of up to three samples are digested whole
+	 *
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#comparesWholeContent(long)
+	 */
+	@Override
+	public boolean comparesWholeContent(long size) {
+		return size <= 3L * sampleSize;
+	}
+
+	/*
+	 * Digest of the sampled blocks, all candidates have the same size so samples are taken from the same positions
+	 *
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.KeyedComparisonStage#calculateKey(FileInfo)
+	 */
+	@Override
+	protected Object calculateKey(FileInfo fileInfo) throws IOException {
+		return ByteBuffer.wrap(cachedDigest(hashCache, DigestType.SAMPLE, fileInfo, this::sampleDigest));
+	}
+	
+	/*
+	 * Reads the samples and calculates their digest
+	 */
+	private byte[] sampleDigest(FileInfo fileInfo) throws IOException {
+		long size = fileInfo.getSize();
+		sampleHasher.reset();
+
+		try (FileChannel channel = FileChannel.open(Paths.get(fileInfo.getPath()), StandardOpenOption.READ)) {
+			if (size <= 3L * sampleSize) {
+				for (long position = 0; position < size; position += sampleSize) {
+					digestBlock(channel, position);
+				}
+			}
+			else {
+				digestBlock(channel, 0);
+				digestBlock(channel, (size - sampleSize) / 2);
+				digestBlock(channel, size - sampleSize);
+			}
+		}
+
+		return sampleHasher.digest();
+	}
+
+	/*
+	 * Reads a block of at most sampleSize bytes starting at position and adds it to the sample digest
+	 */
+	private void digestBlock(FileChannel channel, long position) throws IOException {
+		sampleBuffer.clear();
+		while (sampleBuffer.hasRemaining()) {
+			int read = channel.read(sampleBuffer, position + sampleBuffer.position());
+			if (read < 0)
+				break;
+		}
+		sampleBuffer.flip();
+		ScanMetrics.current().bytesHashed(sampleBuffer.remaining());
+		sampleHasher.update(sampleBuffer);
+	}
+
+}
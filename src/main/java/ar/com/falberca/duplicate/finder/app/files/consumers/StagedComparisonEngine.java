@@ -0,0 +1,445 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
+import ar.com.falberca.duplicate.finder.app.events.StageCompletedEvent;
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.hashing.TreeHashingScheduler;
+
+/**
+ * Runs groups of candidate files through an ordered list of {@link ComparisonStage}. Each group is split by the
+ * current stage and only the resulting groups with two or more files continue to the next stage. Groups that
+ * survive the last stage are handed to the duplicates consumer. Groups that a stage compared by their whole content
+ * are handed to the duplicates consumer right away, unless a following stage verifies the content.
+ *
+ * The engine is shared by all the consumer threads, every thread calling {@link #process(Consumer)} takes pending
+ * groups from a common work list using its own stage instances until no group is left in any stage. The number of
+ * files compared and eliminated by each stage is logged and published as a STAGE_COMPLETED event once all the groups
+ * were processed. Files eliminated by a stage or reported as duplicates are added to the done files of the scan
+ * progress.
+ *
+ * Groups are either submitted before the threads start processing them or read from a group source while they are 
+ * processed, see {@link #setGroupSource(Supplier)}. Threads read a new group from the source only when the work list 
+ * is empty, so groups read from disk are not held in memory while other groups are compared. Sources can return 
+ * groups that were already split by the first stages, they continue from the following stage.
+ *
+ * Groups can also be processed as tasks of an {@link Executor}, see {@link #process(Consumer, Executor)}, so the 
+ * number of groups compared at the same time doesn't depend on the number of threads calling the engine.
+ *
+ * Threads waiting for work park on a lock condition instead of a monitor, so virtual threads waiting for work release
+ * their carrier thread. When a {@link TreeHashingScheduler} is set, threads waiting for work digest the pending
+ * segments of the big files being hashed by other threads instead of parking.
+ *
+ * @author fernando
+ */
+public class StagedComparisonEngine {
+
+	/*
+	 * Task of reading the next group from the source
+	 */
+	private static final StageTask READ_GROUP_TASK = new StageTask(0, null);
+
+	private final Logger logger = LoggerFactory.getLogger(StagedComparisonEngine.class);
+
+	private Supplier<List<ComparisonStage>> stagesSupplier;
+	private List<String> stageNames;
+	private LongAdder[] comparedFiles;
+	private LongAdder[] eliminatedFiles;
+	private EventBus eventBus;
+	private TreeHashingScheduler treeHashing;
+	private Supplier<SourceGroup> groupSource;
+	private boolean groupSourceDrained = true;
+	//Stages of the tasks run by executors, reused by the following tasks
+	private Queue<List<ComparisonStage>> idleStages = new ConcurrentLinkedQueue<>();
+
+	private Deque<StageTask> tasks = new ArrayDeque<>();
+	private int pendingTasks = 0;
+	private final ReentrantLock tasksLock = new ReentrantLock();
+	private final Condition tasksAvailable = tasksLock.newCondition();
+
+	/**
+	 * Creates an engine that will use <code>stagesSupplierRef</code> for creating the stages of each thread. The
+	 * supplier must return the same type of stages in the same order every time it's invoked.
+	 *
+	 * @param stagesSupplierRef Supplier of comparison stages
+	 */
+	public StagedComparisonEngine(Supplier<List<ComparisonStage>> stagesSupplierRef) {
+		this(stagesSupplierRef, new EventBus());
+	}
+
+	/**
+	 * Creates an engine that will use <code>stagesSupplierRef</code> for creating the stages of each thread and 
+	 * publishes the stage events to <code>eventBusRef</code>.
+	 *
+	 * @param stagesSupplierRef Supplier of comparison stages
+	 * @param eventBusRef Bus of the scan events
+	 */
+	public StagedComparisonEngine(Supplier<List<ComparisonStage>> stagesSupplierRef, EventBus eventBusRef) {
+		stagesSupplier = stagesSupplierRef;
+		eventBus = eventBusRef;
+
+		List<ComparisonStage> stages = stagesSupplier.get();
+		if (stages.isEmpty())
+			throw new IllegalArgumentException("At least one comparison stage is required");
+
+		stageNames = new ArrayList<>(stages.size());
+		comparedFiles = new LongAdder[stages.size()];
+		eliminatedFiles = new LongAdder[stages.size()];
+		for (int index = 0; index < stages.size(); index++) {
+			stageNames.add(stages.get(index).getName());
+			comparedFiles[index] = new LongAdder();
+			eliminatedFiles[index] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Sets the scheduler of the segments of the files hashed as a tree, threads waiting for work help hashing them
+	 *
+	 * @param treeHashingRef Scheduler reference, the same one used by the hashing stages
+	 */
+	public void setTreeHashing(TreeHashingScheduler treeHashingRef) {
+		treeHashing = treeHashingRef;
+		treeHashing.setSegmentsListener(() -> {
+			tasksLock.lock();
+			try {
+				tasksAvailable.signalAll();
+			}
+			finally {
+				tasksLock.unlock();
+			}
+		});
+	}
+
+	/**
+	 * Sets the source of the groups of candidate files read while the groups are processed, instead of submitting 
+	 * them. It must be set before any thread starts processing groups.
+	 *
+	 * @param groupSourceRef Source invoked from several threads, it returns null once every group was read
+	 */
+	public void setGroupSource(Supplier<SourceGroup> groupSourceRef) {
+		tasksLock.lock();
+		try {
+			groupSource = groupSourceRef;
+			groupSourceDrained = false;
+		}
+		finally {
+			tasksLock.unlock();
+		}
+	}
+
+	/**
+	 * Adds a group of candidate files to the first stage. All the groups must be submitted before any thread
+	 * starts processing them.
+	 *
+	 * @param candidates Group of files
+	 */
+	public void submit(List<FileInfo> candidates) {
+		tasksLock.lock();
+		try {
+			tasks.addLast(new StageTask(0, candidates));
+			pendingTasks++;
+		}
+		finally {
+			tasksLock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the files compared and eliminated by a stage outside the engine, such as the split of the groups 
+	 * returned by the group source as already split
+	 *
+	 * @param stageIndex Index of the stage
+	 * @param compared Number of files compared
+	 * @param eliminated Number of files eliminated
+	 */
+	public void addStageStatistics(int stageIndex, long compared, long eliminated) {
+		comparedFiles[stageIndex].add(compared);
+		eliminatedFiles[stageIndex].add(eliminated);
+	}
+
+	/**
+	 * Process pending groups until every group has gone through all the stages or was eliminated. This method
+	 * blocks while other threads are processing groups that could produce more work.
+	 *
+	 * @param duplicatesConsumer Consumer of the groups of files that matched in all the stages
+	 */
+	public void process(Consumer<List<FileInfo>> duplicatesConsumer) {
+		List<ComparisonStage> stages = stagesSupplier.get();
+
+		StageTask task;
+		while ((task = takeTask(true)) != null) {
+			try {
+				runTask(stages, task, duplicatesConsumer);
+			}
+			finally {
+				completeTask();
+			}
+		}
+	}
+
+	/**
+	 * Process pending groups running every task on <code>taskExecutor</code> until every group has gone through all 
+	 * the stages or was eliminated. The calling thread just dispatches the tasks, it blocks while there is no task to 
+	 * dispatch and until every task was completed. The executor limits the tasks running at the same time, stages are 
+	 * reused by the following tasks so there are as many stage instances as tasks running at the same time.
+	 *
+	 * @param duplicatesConsumer Consumer of the groups of files that matched in all the stages
+	 * @param taskExecutor Executor of the tasks, it can block the calling thread until a task can be started
+	 */
+	public void process(Consumer<List<FileInfo>> duplicatesConsumer, Executor taskExecutor) {
+		StageTask task;
+		while ((task = takeTask(false)) != null) {
+			StageTask dispatchedTask = task;
+			try {
+				taskExecutor.execute(() -> runPooledTask(dispatchedTask, duplicatesConsumer));
+			}
+			catch(RejectedExecutionException ex) {
+				logger.error("Comparison task couldn't be started, files of the group are not compared", ex);
+				completeTask();
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Runs a task with idle stages, or new ones if every stage instance is in use
+	 */
+	private void runPooledTask(StageTask task, Consumer<List<FileInfo>> duplicatesConsumer) {
+		List<ComparisonStage> stages = idleStages.poll();
+		if (stages == null) {
+			stages = stagesSupplier.get();
+		}
+		try {
+			runTask(stages, task, duplicatesConsumer);
+		}
+		finally {
+			idleStages.offer(stages);
+			completeTask();
+		}
+	}
+
+	private void runTask(List<ComparisonStage> stages, StageTask task, Consumer<List<FileInfo>> duplicatesConsumer) {
+		if (task == READ_GROUP_TASK) {
+			readGroup(stages, duplicatesConsumer);
+		}
+		else {
+			processTask(stages, task, duplicatesConsumer);
+		}
+	}
+
+	/*
+	 * Reads the next group from the source and splits it with the first stage it wasn't split by, groups split by 
+	 * every stage are duplicates. The source is marked as drained once it returns no group.
+	 */
+	private void readGroup(List<ComparisonStage> stages, Consumer<List<FileInfo>> duplicatesConsumer) {
+		SourceGroup group = groupSource.get();
+		int stageIndex = group == null || group.splitStages == 0 ? 0 : 
+				nextStage(stages, group.splitStages - 1, group.files.get(0).getSize());
+		if (group != null && stageIndex < stages.size()) {
+			processTask(stages, new StageTask(stageIndex, group.files), duplicatesConsumer);
+			return;
+		}
+		if (group != null) {
+			duplicatesConsumer.accept(group.files);
+			eventBus.getProgress().filesDone(group.files.size(), group.files.size() * group.files.get(0).getSize());
+			return;
+		}
+		
+		tasksLock.lock();
+		try {
+			groupSourceDrained = true;
+		}
+		finally {
+			tasksLock.unlock();
+		}
+	}
+
+	/*
+	 * Splits the group using the task stage, surviving groups are added at the front of the work list so groups
+	 * are processed depth first and the amount of pending work is kept low.
+	 */
+	private void processTask(List<ComparisonStage> stages, StageTask task,
+							 Consumer<List<FileInfo>> duplicatesConsumer) {
+		int stageIndex = task.stageIndex;
+		//Groups have files of the same size
+		long size = task.files.get(0).getSize();
+		int nextStage = nextStage(stages, stageIndex, size);
+		int survivors = 0;
+
+		for (List<FileInfo> group : stages.get(stageIndex).split(task.files)) {
+			if (group.size() < 2)
+				continue;
+
+			survivors += group.size();
+			if (nextStage < stages.size()) {
+				tasksLock.lock();
+				try {
+					tasks.addFirst(new StageTask(nextStage, group));
+					pendingTasks++;
+					tasksAvailable.signal();
+				}
+				finally {
+					tasksLock.unlock();
+				}
+			}
+			else {
+				duplicatesConsumer.accept(group);
+			}
+		}
+
+		int eliminated = task.files.size() - survivors;
+		comparedFiles[stageIndex].add(task.files.size());
+		eliminatedFiles[stageIndex].add(eliminated);
+		
+		int doneFiles = nextStage < stages.size() ? eliminated : task.files.size();
+		eventBus.getProgress().filesDone(doneFiles, doneFiles * size);
+	}
+
+	/*
+	 * Returns the index of the stage that splits the groups returned by the given stage, or the number of stages if 
+	 * they are duplicates. Groups compared by their whole content skip the following stages, unless one of them 
+	 * verifies the content.
+	 */
+	private static int nextStage(List<ComparisonStage> stages, int stageIndex, long size) {
+		List<ComparisonStage> followingStages = stages.subList(stageIndex + 1, stages.size());
+		if (stages.get(stageIndex).comparesWholeContent(size) 
+			&& followingStages.stream().noneMatch(ComparisonStage::verifiesContent))
+			return stages.size();
+
+		return stageIndex + 1;
+	}
+
+	/*
+	 * Returns the next task or null if all the tasks were completed. When the work list is empty and the source was 
+	 * not drained, the thread reads the next group from the source, reading it is a pending task too. Threads that 
+	 * help with the segments hash them without holding the lock, the segments listener takes it before waking up the 
+	 * waiting threads so no segment is missed. Dispatching threads don't hash segments.
+	 */
+	private StageTask takeTask(boolean helpWithSegments) {
+		tasksLock.lock();
+		try {
+			if (tasks.isEmpty() && !groupSourceDrained) {
+				pendingTasks++;
+				return READ_GROUP_TASK;
+			}
+			while (tasks.isEmpty() && pendingTasks > 0) {
+				if (helpWithSegments && treeHashing != null && treeHashing.hasPendingSegments()) {
+					boolean segmentRun;
+					tasksLock.unlock();
+					try {
+						segmentRun = treeHashing.runPendingSegment();
+					}
+					finally {
+						tasksLock.lock();
+					}
+					//Without a read permit of their devices the segments are left to the hashing threads
+					if (segmentRun)
+						continue;
+				}
+				try {
+					tasksAvailable.await();
+				}
+				catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			return tasks.pollFirst();
+		}
+		finally {
+			tasksLock.unlock();
+		}
+	}
+
+	/*
+	 * Marks a task as completed, the thread completing the last task reports the statistics and wakes up the
+	 * threads waiting for more work
+	 */
+	private void completeTask() {
+		tasksLock.lock();
+		try {
+			pendingTasks--;
+			if (pendingTasks > 0 || !groupSourceDrained)
+				return;
+			tasksAvailable.signalAll();
+		}
+		finally {
+			tasksLock.unlock();
+		}
+		logStatistics();
+	}
+
+	/*
+	 * Logs and publishes the number of files compared and eliminated by each stage
+	 */
+	private void logStatistics() {
+		for (int index = 0; index < stageNames.size(); index++) {
+			logger.info("Comparison stage '{}': files compared: {}, files eliminated: {}",
+						stageNames.get(index),
+						comparedFiles[index].sum(),
+						eliminatedFiles[index].sum());
+			eventBus.publish(new StageCompletedEvent(this, 
+													 stageNames.get(index), 
+													 comparedFiles[index].sum(), 
+													 eliminatedFiles[index].sum()));
+		}
+	}
+
+	/**
+	 * Group of candidate files returned by a group source, see {@link StagedComparisonEngine#setGroupSource(Supplier)}
+	 */
+	public static class SourceGroup {
+
+		private final List<FileInfo> files;
+		private final int splitStages;
+
+		/**
+		 * Creates a group that goes through every stage
+		 *
+		 * @param filesRef Files of the group, all of them with the same size
+		 */
+		public SourceGroup(List<FileInfo> filesRef) {
+			this(filesRef, 0);
+		}
+
+		/**
+		 * @param filesRef Files of the group, all of them with the same size
+		 * @param splitStages Number of stages, from the first one, that already split the group. Its files have the 
+		 * same key in all of them.
+		 */
+		public SourceGroup(List<FileInfo> filesRef, int splitStages) {
+			files = filesRef;
+			this.splitStages = splitStages;
+		}
+	}
+
+	/*
+	 * Group of files waiting to be split by an specific stage
+	 */
+	private static class StageTask {
+
+		private final int stageIndex;
+		private final List<FileInfo> files;
+
+		private StageTask(int stageIndex, List<FileInfo> files) {
+			this.stageIndex = stageIndex;
+			this.files = files;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+
+/**
+ * Comparison stage that confirms byte by byte the groups found by a hashing stage, so a digest collision is never
+ * reported as a duplicate. It makes fast non cryptographic hashes safe to use: files are split by the hashing stage
+ * first and then every group with two or more files is compared by a {@link ChunkedContentComparator}, which stops
+ * at the first chunk where the files differ. Files that had the same digest but a different content are counted as
+ * hash collisions.
+ *
+ * @author fernando
+ */
+public class VerificationComparisonStage implements ComparisonStage {
+
+	/**
+	 * Default number of bytes of each file compared at a time
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+
+	/**
+	 * Default maximum number of files read at the same time
+	 */
+	public static final int DEFAULT_MAX_OPEN_FILES = 8;
+
+	private final Logger logger = LoggerFactory.getLogger(VerificationComparisonStage.class);
+
+	private final ComparisonStage hashingStage;
+	private final ChunkedContentComparator comparator;
+
+	/**
+	 * Creates a stage that verifies the groups of <code>hashingStageRef</code> reading at most
+	 * {@link #DEFAULT_MAX_OPEN_FILES} files at the same time, in chunks of {@link #DEFAULT_CHUNK_SIZE} bytes
+	 *
+	 * @param hashingStageRef Stage whose groups are verified
+	 */
+	public VerificationComparisonStage(ComparisonStage hashingStageRef) {
+		this(hashingStageRef, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_OPEN_FILES, DeviceReadScheduler.unlimited());
+	}
+
+	/**
+	 * @param hashingStageRef Stage whose groups are verified, it must not be shared with other threads
+	 * @param chunkSize Number of bytes of each file compared at a time
+	 * @param maxOpenFiles Maximum number of files read at the same time
+	 * @param readSchedulerRef Scheduler that limits the concurrent reads of each device
+	 */
+	public VerificationComparisonStage(ComparisonStage hashingStageRef, int chunkSize, int maxOpenFiles,
+									   DeviceReadScheduler readSchedulerRef) {
+		hashingStage = hashingStageRef;
+		comparator = new ChunkedContentComparator(chunkSize, maxOpenFiles, readSchedulerRef);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#getName()
+	 */
+	@Override
+	public String getName() {
+		return hashingStage.getName() + " verified";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#verifiesContent()
+	 */
+	@Override
+	public boolean verifiesContent() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.consumers.ComparisonStage#split(java.util.List)
+	 */
+	@Override
+	public Collection<List<FileInfo>> split(List<FileInfo> candidates) {
+		List<List<FileInfo>> verifiedGroups = new ArrayList<>();
+		for (List<FileInfo> hashGroup : hashingStage.split(candidates)) {
+			if (hashGroup.size() < 2)
+				continue;
+
+			int verifiedFiles = 0;
+			for (List<FileInfo> group : comparator.split(hashGroup)) {
+				verifiedGroups.add(group);
+				verifiedFiles += group.size();
+				ScanMetrics.current().groupVerified();
+			}
+			if (verifiedFiles < hashGroup.size()) {
+				logger.warn("Files of size {} with the same digest that have a different content or couldn't be " + 
+							"read: {}",
+							hashGroup.get(0).getSize(),
+							hashGroup.size() - verifiedFiles);
+				ScanMetrics.current().hashCollisions(hashGroup.size() - verifiedFiles);
+			}
+		}
+		return verifiedGroups;
+	}
+
+}
@@ -0,0 +1,95 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors of virtual threads when the runtime supports them (Java 21 or later). The application is built
+ * for Java 8, so the virtual thread API is looked up by reflection once, when this class is loaded.
+ *
+ * @author fernando
+ */
+final class VirtualThreads {
+
+	private static final Class<?> BUILDER_CLASS = findClass("java.lang.Thread$Builder");
+	private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+	private static final Method NAME = findMethod(BUILDER_CLASS, "name", String.class, long.class);
+	private static final Method FACTORY = findMethod(BUILDER_CLASS, "factory");
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class,
+																		  "newThreadPerTaskExecutor",
+																		  ThreadFactory.class);
+	private static final boolean AVAILABLE = checkAvailability();
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return Returns true if virtual threads can be created in this runtime
+	 */
+	static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task
+	 *
+	 * @param namePrefix Prefix of the thread names, followed by a sequence number
+	 * @return Returns a new executor
+	 * @throws UnsupportedOperationException Throws an exception if virtual threads are not available
+	 */
+	static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+		if (!AVAILABLE)
+			throw new UnsupportedOperationException("Virtual threads are not available in Java " +
+													System.getProperty("java.version"));
+
+		try {
+			Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) FACTORY.invoke(builder);
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+		}
+		catch(IllegalAccessException | InvocationTargetException ex) {
+			throw new IllegalStateException("Virtual thread executor couldn't be created", ex);
+		}
+	}
+
+	/*
+	 * Virtual threads are a preview feature in Java 19 and 20, creating a builder fails unless previews are enabled
+	 */
+	private static boolean checkAvailability() {
+		if (OF_VIRTUAL == null || NAME == null || FACTORY == null || NEW_THREAD_PER_TASK_EXECUTOR == null)
+			return false;
+
+		try {
+			OF_VIRTUAL.invoke(null);
+			return true;
+		}
+		catch(IllegalAccessException | InvocationTargetException ex) {
+			return false;
+		}
+	}
+
+	private static Class<?> findClass(String className) {
+		try {
+			return Class.forName(className);
+		}
+		catch(ClassNotFoundException ex) {
+			return null;
+		}
+	}
+
+	private static Method findMethod(Class<?> type, String methodName, Class<?>... parameterTypes) {
+		if (type == null)
+			return null;
+
+		try {
+			return type.getMethod(methodName, parameterTypes);
+		}
+		catch(NoSuchMethodException ex) {
+			return null;
+		}
+	}
+
+}
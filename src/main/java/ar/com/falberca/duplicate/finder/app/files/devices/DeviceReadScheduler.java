@@ -0,0 +1,130 @@
+package ar.com.falberca.duplicate.finder.app.files.devices;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Assigns the files being compared to the {@link StorageDevice} of their root directory, so reads are limited per 
+ * device instead of by the global number of consumer threads. Roots in the same {@link FileStore} share the 
+ * device and its limit. Rotational devices get <code>rotationalConcurrency</code> concurrent reads, other devices 
+ * get <code>defaultConcurrency</code>.
+ * 
+ * The device of a file is the device of its root, a file system mounted below a root is read with the limit of 
+ * the root device. The scheduler can be shared among consumer threads.
+ * 
+ * @author fernando
+ */
+public class DeviceReadScheduler {
+	
+	/**
+	 * Default number of concurrent reads of a rotational device
+	 */
+	public static final int DEFAULT_ROTATIONAL_CONCURRENCY = 1;
+	
+	private final Logger logger = LoggerFactory.getLogger(DeviceReadScheduler.class);
+	
+	private final List<RootDevice> rootDevices = new ArrayList<>();
+	private final StorageDevice defaultDevice;
+	
+	/*
+	 * Use DeviceReadScheduler.unlimited or the public constructor
+	 */
+	private DeviceReadScheduler(int defaultConcurrency) {
+		defaultDevice = new StorageDevice("default", false, defaultConcurrency);
+	}
+	
+	/**
+	 * Creates a scheduler with a device for every file store of the roots
+	 * 
+	 * @param rootDirectories Root directories of the scan
+	 * @param rotationalConcurrency Maximum number of concurrent reads of a rotational device
+	 * @param defaultConcurrency Maximum number of concurrent reads of other devices
+	 * @throws IOException Throws an exception if the file store of a root can't be determined
+	 */
+	public DeviceReadScheduler(List<Path> rootDirectories, int rotationalConcurrency, int defaultConcurrency) 
+			throws IOException {
+		this(defaultConcurrency);
+		
+		Map<FileStore, StorageDevice> devices = new LinkedHashMap<>();
+		for (Path rootDirectory : rootDirectories) {
+			FileStore fileStore = Files.getFileStore(rootDirectory);
+			StorageDevice device = devices.get(fileStore);
+			if (device == null) {
+				boolean rotational = StorageDevice.isRotational(fileStore);
+				device = new StorageDevice(fileStore.name(), 
+										   rotational, 
+										   rotational ? rotationalConcurrency : defaultConcurrency);
+				devices.put(fileStore, device);
+				logger.info("Device {} of root {}. Rotational: {}, concurrent reads: {}", 
+							device.getName(), 
+							rootDirectory, 
+							device.isRotational(), 
+							device.getConcurrency());
+			}
+			rootDevices.add(new RootDevice(rootDirectory.toAbsolutePath().normalize().toString(), device));
+		}
+		
+		//Longest roots first so nested roots take precedence
+		rootDevices.sort(Comparator.comparingInt((RootDevice rootDevice) -> rootDevice.root.length()).reversed());
+	}
+	
+	/**
+	 * Creates a scheduler that doesn't limit reads
+	 * 
+	 * @return Returns the scheduler
+	 */
+	public static DeviceReadScheduler unlimited() {
+		return new DeviceReadScheduler(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Returns the device of the root that contains the file
+	 * 
+	 * @param fileInfo File reference
+	 * @return Returns the device or a default device without limit if the file is not under any root
+	 */
+	public StorageDevice deviceOf(FileInfo fileInfo) {
+		//The directory of a file is inside a root when the file is, the path of the file is not built
+		String directory = fileInfo.getDirectory();
+		for (RootDevice rootDevice : rootDevices) {
+			if (rootDevice.contains(directory))
+				return rootDevice.device;
+		}
+		return defaultDevice;
+	}
+	
+	/*
+	 * Root directory and the device where it's stored
+	 */
+	private static class RootDevice {
+		
+		private final String root;
+		private final StorageDevice device;
+		
+		private RootDevice(String root, StorageDevice device) {
+			this.root = root;
+			this.device = device;
+		}
+		
+		private boolean contains(String path) {
+			return path.startsWith(root) && 
+				   (path.length() == root.length() || 
+				    root.endsWith(File.separator) || 
+				    path.startsWith(File.separator, root.length()));
+		}
+	}
+
+}
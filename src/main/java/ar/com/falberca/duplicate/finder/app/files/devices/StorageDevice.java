@@ -0,0 +1,108 @@
+package ar.com.falberca.duplicate.finder.app.files.devices;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Device where files are stored, identified by its {@link FileStore}. Every device limits the number of files read 
+ * from it at the same time: spinning disks lose throughput when several threads make them seek, while solid state 
+ * drives need many concurrent reads for reaching their best throughput.
+ * 
+ * @author fernando
+ */
+public class StorageDevice {
+	
+	private static final Path SYS_BLOCK_DEVICES = Paths.get("/sys/class/block");
+	
+	private final String name;
+	private final boolean rotational;
+	private final int concurrency;
+	private final Semaphore readPermits;
+	
+	/**
+	 * @param nameRef Name of the device used in logs
+	 * @param rotational True if the device is a spinning disk
+	 * @param concurrency Maximum number of files read at the same time
+	 */
+	public StorageDevice(String nameRef, boolean rotational, int concurrency) {
+		if (concurrency < 1)
+			throw new IllegalArgumentException("Invalid device concurrency: " + concurrency);
+		
+		name = nameRef;
+		this.rotational = rotational;
+		this.concurrency = concurrency;
+		readPermits = new Semaphore(concurrency, true);
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public boolean isRotational() {
+		return rotational;
+	}
+	
+	public int getConcurrency() {
+		return concurrency;
+	}
+	
+	/**
+	 * Acquires a read permit if one is available without waiting
+	 * 
+	 * @return Returns true if the permit was acquired, it must be released with {@link #release()}
+	 */
+	public boolean tryAcquire() {
+		return readPermits.tryAcquire();
+	}
+	
+	/**
+	 * Waits until a read permit is available, the permit must be released with {@link #release()}
+	 */
+	public void acquire() {
+		readPermits.acquireUninterruptibly();
+	}
+	
+	/**
+	 * Releases a read permit
+	 */
+	public void release() {
+		readPermits.release();
+	}
+	
+	/**
+	 * Tells whether the block device of the file store is a spinning disk. It's detected using the Linux sysfs 
+	 * attribute queue/rotational of the device or of its parent device for partitions. 
+	 * 
+	 * @param fileStore File store reference
+	 * @return Returns true only if the device is known to be rotational, false on other systems or if the device 
+	 * can't be determined
+	 */
+	public static boolean isRotational(FileStore fileStore) {
+		try {
+			Path devicePath = Paths.get(fileStore.name());
+			if (!devicePath.isAbsolute() || !Files.exists(devicePath) || !Files.isDirectory(SYS_BLOCK_DEVICES))
+				return false;
+			
+			Path sysDevice = SYS_BLOCK_DEVICES.resolve(devicePath.toRealPath().getFileName().toString());
+			if (!Files.exists(sysDevice))
+				return false;
+			
+			Path attribute = sysDevice.resolve("queue/rotational");
+			if (!Files.exists(attribute)) {
+				attribute = sysDevice.toRealPath().getParent().resolve("queue/rotational");
+			}
+			
+			List<String> lines = Files.exists(attribute) ? Files.readAllLines(attribute) : null;
+			return lines != null && !lines.isEmpty() && "1".equals(lines.get(0).trim());
+		}
+		catch(IOException | RuntimeException ex) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package ar.com.falberca.duplicate.finder.app.files.filters;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Skips the subtrees of the directories that match any exclude {@link PathPatterns}, like <code>.git</code>, 
+ * <code>node_modules</code> or snapshot directories. Files are evaluated just by the directories walked.
+ * 
+ * @author fernando
+ */
+public class DirectoryPatternFilter implements EntryConditionFilter {
+	
+	private final PathPatterns excludes;
+	
+	/**
+	 * @param excludesRef Patterns of the directories to be skipped
+	 */
+	public DirectoryPatternFilter(PathPatterns excludesRef) {
+		excludes = excludesRef;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.filters.EntryConditionFilter#evaluateDirectory(Path)
+	 */
+	@Override
+	public boolean evaluateDirectory(Path directory) {
+		Path name = directory.getFileName();
+		return name == null || !excludes.matches(directory.toString(), name.toString());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.filters.EntryConditionFilter#evaluateEntry(Path, BasicFileAttributes)
+	 */
+	@Override
+	public boolean evaluateEntry(Path file, BasicFileAttributes attributes) {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter#evaluate(FileInfo)
+	 */
+	@Override
+	public boolean evaluate(FileInfo fileInfo) {
+		return true;
+	}
+
+}
@@ -0,0 +1,37 @@
+package ar.com.falberca.duplicate.finder.app.files.filters;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Filter evaluated by the walkers on the directory entry, before a {@link FileInfo} is created for the file. Walkers 
+ * don't evaluate these filters again on the file reference, {@link #evaluate(FileInfo)} is kept for files that 
+ * weren't walked.
+ * 
+ * @author fernando
+ */
+public interface EntryConditionFilter extends FileConditionFilter {
+	
+	/**
+	 * Evaluate if the directory entry of a file pass the filter criteria or not
+	 * 
+	 * @param file Absolute path of the file
+	 * @param attributes Attributes of the file, links are not followed
+	 * @return Returns true if the criteria evaluation match the files properties, false otherwise
+	 */
+	boolean evaluateEntry(Path file, BasicFileAttributes attributes);
+	
+	/**
+	 * Evaluate if a directory should be walked or not, the whole subtree of a directory that doesn't pass the filter 
+	 * is skipped without listing it
+	 * 
+	 * @param directory Absolute path of the directory
+	 * @return Returns true if the directory must be walked, false otherwise
+	 */
+	default boolean evaluateDirectory(Path directory) {
+		return true;
+	}
+
+}
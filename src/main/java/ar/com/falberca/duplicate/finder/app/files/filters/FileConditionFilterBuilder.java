@@ -1,16 +1,26 @@
 package ar.com.falberca.duplicate.finder.app.files.filters;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
  * Creates a list of filters based on information consumed using a builder pattern.
  * 
+ * Size and path pattern filters are {@link EntryConditionFilter}, the walkers evaluate them before a file reference 
+ * is created and the excluded directories are never listed. Patterns are compiled once when the list is built, see 
+ * {@link PathPatterns} for their syntax.
+ * 
  * @author fernando
  */
 public class FileConditionFilterBuilder {
 	
 	private List<FileConditionFilter> filters = new LinkedList<>();
+	private List<String> includes = new ArrayList<>();
+	private List<String> excludes = new ArrayList<>();
+	private List<String> excludedDirectories = new ArrayList<>();
+	private long minSize = 0;
+	private long maxSize = Long.MAX_VALUE;
 	
 	/**
 	 * Creates an instance of this builder
@@ -44,12 +54,68 @@ public class FileConditionFilterBuilder {
 		return this;
 	}
 	
+	/**
+	 * Processes just the files that match any of <code>patterns</code>, all the files if none is given
+	 * @param patterns Glob or regex patterns of the files to be processed
+	 * @return Returns a reference to the current builder
+	 */
+	public FileConditionFilterBuilder include(List<String> patterns) {
+		includes.addAll(patterns);
+		return this;
+	}
+	
+	/**
+	 * Skips the files that match any of <code>patterns</code>
+	 * @param patterns Glob or regex patterns of the files to be skipped
+	 * @return Returns a reference to the current builder
+	 */
+	public FileConditionFilterBuilder exclude(List<String> patterns) {
+		excludes.addAll(patterns);
+		return this;
+	}
+	
+	/**
+	 * Skips the whole subtree of the directories that match any of <code>patterns</code>, root directories are 
+	 * always walked
+	 * @param patterns Glob or regex patterns of the directories to be skipped
+	 * @return Returns a reference to the current builder
+	 */
+	public FileConditionFilterBuilder excludeDirectories(List<String> patterns) {
+		excludedDirectories.addAll(patterns);
+		return this;
+	}
+	
+	/**
+	 * Processes just the files whose size is between <code>minSizeRef</code> and <code>maxSizeRef</code>, both 
+	 * inclusive
+	 * @param minSizeRef Minimum size in bytes
+	 * @param maxSizeRef Maximum size in bytes
+	 * @return Returns a reference to the current builder
+	 */
+	public FileConditionFilterBuilder sizeRange(long minSizeRef, long maxSizeRef) {
+		minSize = minSizeRef;
+		maxSize = maxSizeRef;
+		return this;
+	}
+	
 	/**
 	 * Creates a list of filters based on the configuration given to this builder instance
 	 * @return Returns a list of the established filters
+	 * @throws java.util.regex.PatternSyntaxException Throws an exception if a pattern is invalid
 	 */
 	public List<FileConditionFilter> build() {
-		return filters;
+		List<FileConditionFilter> builtFilters = new LinkedList<>(filters);
+		//Cheapest filters first
+		if (minSize > 0 || maxSize < Long.MAX_VALUE) {
+			builtFilters.add(new SizeRangeFilter(minSize, maxSize));
+		}
+		if (!excludedDirectories.isEmpty()) {
+			builtFilters.add(new DirectoryPatternFilter(PathPatterns.compile(excludedDirectories)));
+		}
+		if (!includes.isEmpty() || !excludes.isEmpty()) {
+			builtFilters.add(new PathPatternFilter(PathPatterns.compile(includes), PathPatterns.compile(excludes)));
+		}
+		return builtFilters;
 	}
 
 }
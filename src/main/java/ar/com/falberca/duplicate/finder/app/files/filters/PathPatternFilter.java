@@ -0,0 +1,50 @@
+package ar.com.falberca.duplicate.finder.app.files.filters;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Evaluates the path of a file against include and exclude {@link PathPatterns}. A file passes if it matches any 
+ * include pattern, or there are none, and it doesn't match any exclude pattern.
+ * 
+ * @author fernando
+ */
+public class PathPatternFilter implements EntryConditionFilter {
+	
+	private final PathPatterns includes;
+	private final PathPatterns excludes;
+	
+	/**
+	 * @param includesRef Patterns of the files to be processed, all the files if it's empty
+	 * @param excludesRef Patterns of the files to be skipped
+	 */
+	public PathPatternFilter(PathPatterns includesRef, PathPatterns excludesRef) {
+		includes = includesRef;
+		excludes = excludesRef;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.filters.EntryConditionFilter#evaluateEntry(Path, BasicFileAttributes)
+	 */
+	@Override
+	public boolean evaluateEntry(Path file, BasicFileAttributes attributes) {
+		return accepts(file.toString(), file.getFileName().toString());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter#evaluate(FileInfo)
+	 */
+	@Override
+	public boolean evaluate(FileInfo fileInfo) {
+		return (includes.isEmpty() || includes.matches(fileInfo)) && !excludes.matches(fileInfo);
+	}
+	
+	private boolean accepts(String path, String name) {
+		return (includes.isEmpty() || includes.matches(path, name)) && !excludes.matches(path, name);
+	}
+
+}
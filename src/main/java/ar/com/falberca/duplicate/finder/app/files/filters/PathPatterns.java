@@ -0,0 +1,162 @@
+package ar.com.falberca.duplicate.finder.app.files.filters;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Set of path patterns compiled once into a few regular expressions, so matching a path doesn't depend on the number
+ * of patterns. Patterns use the syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}:
+ * <ul>
+ *     <li> <code>glob:</code> or no prefix, a glob without separators matches the file name (<code>*.tmp</code>,
+ *          <code>.git</code>) and a glob with separators matches the whole absolute path
+ *          (<code>/mnt/archive/*&#47;snapshots</code>). <code>*</code>, <code>?</code>, <code>**</code>,
+ *          <code>[...]</code> and <code>{a,b}</code> are supported.</li>
+ *     <li> <code>regex:</code>, a regular expression found anywhere in the absolute path</li>
+ * </ul>
+ *
+ * @author fernando
+ */
+public class PathPatterns {
+
+	private static final String GLOB_SYNTAX = "glob:";
+	private static final String REGEX_SYNTAX = "regex:";
+	private static final String SEPARATOR = File.separator;
+	private static final String NOT_SEPARATOR = "[^" + Pattern.quote(SEPARATOR) + "]";
+
+	private final Pattern names;
+	private final Pattern paths;
+	private final Pattern regexes;
+
+	private PathPatterns(Pattern namesRef, Pattern pathsRef, Pattern regexesRef) {
+		names = namesRef;
+		paths = pathsRef;
+		regexes = regexesRef;
+	}
+
+	/**
+	 * Compiles the patterns
+	 *
+	 * @param patterns Patterns with an optional syntax prefix
+	 * @return Returns the compiled patterns
+	 * @throws java.util.regex.PatternSyntaxException Throws an exception if a pattern is invalid
+	 */
+	public static PathPatterns compile(List<String> patterns) {
+		List<String> nameGlobs = new ArrayList<>();
+		List<String> pathGlobs = new ArrayList<>();
+		List<String> regexes = new ArrayList<>();
+		for (String pattern : patterns) {
+			if (pattern.startsWith(REGEX_SYNTAX)) {
+				regexes.add(pattern.substring(REGEX_SYNTAX.length()));
+			}
+			else {
+				String glob = pattern.startsWith(GLOB_SYNTAX) ? pattern.substring(GLOB_SYNTAX.length()) : pattern;
+				(glob.contains(SEPARATOR) ? pathGlobs : nameGlobs).add(globToRegex(glob));
+			}
+		}
+		return new PathPatterns(alternation(nameGlobs), alternation(pathGlobs), alternation(regexes));
+	}
+
+	/**
+	 * @return Returns true if there are no patterns, an empty set doesn't match any path
+	 */
+	public boolean isEmpty() {
+		return names == null && paths == null && regexes == null;
+	}
+
+	/**
+	 * @param path Absolute path of the file or directory
+	 * @param name Name of the file or directory
+	 * @return Returns true if any pattern matches the file or directory
+	 */
+	public boolean matches(String path, String name) {
+		return (names != null && names.matcher(name).matches()) ||
+			   (paths != null && paths.matcher(path).matches()) ||
+			   (regexes != null && regexes.matcher(path).find());
+	}
+
+	/**
+	 * Matches a file reference, its path is built only if there are patterns of the absolute path
+	 *
+	 * @param fileInfo File reference
+	 * @return Returns true if any pattern matches the file
+	 */
+	public boolean matches(FileInfo fileInfo) {
+		if (names != null && names.matcher(fileInfo.getName()).matches())
+			return true;
+		if (paths == null && regexes == null)
+			return false;
+
+		String path = fileInfo.getPath();
+		return (paths != null && paths.matcher(path).matches()) || (regexes != null && regexes.matcher(path).find());
+	}
+
+	private static Pattern alternation(List<String> regexes) {
+		if (regexes.isEmpty())
+			return null;
+
+		StringBuilder alternation = new StringBuilder();
+		for (String regex : regexes) {
+			alternation.append(alternation.length() == 0 ? "" : "|").append("(?:").append(regex).append(')');
+		}
+		return Pattern.compile(alternation.toString());
+	}
+
+	/*
+	 * Translates a glob to a regular expression, groups can't be nested
+	 */
+	private static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		boolean inGroup = false;
+		for (int index = 0; index < glob.length(); index++) {
+			char character = glob.charAt(index);
+			switch (character) {
+				case '*':
+					if (index + 1 < glob.length() && glob.charAt(index + 1) == '*') {
+						regex.append(".*");
+						index++;
+					}
+					else {
+						regex.append(NOT_SEPARATOR).append('*');
+					}
+					break;
+				case '?':
+					regex.append(NOT_SEPARATOR);
+					break;
+				case '[':
+					int end = glob.indexOf(']', index + 1);
+					if (end < 0) {
+						regex.append("\\[");
+						break;
+					}
+					String characters = glob.substring(index + 1, end);
+					regex.append('[');
+					if (characters.startsWith("!")) {
+						regex.append('^');
+						characters = characters.substring(1);
+					}
+					regex.append(characters.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+					index = end;
+					break;
+				case '{':
+					regex.append("(?:");
+					inGroup = true;
+					break;
+				case '}':
+					regex.append(inGroup ? ")" : "\\}");
+					inGroup = false;
+					break;
+				case ',':
+					regex.append(inGroup ? "|" : ",");
+					break;
+				default:
+					regex.append(Pattern.quote(String.valueOf(character)));
+			}
+		}
+		return regex.toString();
+	}
+
+}
@@ -0,0 +1,50 @@
+package ar.com.falberca.duplicate.finder.app.files.filters;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Evaluates if the size of a regular file is between a minimum and a maximum, both inclusive. Symbolic links are 
+ * not evaluated.
+ * 
+ * @author fernando
+ */
+public class SizeRangeFilter implements EntryConditionFilter {
+	
+	private final long minSize;
+	private final long maxSize;
+	
+	/**
+	 * @param minSizeRef Minimum size in bytes
+	 * @param maxSizeRef Maximum size in bytes
+	 */
+	public SizeRangeFilter(long minSizeRef, long maxSizeRef) {
+		minSize = minSizeRef;
+		maxSize = maxSizeRef;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.filters.EntryConditionFilter#evaluateEntry(Path, BasicFileAttributes)
+	 */
+	@Override
+	public boolean evaluateEntry(Path file, BasicFileAttributes attributes) {
+		return attributes.isSymbolicLink() || inRange(attributes.size());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter#evaluate(FileInfo)
+	 */
+	@Override
+	public boolean evaluate(FileInfo fileInfo) {
+		return fileInfo.isLink() || inRange(fileInfo.getSize());
+	}
+	
+	private boolean inRange(long size) {
+		return size >= minSize && size <= maxSize;
+	}
+
+}
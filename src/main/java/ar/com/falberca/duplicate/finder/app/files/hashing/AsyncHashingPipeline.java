@@ -0,0 +1,292 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import ar.com.falberca.duplicate.finder.app.metrics.ScanEvents;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+
+/**
+ * Calculates digests of whole files reading them through {@link AsynchronousFileChannel}. Every file in flight owns
+ * two chunk buffers: while the content of one buffer is being digested the next chunk is read into the other one,
+ * so reading and hashing a file overlap. Read completions and digests run on a small pool of hashing threads shared
+ * by all the files, many files can be in flight at the same time without a thread per file.
+ *
+ * Buffers are direct and taken from a pool bounded by the maximum number of bytes in flight. Submitting a file
+ * blocks the caller until the pool has the two buffers of the file, so the memory used by the pipeline doesn't
+ * depend on the number of files submitted.
+ *
+ * Instances are thread safe and are meant to be shared by all the consumer threads.
+ *
+ * @author fernando
+ */
+public class AsyncHashingPipeline implements Closeable {
+
+	/**
+	 * Default size of each chunk buffer, 1MB
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+	/**
+	 * Default maximum size of the buffers of the files in flight, 64MB
+	 */
+	public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+
+	private static final Set<OpenOption> READ_OPTIONS = Collections.singleton(StandardOpenOption.READ);
+
+	private final Supplier<ContentHasher> hasherSupplier;
+	private final int chunkSize;
+	private final ExecutorService hashingExecutor;
+	private final Semaphore availableBuffers;
+	private final int maxFilesInFlight;
+	private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Creates a pipeline with the default chunk size and in flight bytes
+	 *
+	 * @param hasherSupplier Supplier of new hashers, a hasher is created for every file
+	 * @param hashingThreads Number of threads completing reads and digesting chunks
+	 */
+	public AsyncHashingPipeline(Supplier<ContentHasher> hasherSupplier, int hashingThreads) {
+		this(hasherSupplier, hashingThreads, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_IN_FLIGHT_BYTES);
+	}
+
+	/**
+	 * @param hasherSupplierRef Supplier of new hashers, a hasher is created for every file
+	 * @param hashingThreads Number of threads completing reads and digesting chunks
+	 * @param chunkSize Size in bytes of each read
+	 * @param maxInFlightBytes Maximum size in bytes of all the chunk buffers, at least two chunks
+	 */
+	public AsyncHashingPipeline(Supplier<ContentHasher> hasherSupplierRef, int hashingThreads, int chunkSize,
+								long maxInFlightBytes) {
+		if (hashingThreads < 1)
+			throw new IllegalArgumentException("Invalid number of hashing threads: " + hashingThreads);
+
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+
+		if (maxInFlightBytes < 2L * chunkSize)
+			throw new IllegalArgumentException("In flight bytes must hold at least two chunks: " + maxInFlightBytes);
+
+		hasherSupplier = hasherSupplierRef;
+		this.chunkSize = chunkSize;
+		int buffers = (int) Math.min(Integer.MAX_VALUE, maxInFlightBytes / chunkSize);
+		availableBuffers = new Semaphore(buffers);
+		maxFilesInFlight = buffers / 2;
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "async-hash-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+		hashingExecutor = Executors.newFixedThreadPool(hashingThreads, threadFactory);
+	}
+
+	/**
+	 * Starts the digest of the whole file content. Blocks while the buffers of the files already in flight exceed
+	 * the maximum in flight bytes.
+	 *
+	 * @param path File location
+	 * @return Returns a future completed with the digest bytes, or completed exceptionally if the file can't be read
+	 * @throws InterruptedException Throws an exception if the thread is interrupted while waiting for buffers
+	 */
+	public CompletableFuture<byte[]> hash(Path path) throws InterruptedException {
+		CompletableFuture<byte[]> result = new CompletableFuture<>();
+		availableBuffers.acquire(2);
+
+		AsynchronousFileChannel channel;
+		long size;
+		try {
+			channel = AsynchronousFileChannel.open(path, READ_OPTIONS, hashingExecutor);
+		}
+		catch(IOException | RuntimeException ex) {
+			availableBuffers.release(2);
+			result.completeExceptionally(ex);
+			return result;
+		}
+		try {
+			size = channel.size();
+		}
+		catch(IOException ex) {
+			closeQuietly(channel);
+			availableBuffers.release(2);
+			result.completeExceptionally(ex);
+			return result;
+		}
+
+		new FileDigest(path, channel, size, result).start();
+		return result;
+	}
+
+	/**
+	 * Number of files that can be in flight at the same time, every file holds two chunk buffers
+	 *
+	 * @return Returns the maximum number of files in flight
+	 */
+	public int getMaxFilesInFlight() {
+		return maxFilesInFlight;
+	}
+
+	/**
+	 * Stops the hashing threads, files in flight are not completed
+	 */
+	@Override
+	public void close() {
+		hashingExecutor.shutdownNow();
+	}
+
+	private static void closeQuietly(AsynchronousFileChannel channel) {
+		try {
+			channel.close();
+		}
+		catch(IOException ex) {
+			//Nothing was read or the content was already read
+		}
+	}
+
+	private ByteBuffer takeBuffer() {
+		ByteBuffer buffer = bufferPool.poll();
+		return buffer == null ? ByteBuffer.allocateDirect(chunkSize) : buffer;
+	}
+
+	/*
+	 * Digest in progress of a single file. The chunk k is digested once it was read and the chunk k - 1 was
+	 * digested, the same event starts the read of the chunk k + 1 into the buffer of the chunk k - 1. Those two
+	 * arrivals are counted, so the hasher and each buffer are used by a single thread at a time. A failed read is
+	 * also an arrival, so the buffers are not returned to the pool while a chunk is being digested.
+	 */
+	private class FileDigest implements CompletionHandler<Integer, Void> {
+
+		private final Path path;
+		private final AsynchronousFileChannel channel;
+		private final long size;
+		private final CompletableFuture<byte[]> result;
+		private final ContentHasher hasher = hasherSupplier.get();
+		private final ByteBuffer[] buffers = new ByteBuffer[] {takeBuffer(), takeBuffer()};
+		private final AtomicInteger arrivals = new AtomicInteger();
+		private final long start = System.nanoTime();
+		private final Object fileHash = ScanEvents.beginFileHash();
+
+		private int readBuffer = 0;
+		private long position = 0;
+		private boolean endOfFile = false;
+		private Throwable failure;
+
+		private FileDigest(Path path, AsynchronousFileChannel channel, long size, CompletableFuture<byte[]> result) {
+			this.path = path;
+			this.channel = channel;
+			this.size = size;
+			this.result = result;
+		}
+
+		private void start() {
+			//There is no previous chunk to wait for
+			arrivals.set(1);
+			read();
+		}
+
+		private void read() {
+			try {
+				channel.read(buffers[readBuffer], position, null, this);
+			}
+			catch(RuntimeException ex) {
+				failed(ex, null);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.nio.channels.CompletionHandler#completed(java.lang.Object, java.lang.Object)
+		 */
+		@Override
+		public void completed(Integer bytesRead, Void attachment) {
+			if (bytesRead > 0) {
+				position += bytesRead;
+			}
+			//Bytes appended after the digest started are not read, as when the file is memory mapped
+			endOfFile = bytesRead < 0 || position >= size;
+			arrive();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.nio.channels.CompletionHandler#failed(java.lang.Throwable, java.lang.Object)
+		 */
+		@Override
+		public void failed(Throwable exc, Void attachment) {
+			failure = exc;
+			arrive();
+		}
+
+		/*
+		 * Invoked when a chunk was read or failed and when the previous chunk was digested. The second arrival
+		 * starts the read of the next chunk and digests the current one, the loop counts the digest as the first
+		 * arrival of the next chunk.
+		 */
+		private void arrive() {
+			while (arrivals.incrementAndGet() == 2) {
+				arrivals.set(0);
+				if (failure != null) {
+					finish();
+					result.completeExceptionally(failure);
+					return;
+				}
+
+				ByteBuffer chunk = buffers[readBuffer];
+				boolean lastChunk = endOfFile;
+				if (!lastChunk) {
+					readBuffer = 1 - readBuffer;
+					read();
+				}
+
+				chunk.flip();
+				hasher.update(chunk);
+				chunk.clear();
+
+				if (lastChunk) {
+					complete();
+					return;
+				}
+			}
+		}
+
+		private void complete() {
+			byte[] digest = hasher.digest();
+			finish();
+			ScanMetrics.current().fileHashed(System.nanoTime() - start, position);
+			ScanEvents.endFileHash(fileHash, path, position);
+			result.complete(digest);
+		}
+
+		/*
+		 * Closes the channel and returns the buffers to the pool
+		 */
+		private void finish() {
+			closeQuietly(channel);
+			for (ByteBuffer buffer : buffers) {
+				buffer.clear();
+				bufferPool.offer(buffer);
+			}
+			availableBuffers.release(2);
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Base class for hashes that consume the content in fixed size little endian blocks. Chunks received by 
+ * {@link #update(ByteBuffer)} don't need to be aligned to the block size, bytes that don't complete a block are 
+ * kept until the next update or until the digest is calculated.
+ * 
+ * @author fernando
+ */
+public abstract class BlockContentHasher implements ContentHasher {
+	
+	private final int blockSize;
+	private final ByteBuffer pendingBytes;
+	private long totalLength;
+	
+	/**
+	 * @param blockSize Number of bytes consumed by each call to {@link #processBlock(ByteBuffer)}
+	 */
+	protected BlockContentHasher(int blockSize) {
+		this.blockSize = blockSize;
+		pendingBytes = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.ContentHasher#update(java.nio.ByteBuffer)
+	 */
+	@Override
+	public final void update(ByteBuffer data) {
+		ByteOrder originalOrder = data.order();
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		totalLength += data.remaining();
+		
+		if (pendingBytes.position() > 0) {
+			while (pendingBytes.hasRemaining() && data.hasRemaining()) {
+				pendingBytes.put(data.get());
+			}
+			if (!pendingBytes.hasRemaining()) {
+				pendingBytes.flip();
+				processBlock(pendingBytes);
+				pendingBytes.clear();
+			}
+		}
+		
+		while (data.remaining() >= blockSize) {
+			processBlock(data);
+		}
+		
+		while (data.hasRemaining()) {
+			pendingBytes.put(data.get());
+		}
+		
+		data.order(originalOrder);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.ContentHasher#digest()
+	 */
+	@Override
+	public final byte[] digest() {
+		pendingBytes.flip();
+		byte[] digest = finish(pendingBytes, totalLength);
+		reset();
+		return digest;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.ContentHasher#reset()
+	 */
+	@Override
+	public final void reset() {
+		pendingBytes.clear();
+		totalLength = 0;
+		resetState();
+	}
+	
+	/**
+	 * Consumes exactly one block from the current position of <code>data</code>, which is in little endian order.
+	 * 
+	 * @param data Buffer with at least one block of remaining bytes
+	 */
+	protected abstract void processBlock(ByteBuffer data);
+	
+	/**
+	 * Consumes the bytes that didn't complete a block and calculates the final digest.
+	 * 
+	 * @param remaining Buffer in little endian order with less bytes than a block
+	 * @param totalLength Number of bytes of the whole content
+	 * @return Returns the digest bytes
+	 */
+	protected abstract byte[] finish(ByteBuffer remaining, long totalLength);
+	
+	/**
+	 * Sets the hash state to its initial values
+	 */
+	protected abstract void resetState();
+
+}
@@ -0,0 +1,36 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Calculates a digest of a content that is received in chunks. Implementations keep state between updates, so an
+ * instance must not be shared among threads.
+ * 
+ * Available implementations are listed by {@link HashAlgorithm}.
+ * 
+ * @author fernando
+ */
+public interface ContentHasher {
+	
+	/**
+	 * Adds the remaining bytes of <code>data</code> to the digest. After this call the buffer has no remaining 
+	 * bytes, its byte order is not modified. 
+	 * 
+	 * @param data Chunk of content
+	 */
+	void update(ByteBuffer data);
+	
+	/**
+	 * Completes the digest of all the chunks received since the last reset and resets the hasher so it can be 
+	 * used for another content.
+	 * 
+	 * @return Returns the digest bytes
+	 */
+	byte[] digest();
+	
+	/**
+	 * Discards the chunks received since the last digest
+	 */
+	void reset();
+
+}
@@ -0,0 +1,173 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import ar.com.falberca.duplicate.finder.app.files.devices.StorageDevice;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanEvents;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+
+/**
+ * Calculates the digest of a file content reading it through a {@link FileChannel}. The engine keeps a single
+ * direct buffer and a single {@link ContentHasher} instance that are reused for every file, so hashing a file doesn't allocate
+ * buffers on the heap. The buffer is allocated when the first file is read. Files bigger than the mapping threshold
+ * are not copied into the buffer, their content is memory mapped by regions and digested directly from the mapped
+ * memory. When a {@link TreeHashingScheduler} is set, files of at least its threshold are hashed as a tree of
+ * segments digested by several threads, see {@link #setTreeHashing(TreeHashingScheduler)}.
+ *
+ * Instances are not thread safe, every consumer thread must use its own engine.
+ *
+ * @author fernando
+ */
+public class FileHashingEngine {
+
+	/**
+	 * Default size of the read buffer, 4MB
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Default size from which files are memory mapped instead of read, 64MB
+	 */
+	public static final long DEFAULT_MAPPING_THRESHOLD = 64L * 1024 * 1024;
+
+	/*
+	 * Size of each mapped region, bigger files are mapped one region at a time
+	 */
+	private static final long MAPPED_REGION_SIZE = 256L * 1024 * 1024;
+
+	private final ContentHasher contentHasher;
+	private final int bufferSize;
+	private final long mappingThreshold;
+	private ByteBuffer buffer;
+	private TreeHashingScheduler treeHashing;
+
+	/**
+	 * Creates an engine that calculates MD5 digests using the default buffer size and mapping threshold
+	 */
+	public FileHashingEngine() {
+		this(HashAlgorithm.MD5.createHasher(), DEFAULT_MAPPING_THRESHOLD);
+	}
+
+	/**
+	 * Creates an engine that uses the default buffer size
+	 *
+	 * @param contentHasherRef Hasher used for calculating digests, it must not be shared with other engines
+	 * @param mappingThreshold Size in bytes from which files are memory mapped
+	 */
+	public FileHashingEngine(ContentHasher contentHasherRef, long mappingThreshold) {
+		this(contentHasherRef, DEFAULT_BUFFER_SIZE, mappingThreshold);
+	}
+
+	/**
+	 * Creates an engine that calculates digests using <code>contentHasherRef</code>
+	 *
+	 * @param contentHasherRef Hasher used for calculating digests, it must not be shared with other engines
+	 * @param bufferSize Size in bytes of the direct buffer used for reading files
+	 * @param mappingThreshold Size in bytes from which files are memory mapped
+	 */
+	public FileHashingEngine(ContentHasher contentHasherRef, int bufferSize, long mappingThreshold) {
+		if (bufferSize < 1)
+			throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+
+		if (mappingThreshold < 1)
+			throw new IllegalArgumentException("Invalid mapping threshold: " + mappingThreshold);
+
+		contentHasher = contentHasherRef;
+		this.bufferSize = bufferSize;
+		this.mappingThreshold = mappingThreshold;
+	}
+
+	/**
+	 * Sets the scheduler that hashes the biggest files as a tree of segments, their digests are tree digests that
+	 * only match digests calculated with the same segment size
+	 *
+	 * @param treeHashingRef Scheduler reference, shared with the other engines, or null for hashing every file as a
+	 * whole
+	 */
+	public void setTreeHashing(TreeHashingScheduler treeHashingRef) {
+		treeHashing = treeHashingRef;
+	}
+
+	/**
+	 * Calculates the digest of the whole file content, the segments of a file hashed as a tree are read by other 
+	 * threads without limits
+	 *
+	 * @param path File location
+	 * @return Returns the digest bytes
+	 * @throws IOException Throws an exception if the file can't be read
+	 */
+	public byte[] hash(Path path) throws IOException {
+		return hash(path, null);
+	}
+
+	/**
+	 * Calculates the digest of the whole file content
+	 *
+	 * @param path File location
+	 * @param device Device of the file, whose read permit is held by the calling thread. Other threads reading the 
+	 * segments of a file hashed as a tree need a permit of the device too. Can be null if their reads are not limited
+	 * @return Returns the digest bytes
+	 * @throws IOException Throws an exception if the file can't be read
+	 */
+	public byte[] hash(Path path, StorageDevice device) throws IOException {
+		contentHasher.reset();
+		long start = System.nanoTime();
+		Object fileHash = ScanEvents.beginFileHash();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			byte[] digest;
+			if (treeHashing != null && treeHashing.isTreeHashed(size)) {
+				digest = treeHashing.hash(channel, size, device);
+			}
+			else {
+				if (size >= mappingThreshold) {
+					hashMapped(channel, size);
+				}
+				else {
+					hashBuffered(channel);
+				}
+				digest = contentHasher.digest();
+			}
+			ScanMetrics.current().fileHashed(System.nanoTime() - start, size);
+			ScanEvents.endFileHash(fileHash, path, size);
+			return digest;
+		}
+	}
+
+	/*
+	 * Reads the channel until the end of the file, read operations can return 0 bytes before reaching the end so
+	 * just a negative value finishes the loop
+	 */
+	private void hashBuffered(FileChannel channel) throws IOException {
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+		}
+		
+		buffer.clear();
+		while (channel.read(buffer) >= 0) {
+			buffer.flip();
+			contentHasher.update(buffer);
+			buffer.clear();
+		}
+	}
+
+	/*
+	 * Maps the file one region at a time, mapped regions are released when they are garbage collected
+	 */
+	private void hashMapped(FileChannel channel, long size) throws IOException {
+		for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+			MappedByteBuffer region = channel.map(MapMode.READ_ONLY,
+												  position,
+												  Math.min(MAPPED_REGION_SIZE, size - position));
+			contentHasher.update(region);
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Available algorithms for hashing file contents. Cryptographic digests have a negligible probability of collision
+ * but are CPU bound on fast disks. Non cryptographic hashes are several times faster, so disk throughput remains 
+ * the bottleneck, at the cost of a higher probability of collision.
+ * 
+ * @author fernando
+ */
+public enum HashAlgorithm {
+	
+	MD5("md5", () -> new MessageDigestHasher("MD5")),
+	SHA256("sha256", () -> new MessageDigestHasher("SHA-256")),
+	XXHASH64("xxhash64", XxHash64Hasher::new),
+	MURMUR3_128("murmur3", Murmur3Hasher::new);
+	
+	private final String algorithmName;
+	private final Supplier<ContentHasher> hasherSupplier;
+	
+	private HashAlgorithm(String algorithmName, Supplier<ContentHasher> hasherSupplier) {
+		this.algorithmName = algorithmName;
+		this.hasherSupplier = hasherSupplier;
+	}
+	
+	/**
+	 * Name used for selecting the algorithm
+	 * 
+	 * @return Returns the algorithm name
+	 */
+	public String getAlgorithmName() {
+		return algorithmName;
+	}
+	
+	/**
+	 * Creates a new hasher instance of this algorithm
+	 * 
+	 * @return Returns a new hasher
+	 */
+	public ContentHasher createHasher() {
+		return hasherSupplier.get();
+	}
+	
+	/**
+	 * Finds an algorithm by its name, ignoring the case
+	 * 
+	 * @param algorithmName Name of the algorithm
+	 * @return Returns the matching algorithm
+	 * @throws IllegalArgumentException Throws an exception if there is no algorithm with the given name
+	 */
+	public static HashAlgorithm fromName(String algorithmName) {
+		return Arrays.stream(values())
+					 .filter(algorithm -> algorithm.algorithmName.equalsIgnoreCase(algorithmName))
+					 .findFirst()
+					 .orElseThrow(() -> new IllegalArgumentException("Unknown hash algorithm: " + algorithmName + 
+							 										 ". Available algorithms: " + availableNames()));
+	}
+	
+	/**
+	 * Lists the names of all the algorithms
+	 * 
+	 * @return Returns a comma separated list of names
+	 */
+	public static String availableNames() {
+		return Arrays.stream(values()).map(HashAlgorithm::getAlgorithmName).collect(Collectors.joining(", "));
+	}
+
+}
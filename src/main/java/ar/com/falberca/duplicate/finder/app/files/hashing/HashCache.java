@@ -0,0 +1,324 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * On disk cache of file digests for incremental scans. A cached digest is reused only while the file keeps the
+ * same path, size, modification time and file key (device and inode on unix systems), otherwise the file is
+ * hashed again and the new digest replaces the cached one.
+ *
+ * The cache file is append only: a header followed by one record per stored digest, later records replace earlier
+ * records of the same path. Entries that are not used during a scan are considered stale, when the cache is closed
+ * the file is compacted rewriting just the entries used by the scan. A cache file created for a different digest
+ * configuration, or a truncated one, is discarded.
+ *
+ * Entries are kept by directory and by name, so looking up a file doesn't build its path.
+ *
+ * The cache can be shared among consumer threads.
+ *
+ * @author fernando
+ */
+public class HashCache implements Closeable {
+
+	/**
+	 * Kind of digest stored for a file, a file can have a digest of each kind
+	 */
+	public enum DigestType {
+		SAMPLE,
+		FULL
+	}
+
+	private static final int MAGIC = 0x44464843;
+	private static final int VERSION = 1;
+
+	private final Logger logger = LoggerFactory.getLogger(HashCache.class);
+
+	private final Path cacheFile;
+	private final String digestDescription;
+	private final Map<String, Map<String, CacheEntry>> entries = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private DataOutputStream output;
+	private long recordsInFile = 0;
+
+	/*
+	 * Use HashCache.open for creating instances
+	 */
+	private HashCache(Path cacheFileRef, String digestDescriptionRef) {
+		cacheFile = cacheFileRef;
+		digestDescription = digestDescriptionRef;
+	}
+
+	/**
+	 * Opens or creates a cache file. Digests depend on the hashing configuration, so a cache file is reused only
+	 * if it was created with the same <code>digestDescription</code>.
+	 *
+	 * @param cacheFile Location of the cache file
+	 * @param digestDescription Description of the algorithms used for calculating digests, such as "md5/4096"
+	 * @return Returns the opened cache
+	 * @throws IOException Throws an exception if the cache file can't be read or written
+	 */
+	public static HashCache open(Path cacheFile, String digestDescription) throws IOException {
+		HashCache hashCache = new HashCache(cacheFile, digestDescription);
+
+		boolean reusable = Files.exists(cacheFile) && hashCache.load();
+		if (reusable) {
+			hashCache.output = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(cacheFile, StandardOpenOption.APPEND)));
+		}
+		else {
+			hashCache.rewrite();
+		}
+
+		hashCache.logger.info("Hash cache opened: {} with {} entries", cacheFile, hashCache.size());
+		return hashCache;
+	}
+
+	/**
+	 * Returns the cached digest of the file if the file didn't change since the digest was stored
+	 *
+	 * @param fileInfo File reference
+	 * @param digestType Kind of digest
+	 * @return Returns the digest bytes or null if there is no valid digest for the file
+	 */
+	public byte[] getDigest(FileInfo fileInfo, DigestType digestType) {
+		Map<String, CacheEntry> directoryEntries = entries.get(fileInfo.getDirectory());
+		CacheEntry entry = directoryEntries == null ? null : directoryEntries.get(fileInfo.getName());
+		byte[] digest = entry != null && entry.matches(fileInfo) ? entry.getDigest(digestType) : null;
+
+		if (digest == null) {
+			misses.increment();
+		}
+		else {
+			entry.used = true;
+			hits.increment();
+		}
+		return digest;
+	}
+
+	/**
+	 * Stores the digest of a file, replacing the digest of the same kind if it was already cached
+	 *
+	 * @param fileInfo File reference
+	 * @param digestType Kind of digest
+	 * @param digest Digest bytes
+	 * @throws IOException Throws an exception if the digest can't be written to the cache file
+	 */
+	public synchronized void putDigest(FileInfo fileInfo, DigestType digestType, byte[] digest) throws IOException {
+		Map<String, CacheEntry> directoryEntries = entries.computeIfAbsent(fileInfo.getDirectory(), 
+																		  directory -> new ConcurrentHashMap<>());
+		CacheEntry entry = directoryEntries.get(fileInfo.getName());
+		if (entry == null || !entry.matches(fileInfo)) {
+			entry = new CacheEntry(fileInfo.getSize(), fileInfo.getLastModified(), fileKeyOf(fileInfo));
+			directoryEntries.put(fileInfo.getName(), entry);
+		}
+		entry.setDigest(digestType, digest);
+		entry.used = true;
+
+		writeRecord(output, fileInfo.getPath(), entry, digestType);
+	}
+
+	/**
+	 * Flushes the pending records and compacts the cache file if it has stale entries
+	 *
+	 * @throws IOException Throws an exception if the cache file can't be written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		output.close();
+
+		long usedRecords = entries.values()
+								  .stream()
+								  .flatMap(directoryEntries -> directoryEntries.values().stream())
+								  .filter(entry -> entry.used)
+								  .mapToLong(CacheEntry::records)
+								  .sum();
+		boolean compacted = usedRecords < recordsInFile;
+		if (compacted) {
+			entries.values().forEach(directoryEntries -> directoryEntries.values().removeIf(entry -> !entry.used));
+			entries.values().removeIf(Map::isEmpty);
+			rewrite();
+			output.close();
+		}
+
+		logger.info("Hash cache closed. Hits: {}, misses: {}, entries: {}, compacted: {}",
+					hits.sum(), misses.sum(), size(), compacted);
+	}
+
+	private long size() {
+		return entries.values().stream().mapToLong(Map::size).sum();
+	}
+
+	/*
+	 * Reads all the records of the cache file, returns false if the file can't be reused as it is
+	 */
+	private boolean load() throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION ||
+				!digestDescription.equals(input.readUTF())) {
+				logger.info("Hash cache {} was created with a different configuration and will be discarded", cacheFile);
+				return false;
+			}
+
+			while (true) {
+				int type = input.read();
+				if (type < 0)
+					return true;
+				
+				if (type >= DigestType.values().length) {
+					logger.warn("Hash cache {} is corrupted, just the records before the corruption will be kept", 
+								cacheFile);
+					return false;
+				}
+				
+				readRecord(input, DigestType.values()[type]);
+				recordsInFile++;
+			}
+		}
+		catch(EOFException ex) {
+			logger.warn("Hash cache {} is truncated, just the complete records will be kept", cacheFile);
+			return false;
+		}
+	}
+
+	/*
+	 * Reads the rest of a record whose type was already read and adds it to the entries
+	 */
+	private void readRecord(DataInputStream input, DigestType digestType) throws IOException {
+		String path = input.readUTF();
+		long size = input.readLong();
+		long lastModified = input.readLong();
+		String fileKey = input.readUTF();
+		byte[] digest = new byte[input.readUnsignedByte()];
+		input.readFully(digest);
+
+		//The directory keeps the separator only for the files of a root of the file system, as the walkers do
+		int separator = path.lastIndexOf(File.separatorChar);
+		String directory = path.substring(0, Math.max(separator, 0));
+		if (directory.indexOf(File.separatorChar) < 0) {
+			directory = path.substring(0, separator + 1);
+		}
+		String name = path.substring(separator + 1);
+
+		Map<String, CacheEntry> directoryEntries = entries.computeIfAbsent(directory, 
+																		  key -> new ConcurrentHashMap<>());
+		CacheEntry entry = directoryEntries.get(name);
+		if (entry == null || entry.size != size || entry.lastModified != lastModified ||
+			!entry.fileKey.equals(fileKey)) {
+			entry = new CacheEntry(size, lastModified, fileKey);
+			directoryEntries.put(name, entry);
+		}
+		entry.setDigest(digestType, digest);
+	}
+
+	/*
+	 * Writes a new cache file with the current entries and leaves it open for appending records
+	 */
+	private void rewrite() throws IOException {
+		Path temporaryFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+
+		recordsInFile = 0;
+		try (DataOutputStream temporaryOutput = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(temporaryFile)))) {
+			temporaryOutput.writeInt(MAGIC);
+			temporaryOutput.writeInt(VERSION);
+			temporaryOutput.writeUTF(digestDescription);
+
+			for (Map.Entry<String, Map<String, CacheEntry>> directoryEntries : entries.entrySet()) {
+				for (Map.Entry<String, CacheEntry> entry : directoryEntries.getValue().entrySet()) {
+					String path = FileInfo.pathOf(directoryEntries.getKey(), entry.getKey());
+					for (DigestType digestType : DigestType.values()) {
+						if (entry.getValue().getDigest(digestType) != null) {
+							writeRecord(temporaryOutput, path, entry.getValue(), digestType);
+						}
+					}
+				}
+			}
+		}
+
+		Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		output = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(cacheFile, StandardOpenOption.APPEND)));
+	}
+
+	private void writeRecord(DataOutputStream out, String path, CacheEntry entry, DigestType digestType)
+			throws IOException {
+		byte[] digest = entry.getDigest(digestType);
+
+		out.writeByte(digestType.ordinal());
+		out.writeUTF(path);
+		out.writeLong(entry.size);
+		out.writeLong(entry.lastModified);
+		out.writeUTF(entry.fileKey);
+		out.writeByte(digest.length);
+		out.write(digest);
+		recordsInFile++;
+	}
+
+	private static String fileKeyOf(FileInfo fileInfo) {
+		return Objects.toString(fileInfo.getFileKey(), "");
+	}
+
+	/*
+	 * Cached digests of a file and the attributes the file had when they were calculated
+	 */
+	private static class CacheEntry {
+
+		private final long size;
+		private final long lastModified;
+		private final String fileKey;
+		private volatile byte[] sampleDigest;
+		private volatile byte[] fullDigest;
+		private volatile boolean used = false;
+
+		private CacheEntry(long size, long lastModified, String fileKey) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.fileKey = fileKey;
+		}
+
+		private boolean matches(FileInfo fileInfo) {
+			return size == fileInfo.getSize() &&
+				   lastModified == fileInfo.getLastModified() &&
+				   fileKey.equals(fileKeyOf(fileInfo));
+		}
+
+		private byte[] getDigest(DigestType digestType) {
+			return digestType == DigestType.SAMPLE ? sampleDigest : fullDigest;
+		}
+
+		private void setDigest(DigestType digestType, byte[] digest) {
+			if (digestType == DigestType.SAMPLE) {
+				sampleDigest = digest;
+			}
+			else {
+				fullDigest = digest;
+			}
+		}
+
+		private long records() {
+			return (sampleDigest != null ? 1 : 0) + (fullDigest != null ? 1 : 0);
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hasher backed by a JDK {@link MessageDigest}, such as MD5 or SHA-256.
+ * 
+ * @author fernando
+ */
+public class MessageDigestHasher implements ContentHasher {
+	
+	private final MessageDigest messageDigest;
+	
+	/**
+	 * Creates a hasher for the given JDK digest algorithm
+	 * 
+	 * @param algorithm Name of the digest algorithm
+	 * @throws IllegalStateException Throws an exception if the algorithm is not available in the JDK
+	 */
+	public MessageDigestHasher(String algorithm) {
+		try {
+			messageDigest = MessageDigest.getInstance(algorithm);
+		}
+		catch(NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(algorithm + " digest is not available", ex);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.ContentHasher#update(java.nio.ByteBuffer)
+	 */
+	@Override
+	public void update(ByteBuffer data) {
+		messageDigest.update(data);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.ContentHasher#digest()
+	 */
+	@Override
+	public byte[] digest() {
+		return messageDigest.digest();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.ContentHasher#reset()
+	 */
+	@Override
+	public void reset() {
+		messageDigest.reset();
+	}
+
+}
@@ -0,0 +1,114 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Pure Java implementation of the 128 bits MurmurHash3 algorithm for x64 platforms with seed 0. The digest is 
+ * formed by the two 64 bits halves of the hash in little endian order, as the reference implementation writes them.
+ * 
+ * @author fernando
+ */
+public class Murmur3Hasher extends BlockContentHasher {
+	
+	private static final long C1 = 0x87C37B91114253D5L;
+	private static final long C2 = 0x4CF5AD432745937FL;
+	
+	private long h1;
+	private long h2;
+	
+	public Murmur3Hasher() {
+		super(16);
+		resetState();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.BlockContentHasher#processBlock(java.nio.ByteBuffer)
+	 */
+	@Override
+	protected void processBlock(ByteBuffer data) {
+		long k1 = data.getLong();
+		long k2 = data.getLong();
+		
+		h1 ^= mixK1(k1);
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52DCE729;
+		
+		h2 ^= mixK2(k2);
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495AB5;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.BlockContentHasher#finish(java.nio.ByteBuffer, long)
+	 */
+	@Override
+	protected byte[] finish(ByteBuffer remaining, long totalLength) {
+		int tailLength = remaining.remaining();
+		if (tailLength > 0) {
+			long k1 = 0;
+			long k2 = 0;
+			for (int index = 0; index < tailLength; index++) {
+				long value = remaining.get() & 0xFFL;
+				if (index < 8) {
+					k1 ^= value << (index * 8);
+				}
+				else {
+					k2 ^= value << ((index - 8) * 8);
+				}
+			}
+			h1 ^= mixK1(k1);
+			h2 ^= mixK2(k2);
+		}
+		
+		h1 ^= totalLength;
+		h2 ^= totalLength;
+		
+		h1 += h2;
+		h2 += h1;
+		
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		
+		h1 += h2;
+		h2 += h1;
+		
+		return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2).array();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.BlockContentHasher#resetState()
+	 */
+	@Override
+	protected void resetState() {
+		h1 = 0;
+		h2 = 0;
+	}
+	
+	private static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		return k1 * C2;
+	}
+	
+	private static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		return k2 * C1;
+	}
+	
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xFF51AFD7ED558CCDL;
+		k ^= k >>> 33;
+		k *= 0xC4CEB9FE1A85EC53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+}
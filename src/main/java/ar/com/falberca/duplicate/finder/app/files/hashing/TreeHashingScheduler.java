@@ -0,0 +1,332 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import ar.com.falberca.duplicate.finder.app.files.devices.StorageDevice;
+
+/**
+ * Hashes very large files as a Merkle tree of fixed size segments, so a single file is not digested by a single
+ * thread while the others are idle. Files of at least the threshold size are split into segments, every segment is
+ * read with positional {@link FileChannel} reads and digested on its own, and the segment digests are combined by
+ * pairs, level by level, until the root digest of the file is left. Segment digests are prefixed with a leaf byte and
+ * the digests of the pairs with a node byte, so a segment can't be taken for an inner node of another tree.
+ *
+ * The segments are claimed by the thread hashing the file and by any idle thread that calls
+ * {@link #runPendingSegment()}, the hashing thread waits just for the segments claimed by others. The listener set
+ * with {@link #setSegmentsListener(Runnable)} is invoked every time the segments of a file are published, so idle
+ * threads can be woken up.
+ *
+ * Segments are digested by workers with their own hasher and direct read buffer, borrowed from a bounded pool while
+ * a thread digests segments and returned afterwards. Threads don't keep workers, so the buffers don't grow with the
+ * number of threads, like virtual threads. Hashing threads wait for a free worker, idle threads help only when there
+ * is one. The pool should be sized by the concurrent reads allowed by the devices.
+ *
+ * The hashing thread holds the read permit of the file's {@link StorageDevice}, idle threads read a segment only if
+ * they get another permit of the same device. Files of devices allowing a single read at a time, like rotational
+ * disks, are hashed sequentially by the hashing thread.
+ *
+ * The digest of a file depends on the segment size, so it's different from the digest of the same content hashed
+ * as a whole. All the files of at least the threshold size must be hashed by the same scheduler to be comparable.
+ *
+ * The scheduler is shared among the consumer threads.
+ *
+ * @author fernando
+ */
+public class TreeHashingScheduler {
+
+	/**
+	 * Default size of the segments, 64MB
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	private static final int READ_BUFFER_SIZE = 1024 * 1024;
+	private static final byte LEAF_PREFIX = 0;
+	private static final byte NODE_PREFIX = 1;
+
+	private final Supplier<ContentHasher> hasherSupplier;
+	private final long segmentSize;
+	private final long threshold;
+	//Workers are created the first time they are needed, up to the number of permits
+	private final Semaphore workerPermits;
+	private final Queue<SegmentWorker> idleWorkers = new ConcurrentLinkedQueue<>();
+	private final Queue<TreeHash> pendingTrees = new ConcurrentLinkedQueue<>();
+	private volatile Runnable segmentsListener = () -> {};
+
+	/**
+	 * Creates a scheduler with a worker per available processor
+	 *
+	 * @param hasherSupplierRef Supplier of the hashers of the workers digesting segments
+	 * @param segmentSize Size in bytes of the segments
+	 * @param threshold Size in bytes from which files are hashed as a tree
+	 */
+	public TreeHashingScheduler(Supplier<ContentHasher> hasherSupplierRef, long segmentSize, long threshold) {
+		this(hasherSupplierRef, segmentSize, threshold, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param hasherSupplierRef Supplier of the hashers of the workers digesting segments
+	 * @param segmentSize Size in bytes of the segments
+	 * @param threshold Size in bytes from which files are hashed as a tree
+	 * @param maxWorkers Maximum number of segments digested at the same time, each worker has a read buffer
+	 */
+	public TreeHashingScheduler(Supplier<ContentHasher> hasherSupplierRef, long segmentSize, long threshold, 
+								int maxWorkers) {
+		if (segmentSize < 1)
+			throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+		if (threshold < segmentSize)
+			throw new IllegalArgumentException("Invalid tree hashing threshold: " + threshold);
+		if (maxWorkers < 1)
+			throw new IllegalArgumentException("Invalid number of workers: " + maxWorkers);
+
+		hasherSupplier = hasherSupplierRef;
+		this.segmentSize = segmentSize;
+		this.threshold = threshold;
+		workerPermits = new Semaphore(maxWorkers);
+	}
+
+	/**
+	 * @param size Size of a file
+	 * @return Returns true if a file of that size is hashed as a tree
+	 */
+	public boolean isTreeHashed(long size) {
+		return size >= threshold;
+	}
+
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Sets the listener invoked every time there are new segments pending
+	 *
+	 * @param segmentsListenerRef Listener reference, it must not block
+	 */
+	public void setSegmentsListener(Runnable segmentsListenerRef) {
+		segmentsListener = segmentsListenerRef;
+	}
+
+	/**
+	 * @return Returns true if there are segments not claimed by any thread
+	 */
+	public boolean hasPendingSegments() {
+		return !pendingTrees.isEmpty();
+	}
+
+	/**
+	 * Claims a pending segment of any file whose device has a read permit available and digests it, if a worker is
+	 * free
+	 *
+	 * @return Returns false if there was no pending segment or no worker or permit was available
+	 */
+	public boolean runPendingSegment() {
+		if (pendingTrees.isEmpty() || !workerPermits.tryAcquire())
+			return false;
+			
+		SegmentWorker worker = borrowWorker();
+		try {
+			for (TreeHash tree : pendingTrees) {
+				if (tree.device != null && !tree.device.tryAcquire())
+					continue;
+				
+				try {
+					int segment = tree.claim();
+					if (segment >= 0) {
+						tree.run(segment, worker);
+						return true;
+					}
+					pendingTrees.remove(tree);
+				}
+				finally {
+					if (tree.device != null) {
+						tree.device.release();
+					}
+				}
+			}
+			return false;
+		}
+		finally {
+			returnWorker(worker);
+		}
+	}
+
+	/**
+	 * Calculates the root digest of the file open in <code>channel</code>, the calling thread waits for a free worker,
+	 * digests segments until every segment was claimed and waits for the ones claimed by other threads. Other threads 
+	 * don't read segments without a read permit of the device.
+	 *
+	 * @param channel Channel of the file, it's read with positional reads only
+	 * @param size Size of the file
+	 * @param device Device of the file, whose read permit is held by the calling thread, or null if the reads of
+	 * other threads are not limited
+	 * @return Returns the root digest
+	 * @throws IOException Throws an exception if any segment can't be read
+	 */
+	public byte[] hash(FileChannel channel, long size, StorageDevice device) throws IOException {
+		try {
+			workerPermits.acquire();
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a worker to hash the file", ex);
+		}
+
+		SegmentWorker worker = borrowWorker();
+		try {
+			TreeHash tree = new TreeHash(channel, size, device);
+			//A device reading a single file at a time is not shared with idle threads
+			boolean shared = device == null || device.getConcurrency() > 1;
+			if (shared) {
+				pendingTrees.add(tree);
+				segmentsListener.run();
+			}
+
+			int segment;
+			while ((segment = tree.claim()) >= 0) {
+				tree.run(segment, worker);
+			}
+			if (shared) {
+				pendingTrees.remove(tree);
+			}
+
+			//Segments claimed by other threads are digested by their own workers
+			tree.done.await();
+			if (tree.error != null)
+				throw new IOException("A segment of the file couldn't be read", tree.error);
+
+			return combine(tree.digests, worker.hasher);
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the segments of the file", ex);
+		}
+		finally {
+			returnWorker(worker);
+		}
+	}
+
+	/*
+	 * Takes an idle worker or creates a new one, the caller holds a worker permit
+	 */
+	private SegmentWorker borrowWorker() {
+		SegmentWorker worker = idleWorkers.poll();
+		return worker != null ? worker : new SegmentWorker();
+	}
+
+	private void returnWorker(SegmentWorker worker) {
+		idleWorkers.offer(worker);
+		workerPermits.release();
+	}
+
+	/*
+	 * Combines the digests by pairs until the root is left, an odd digest is promoted to the next level as it is. The 
+	 * pairs are prefixed with the node byte.
+	 */
+	private static byte[] combine(byte[][] digests, ContentHasher hasher) {
+		List<byte[]> level = new ArrayList<>(digests.length);
+		for (byte[] digest : digests) {
+			level.add(digest);
+		}
+		while (level.size() > 1) {
+			List<byte[]> nextLevel = new ArrayList<>((level.size() + 1) / 2);
+			for (int index = 0; index + 1 < level.size(); index += 2) {
+				hasher.reset();
+				hasher.update(ByteBuffer.wrap(new byte[] {NODE_PREFIX}));
+				hasher.update(ByteBuffer.wrap(level.get(index)));
+				hasher.update(ByteBuffer.wrap(level.get(index + 1)));
+				nextLevel.add(hasher.digest());
+			}
+			if (level.size() % 2 == 1) {
+				nextLevel.add(level.get(level.size() - 1));
+			}
+			level = nextLevel;
+		}
+		return level.get(0);
+	}
+
+	/*
+	 * Segments of a file being hashed, segments are claimed in order and their digests are kept by position
+	 */
+	private class TreeHash {
+
+		private final FileChannel channel;
+		private final long size;
+		private final StorageDevice device;
+		private final byte[][] digests;
+		private final AtomicInteger nextSegment = new AtomicInteger();
+		private final CountDownLatch done;
+		private volatile IOException error;
+
+		private TreeHash(FileChannel channel, long size, StorageDevice device) {
+			this.channel = channel;
+			this.size = size;
+			this.device = device;
+			digests = new byte[(int) ((size + segmentSize - 1) / segmentSize)][];
+			done = new CountDownLatch(digests.length);
+		}
+
+		/*
+		 * Returns the index of the claimed segment or -1 if every segment was claimed
+		 */
+		private int claim() {
+			int segment = nextSegment.getAndIncrement();
+			return segment < digests.length ? segment : -1;
+		}
+
+		/*
+		 * Digests a segment, once a segment failed the others are not read
+		 */
+		private void run(int segment, SegmentWorker worker) {
+			try {
+				if (error == null) {
+					long start = segment * segmentSize;
+					digests[segment] = worker.digest(channel, start, Math.min(start + segmentSize, size));
+				}
+			}
+			catch(IOException ex) {
+				error = ex;
+			}
+			finally {
+				done.countDown();
+			}
+		}
+	}
+
+	/*
+	 * Hasher and read buffer used by a single thread at a time, allocated the first time no idle worker is left. 
+	 * Segments are prefixed with the leaf byte.
+	 */
+	private class SegmentWorker {
+
+		private final ContentHasher hasher = hasherSupplier.get();
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+		private byte[] digest(FileChannel channel, long start, long end) throws IOException {
+			hasher.reset();
+			hasher.update(ByteBuffer.wrap(new byte[] {LEAF_PREFIX}));
+			long position = start;
+			while (position < end) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - position));
+				int read = channel.read(buffer, position);
+				if (read < 0)
+					throw new IOException("The file was truncated while it was hashed");
+
+				position += read;
+				buffer.flip();
+				hasher.update(buffer);
+			}
+			return hasher.digest();
+		}
+	}
+
+}
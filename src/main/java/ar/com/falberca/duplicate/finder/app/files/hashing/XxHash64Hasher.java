@@ -0,0 +1,108 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pure Java implementation of the 64 bits xxHash algorithm with seed 0. The digest is the hash value in big endian 
+ * order, matching the canonical hexadecimal representation of the reference implementation.
+ * 
+ * @author fernando
+ */
+public class XxHash64Hasher extends BlockContentHasher {
+	
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+	
+	private long v1;
+	private long v2;
+	private long v3;
+	private long v4;
+	
+	public XxHash64Hasher() {
+		super(32);
+		resetState();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.BlockContentHasher#processBlock(java.nio.ByteBuffer)
+	 */
+	@Override
+	protected void processBlock(ByteBuffer data) {
+		v1 = round(v1, data.getLong());
+		v2 = round(v2, data.getLong());
+		v3 = round(v3, data.getLong());
+		v4 = round(v4, data.getLong());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.BlockContentHasher#finish(java.nio.ByteBuffer, long)
+	 */
+	@Override
+	protected byte[] finish(ByteBuffer remaining, long totalLength) {
+		long hash;
+		if (totalLength >= 32) {
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = mergeRound(hash, v1);
+			hash = mergeRound(hash, v2);
+			hash = mergeRound(hash, v3);
+			hash = mergeRound(hash, v4);
+		}
+		else {
+			hash = PRIME5;
+		}
+		
+		hash += totalLength;
+		
+		while (remaining.remaining() >= 8) {
+			hash ^= round(0, remaining.getLong());
+			hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+		}
+		
+		if (remaining.remaining() >= 4) {
+			hash ^= (remaining.getInt() & 0xFFFFFFFFL) * PRIME1;
+			hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+		}
+		
+		while (remaining.hasRemaining()) {
+			hash ^= (remaining.get() & 0xFFL) * PRIME5;
+			hash = Long.rotateLeft(hash, 11) * PRIME1;
+		}
+		
+		hash ^= hash >>> 33;
+		hash *= PRIME2;
+		hash ^= hash >>> 29;
+		hash *= PRIME3;
+		hash ^= hash >>> 32;
+		
+		return ByteBuffer.allocate(8).putLong(hash).array();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.files.hashing.BlockContentHasher#resetState()
+	 */
+	@Override
+	protected void resetState() {
+		v1 = PRIME1 + PRIME2;
+		v2 = PRIME2;
+		v3 = 0;
+		v4 = -PRIME1;
+	}
+	
+	private static long round(long accumulator, long input) {
+		accumulator += input * PRIME2;
+		accumulator = Long.rotateLeft(accumulator, 31);
+		return accumulator * PRIME1;
+	}
+	
+	private static long mergeRound(long accumulator, long value) {
+		accumulator ^= round(0, value);
+		return accumulator * PRIME1 + PRIME4;
+	}
+
+}
@@ -0,0 +1,143 @@
+package ar.com.falberca.duplicate.finder.app.files.spill;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+/**
+ * Append only table of regular files stored in a binary file. The id of every file is the offset of its record, so
+ * the ids of the files are resolved back to their {@link FileInfo} without any index in memory.
+ *
+ * Each record holds the length of the record, the directory, the name, the size, the last modified time and the
+ * file key as a string, which is enough to collapse hardlinks and to look up the hash cache. Strings are stored as
+ * their length and their UTF-8 bytes, so paths of any length can be stored. Files are appended
+ * concurrently while the directory tree is walked, {@link #flush()} must be called before reading them back.
+ * Closing the table deletes its file.
+ *
+ * @author fernando
+ */
+public class PathTable implements Closeable {
+
+	private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+	private final Path file;
+	private final DataOutputStream output;
+	private final FileChannel channel;
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private final DataOutputStream record = new DataOutputStream(recordBytes);
+	private long length = 0;
+
+	/**
+	 * @param fileRef Location of the table, its content is replaced
+	 * @throws IOException Throws an exception if the file can't be opened
+	 */
+	public PathTable(Path fileRef) throws IOException {
+		file = fileRef;
+		output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_SIZE));
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+	}
+
+	/**
+	 * Appends a regular file to the table
+	 *
+	 * @param fileInfo File to store
+	 * @return Returns the id of the file
+	 * @throws IOException Throws an exception if the record can't be written
+	 */
+	public synchronized long append(FileInfo fileInfo) throws IOException {
+		recordBytes.reset();
+		writeString(fileInfo.getDirectory());
+		writeString(fileInfo.getName());
+		record.writeLong(fileInfo.getSize());
+		record.writeLong(fileInfo.getLastModified());
+		writeString(Objects.toString(fileInfo.getFileKey(), ""));
+
+		long pathId = length;
+		output.writeInt(recordBytes.size());
+		recordBytes.writeTo(output);
+		length += Integer.BYTES + recordBytes.size();
+		return pathId;
+	}
+
+	/**
+	 * Writes the buffered records, so every appended file can be read
+	 *
+	 * @throws IOException Throws an exception if the records can't be written
+	 */
+	public synchronized void flush() throws IOException {
+		output.flush();
+	}
+
+	/**
+	 * Reads a file of the table, it's safe to read files from several threads
+	 *
+	 * @param pathId Id returned when the file was appended
+	 * @return Returns the stored file, its file key is the string form of the original one
+	 * @throws IOException Throws an exception if the record can't be read
+	 */
+	public FileInfo read(long pathId) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+		readFully(header, pathId);
+		ByteBuffer content = ByteBuffer.allocate(header.getInt(0));
+		readFully(content, pathId + Integer.BYTES);
+
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(content.array()));
+		String directory = readString(input);
+		String name = readString(input);
+		long size = input.readLong();
+		long lastModified = input.readLong();
+		String fileKey = readString(input);
+		return new FileInfo(directory, name, size, lastModified, fileKey.isEmpty() ? null : fileKey);
+	}
+
+	/**
+	 * Closes and deletes the table
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			output.close();
+			channel.close();
+		}
+		finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/*
+	 * Writes the length and the UTF-8 bytes of a string, unlike writeUTF it has no limit of 65535 bytes
+	 */
+	private void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		record.writeInt(bytes.length);
+		record.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("Path id out of the table: " + position);
+		}
+	}
+
+}
@@ -0,0 +1,426 @@
+package ar.com.falberca.duplicate.finder.app.files.spill;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts fixed width records that don't fit in memory. A record is a key of one or more longs and the id of the
+ * path it belongs to. Records are buffered in a primitive array and every time the buffer is full it's sorted and
+ * written to a binary run file, so the heap used by the sorter doesn't depend on the number of records.
+ *
+ * Records are read back in order by a streaming k-way merge of the runs, grouped by key. When there are more runs
+ * than the merge can read at the same time, runs are merged into bigger runs first. Keys are compared as unsigned
+ * longs, records with the same key are sorted by path id. Keys with too many records to be held in memory can be 
+ * read in several parts.
+ *
+ * Adding records is thread safe. Closing the sorter deletes its run files.
+ *
+ * @author fernando
+ */
+public class RecordSorter implements Closeable {
+
+	/**
+	 * Default number of records of each run, 1M
+	 */
+	public static final int DEFAULT_RUN_RECORDS = 1 << 20;
+
+	/*
+	 * Maximum number of runs read at the same time by a merge
+	 */
+	private static final int MAX_FAN_IN = 128;
+
+	private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+	private final Path directory;
+	private final String prefix;
+	private final int keyLongs;
+	private final int stride;
+	private final int runRecords;
+	private final long[] buffer;
+	private final List<Path> runs = new ArrayList<>();
+	private int bufferedRecords = 0;
+	private long records = 0;
+
+	/**
+	 * @param directoryRef Directory where the run files are created
+	 * @param prefixRef Prefix of the run file names
+	 * @param keyLongs Number of longs of every key
+	 * @param runRecords Number of records buffered in memory before writing a run
+	 */
+	public RecordSorter(Path directoryRef, String prefixRef, int keyLongs, int runRecords) {
+		if (keyLongs < 1)
+			throw new IllegalArgumentException("Invalid key length: " + keyLongs);
+
+		if (runRecords < 1)
+			throw new IllegalArgumentException("Invalid number of records per run: " + runRecords);
+
+		directory = directoryRef;
+		prefix = prefixRef;
+		this.keyLongs = keyLongs;
+		this.runRecords = runRecords;
+		stride = keyLongs + 1;
+		buffer = new long[runRecords * stride];
+	}
+
+	/**
+	 * Adds a record whose key is a single long
+	 *
+	 * @param key Key of the record
+	 * @param pathId Id of the path of the record
+	 * @throws IOException Throws an exception if a run can't be written
+	 */
+	public synchronized void add(long key, long pathId) throws IOException {
+		int offset = bufferedRecords * stride;
+		buffer[offset] = key;
+		Arrays.fill(buffer, offset + 1, offset + keyLongs, 0);
+		buffer[offset + keyLongs] = pathId;
+		recordAdded();
+	}
+
+	/**
+	 * Adds a record
+	 *
+	 * @param key Key of the record, with the number of longs given to the constructor
+	 * @param pathId Id of the path of the record
+	 * @throws IOException Throws an exception if a run can't be written
+	 */
+	public synchronized void add(long[] key, long pathId) throws IOException {
+		int offset = bufferedRecords * stride;
+		System.arraycopy(key, 0, buffer, offset, keyLongs);
+		buffer[offset + keyLongs] = pathId;
+		recordAdded();
+	}
+
+	/**
+	 * @return Returns the number of records added
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return Returns the number of run files written so far
+	 */
+	public synchronized int getRuns() {
+		return runs.size();
+	}
+
+	/**
+	 * Writes the buffered records and starts reading all the records by key. No more records must be added.
+	 *
+	 * @return Returns a reader of the groups of records with the same key
+	 * @throws IOException Throws an exception if the runs can't be written or read
+	 */
+	public synchronized GroupReader merge() throws IOException {
+		if (bufferedRecords > 0) {
+			writeRun();
+		}
+
+		while (runs.size() > MAX_FAN_IN) {
+			List<Path> mergedRuns = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+			Path run = Files.createTempFile(directory, prefix, ".run");
+			try (RunMerger merger = new RunMerger(mergedRuns);
+				 DataOutputStream output = openOutput(run)) {
+				while (merger.hasRecord()) {
+					for (long value : merger.current()) {
+						output.writeLong(value);
+					}
+					merger.advance();
+				}
+			}
+			runs.removeAll(mergedRuns);
+			runs.add(run);
+			for (Path mergedRun : mergedRuns) {
+				Files.deleteIfExists(mergedRun);
+			}
+		}
+		return new GroupReader(new RunMerger(runs));
+	}
+
+	/**
+	 * Deletes the run files
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		for (Path run : runs) {
+			Files.deleteIfExists(run);
+		}
+		runs.clear();
+	}
+
+	private void recordAdded() throws IOException {
+		records++;
+		if (++bufferedRecords == runRecords) {
+			writeRun();
+		}
+	}
+
+	/*
+	 * Sorts the buffer and writes it as a new run
+	 */
+	private void writeRun() throws IOException {
+		sortBuffer();
+		Path run = Files.createTempFile(directory, prefix, ".run");
+		try (DataOutputStream output = openOutput(run)) {
+			for (int index = 0; index < bufferedRecords * stride; index++) {
+				output.writeLong(buffer[index]);
+			}
+		}
+		runs.add(run);
+		bufferedRecords = 0;
+	}
+
+	private static DataOutputStream openOutput(Path run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE));
+	}
+
+	/*
+	 * In place heap sort of the buffered records, it doesn't allocate and its worst case is n log n
+	 */
+	private void sortBuffer() {
+		for (int root = bufferedRecords / 2 - 1; root >= 0; root--) {
+			siftDown(root, bufferedRecords);
+		}
+		for (int end = bufferedRecords - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	private void siftDown(int root, int end) {
+		int parent = root;
+		while (true) {
+			int child = 2 * parent + 1;
+			if (child >= end)
+				return;
+
+			if (child + 1 < end && compare(buffer, child * stride, buffer, (child + 1) * stride, stride) < 0) {
+				child++;
+			}
+			if (compare(buffer, parent * stride, buffer, child * stride, stride) >= 0)
+				return;
+
+			swap(parent, child);
+			parent = child;
+		}
+	}
+
+	private void swap(int first, int second) {
+		int firstOffset = first * stride;
+		int secondOffset = second * stride;
+		for (int index = 0; index < stride; index++) {
+			long value = buffer[firstOffset + index];
+			buffer[firstOffset + index] = buffer[secondOffset + index];
+			buffer[secondOffset + index] = value;
+		}
+	}
+
+	/*
+	 * Compares the first length longs of two records as unsigned values
+	 */
+	private static int compare(long[] first, int firstOffset, long[] second, int secondOffset, int length) {
+		for (int index = 0; index < length; index++) {
+			int result = Long.compareUnsigned(first[firstOffset + index], second[secondOffset + index]);
+			if (result != 0)
+				return result;
+		}
+		return 0;
+	}
+
+	/**
+	 * Records with the same key, read by a {@link GroupReader}
+	 */
+	public static class RecordGroup {
+
+		private final long[] key;
+		private long[] pathIds = new long[1];
+		private int size = 0;
+		private boolean partial = false;
+
+		private RecordGroup(long[] key) {
+			this.key = key;
+		}
+
+		private void add(long pathId) {
+			if (size == pathIds.length) {
+				pathIds = Arrays.copyOf(pathIds, size * 2);
+			}
+			pathIds[size++] = pathId;
+		}
+
+		/**
+		 * @return Returns the key shared by the records of the group
+		 */
+		public long[] getKey() {
+			return key;
+		}
+
+		/**
+		 * @param index Position of the record in the group
+		 * @return Returns the path id of the record
+		 */
+		public long getPathId(int index) {
+			return pathIds[index];
+		}
+
+		/**
+		 * @return Returns the number of records of the group
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return Returns true if the key has more records than the ones of the group, they are read by the next 
+		 * call to {@link GroupReader#next(int)}
+		 */
+		public boolean isPartial() {
+			return partial;
+		}
+	}
+
+	/**
+	 * Reads the merged records one group at a time. It's thread safe, every group is returned to a single caller.
+	 */
+	public class GroupReader implements Closeable {
+
+		private final RunMerger merger;
+
+		private GroupReader(RunMerger mergerRef) {
+			merger = mergerRef;
+		}
+
+		/**
+		 * Reads the records of the next key
+		 *
+		 * @return Returns the next group or null if every record was read
+		 * @throws IOException Throws an exception if a run can't be read
+		 */
+		public synchronized RecordGroup next() throws IOException {
+			return next(Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Reads at most <code>maxRecords</code> records of the next key. If the key has more records the group is 
+		 * partial and the next call continues with the records of the same key. Callers reading a key in several 
+		 * calls must synchronize on the reader, so no other thread takes the rest of the records.
+		 *
+		 * @param maxRecords Maximum number of records of the group
+		 * @return Returns the next group or null if every record was read
+		 * @throws IOException Throws an exception if a run can't be read
+		 */
+		public synchronized RecordGroup next(int maxRecords) throws IOException {
+			if (!merger.hasRecord())
+				return null;
+
+			long[] record = merger.current();
+			RecordGroup group = new RecordGroup(Arrays.copyOf(record, keyLongs));
+			boolean sameKey;
+			do {
+				group.add(record[keyLongs]);
+				merger.advance();
+				record = merger.hasRecord() ? merger.current() : null;
+				sameKey = record != null && compare(record, 0, group.key, 0, keyLongs) == 0;
+			}
+			while (sameKey && group.size < maxRecords);
+			group.partial = sameKey;
+			return group;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.Closeable#close()
+		 */
+		@Override
+		public synchronized void close() throws IOException {
+			merger.close();
+		}
+	}
+
+	/*
+	 * Streams the records of several runs in order, the run with the smallest current record is kept at the head
+	 * of a priority queue
+	 */
+	private class RunMerger implements Closeable {
+
+		private final List<RunReader> readers = new ArrayList<>();
+		private final PriorityQueue<RunReader> queue = new PriorityQueue<>(
+				(first, second) -> compare(first.record, 0, second.record, 0, stride));
+
+		private RunMerger(List<Path> runFiles) throws IOException {
+			try {
+				for (Path runFile : runFiles) {
+					RunReader reader = new RunReader(runFile);
+					readers.add(reader);
+					if (reader.advance()) {
+						queue.add(reader);
+					}
+				}
+			}
+			catch(IOException ex) {
+				close();
+				throw ex;
+			}
+		}
+
+		private boolean hasRecord() {
+			return !queue.isEmpty();
+		}
+
+		private long[] current() {
+			return queue.peek().record;
+		}
+
+		private void advance() throws IOException {
+			RunReader reader = queue.poll();
+			if (reader.advance()) {
+				queue.add(reader);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (RunReader reader : readers) {
+				reader.input.close();
+			}
+		}
+	}
+
+	/*
+	 * Sequential reader of a run, holds the current record
+	 */
+	private class RunReader {
+
+		private final DataInputStream input;
+		private final long[] record = new long[stride];
+
+		private RunReader(Path runFile) throws IOException {
+			input = new DataInputStream(new BufferedInputStream(Files.newInputStream(runFile), IO_BUFFER_SIZE));
+		}
+
+		private boolean advance() throws IOException {
+			try {
+				record[0] = input.readLong();
+			}
+			catch(EOFException ex) {
+				return false;
+			}
+			for (int index = 1; index < stride; index++) {
+				record[index] = input.readLong();
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with a bucket for every power of two of nanoseconds. Buckets are {@link LongAdder} 
+ * counters, so recording from many threads doesn't contend on a shared value and no allocation is done. 
+ * Percentiles are approximated by the upper bound of the bucket where they fall, which is at most twice the real 
+ * value.
+ * 
+ * @author fernando
+ */
+public class LatencyHistogram {
+	
+	private static final int BUCKETS = Long.SIZE + 1;
+	
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+	
+	public LatencyHistogram() {
+		for (int index = 0; index < BUCKETS; index++) {
+			buckets[index] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Records a latency
+	 * 
+	 * @param nanos Latency in nanoseconds, negative values are recorded as zero
+	 */
+	public void record(long nanos) {
+		long latency = Math.max(0, nanos);
+		buckets[Long.SIZE - Long.numberOfLeadingZeros(latency)].increment();
+		count.increment();
+		totalNanos.add(latency);
+		maxNanos.accumulate(latency);
+	}
+	
+	/**
+	 * Returns the current values of the histogram, values recorded while the snapshot is taken may be partially 
+	 * included
+	 * 
+	 * @return Returns the snapshot
+	 */
+	public LatencySnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int index = 0; index < BUCKETS; index++) {
+			counts[index] = buckets[index].sum();
+			total += counts[index];
+		}
+		
+		//Bucket bounds can be above the maximum recorded, percentiles are limited by it
+		long recordedNanos = totalNanos.sum();
+		long max = maxNanos.get();
+		return new LatencySnapshot(total, 
+								   total == 0 ? 0 : toMicros(recordedNanos / total), 
+								   toMicros(Math.min(max, percentile(counts, total, 0.5))), 
+								   toMicros(Math.min(max, percentile(counts, total, 0.9))), 
+								   toMicros(Math.min(max, percentile(counts, total, 0.99))), 
+								   toMicros(max));
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/*
+	 * Returns the upper bound of the bucket that contains the percentile
+	 */
+	private static long percentile(long[] counts, long total, double percentile) {
+		long rank = (long) Math.ceil(total * percentile);
+		long accumulated = 0;
+		for (int index = 0; index < counts.length; index++) {
+			accumulated += counts[index];
+			if (accumulated >= rank && accumulated > 0)
+				return index == 0 ? 0 : index == Long.SIZE ? Long.MAX_VALUE : (1L << index) - 1;
+		}
+		return 0;
+	}
+	
+	private static double toMicros(long nanos) {
+		return nanos / 1000d;
+	}
+
+}
@@ -0,0 +1,64 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Values of a {@link LatencyHistogram} at some point in time, in microseconds. Exposed by JMX as composite data.
+ * 
+ * @author fernando
+ */
+public class LatencySnapshot {
+	
+	private final long count;
+	private final double meanMicros;
+	private final double p50Micros;
+	private final double p90Micros;
+	private final double p99Micros;
+	private final double maxMicros;
+	
+	@ConstructorProperties({"count", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "maxMicros"})
+	public LatencySnapshot(long count, double meanMicros, double p50Micros, double p90Micros, double p99Micros, 
+						   double maxMicros) {
+		this.count = count;
+		this.meanMicros = meanMicros;
+		this.p50Micros = p50Micros;
+		this.p90Micros = p90Micros;
+		this.p99Micros = p99Micros;
+		this.maxMicros = maxMicros;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanMicros() {
+		return meanMicros;
+	}
+
+	public double getP50Micros() {
+		return p50Micros;
+	}
+
+	public double getP90Micros() {
+		return p90Micros;
+	}
+
+	public double getP99Micros() {
+		return p99Micros;
+	}
+
+	public double getMaxMicros() {
+		return maxMicros;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("count: %d, mean: %.1f us, p50: %.1f us, p90: %.1f us, p99: %.1f us, max: %.1f us", 
+							 count, meanMicros, p50Micros, p90Micros, p99Micros, maxMicros);
+	}
+
+}
@@ -0,0 +1,50 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+import java.nio.file.Path;
+
+/**
+ * Records the duration of single operations of a scan as events, such as Flight Recorder events. Every operation 
+ * starts with a <code>begin</code> method, which returns the event being recorded or <code>null</code> if the event 
+ * is disabled, and finishes passing that value to the matching <code>end</code> method. Values of the events are 
+ * given as objects and converted just when the event is recorded, so disabled events don't build strings.
+ * 
+ * Use {@link ScanEvents} for recording events.
+ * 
+ * @author fernando
+ */
+public interface ScanEventRecorder {
+	
+	/**
+	 * Recorder used when events can't be recorded, every event is disabled
+	 */
+	ScanEventRecorder DISABLED = new ScanEventRecorder() {};
+	
+	default Object beginDirectoryVisit() {
+		return null;
+	}
+	
+	default void endDirectoryVisit(Object event, Path directory) {
+	}
+	
+	default Object beginQueueWait() {
+		return null;
+	}
+	
+	default void endQueueWait(Object event, String operation, int files) {
+	}
+	
+	default Object beginFileHash() {
+		return null;
+	}
+	
+	default void endFileHash(Object event, Path path, long bytes) {
+	}
+	
+	default Object beginIndexLockWait() {
+		return null;
+	}
+	
+	default void endIndexLockWait(Object event, long size) {
+	}
+
+}
@@ -0,0 +1,84 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records single operations of a scan as JDK Flight Recorder events: directory visits, queue waits, file hashes and 
+ * index lock waits. Events are disabled by default, they are recorded only when enabled in the recording settings. 
+ * While disabled, <code>begin</code> methods just check the event state and return <code>null</code>, nothing is 
+ * allocated.
+ * 
+ * The Flight Recorder API is loaded when this class is initialized. In JVMs without it every event is disabled.
+ * 
+ * @author fernando
+ */
+public final class ScanEvents {
+	
+	private static final String FLIGHT_RECORDER_RECORDER = 
+			"ar.com.falberca.duplicate.finder.app.metrics.jfr.FlightRecorderEventRecorder";
+	
+	private static final Logger logger = LoggerFactory.getLogger(ScanEvents.class);
+	
+	private static final ScanEventRecorder recorder = createRecorder();
+	
+	private ScanEvents() {
+	}
+	
+	/*
+	 * The recorder is loaded by name, so this class doesn't depend on the Flight Recorder classes
+	 */
+	private static ScanEventRecorder createRecorder() {
+		try {
+			return (ScanEventRecorder) Class.forName(FLIGHT_RECORDER_RECORDER).getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException | LinkageError ex) {
+			logger.debug("Flight Recorder is not available, scan events are disabled", ex);
+			return ScanEventRecorder.DISABLED;
+		}
+	}
+	
+	/**
+	 * Returns true if events can be recorded by this JVM
+	 * 
+	 * @return Returns true if Flight Recorder is available
+	 */
+	public static boolean isAvailable() {
+		return recorder != ScanEventRecorder.DISABLED;
+	}
+	
+	public static Object beginDirectoryVisit() {
+		return recorder.beginDirectoryVisit();
+	}
+	
+	public static void endDirectoryVisit(Object event, Path directory) {
+		recorder.endDirectoryVisit(event, directory);
+	}
+	
+	public static Object beginQueueWait() {
+		return recorder.beginQueueWait();
+	}
+	
+	public static void endQueueWait(Object event, String operation, int files) {
+		recorder.endQueueWait(event, operation, files);
+	}
+	
+	public static Object beginFileHash() {
+		return recorder.beginFileHash();
+	}
+	
+	public static void endFileHash(Object event, Path path, long bytes) {
+		recorder.endFileHash(event, path, bytes);
+	}
+	
+	public static Object beginIndexLockWait() {
+		return recorder.beginIndexLockWait();
+	}
+	
+	public static void endIndexLockWait(Object event, long size) {
+		recorder.endIndexLockWait(event, size);
+	}
+
+}
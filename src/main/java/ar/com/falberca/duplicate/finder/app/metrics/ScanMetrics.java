@@ -0,0 +1,376 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+
+/**
+ * Metrics of a scan: files walked and filtered, files and bytes hashed, duplicate groups verified byte by byte or 
+ * not, depth of the file queue, busy and idle time of every consumer and latency histograms of walking, hashing and 
+ * index inserts. Counters are {@link LongAdder} 
+ * instances, every thread adds to its own cell, so recording doesn't make the threads contend.
+ * 
+ * The metrics of the running scan are returned by {@link #current()}, {@link #start(FileTransferQueue)} replaces them 
+ * and registers them as a platform MBean so they can be watched with jconsole while the scan runs. Before any scan is 
+ * started the current metrics are just kept in memory.
+ * 
+ * @author fernando
+ */
+public class ScanMetrics implements ScanMetricsMXBean {
+	
+	/**
+	 * Name of the MBean of the running scan
+	 */
+	public static final String OBJECT_NAME = "ar.com.falberca.duplicate.finder:type=ScanMetrics";
+	
+	private static final double MEGABYTE = 1024d * 1024d;
+	
+	private static volatile ScanMetrics current = new ScanMetrics(null);
+	
+	private final Logger logger = LoggerFactory.getLogger(ScanMetrics.class);
+	
+	private final FileTransferQueue fileQueue;
+	private final long startNanos = System.nanoTime();
+	private volatile long stopNanos = 0;
+	
+	private final LongAdder filesWalked = new LongAdder();
+	private final LongAdder filesFiltered = new LongAdder();
+	private final LongAdder filesHashed = new LongAdder();
+	private final LongAdder bytesHashed = new LongAdder();
+	private final LongAdder duplicateGroups = new LongAdder();
+	private final LongAdder verifiedGroups = new LongAdder();
+	private final LongAdder hashCollisions = new LongAdder();
+	private final LatencyHistogram walkLatency = new LatencyHistogram();
+	private final LatencyHistogram hashLatency = new LatencyHistogram();
+	private final LatencyHistogram indexInsertLatency = new LatencyHistogram();
+	private final List<WorkerMetrics> workers = new CopyOnWriteArrayList<>();
+	
+	/*
+	 * Use ScanMetrics.start for creating the metrics of a scan
+	 */
+	private ScanMetrics(FileTransferQueue fileQueueRef) {
+		fileQueue = fileQueueRef;
+	}
+	
+	/**
+	 * Returns the metrics of the running scan
+	 * 
+	 * @return Returns the metrics instance
+	 */
+	public static ScanMetrics current() {
+		return current;
+	}
+	
+	/**
+	 * Creates the metrics of a new scan, they become the current metrics and are registered as platform MBean 
+	 * replacing the metrics of a previous scan.
+	 * 
+	 * @param fileQueueRef Queue between walkers and consumers of the scan
+	 * @return Returns the metrics instance
+	 */
+	public static ScanMetrics start(FileTransferQueue fileQueueRef) {
+		ScanMetrics scanMetrics = new ScanMetrics(fileQueueRef);
+		current = scanMetrics;
+		scanMetrics.register();
+		return scanMetrics;
+	}
+	
+	/**
+	 * Stops the elapsed time and unregisters the MBean. Values can still be read.
+	 */
+	public void stop() {
+		stopNanos = System.nanoTime();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+		catch(JMException ex) {
+			logger.warn("Scan metrics MBean couldn't be unregistered", ex);
+		}
+	}
+	
+	/*
+	 * Registers this instance, an instance of a previous scan is replaced. Metrics are optional so errors are just 
+	 * logged
+	 */
+	private void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		}
+		catch(JMException ex) {
+			logger.warn("Scan metrics MBean couldn't be registered", ex);
+		}
+	}
+	
+	/**
+	 * Records a file found by a walker
+	 * 
+	 * @param latencyNanos Time taken to read the directory entry and its attributes
+	 * @param filtered True if the filters discarded the file
+	 */
+	public void fileWalked(long latencyNanos, boolean filtered) {
+		filesWalked.increment();
+		if (filtered) {
+			filesFiltered.increment();
+		}
+		walkLatency.record(latencyNanos);
+	}
+	
+	/**
+	 * Records the content of a file hashed as a whole
+	 * 
+	 * @param latencyNanos Time taken to read and hash the file
+	 * @param bytes Number of bytes hashed
+	 */
+	public void fileHashed(long latencyNanos, long bytes) {
+		filesHashed.increment();
+		bytesHashed.add(bytes);
+		hashLatency.record(latencyNanos);
+	}
+	
+	/**
+	 * Records bytes read for hashing just a part of a file, such as samples
+	 * 
+	 * @param bytes Number of bytes hashed
+	 */
+	public void bytesHashed(long bytes) {
+		bytesHashed.add(bytes);
+	}
+	
+	/**
+	 * Records a group of regular files reported as duplicates
+	 */
+	public void duplicateGroupReported() {
+		duplicateGroups.increment();
+	}
+	
+	/**
+	 * Records a group of files whose content was compared byte by byte
+	 */
+	public void groupVerified() {
+		verifiedGroups.increment();
+	}
+	
+	/**
+	 * Records files that had the same digest as other files but a different content
+	 * 
+	 * @param files Number of files
+	 */
+	public void hashCollisions(long files) {
+		hashCollisions.add(files);
+	}
+	
+	/**
+	 * Records the insertion of a file in the size index
+	 * 
+	 * @param latencyNanos Time taken by the insertion
+	 */
+	public void indexInsert(long latencyNanos) {
+		indexInsertLatency.record(latencyNanos);
+	}
+	
+	/**
+	 * Creates the metrics of a consumer thread
+	 * 
+	 * @return Returns the worker metrics, which must be updated only by the calling thread
+	 */
+	public WorkerMetrics registerWorker() {
+		WorkerMetrics worker = new WorkerMetrics();
+		workers.add(worker);
+		return worker;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getElapsedSeconds()
+	 */
+	@Override
+	public long getElapsedSeconds() {
+		return TimeUnit.NANOSECONDS.toSeconds(elapsedNanos());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getFilesWalked()
+	 */
+	@Override
+	public long getFilesWalked() {
+		return filesWalked.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getFilesFiltered()
+	 */
+	@Override
+	public long getFilesFiltered() {
+		return filesFiltered.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getFilesHashed()
+	 */
+	@Override
+	public long getFilesHashed() {
+		return filesHashed.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getBytesHashed()
+	 */
+	@Override
+	public long getBytesHashed() {
+		return bytesHashed.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getDuplicateGroups()
+	 */
+	@Override
+	public long getDuplicateGroups() {
+		return duplicateGroups.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getVerifiedGroups()
+	 */
+	@Override
+	public long getVerifiedGroups() {
+		return verifiedGroups.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getHashCollisions()
+	 */
+	@Override
+	public long getHashCollisions() {
+		return hashCollisions.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getFilesPerSecond()
+	 */
+	@Override
+	public double getFilesPerSecond() {
+		return filesWalked.sum() / elapsedSeconds();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getMegabytesPerSecond()
+	 */
+	@Override
+	public double getMegabytesPerSecond() {
+		return bytesHashed.sum() / MEGABYTE / elapsedSeconds();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		return fileQueue == null ? 0 : fileQueue.getDepth();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getQueueMaxDepth()
+	 */
+	@Override
+	public int getQueueMaxDepth() {
+		return fileQueue == null ? 0 : fileQueue.getMaxDepth();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getQueueFullStalls()
+	 */
+	@Override
+	public long getQueueFullStalls() {
+		return fileQueue == null ? 0 : fileQueue.getFullQueueStalls();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getWorkerBusyMillis()
+	 */
+	@Override
+	public long[] getWorkerBusyMillis() {
+		return workers.stream().mapToLong(worker -> TimeUnit.NANOSECONDS.toMillis(worker.getBusyNanos())).toArray();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getWorkerIdleMillis()
+	 */
+	@Override
+	public long[] getWorkerIdleMillis() {
+		return workers.stream().mapToLong(worker -> TimeUnit.NANOSECONDS.toMillis(worker.getIdleNanos())).toArray();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getWalkLatency()
+	 */
+	@Override
+	public LatencySnapshot getWalkLatency() {
+		return walkLatency.snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getHashLatency()
+	 */
+	@Override
+	public LatencySnapshot getHashLatency() {
+		return hashLatency.snapshot();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanMetricsMXBean#getIndexInsertLatency()
+	 */
+	@Override
+	public LatencySnapshot getIndexInsertLatency() {
+		return indexInsertLatency.snapshot();
+	}
+	
+	private long elapsedNanos() {
+		long stop = stopNanos;
+		return (stop == 0 ? System.nanoTime() : stop) - startNanos;
+	}
+	
+	/*
+	 * Elapsed time with a lower bound, so rates of a scan that just started are not infinite
+	 */
+	private double elapsedSeconds() {
+		return Math.max(elapsedNanos(), TimeUnit.MILLISECONDS.toNanos(1)) / 1e9;
+	}
+
+}
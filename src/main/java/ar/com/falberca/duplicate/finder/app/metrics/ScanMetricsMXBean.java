@@ -0,0 +1,47 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+/**
+ * Management interface of the metrics of the running scan, it can be read with jconsole or any other JMX client 
+ * under the name {@value ScanMetrics#OBJECT_NAME}.
+ * 
+ * @author fernando
+ */
+public interface ScanMetricsMXBean {
+	
+	long getElapsedSeconds();
+	
+	long getFilesWalked();
+	
+	long getFilesFiltered();
+	
+	long getFilesHashed();
+	
+	long getBytesHashed();
+	
+	long getDuplicateGroups();
+	
+	long getVerifiedGroups();
+	
+	long getHashCollisions();
+	
+	double getFilesPerSecond();
+	
+	double getMegabytesPerSecond();
+	
+	int getQueueDepth();
+	
+	int getQueueMaxDepth();
+	
+	long getQueueFullStalls();
+	
+	long[] getWorkerBusyMillis();
+	
+	long[] getWorkerIdleMillis();
+	
+	LatencySnapshot getWalkLatency();
+	
+	LatencySnapshot getHashLatency();
+	
+	LatencySnapshot getIndexInsertLatency();
+
+}
@@ -0,0 +1,40 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+/**
+ * Busy and idle time of a single consumer thread. Just the owner thread writes the values, other threads only read 
+ * them, so plain volatile fields are enough.
+ * 
+ * @author fernando
+ */
+public class WorkerMetrics {
+	
+	private volatile long busyNanos;
+	private volatile long idleNanos;
+	
+	/**
+	 * Adds time spent processing files
+	 * 
+	 * @param nanos Time in nanoseconds
+	 */
+	public void addBusy(long nanos) {
+		busyNanos += nanos;
+	}
+	
+	/**
+	 * Adds time spent waiting for files
+	 * 
+	 * @param nanos Time in nanoseconds
+	 */
+	public void addIdle(long nanos) {
+		idleNanos += nanos;
+	}
+
+	public long getBusyNanos() {
+		return busyNanos;
+	}
+
+	public long getIdleNanos() {
+		return idleNanos;
+	}
+
+}
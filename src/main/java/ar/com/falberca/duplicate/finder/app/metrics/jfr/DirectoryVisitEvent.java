@@ -0,0 +1,30 @@
+package ar.com.falberca.duplicate.finder.app.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Listing of a directory by a walker. The sequential walker visits the subdirectories inside the visit of their 
+ * parent.
+ * 
+ * @author fernando
+ */
+@Name(FlightRecorderEventRecorder.EVENT_PREFIX + "DirectoryVisit")
+@Label("Directory Visit")
+@Description("Listing of a directory by a walker, the sequential walker visits subdirectories inside the visit " + 
+			 "of their parent")
+@Category(FlightRecorderEventRecorder.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+class DirectoryVisitEvent extends Event {
+	
+	@Label("Directory")
+	@Description("Path of the directory")
+	String directory;
+
+}
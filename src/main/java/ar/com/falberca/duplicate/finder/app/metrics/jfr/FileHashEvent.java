@@ -0,0 +1,33 @@
+package ar.com.falberca.duplicate.finder.app.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Digest of the whole content of a file.
+ * 
+ * @author fernando
+ */
+@Name(FlightRecorderEventRecorder.EVENT_PREFIX + "FileHash")
+@Label("File Hash")
+@Description("Digest of the whole content of a file")
+@Category(FlightRecorderEventRecorder.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+class FileHashEvent extends Event {
+	
+	@Label("Path")
+	@Description("Path of the file")
+	String path;
+	
+	@Label("Bytes Read")
+	@DataAmount
+	long bytes;
+
+}
@@ -0,0 +1,155 @@
+package ar.com.falberca.duplicate.finder.app.metrics.jfr;
+
+import java.nio.file.Path;
+
+import jdk.jfr.EventType;
+
+import ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder;
+
+/**
+ * Records the scan operations as Flight Recorder events. The state of each event type is checked before creating 
+ * the event, so disabled events are not allocated. Events shorter than the threshold of the recording settings are 
+ * discarded when they end.
+ * 
+ * This class is loaded by name from {@link ar.com.falberca.duplicate.finder.app.metrics.ScanEvents}, just in JVMs 
+ * that include the <code>jdk.jfr</code> API (JDK 8u262 and later).
+ * 
+ * @author fernando
+ */
+public class FlightRecorderEventRecorder implements ScanEventRecorder {
+	
+	static final String EVENT_PREFIX = "ar.com.falberca.duplicate.finder.";
+	static final String CATEGORY = "Duplicate Finder";
+	
+	private final EventType directoryVisitType = EventType.getEventType(DirectoryVisitEvent.class);
+	private final EventType queueWaitType = EventType.getEventType(QueueWaitEvent.class);
+	private final EventType fileHashType = EventType.getEventType(FileHashEvent.class);
+	private final EventType indexLockWaitType = EventType.getEventType(IndexLockWaitEvent.class);
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder#beginDirectoryVisit()
+	 */
+	@Override
+	public Object beginDirectoryVisit() {
+		if (!directoryVisitType.isEnabled())
+			return null;
+		
+		DirectoryVisitEvent event = new DirectoryVisitEvent();
+		event.begin();
+		return event;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder#endDirectoryVisit(Object, Path)
+	 */
+	@Override
+	public void endDirectoryVisit(Object event, Path directory) {
+		if (event == null)
+			return;
+		
+		DirectoryVisitEvent directoryVisit = (DirectoryVisitEvent) event;
+		directoryVisit.end();
+		if (directoryVisit.shouldCommit()) {
+			directoryVisit.directory = directory.toString();
+			directoryVisit.commit();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder#beginQueueWait()
+	 */
+	@Override
+	public Object beginQueueWait() {
+		if (!queueWaitType.isEnabled())
+			return null;
+		
+		QueueWaitEvent event = new QueueWaitEvent();
+		event.begin();
+		return event;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder#endQueueWait(Object, String, int)
+	 */
+	@Override
+	public void endQueueWait(Object event, String operation, int files) {
+		if (event == null)
+			return;
+		
+		QueueWaitEvent queueWait = (QueueWaitEvent) event;
+		queueWait.end();
+		if (queueWait.shouldCommit()) {
+			queueWait.operation = operation;
+			queueWait.files = files;
+			queueWait.commit();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder#beginFileHash()
+	 */
+	@Override
+	public Object beginFileHash() {
+		if (!fileHashType.isEnabled())
+			return null;
+		
+		FileHashEvent event = new FileHashEvent();
+		event.begin();
+		return event;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder#endFileHash(Object, Path, long)
+	 */
+	@Override
+	public void endFileHash(Object event, Path path, long bytes) {
+		if (event == null)
+			return;
+		
+		FileHashEvent fileHash = (FileHashEvent) event;
+		fileHash.end();
+		if (fileHash.shouldCommit()) {
+			fileHash.path = path.toString();
+			fileHash.bytes = bytes;
+			fileHash.commit();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder#beginIndexLockWait()
+	 */
+	@Override
+	public Object beginIndexLockWait() {
+		if (!indexLockWaitType.isEnabled())
+			return null;
+		
+		IndexLockWaitEvent event = new IndexLockWaitEvent();
+		event.begin();
+		return event;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.metrics.ScanEventRecorder#endIndexLockWait(Object, long)
+	 */
+	@Override
+	public void endIndexLockWait(Object event, long size) {
+		if (event == null)
+			return;
+		
+		IndexLockWaitEvent indexLockWait = (IndexLockWaitEvent) event;
+		indexLockWait.end();
+		if (indexLockWait.shouldCommit()) {
+			indexLockWait.size = size;
+			indexLockWait.commit();
+		}
+	}
+
+}
@@ -0,0 +1,28 @@
+package ar.com.falberca.duplicate.finder.app.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Time a consumer waited for the lock of a size index stripe.
+ * 
+ * @author fernando
+ */
+@Name(FlightRecorderEventRecorder.EVENT_PREFIX + "IndexLockWait")
+@Label("Index Lock Wait")
+@Description("Time a consumer waited for the lock of a size index stripe")
+@Category(FlightRecorderEventRecorder.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+class IndexLockWaitEvent extends Event {
+	
+	@Label("Size")
+	@Description("Size of the file being added")
+	long size;
+
+}
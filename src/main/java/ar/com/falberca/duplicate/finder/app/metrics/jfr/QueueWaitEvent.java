@@ -0,0 +1,32 @@
+package ar.com.falberca.duplicate.finder.app.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Time a walker was blocked by a full file queue or a consumer waited for files.
+ * 
+ * @author fernando
+ */
+@Name(FlightRecorderEventRecorder.EVENT_PREFIX + "QueueWait")
+@Label("Queue Wait")
+@Description("Time a walker was blocked by a full file queue or a consumer waited for files")
+@Category(FlightRecorderEventRecorder.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+class QueueWaitEvent extends Event {
+	
+	@Label("Operation")
+	@Description("put when a walker waits for space, take when a consumer waits for files")
+	String operation;
+	
+	@Label("Files")
+	@Description("Number of files put or taken after the wait")
+	int files;
+
+}
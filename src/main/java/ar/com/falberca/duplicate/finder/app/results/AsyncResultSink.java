@@ -0,0 +1,153 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sink that hands the groups over to a background writer thread, so the threads that find duplicates never wait for
+ * the output. The writer takes the pending groups in batches, writes them to the delegate sink and flushes it once 
+ * per batch.
+ * 
+ * Groups can be accepted from several threads. Closing the sink waits until every accepted group was written and 
+ * closes the delegate, errors of the delegate are rethrown by close.
+ * 
+ * @author fernando
+ */
+public class AsyncResultSink implements ResultSink {
+	
+	private static final int BATCH_SIZE = 512;
+	
+	/*
+	 * Marker added when the sink is closed
+	 */
+	private static final DuplicateGroup END_OF_RESULTS = new DuplicateGroup(DuplicateType.REGULAR_FILE, 
+																			0, 
+																			Collections.emptyList());
+
+	private final Logger logger = LoggerFactory.getLogger(AsyncResultSink.class);
+	
+	private final ResultSink delegate;
+	private final BlockingQueue<DuplicateGroup> pendingGroups = new LinkedBlockingQueue<>();
+	private final Thread writerThread;
+	private volatile IOException writeError;
+	
+	/**
+	 * Creates the sink and starts its writer thread
+	 * 
+	 * @param delegateRef Sink where the groups are written, it's used only by the writer thread
+	 */
+	public AsyncResultSink(ResultSink delegateRef) {
+		delegate = delegateRef;
+		writerThread = new Thread(this::writeGroups, "result-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.results.ResultSink#accept(DuplicateGroup)
+	 */
+	@Override
+	public void accept(DuplicateGroup duplicateGroup) {
+		pendingGroups.add(duplicateGroup);
+	}
+
+	/*
+	 * The writer thread flushes the delegate after every batch
+	 * 
+	 * (non-Javadoc)
+	 * @see java.io.Flushable#flush()
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		pendingGroups.add(END_OF_RESULTS);
+		try {
+			writerThread.join();
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the pending results to be written", ex);
+		}
+		
+		try {
+			delegate.close();
+		}
+		catch(IOException ex) {
+			if (writeError == null) {
+				writeError = ex;
+			}
+		}
+		
+		if (writeError != null)
+			throw writeError;
+	}
+	
+	/*
+	 * Writer thread loop, once writing fails the remaining groups are discarded
+	 */
+	private void writeGroups() {
+		List<DuplicateGroup> batch = new ArrayList<>(BATCH_SIZE);
+		while (true) {
+			try {
+				batch.add(pendingGroups.take());
+				pendingGroups.drainTo(batch, BATCH_SIZE - 1);
+			}
+			catch(InterruptedException ex) {
+				logger.error("Result writer was interrupted, pending results are discarded");
+				return;
+			}
+			
+			for (DuplicateGroup duplicateGroup : batch) {
+				if (duplicateGroup == END_OF_RESULTS) {
+					flushDelegate();
+					return;
+				}
+				write(duplicateGroup);
+			}
+			flushDelegate();
+			batch.clear();
+		}
+	}
+	
+	private void write(DuplicateGroup duplicateGroup) {
+		if (writeError != null)
+			return;
+		
+		try {
+			delegate.accept(duplicateGroup);
+		}
+		catch(IOException ex) {
+			logger.error("Error writing results, the remaining results are discarded", ex);
+			writeError = ex;
+		}
+	}
+	
+	private void flushDelegate() {
+		if (writeError != null)
+			return;
+		
+		try {
+			delegate.flush();
+		}
+		catch(IOException ex) {
+			logger.error("Error writing results, the remaining results are discarded", ex);
+			writeError = ex;
+		}
+	}
+
+}
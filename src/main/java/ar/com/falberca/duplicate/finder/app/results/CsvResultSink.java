@@ -0,0 +1,62 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes every group as a CSV record (RFC 4180). The first columns are the type, the size and the reclaimable 
+ * bytes, followed by one column per file of the group, so records have a variable number of columns.
+ * 
+ * @author fernando
+ */
+public class CsvResultSink extends WriterResultSink {
+
+	/**
+	 * @param writerRef Destination of the records, it's closed when the sink is closed
+	 */
+	public CsvResultSink(Writer writerRef) {
+		super(writerRef);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.results.WriterResultSink#writeHeader(Writer)
+	 */
+	@Override
+	protected void writeHeader(Writer out) throws IOException {
+		out.write("type,size,reclaimable_bytes,files\r\n");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.results.WriterResultSink#writeRecord(Writer, DuplicateGroup)
+	 */
+	@Override
+	protected void writeRecord(Writer out, DuplicateGroup duplicateGroup) throws IOException {
+		writeField(out, duplicateGroup.getType().getDescription());
+		out.write(',');
+		out.write(Long.toString(duplicateGroup.getSize()));
+		out.write(',');
+		out.write(Long.toString(duplicateGroup.getReclaimableBytes()));
+		for (String path : duplicateGroup.getPaths()) {
+			out.write(',');
+			writeField(out, path);
+		}
+		out.write("\r\n");
+	}
+	
+	/*
+	 * Quotes the field if it contains separators, quotes or line breaks, quotes are escaped doubling them
+	 */
+	private void writeField(Writer out, String value) throws IOException {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			out.write(value);
+		}
+		else {
+			out.write('"');
+			out.write(value.replace("\"", "\"\""));
+			out.write('"');
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Complete group of files that are duplicates of each other, the first path is the file the others were compared 
+ * with.
+ * 
+ * @author fernando
+ */
+public class DuplicateGroup {
+	
+	private final DuplicateType type;
+	private final long size;
+	private final List<String> paths;
+	
+	/**
+	 * @param typeRef Relation among the files
+	 * @param size Size in bytes of every file in the group
+	 * @param pathsRef Paths of all the files in the group
+	 */
+	public DuplicateGroup(DuplicateType typeRef, long size, List<String> pathsRef) {
+		type = typeRef;
+		this.size = size;
+		paths = Collections.unmodifiableList(pathsRef);
+	}
+
+	public DuplicateType getType() {
+		return type;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public List<String> getPaths() {
+		return paths;
+	}
+	
+	/**
+	 * Bytes freed if all the files except the first one were removed
+	 * 
+	 * @return Returns the reclaimable bytes, 0 if the files don't use disk space of their own
+	 */
+	public long getReclaimableBytes() {
+		return type.isSpaceReclaimable() ? size * (paths.size() - 1) : 0;
+	}
+
+}
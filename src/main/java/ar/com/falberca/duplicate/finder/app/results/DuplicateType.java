@@ -0,0 +1,40 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+/**
+ * Relation among the files of a duplicate group
+ * 
+ * @author fernando
+ */
+public enum DuplicateType {
+	
+	REGULAR_FILE("regular file", true),
+	EMPTY_FILE("empty file", false),
+	SYMBOLIC_LINK("symbolic link", false),
+	HARDLINK("hardlink", false);
+	
+	private final String description;
+	private final boolean spaceReclaimable;
+	
+	private DuplicateType(String description, boolean spaceReclaimable) {
+		this.description = description;
+		this.spaceReclaimable = spaceReclaimable;
+	}
+	
+	/**
+	 * @return Returns the name of the relation used in reports
+	 */
+	public String getDescription() {
+		return description;
+	}
+	
+	/**
+	 * Tells whether removing the duplicates frees their content blocks. Links and empty files don't use content 
+	 * blocks of their own.
+	 * 
+	 * @return Returns true if removing duplicates of this type frees disk space
+	 */
+	public boolean isSpaceReclaimable() {
+		return spaceReclaimable;
+	}
+
+}
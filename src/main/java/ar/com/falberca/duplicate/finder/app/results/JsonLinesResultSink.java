@@ -0,0 +1,82 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes every group as a JSON object in its own line (JSON Lines), for example:
+ * <pre>
+ * {"type":"regular file","size":1024,"reclaimableBytes":2048,"files":["/a/x","/b/x","/c/x"]}
+ * </pre>
+ * 
+ * @author fernando
+ */
+public class JsonLinesResultSink extends WriterResultSink {
+
+	/**
+	 * @param writerRef Destination of the records, it's closed when the sink is closed
+	 */
+	public JsonLinesResultSink(Writer writerRef) {
+		super(writerRef);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.results.WriterResultSink#writeRecord(Writer, DuplicateGroup)
+	 */
+	@Override
+	protected void writeRecord(Writer out, DuplicateGroup duplicateGroup) throws IOException {
+		out.write("{\"type\":");
+		writeString(out, duplicateGroup.getType().getDescription());
+		out.write(",\"size\":");
+		out.write(Long.toString(duplicateGroup.getSize()));
+		out.write(",\"reclaimableBytes\":");
+		out.write(Long.toString(duplicateGroup.getReclaimableBytes()));
+		out.write(",\"files\":[");
+		List<String> paths = duplicateGroup.getPaths();
+		for (int index = 0; index < paths.size(); index++) {
+			if (index > 0) {
+				out.write(',');
+			}
+			writeString(out, paths.get(index));
+		}
+		out.write("]}\n");
+	}
+	
+	/*
+	 * Writes a quoted JSON string escaping quotes, backslashes and control characters
+	 */
+	private void writeString(Writer out, String value) throws IOException {
+		out.write('"');
+		for (int index = 0; index < value.length(); index++) {
+			char character = value.charAt(index);
+			switch (character) {
+				case '"':
+					out.write("\\\"");
+					break;
+				case '\\':
+					out.write("\\\\");
+					break;
+				case '\n':
+					out.write("\\n");
+					break;
+				case '\r':
+					out.write("\\r");
+					break;
+				case '\t':
+					out.write("\\t");
+					break;
+				default:
+					if (character < 0x20) {
+						out.write(String.format("\\u%04x", (int) character));
+					}
+					else {
+						out.write(character);
+					}
+			}
+		}
+		out.write('"');
+	}
+
+}
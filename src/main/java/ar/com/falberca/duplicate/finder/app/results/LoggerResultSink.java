@@ -0,0 +1,50 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sink that logs every file of a group as a duplicate of the first file, this is the default output.
+ * 
+ * @author fernando
+ */
+public class LoggerResultSink implements ResultSink {
+	
+	private final Logger logger = LoggerFactory.getLogger(LoggerResultSink.class);
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.results.ResultSink#accept(DuplicateGroup)
+	 */
+	@Override
+	public void accept(DuplicateGroup duplicateGroup) {
+		List<String> paths = duplicateGroup.getPaths();
+		paths.stream()
+			 .skip(1)
+			 .forEach(path -> logger.error("Duplicate {} found: {}  with: {}", 
+					 					   duplicateGroup.getType().getDescription(), 
+					 					   paths.get(0), 
+					 					   path));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Flushable#flush()
+	 */
+	@Override
+	public void flush() {
+		//Nothing to flush, appenders are managed by the logging configuration
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		//Nothing to close, appenders are managed by the logging configuration
+	}
+
+}
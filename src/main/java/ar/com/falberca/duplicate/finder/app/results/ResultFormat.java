@@ -0,0 +1,69 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Formats available for writing results to a file
+ * 
+ * @author fernando
+ */
+public enum ResultFormat {
+	
+	JSON_LINES("jsonl", JsonLinesResultSink::new),
+	CSV("csv", CsvResultSink::new);
+	
+	private final String formatName;
+	private final Function<Writer, ResultSink> sinkFactory;
+	
+	private ResultFormat(String formatName, Function<Writer, ResultSink> sinkFactory) {
+		this.formatName = formatName;
+		this.sinkFactory = sinkFactory;
+	}
+	
+	/**
+	 * Name used for selecting the format
+	 * 
+	 * @return Returns the format name
+	 */
+	public String getFormatName() {
+		return formatName;
+	}
+	
+	/**
+	 * Creates a sink that writes results in this format
+	 * 
+	 * @param writer Destination of the results, it's closed when the sink is closed
+	 * @return Returns a new sink
+	 */
+	public ResultSink createSink(Writer writer) {
+		return sinkFactory.apply(writer);
+	}
+	
+	/**
+	 * Finds a format by its name, ignoring the case
+	 * 
+	 * @param formatName Name of the format
+	 * @return Returns the matching format
+	 * @throws IllegalArgumentException Throws an exception if there is no format with the given name
+	 */
+	public static ResultFormat fromName(String formatName) {
+		return Arrays.stream(values())
+					 .filter(format -> format.formatName.equalsIgnoreCase(formatName))
+					 .findFirst()
+					 .orElseThrow(() -> new IllegalArgumentException("Unknown output format: " + formatName + 
+							 										 ". Available formats: " + availableNames()));
+	}
+	
+	/**
+	 * Lists the names of all the formats
+	 * 
+	 * @return Returns a comma separated list of names
+	 */
+	public static String availableNames() {
+		return Arrays.stream(values()).map(ResultFormat::getFormatName).collect(Collectors.joining(", "));
+	}
+
+}
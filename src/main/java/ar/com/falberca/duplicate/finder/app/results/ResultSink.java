@@ -0,0 +1,23 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Destination of the duplicate groups found by a scan. Sinks are invoked from a single thread unless the 
+ * implementation states otherwise, {@link AsyncResultSink} can be used for receiving groups from several threads.
+ * 
+ * @author fernando
+ */
+public interface ResultSink extends Flushable, Closeable {
+	
+	/**
+	 * Writes a duplicate group
+	 * 
+	 * @param duplicateGroup Group reference
+	 * @throws IOException Throws an exception if the group can't be written
+	 */
+	void accept(DuplicateGroup duplicateGroup) throws IOException;
+
+}
@@ -0,0 +1,77 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Base class for sinks that stream groups as text records, one record per group
+ * 
+ * @author fernando
+ */
+public abstract class WriterResultSink implements ResultSink {
+	
+	private final Writer writer;
+	private boolean headerWritten = false;
+	
+	/**
+	 * @param writerRef Destination of the records, it's closed when the sink is closed
+	 */
+	protected WriterResultSink(Writer writerRef) {
+		writer = writerRef;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ar.com.falberca.duplicate.finder.app.results.ResultSink#accept(DuplicateGroup)
+	 */
+	@Override
+	public void accept(DuplicateGroup duplicateGroup) throws IOException {
+		writeHeaderOnce();
+		writeRecord(writer, duplicateGroup);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Flushable#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		writeHeaderOnce();
+		writer.close();
+	}
+	
+	/**
+	 * Writes the lines that precede the records, by default there is no header
+	 * 
+	 * @param out Destination writer
+	 * @throws IOException Throws an exception if the header can't be written
+	 */
+	protected void writeHeader(Writer out) throws IOException {
+	}
+	
+	/**
+	 * Writes a group as a single record including the line separator
+	 * 
+	 * @param out Destination writer
+	 * @param duplicateGroup Group reference
+	 * @throws IOException Throws an exception if the record can't be written
+	 */
+	protected abstract void writeRecord(Writer out, DuplicateGroup duplicateGroup) throws IOException;
+	
+	private void writeHeaderOnce() throws IOException {
+		if (!headerWritten) {
+			headerWritten = true;
+			writeHeader(writer);
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+package ar.com.falberca.duplicate.finder.app.directory.walkers;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
+import ar.com.falberca.duplicate.finder.app.events.EventType;
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter;
+import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilterBuilder;
+
+public class ForkJoinDirectoryWalkerTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAllFilesAreQueuedBeforeFinishing() throws Exception {
+		Path root = folder.getRoot().toPath();
+		Set<String> expectedFiles = new HashSet<>();
+		for (int directory = 0; directory < 10; directory++) {
+			Path subdirectory = Files.createDirectories(root.resolve("d" + directory).resolve("nested"));
+			for (int file = 0; file < 5; file++) {
+				Path path = Files.write(subdirectory.resolve("f" + file), new byte[] {(byte) file});
+				expectedFiles.add(path.toString());
+			}
+		}
+		Files.createFile(root.resolve("empty"));
+		
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		EventBus eventBus = new EventBus();
+		ForkJoinDirectoryWalker walker = new ForkJoinDirectoryWalker(root.toString(), 
+																	 fileQueue, 
+																	 FileConditionFilterBuilder.create()
+																	 						   .emptyFiles(true)
+																	 						   .build(), 
+																	 4, 
+																	 eventBus);
+		
+		CountDownLatch finished = new CountDownLatch(1);
+		AtomicInteger finishedEvents = new AtomicInteger();
+		eventBus.subscribe(event -> {
+			if (EventType.FINISHED == event.getType()) {
+				finishedEvents.incrementAndGet();
+				finished.countDown();
+			}
+		});
+		walker.walkDirectory();
+		
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		eventBus.close();
+		//The walker closed the queue, so taking files ends once the queue is drained
+		Set<String> queuedFiles = new HashSet<>();
+		List<FileInfo> batch = new ArrayList<>();
+		while (fileQueue.takeBatch(batch)) {
+			batch.forEach(fileInfo -> queuedFiles.add(fileInfo.getPath()));
+		}
+		assertEquals(expectedFiles, queuedFiles);
+		assertEquals(1, finishedEvents.get());
+		assertEquals(expectedFiles.size(), eventBus.getProgress().getFilesDiscovered());
+	}
+	
+	@Test
+	public void testNestedRootIsWalkedOnce() throws Exception {
+		Path first = folder.newFolder("first").toPath();
+		Path nested = Files.createDirectories(first.resolve("nested"));
+		Path second = folder.newFolder("second").toPath();
+		Set<String> expectedFiles = new HashSet<>();
+		expectedFiles.add(Files.write(first.resolve("f1"), new byte[] {1}).toString());
+		expectedFiles.add(Files.write(nested.resolve("f2"), new byte[] {2}).toString());
+		expectedFiles.add(Files.write(second.resolve("f3"), new byte[] {3}).toString());
+		
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		EventBus eventBus = new EventBus();
+		ForkJoinDirectoryWalker walker = new ForkJoinDirectoryWalker(Arrays.asList(first.toString(), 
+																				   nested.toString(), 
+																				   second.toString()), 
+																	 fileQueue, 
+																	 FileConditionFilterBuilder.create().build(), 
+																	 2, 
+																	 eventBus);
+		
+		CountDownLatch finished = new CountDownLatch(1);
+		eventBus.subscribe(event -> {
+			if (EventType.FINISHED == event.getType())
+				finished.countDown();
+		});
+		walker.walkDirectory();
+		
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		eventBus.close();
+		List<String> queuedFiles = new ArrayList<>();
+		List<FileInfo> batch = new ArrayList<>();
+		while (fileQueue.takeBatch(batch)) {
+			batch.forEach(fileInfo -> queuedFiles.add(fileInfo.getPath()));
+		}
+		assertEquals(expectedFiles.size(), queuedFiles.size());
+		assertEquals(expectedFiles, new HashSet<>(queuedFiles));
+	}
+	
+	@Test
+	public void testExcludedSubtreesAreNotListed() throws Exception {
+		Path root = folder.newFolder(".git").toPath();
+		Set<String> expectedFiles = new HashSet<>();
+		expectedFiles.add(Files.write(root.resolve("kept"), new byte[] {1, 2}).toString());
+		Files.write(root.resolve("small"), new byte[] {1});
+		Files.write(root.resolve("skipped.tmp"), new byte[] {1, 2});
+		Path excluded = Files.createDirectories(root.resolve("node_modules"));
+		Files.write(excluded.resolve("module"), new byte[] {1, 2});
+		Path nested = Files.createDirectories(root.resolve("src").resolve(".git"));
+		Files.write(nested.resolve("object"), new byte[] {1, 2});
+		//An excluded directory can't be listed, so it would be reported if it wasn't skipped
+		assertTrue(excluded.toFile().setReadable(false));
+		
+		List<String> excludedDirectories = Arrays.asList(".git", "node_modules");
+		List<FileConditionFilter> filters = FileConditionFilterBuilder.create()
+																	  .sizeRange(2, 10)
+																	  .exclude(Arrays.asList("*.tmp"))
+																	  .excludeDirectories(excludedDirectories)
+																	  .build();
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		EventBus eventBus = new EventBus();
+		ForkJoinDirectoryWalker walker = new ForkJoinDirectoryWalker(root.toString(), 
+																	 fileQueue, 
+																	 filters, 
+																	 2, 
+																	 eventBus);
+		
+		CountDownLatch finished = new CountDownLatch(1);
+		eventBus.subscribe(event -> {
+			if (EventType.FINISHED == event.getType())
+				finished.countDown();
+		});
+		walker.walkDirectory();
+		
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		eventBus.close();
+		assertTrue(excluded.toFile().setReadable(true));
+		//The root is walked even if it matches an excluded directory
+		Set<String> queuedFiles = new HashSet<>();
+		List<FileInfo> batch = new ArrayList<>();
+		while (fileQueue.takeBatch(batch)) {
+			batch.forEach(fileInfo -> queuedFiles.add(fileInfo.getPath()));
+		}
+		assertEquals(expectedFiles, queuedFiles);
+	}
+	
+	@Test
+	public void testFailedTaskDoesNotFinishBeforeOtherTasks() throws Exception {
+		Path root = folder.getRoot().toPath();
+		Set<String> expectedFiles = new HashSet<>();
+		for (int directory = 0; directory < 8; directory++) {
+			Path subdirectory = Files.createDirectories(root.resolve("d" + directory));
+			for (int file = 0; file < 5; file++) {
+				expectedFiles.add(Files.write(subdirectory.resolve("f" + file), new byte[] {1}).toString());
+			}
+			Files.write(Files.createDirectories(root.resolve("e" + directory)).resolve("broken"), new byte[] {1});
+		}
+		
+		//Some tasks fail while the tasks of their sibling directories are still queueing files
+		List<FileConditionFilter> filters = Arrays.asList(fileInfo -> {
+			if ("broken".equals(fileInfo.getName()))
+				throw new IllegalStateException("Unexpected filter error");
+			try {
+				Thread.sleep(10);
+			}
+			catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return true;
+		});
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		EventBus eventBus = new EventBus();
+		ForkJoinDirectoryWalker walker = new ForkJoinDirectoryWalker(root.toString(), fileQueue, filters, 4, eventBus);
+		
+		CountDownLatch finished = new CountDownLatch(1);
+		eventBus.subscribe(event -> {
+			if (EventType.FINISHED == event.getType())
+				finished.countDown();
+		});
+		walker.walkDirectory();
+		
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		eventBus.close();
+		Set<String> queuedFiles = new HashSet<>();
+		List<FileInfo> batch = new ArrayList<>();
+		while (fileQueue.takeBatch(batch)) {
+			batch.forEach(fileInfo -> queuedFiles.add(fileInfo.getPath()));
+		}
+		assertEquals(expectedFiles, queuedFiles);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelism() {
+		new ForkJoinDirectoryWalker(folder.getRoot().getPath(), new FileTransferQueue(), null, 0, new EventBus());
+	}
+
+}
@@ -0,0 +1,256 @@
+package ar.com.falberca.duplicate.finder.app.directory.walkers;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
+import ar.com.falberca.duplicate.finder.app.events.EventType;
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilter;
+import ar.com.falberca.duplicate.finder.app.files.filters.FileConditionFilterBuilder;
+
+public class WalkCheckpointTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testResumeKeepsCompletedDirectories() throws Exception {
+		Path checkpointFile = folder.getRoot().toPath().resolve("walk.checkpoint");
+		Path done = folder.newFolder("done").toPath();
+		Path pending = folder.newFolder("pending").toPath();
+
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.create(checkpointFile, 10)) {
+			checkpoint.fileQueued(new FileInfo(done.toString(), "first", 10, 1, "(dev=1,ino=2)", false));
+			checkpoint.fileQueued(new FileInfo(done.toString(), "link", 0, 1, null, true));
+			checkpoint.directoryDone(done);
+			checkpoint.fileQueued(new FileInfo(pending.toString(), "lost", 10, 1, null, false));
+		}
+		//A record cut by the kill
+		Files.write(checkpointFile, new byte[] {0, 0, 3}, StandardOpenOption.APPEND);
+
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.resume(checkpointFile, 10)) {
+			assertTrue(checkpoint.isDirectoryDone(done));
+			assertFalse(checkpoint.isDirectoryDone(pending));
+			assertEquals(2, checkpoint.getReplayFiles());
+
+			List<FileInfo> files = new ArrayList<>();
+			checkpoint.replay(files::add);
+			assertEquals(2, files.size());
+			assertEquals(done.resolve("first").toString(), files.get(0).getPath());
+			assertEquals(10, files.get(0).getSize());
+			assertEquals("(dev=1,ino=2)", files.get(0).getFileKey());
+			assertFalse(files.get(0).isLink());
+			assertNull(files.get(1).getFileKey());
+			assertTrue(files.get(1).isLink());
+		}
+	}
+
+	@Test
+	public void testRecordsAfterCorruptionAreDiscarded() throws Exception {
+		Path checkpointFile = folder.getRoot().toPath().resolve("walk.checkpoint");
+		Path done = folder.newFolder("done").toPath();
+		Path later = folder.newFolder("later").toPath();
+
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.create(checkpointFile, 10)) {
+			checkpoint.fileQueued(new FileInfo(done.toString(), "first", 10, 1, null, false));
+			checkpoint.directoryDone(done);
+		}
+		//A file record of an unknown directory followed by a completed directory whose files can't be trusted
+		try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(checkpointFile, 
+																				  StandardOpenOption.APPEND))) {
+			output.writeByte(0);
+			output.writeInt(99);
+			output.writeUTF("lost");
+			output.writeLong(10);
+			output.writeLong(1);
+			output.writeUTF("");
+			output.writeBoolean(false);
+			output.writeByte(1);
+			output.writeUTF(later.toString());
+		}
+
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.resume(checkpointFile, 10)) {
+			assertTrue(checkpoint.isDirectoryDone(done));
+			assertFalse(checkpoint.isDirectoryDone(later));
+			assertEquals(1, checkpoint.getReplayFiles());
+
+			List<FileInfo> files = new ArrayList<>();
+			checkpoint.replay(files::add);
+			assertEquals(1, files.size());
+			assertEquals(done.resolve("first").toString(), files.get(0).getPath());
+		}
+	}
+
+	@Test
+	public void testDirectoryPathIsWrittenOnce() throws Exception {
+		Path checkpointFile = folder.getRoot().toPath().resolve("walk.checkpoint");
+		Path done = folder.newFolder("a-directory-with-a-long-name").toPath();
+
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.create(checkpointFile, 10)) {
+			for (int index = 0; index < 100; index++) {
+				checkpoint.fileQueued(new FileInfo(done.toString(), "f" + index, 10, 1, null, false));
+			}
+			checkpoint.directoryDone(done);
+		}
+
+		//A path record and the completed directory record
+		assertEquals(2, occurrences(checkpointFile, done.toString()));
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.resume(checkpointFile, 10)) {
+			assertEquals(2, occurrences(checkpointFile, done.toString()));
+			List<FileInfo> files = new ArrayList<>();
+			checkpoint.replay(files::add);
+			assertEquals(100, files.size());
+			assertEquals(done.resolve("f99").toString(), files.get(99).getPath());
+			assertSame(files.get(0).getDirectory(), files.get(99).getDirectory());
+		}
+	}
+
+	@Test
+	public void testMissingCheckpointStartsEmpty() throws Exception {
+		Path checkpointFile = folder.getRoot().toPath().resolve("missing.checkpoint");
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.resume(checkpointFile, 10)) {
+			assertEquals(0, checkpoint.getReplayFiles());
+			assertFalse(checkpoint.isDirectoryDone(folder.getRoot().toPath()));
+		}
+		assertTrue(Files.exists(checkpointFile));
+	}
+
+	@Test
+	public void testResumedWalkQueuesEveryFileOnce() throws Exception {
+		Path root = folder.newFolder("root").toPath();
+		Set<String> expectedFiles = new HashSet<>();
+		for (int directory = 0; directory < 3; directory++) {
+			Path subdirectory = Files.createDirectories(root.resolve("d" + directory));
+			for (int file = 0; file < 4; file++) {
+				expectedFiles.add(Files.write(subdirectory.resolve("f" + file), new byte[] {1}).toString());
+			}
+		}
+		Path checkpointFile = folder.getRoot().toPath().resolve("walk.checkpoint");
+
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.create(checkpointFile, 10)) {
+			assertEquals(expectedFiles, walk(root, checkpoint, Collections.emptyList()));
+		}
+
+		//Every directory was completed, the resumed walk replays all the files without walking them again
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.resume(checkpointFile, 10)) {
+			assertTrue(checkpoint.isDirectoryDone(root));
+			assertEquals(expectedFiles.size(), checkpoint.getReplayFiles());
+			assertEquals(expectedFiles, walk(root, checkpoint, Collections.emptyList()));
+		}
+	}
+
+	@Test
+	public void testReplayedFilesAreFiltered() throws Exception {
+		Path root = folder.newFolder("root").toPath();
+		Set<String> expectedFiles = new HashSet<>();
+		for (int directory = 0; directory < 3; directory++) {
+			Path subdirectory = Files.createDirectories(root.resolve("d" + directory).resolve("nested"));
+			for (int file = 0; file < 4; file++) {
+				Path path = Files.write(subdirectory.resolve("f" + file), new byte[] {1});
+				if (directory != 2 && file != 1) {
+					expectedFiles.add(path.toString());
+				}
+			}
+		}
+		Path checkpointFile = folder.getRoot().toPath().resolve("walk.checkpoint");
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.create(checkpointFile, 10)) {
+			assertEquals(12, walk(root, checkpoint, Collections.emptyList()).size());
+		}
+
+		//The resumed scan excludes a name and the parent directory of a completed directory
+		List<FileConditionFilter> filters = FileConditionFilterBuilder.create()
+																	  .exclude(Arrays.asList("f1"))
+																	  .excludeDirectories(Arrays.asList("d2"))
+																	  .build();
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.resume(checkpointFile, 10)) {
+			assertEquals(12, checkpoint.getReplayFiles());
+			assertEquals(expectedFiles, walk(root, checkpoint, filters));
+		}
+	}
+
+	@Test
+	public void testUnreadableSubdirectoryIsWalkedAgain() throws Exception {
+		Path root = folder.newFolder("root").toPath();
+		Path done = Files.createDirectories(root.resolve("done"));
+		Path partial = Files.createDirectories(root.resolve("partial"));
+		Path locked = Files.createDirectories(partial.resolve("locked"));
+		Set<String> expectedFiles = new HashSet<>();
+		expectedFiles.add(Files.write(done.resolve("f0"), new byte[] {1}).toString());
+		expectedFiles.add(Files.write(partial.resolve("f1"), new byte[] {1}).toString());
+		expectedFiles.add(Files.write(locked.resolve("f2"), new byte[] {1}).toString());
+		assertTrue(locked.toFile().setReadable(false));
+		//Users that can read any directory, like root, can't run this test
+		assumeTrue(locked.toFile().list() == null);
+		Path checkpointFile = folder.getRoot().toPath().resolve("walk.checkpoint");
+
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.create(checkpointFile, 10)) {
+			assertEquals(2, walk(root, checkpoint, Collections.emptyList()).size());
+		}
+		assertTrue(locked.toFile().setReadable(true));
+
+		//The parents of the unreadable directory are not completed, so its files are found when the scan is resumed
+		try (WalkCheckpoint checkpoint = WalkCheckpoint.resume(checkpointFile, 10)) {
+			assertTrue(checkpoint.isDirectoryDone(done));
+			assertFalse(checkpoint.isDirectoryDone(partial));
+			assertFalse(checkpoint.isDirectoryDone(root));
+			assertEquals(1, checkpoint.getReplayFiles());
+			assertEquals(expectedFiles, walk(root, checkpoint, Collections.emptyList()));
+		}
+	}
+
+	private Set<String> walk(Path root, WalkCheckpoint checkpoint, List<FileConditionFilter> filters)
+			throws Exception {
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		EventBus eventBus = new EventBus();
+		JDKDirectoryWalker walker = new JDKDirectoryWalker(root.toString(), fileQueue, filters, eventBus);
+		walker.setCheckpoint(checkpoint);
+
+		CountDownLatch finished = new CountDownLatch(1);
+		eventBus.subscribe(event -> {
+			if (EventType.FINISHED == event.getType())
+				finished.countDown();
+		});
+		walker.walkDirectory();
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		eventBus.close();
+
+		List<String> queuedFiles = new ArrayList<>();
+		List<FileInfo> batch = new ArrayList<>();
+		while (fileQueue.takeBatch(batch)) {
+			batch.forEach(fileInfo -> queuedFiles.add(fileInfo.getPath()));
+		}
+		Set<String> distinctFiles = new HashSet<>(queuedFiles);
+		assertEquals(queuedFiles.size(), distinctFiles.size());
+		return distinctFiles;
+	}
+
+	private static int occurrences(Path file, String text) throws Exception {
+		String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+		int count = 0;
+		for (int index = content.indexOf(text); index >= 0; index = content.indexOf(text, index + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+}
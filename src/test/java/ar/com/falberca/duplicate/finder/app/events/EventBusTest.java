@@ -0,0 +1,91 @@
+package ar.com.falberca.duplicate.finder.app.events;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+public class EventBusTest {
+
+	@Test
+	public void testEventsAreDeliveredInOrder() {
+		EventBus eventBus = new EventBus();
+		List<EventType> received = new CopyOnWriteArrayList<>();
+		eventBus.subscribe(event -> {
+			if (EventType.PROGRESS != event.getType())
+				received.add(event.getType());
+		});
+
+		eventBus.publish(new PipelineEvent(this, EventType.STARTED));
+		eventBus.publish(new DirectoryDoneEvent(this, "/tmp"));
+		eventBus.publish(new StageCompletedEvent(this, "sample", 10, 4));
+		eventBus.publish(new PipelineEvent(this, EventType.FINISHED));
+		eventBus.close();
+
+		List<EventType> expected = new ArrayList<>();
+		expected.add(EventType.STARTED);
+		expected.add(EventType.DIRECTORY_DONE);
+		expected.add(EventType.STAGE_COMPLETED);
+		expected.add(EventType.FINISHED);
+		assertEquals(expected, received);
+	}
+
+	@Test
+	public void testFailingListenerDoesNotStopOthers() {
+		EventBus eventBus = new EventBus();
+		List<EventType> received = new CopyOnWriteArrayList<>();
+		eventBus.subscribe(event -> {
+			throw new IllegalStateException("Listener failure");
+		});
+		eventBus.subscribe(event -> received.add(event.getType()));
+
+		eventBus.publish(new PipelineEvent(this, EventType.STARTED));
+		eventBus.close();
+
+		assertTrue(received.contains(EventType.STARTED));
+	}
+
+	@Test
+	public void testLastProgressIsPublishedOnClose() {
+		EventBus eventBus = new EventBus(60000);
+		List<ProgressEvent> received = new CopyOnWriteArrayList<>();
+		eventBus.subscribe(event -> {
+			if (EventType.PROGRESS == event.getType())
+				received.add((ProgressEvent) event);
+		});
+
+		eventBus.getProgress().fileDiscovered(100);
+		eventBus.getProgress().fileDiscovered(50);
+		eventBus.getProgress().filesDone(2, 150);
+		eventBus.close();
+
+		assertFalse(received.isEmpty());
+		ProgressEvent last = received.get(received.size() - 1);
+		assertEquals(2, last.getFilesDiscovered());
+		assertEquals(150, last.getBytesDiscovered());
+		assertEquals(2, last.getFilesDone());
+		assertEquals(150, last.getBytesDone());
+		assertEquals(0, last.getEstimatedRemainingSeconds());
+	}
+
+	@Test
+	public void testEventsWithoutListenersAreDiscarded() {
+		EventBus eventBus = new EventBus();
+		eventBus.publish(new PipelineEvent(this, EventType.STARTED));
+
+		List<EventType> received = new CopyOnWriteArrayList<>();
+		eventBus.subscribe(event -> received.add(event.getType()));
+		eventBus.close();
+
+		assertFalse(received.contains(EventType.STARTED));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidProgressInterval() {
+		new EventBus(0);
+	}
+
+}
@@ -0,0 +1,49 @@
+package ar.com.falberca.duplicate.finder.app.files;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryTableTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDirectoriesAreStoredByParentAndName() throws Exception {
+		DirectoryTable directoryTable = new DirectoryTable();
+		Path parent = folder.newFolder("parent").toPath();
+		Path child = folder.newFolder("parent", "child").toPath();
+
+		int parentId = directoryTable.intern(parent);
+		int size = directoryTable.size();
+		int childId = directoryTable.intern(parentId, "child");
+
+		assertEquals(size + 1, directoryTable.size());
+		assertEquals(childId, directoryTable.intern(child));
+		assertEquals(size + 1, directoryTable.size());
+		assertEquals(parentId, directoryTable.getParent(childId));
+		assertEquals("child", directoryTable.getName(childId));
+		assertEquals(child.toAbsolutePath().toString(), directoryTable.getPath(childId));
+		assertEquals(parent.toAbsolutePath().toString(), directoryTable.getPath(parentId));
+	}
+
+	@Test
+	public void testRootOfTheFileSystem() {
+		DirectoryTable directoryTable = new DirectoryTable();
+		Path root = folder.getRoot().toPath().toAbsolutePath().getRoot();
+
+		int rootId = directoryTable.intern(root);
+		assertEquals(DirectoryTable.NO_PARENT, directoryTable.getParent(rootId));
+		assertEquals(root.toString(), directoryTable.getPath(rootId));
+		assertEquals(1, directoryTable.size());
+
+		FileInfo fileInfo = new FileInfo(directoryTable.getPath(rootId), "file", 0, 0, null);
+		assertEquals(root.resolve("file").toString(), fileInfo.getPath());
+	}
+
+}
@@ -88,6 +88,26 @@ public class FileInfoTest {
 		assertEquals(emptyFile.getName(), fileInfo.getName());
 	}
 
+	@Test
+	public void testDirectoryIsShared() throws Exception {
+		DirectoryTable directoryTable = new DirectoryTable();
+		BasicFileAttributes regularAttr = Files.readAttributes(regularFile.toPath(), BasicFileAttributes.class);
+		BasicFileAttributes emptyAttr = Files.readAttributes(emptyFile.toPath(), BasicFileAttributes.class);
+		
+		int regularDirectory = directoryTable.intern(regularFile.toPath().getParent());
+		int emptyDirectory = directoryTable.intern(emptyFile.toPath().getParent());
+		FileInfo regularFileInfo = new FileInfo(directoryTable.getPath(regularDirectory), 
+												regularFile.getName(), 
+												regularAttr);
+		FileInfo emptyFileInfo = new FileInfo(directoryTable.getPath(emptyDirectory), 
+											  emptyFile.getName(), 
+											  emptyAttr);
+		
+		assertEquals(regularDirectory, emptyDirectory);
+		assertEquals(regularFile.getAbsolutePath(), regularFileInfo.getPath());
+		assertEquals(emptyFile.getAbsolutePath(), emptyFileInfo.getPath());
+	}
+	
 	@Test
 	public void testBrokenLinkFile() throws Exception {
 		BasicFileAttributes attr = Files.readAttributes(brokenLink.toPath(), 
@@ -0,0 +1,142 @@
+package ar.com.falberca.duplicate.finder.app.files;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FileTransferQueueTest {
+
+	@Test
+	public void testFilesAreTakenInBatches() throws Exception {
+		FileTransferQueue fileQueue = new FileTransferQueue(10, 4);
+		for (int index = 0; index < 6; index++) {
+			fileQueue.put(new FileInfo());
+		}
+		fileQueue.close();
+		
+		List<FileInfo> batch = new ArrayList<>();
+		assertTrue(fileQueue.takeBatch(batch));
+		assertEquals(4, batch.size());
+		assertTrue(fileQueue.takeBatch(batch));
+		assertEquals(2, batch.size());
+		assertFalse(fileQueue.takeBatch(batch));
+		assertTrue(batch.isEmpty());
+		assertEquals(6, fileQueue.getTransferredFiles());
+		assertEquals(6, fileQueue.getMaxDepth());
+		assertEquals(0, fileQueue.getDepth());
+	}
+	
+	@Test
+	public void testEveryConsumerReceivesEndOfStream() throws Exception {
+		FileTransferQueue fileQueue = new FileTransferQueue(2, 8);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		List<Future<Integer>> consumers = new ArrayList<>();
+		for (int index = 0; index < 3; index++) {
+			consumers.add(executor.submit(() -> {
+				int taken = 0;
+				List<FileInfo> batch = new ArrayList<>();
+				while (fileQueue.takeBatch(batch)) {
+					taken += batch.size();
+				}
+				return taken;
+			}));
+		}
+		
+		for (int index = 0; index < 1000; index++) {
+			fileQueue.put(new FileInfo());
+		}
+		fileQueue.close();
+		
+		int taken = 0;
+		for (Future<Integer> consumer : consumers) {
+			taken += consumer.get(10, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		assertEquals(1000, taken);
+	}
+	
+	@Test
+	public void testFullQueueStallsProducer() throws Exception {
+		FileTransferQueue fileQueue = new FileTransferQueue(1, 1);
+		fileQueue.put(new FileInfo());
+		
+		Thread producer = new Thread(() -> {
+			try {
+				fileQueue.put(new FileInfo());
+			}
+			catch(InterruptedException ex) {
+				//Test fails by the stall assertion
+			}
+		});
+		producer.start();
+		
+		while (producer.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		fileQueue.takeBatch(new ArrayList<>());
+		producer.join();
+		
+		assertEquals(1, fileQueue.getFullQueueStalls());
+		assertEquals(1, fileQueue.getDepth());
+	}
+	
+	@Test
+	public void testConcurrentPutAndClose() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int round = 0; round < 200; round++) {
+			FileTransferQueue fileQueue = new FileTransferQueue(1024 * 1024, 64);
+			AtomicInteger queued = new AtomicInteger();
+			List<Future<?>> producers = new ArrayList<>();
+			for (int index = 0; index < 4; index++) {
+				producers.add(executor.submit(() -> {
+					try {
+						while (true) {
+							fileQueue.put(new FileInfo());
+							queued.incrementAndGet();
+						}
+					}
+					catch(IllegalStateException ex) {
+						//The queue was closed
+					}
+					return null;
+				}));
+			}
+			while (queued.get() < 1000) {
+				Thread.yield();
+			}
+			fileQueue.close();
+			for (Future<?> producer : producers) {
+				producer.get(10, TimeUnit.SECONDS);
+			}
+			
+			//Every file put before closing is taken before the marker, and none is left after it
+			Future<Integer> consumer = executor.submit(() -> {
+				int taken = 0;
+				List<FileInfo> batch = new ArrayList<>();
+				while (fileQueue.takeBatch(batch)) {
+					taken += batch.size();
+				}
+				return taken;
+			});
+			assertEquals(queued.get(), consumer.get(10, TimeUnit.SECONDS).intValue());
+			assertEquals(0, fileQueue.getDepth());
+		}
+		executor.shutdown();
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testPutAfterClose() throws Exception {
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		fileQueue.close();
+		fileQueue.put(new FileInfo());
+	}
+
+}
@@ -0,0 +1,95 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.metrics.ScanMetrics;
+
+public class ChunkedContentComparatorTest {
+
+	private static final int FILE_SIZE = 10 * 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testGroupsBiggerThanOpenFilesAreComparedInBatches() throws Exception {
+		byte[] content = randomContent(3);
+		byte[] other = content.clone();
+		other[FILE_SIZE - 1] ^= 1;
+
+		//Copies of two contents interleaved, with an unreadable file among them
+		List<FileInfo> files = new ArrayList<>();
+		for (int index = 0; index < 7; index++) {
+			files.add(write("file" + index, index % 2 == 0 ? content : other));
+		}
+		files.add(3, new FileInfo(folder.getRoot().getPath(), "missing", FILE_SIZE, 0, null));
+
+		ChunkedContentComparator comparator = new ChunkedContentComparator(4096, 3, DeviceReadScheduler.unlimited());
+		List<List<FileInfo>> groups = comparator.split(files);
+
+		assertEquals(2, groups.size());
+		assertEquals(Arrays.asList(files.get(0), files.get(2), files.get(5), files.get(7)), groups.get(0));
+		assertEquals(Arrays.asList(files.get(1), files.get(4), files.get(6)), groups.get(1));
+	}
+
+	@Test
+	public void testVerificationRejectsCollisions() throws Exception {
+		byte[] content = randomContent(5);
+		byte[] other = content.clone();
+		other[FILE_SIZE / 3] ^= 1;
+		FileInfo original = write("original", content);
+		FileInfo duplicate = write("duplicate", content);
+		FileInfo collision = write("collision", other);
+
+		//A hashing stage where every file has the same digest
+		ComparisonStage collidingStage = new ComparisonStage() {
+
+			@Override
+			public String getName() {
+				return "colliding";
+			}
+
+			@Override
+			public Collection<List<FileInfo>> split(List<FileInfo> candidates) {
+				return Collections.singletonList(candidates);
+			}
+		};
+		long collisions = ScanMetrics.current().getHashCollisions();
+		long verifiedGroups = ScanMetrics.current().getVerifiedGroups();
+
+		VerificationComparisonStage stage = new VerificationComparisonStage(collidingStage);
+		Collection<List<FileInfo>> groups = stage.split(Arrays.asList(original, collision, duplicate));
+
+		assertEquals(Collections.singletonList(Arrays.asList(original, duplicate)), new ArrayList<>(groups));
+		assertEquals(collisions + 1, ScanMetrics.current().getHashCollisions());
+		assertEquals(verifiedGroups + 1, ScanMetrics.current().getVerifiedGroups());
+	}
+
+	private static byte[] randomContent(long seed) {
+		byte[] content = new byte[FILE_SIZE];
+		new Random(seed).nextBytes(content);
+		return content;
+	}
+
+	private FileInfo write(String name, byte[] content) throws Exception {
+		Path path = Files.write(folder.getRoot().toPath().resolve(name), content);
+		return new FileInfo(path, Files.readAttributes(path, BasicFileAttributes.class));
+	}
+
+}
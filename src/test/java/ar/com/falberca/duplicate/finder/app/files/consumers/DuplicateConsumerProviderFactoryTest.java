@@ -0,0 +1,316 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.files.devices.StorageDevice;
+import ar.com.falberca.duplicate.finder.app.files.hashing.FileHashingEngine;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashAlgorithm;
+import ar.com.falberca.duplicate.finder.app.results.DuplicateGroup;
+import ar.com.falberca.duplicate.finder.app.results.DuplicateType;
+import ar.com.falberca.duplicate.finder.app.results.ResultSink;
+
+public class DuplicateConsumerProviderFactoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testIndexInMemory() throws Exception {
+		CollectingSink sink = new CollectingSink();
+		DuplicateConsumerProviderFactory factory = createFactory(sink, folder.newFolder().toPath(), Long.MAX_VALUE);
+		scan(factory);
+
+		assertFalse(factory.isSpilled());
+		assertDuplicates(sink);
+	}
+
+	@Test
+	public void testIndexSpilledToDisk() throws Exception {
+		CollectingSink sink = new CollectingSink();
+		Path spillDirectory = folder.newFolder("spill").toPath();
+		DuplicateConsumerProviderFactory factory = createFactory(sink, spillDirectory, 0);
+		scan(factory);
+
+		assertTrue(factory.isSpilled());
+		assertDuplicates(sink);
+		assertEquals(0, spillDirectory.toFile().list().length);
+	}
+
+	@Test
+	public void testSpilledGroupsAreComparedByStages() throws Exception {
+		CollectingSink sink = new CollectingSink();
+		RecordingEngine engine = new RecordingEngine();
+		DuplicateConsumerProviderFactory factory = createFactory(
+				sink,
+				folder.newFolder("spill").toPath(),
+				0,
+				() -> Arrays.asList(smallSampleStage(),
+									new DigestComparisonStage(engine, null, DeviceReadScheduler.unlimited())));
+		scan(factory);
+
+		assertTrue(factory.isSpilled());
+		assertDuplicates(sink);
+		//The different file is eliminated by the sample and a single link of the first file is hashed
+		List<String> hashedNames = engine.getHashedNames();
+		assertEquals(4, hashedNames.size());
+		assertTrue(hashedNames.containsAll(Arrays.asList("second", "big-first", "big-second")));
+		assertFalse(hashedNames.contains("different"));
+		assertFalse(hashedNames.contains("unique"));
+	}
+
+	@Test
+	public void testUniqueSizeFilesAreNeverOpened() throws Exception {
+		for (long heapBudget : new long[] {Long.MAX_VALUE, 0}) {
+			RecordingEngine engine = new RecordingEngine();
+			EventBus eventBus = new EventBus();
+			DuplicateConsumerProviderFactory factory = new DuplicateConsumerProviderFactory(
+					() -> Arrays.asList(new DigestComparisonStage(engine, null, DeviceReadScheduler.unlimited())),
+					new CollectingSink(),
+					eventBus,
+					new ExternalMemorySettings(folder.newFolder().toPath(), heapBudget, 2));
+
+			ConsumerProviderFunction function = factory.createConsumerFunction();
+			function.accept(write("unique-short", "a"));
+			function.accept(write("unique-long", "a longer content"));
+			function.accept(write("pair-first", "pair"));
+			function.accept(write("pair-second", "pair"));
+			factory.allFilesAccepted();
+			function.complete();
+
+			assertEquals(heapBudget == 0, factory.isSpilled());
+			assertEquals(2, factory.getUniqueSizeFiles());
+			assertEquals(4, eventBus.getProgress().getFilesDone());
+			List<String> hashedNames = engine.getHashedNames();
+			Collections.sort(hashedNames);
+			assertEquals(Arrays.asList("pair-first", "pair-second"), hashedNames);
+		}
+	}
+
+	@Test
+	public void testHardlinksAreHashedOnce() throws Exception {
+		CollectingSink sink = new CollectingSink();
+		RecordingEngine engine = new RecordingEngine();
+		DuplicateConsumerProviderFactory factory = createFactory(
+				sink,
+				folder.newFolder("spill").toPath(),
+				Long.MAX_VALUE,
+				() -> Arrays.asList(new DigestComparisonStage(engine, null, DeviceReadScheduler.unlimited())));
+
+		Path original = folder.getRoot().toPath().resolve("original");
+		Files.write(original, "linked content".getBytes("UTF-8"));
+		List<FileInfo> files = new ArrayList<>();
+		files.add(fileInfo(original));
+		files.add(fileInfo(Files.createLink(folder.getRoot().toPath().resolve("first-link"), original)));
+		files.add(fileInfo(Files.createLink(folder.getRoot().toPath().resolve("second-link"), original)));
+		files.add(write("copy", "linked content"));
+		ConsumerProviderFunction function = factory.createConsumerFunction();
+		files.forEach(function::accept);
+		factory.allFilesAccepted();
+		function.complete();
+
+		//A single link and the copy are read
+		List<String> hashedNames = engine.getHashedNames();
+		assertEquals(2, hashedNames.size());
+		assertTrue(hashedNames.contains("copy"));
+
+		DuplicateGroup hardlinks = sink.groups.stream()
+											  .filter(group -> group.getType() == DuplicateType.HARDLINK)
+											  .findFirst()
+											  .get();
+		assertEquals(3, hardlinks.getPaths().size());
+		assertEquals(0, hardlinks.getReclaimableBytes());
+		assertTrue(hardlinks.getPaths().stream().map(this::name).anyMatch(hashedNames::contains));
+	}
+
+	@Test
+	public void testLargeSizeGroupIsPartitioned() throws Exception {
+		CollectingSink sink = new CollectingSink();
+		EventBus eventBus = new EventBus();
+		Path spillDirectory = folder.newFolder("spill").toPath();
+		List<Integer> sampleGroups = Collections.synchronizedList(new ArrayList<>());
+		List<Integer> digestGroups = Collections.synchronizedList(new ArrayList<>());
+		DuplicateConsumerProviderFactory factory = new DuplicateConsumerProviderFactory(
+				() -> Arrays.asList(new SampleComparisonStage(HashAlgorithm.MD5.createHasher(), 
+																  2, 
+																  null, 
+																  DeviceReadScheduler.unlimited()) {
+										@Override
+										public Collection<List<FileInfo>> split(List<FileInfo> candidates) {
+											sampleGroups.add(candidates.size());
+											return super.split(candidates);
+										}
+									}, 
+									new DigestComparisonStage() {
+										@Override
+										public Collection<List<FileInfo>> split(List<FileInfo> candidates) {
+											digestGroups.add(candidates.size());
+											return super.split(candidates);
+										}
+									}),
+				sink,
+				eventBus,
+				new ExternalMemorySettings(spillDirectory, 0, 2, 4));
+
+		//A single size group of 30 files, 3 contents with 5 copies each and 15 unique contents
+		ConsumerProviderFunction function = factory.createConsumerFunction();
+		for (int index = 0; index < 15; index++) {
+			function.accept(write("copy-" + index, String.format("copy %02d", index % 3)));
+			function.accept(write("unique-" + index, String.format("uniq %02d", index)));
+		}
+		factory.allFilesAccepted();
+		function.complete();
+
+		assertTrue(factory.isSpilled());
+		assertEquals(0, factory.getUniqueSizeFiles());
+		assertEquals(30, eventBus.getProgress().getFilesDone());
+		//The size group is split by the sample on disk, only its partitions are read in memory
+		assertTrue(sampleGroups.isEmpty());
+		assertEquals(Arrays.asList(5, 5, 5), digestGroups);
+		assertEquals(3, sink.groups.size());
+		for (DuplicateGroup group : sink.groups) {
+			assertEquals(DuplicateType.REGULAR_FILE, group.getType());
+			assertEquals(5, group.getPaths().size());
+			assertEquals(1, group.getPaths().stream()
+											.map(path -> Integer.parseInt(name(path).substring("copy-".length())) % 3)
+											.distinct()
+											.count());
+		}
+		assertEquals(0, spillDirectory.toFile().list().length);
+	}
+
+	/*
+	 * Samples of 4 bytes, so the files of the tests are sampled instead of being digested whole
+	 */
+	private static SampleComparisonStage smallSampleStage() {
+		return new SampleComparisonStage(HashAlgorithm.MD5.createHasher(), 4, null, DeviceReadScheduler.unlimited());
+	}
+
+	private DuplicateConsumerProviderFactory createFactory(ResultSink sink, Path spillDirectory, long heapBudget) {
+		return createFactory(sink,
+							 spillDirectory,
+							 heapBudget,
+							 () -> Arrays.asList(new SampleComparisonStage(), new DigestComparisonStage()));
+	}
+
+	/*
+	 * Runs of two records, so the spilled files are sorted in several runs
+	 */
+	private DuplicateConsumerProviderFactory createFactory(ResultSink sink, Path spillDirectory, long heapBudget,
+														   Supplier<List<ComparisonStage>> stagesSupplier) {
+		ExternalMemorySettings settings = new ExternalMemorySettings(spillDirectory, heapBudget, 2);
+		return new DuplicateConsumerProviderFactory(stagesSupplier, sink, new EventBus(), settings);
+	}
+
+	/*
+	 * Two copies and a hardlink of the same content, a file of the same size with other content, a file with a
+	 * unique size and a copy of a bigger content
+	 */
+	private void scan(DuplicateConsumerProviderFactory factory) throws Exception {
+		List<FileInfo> files = new ArrayList<>();
+		files.add(write("first", "duplicate content"));
+		files.add(write("second", "duplicate content"));
+		files.add(write("different", "different content"));
+		files.add(write("unique", "unique"));
+		files.add(write("big-first", "a bigger duplicate content"));
+		files.add(write("big-second", "a bigger duplicate content"));
+		Path link = Files.createLink(folder.getRoot().toPath().resolve("hardlink"),
+									 folder.getRoot().toPath().resolve("first"));
+		files.add(fileInfo(link));
+
+		List<ConsumerProviderFunction> functions = Arrays.asList(factory.createConsumerFunction(),
+																 factory.createConsumerFunction());
+		for (int index = 0; index < files.size(); index++) {
+			functions.get(index % functions.size()).accept(files.get(index));
+		}
+		factory.allFilesAccepted();
+		functions.forEach(ConsumerProviderFunction::complete);
+	}
+
+	private void assertDuplicates(CollectingSink sink) {
+		List<String> groups = sink.groups.stream()
+										 .map(group -> group.getType() + ":" + group.getPaths().stream()
+																					.map(this::name)
+																					.sorted()
+																					.collect(Collectors.toList()))
+										 .sorted()
+										 .collect(Collectors.toList());
+		assertEquals(3, groups.size());
+		assertEquals(DuplicateType.HARDLINK + ":[first, hardlink]", groups.get(0));
+		assertEquals(DuplicateType.REGULAR_FILE + ":[big-first, big-second]", groups.get(1));
+		assertTrue(groups.get(2).equals(DuplicateType.REGULAR_FILE + ":[first, second]")
+				   || groups.get(2).equals(DuplicateType.REGULAR_FILE + ":[hardlink, second]"));
+	}
+
+	private String name(String path) {
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	private FileInfo write(String name, String content) throws Exception {
+		Path path = Files.write(folder.getRoot().toPath().resolve(name), content.getBytes("UTF-8"));
+		return fileInfo(path);
+	}
+
+	private static FileInfo fileInfo(Path path) throws Exception {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		return new FileInfo(path.getParent().toString(), path.getFileName().toString(), attributes);
+	}
+
+	/*
+	 * Engine that records the names of the files it hashes
+	 */
+	private static class RecordingEngine extends FileHashingEngine {
+
+		private final List<String> hashedNames = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public byte[] hash(Path path, StorageDevice device) throws IOException {
+			hashedNames.add(path.getFileName().toString());
+			return super.hash(path, device);
+		}
+
+		private List<String> getHashedNames() {
+			return hashedNames;
+		}
+	}
+
+	/*
+	 * Keeps the reported groups in memory
+	 */
+	private static class CollectingSink implements ResultSink {
+
+		private final List<DuplicateGroup> groups = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void accept(DuplicateGroup duplicateGroup) {
+			groups.add(duplicateGroup);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+}
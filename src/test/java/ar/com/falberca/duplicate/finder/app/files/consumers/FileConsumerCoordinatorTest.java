@@ -0,0 +1,219 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ar.com.falberca.duplicate.finder.app.events.EventBus;
+import ar.com.falberca.duplicate.finder.app.events.EventType;
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+
+public class FileConsumerCoordinatorTest {
+
+	private static final int FILES = 5000;
+	private static final int CONCURRENCY = 8;
+	private static final int COMPARISON_TASKS = 32;
+	private static final int TASKS_PER_FUNCTION = 25;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPlatformThreadsConsumeEveryFile() throws Exception {
+		assertEveryFileIsConsumed(ConsumerThreadMode.PLATFORM);
+	}
+
+	@Test
+	public void testVirtualThreadsConsumeEveryFile() throws Exception {
+		assumeTrue(ConsumerThreadMode.VIRTUAL.isAvailable());
+		assertEveryFileIsConsumed(ConsumerThreadMode.VIRTUAL);
+	}
+
+	@Test
+	public void testVirtualComparisonTasksAreBounded() throws Exception {
+		assumeTrue(ConsumerThreadMode.VIRTUAL.isAvailable());
+
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		TaskFactory factory = new TaskFactory();
+		EventBus eventBus = new EventBus();
+		FileConsumerCoordinator coordinator = new FileConsumerCoordinator(fileQueue, factory, CONCURRENCY,
+																		  ConsumerThreadMode.VIRTUAL, eventBus);
+		coordinator.setComparisonTasks(COMPARISON_TASKS);
+		CountDownLatch finished = new CountDownLatch(1);
+		AtomicInteger tasksAtFinish = new AtomicInteger(-1);
+		eventBus.subscribe(event -> {
+			if (EventType.FINISHED == event.getType()) {
+				tasksAtFinish.set(factory.completedTasks.get());
+				finished.countDown();
+			}
+		});
+
+		coordinator.consume();
+		fileQueue.close();
+
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		eventBus.close();
+		//Tasks run beyond the number of consumer functions but never beyond the limit
+		assertEquals(CONCURRENCY * TASKS_PER_FUNCTION, tasksAtFinish.get());
+		assertTrue(factory.maxConcurrentTasks.get() <= COMPARISON_TASKS);
+		assertTrue(factory.maxConcurrentTasks.get() > CONCURRENCY);
+	}
+
+	@Test
+	public void testUnavailableThreadModeIsRejected() {
+		assumeFalse(ConsumerThreadMode.VIRTUAL.isAvailable());
+		try {
+			new FileConsumerCoordinator(new FileTransferQueue(), new CountingFactory(), CONCURRENCY,
+										ConsumerThreadMode.VIRTUAL, new EventBus());
+			fail("Virtual thread mode must be rejected");
+		}
+		catch(IllegalArgumentException ex) {
+			//Expected
+		}
+	}
+
+	@Test
+	public void testThreadModeFromName() {
+		assertEquals(ConsumerThreadMode.VIRTUAL, ConsumerThreadMode.fromName("Virtual"));
+		assertEquals(ConsumerThreadMode.PLATFORM, ConsumerThreadMode.fromName("platform"));
+	}
+
+	private void assertEveryFileIsConsumed(ConsumerThreadMode threadMode) throws Exception {
+		Path path = Files.write(folder.newFile().toPath(), new byte[] {1});
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		FileInfo fileInfo = new FileInfo(path.getParent().toString(), path.getFileName().toString(), attributes);
+
+		FileTransferQueue fileQueue = new FileTransferQueue();
+		CountingFactory factory = new CountingFactory();
+		EventBus eventBus = new EventBus();
+		FileConsumerCoordinator coordinator = new FileConsumerCoordinator(fileQueue, factory, CONCURRENCY,
+																		  threadMode, eventBus);
+		CountDownLatch finished = new CountDownLatch(1);
+		eventBus.subscribe(event -> {
+			if (EventType.FINISHED == event.getType())
+				finished.countDown();
+		});
+
+		coordinator.consume();
+		for (int index = 0; index < FILES; index++) {
+			fileQueue.put(fileInfo);
+		}
+		fileQueue.close();
+
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		eventBus.close();
+		assertEquals(FILES, factory.acceptedFiles.get());
+		assertEquals(CONCURRENCY, factory.createdFunctions.get());
+		assertEquals(CONCURRENCY, factory.completedFunctions.get());
+		assertTrue(factory.maxConcurrentAccepts.get() <= CONCURRENCY);
+		assertFalse(factory.completedBeforeAllAccepted.get());
+	}
+
+	/*
+	 * Counts the calls of the consumer functions and checks the deferred work runs after every file was accepted
+	 */
+	private static class CountingFactory implements ConsumerProviderFunctionFactory {
+
+		private final AtomicInteger acceptedFiles = new AtomicInteger();
+		private final AtomicInteger createdFunctions = new AtomicInteger();
+		private final AtomicInteger completedFunctions = new AtomicInteger();
+		private final AtomicInteger concurrentAccepts = new AtomicInteger();
+		private final AtomicInteger maxConcurrentAccepts = new AtomicInteger();
+		private final AtomicBoolean allAccepted = new AtomicBoolean();
+		private final AtomicBoolean completedBeforeAllAccepted = new AtomicBoolean();
+
+		@Override
+		public ConsumerProviderFunction createConsumerFunction() {
+			createdFunctions.incrementAndGet();
+			return new ConsumerProviderFunction() {
+
+				@Override
+				public void accept(FileInfo fileInfo) {
+					maxConcurrentAccepts.accumulateAndGet(concurrentAccepts.incrementAndGet(), Math::max);
+					acceptedFiles.incrementAndGet();
+					concurrentAccepts.decrementAndGet();
+				}
+
+				@Override
+				public void complete() {
+					if (!allAccepted.get())
+						completedBeforeAllAccepted.set(true);
+					completedFunctions.incrementAndGet();
+				}
+			};
+		}
+
+		@Override
+		public void allFilesAccepted() {
+			allAccepted.set(true);
+		}
+	}
+
+	/*
+	 * Every consumer function completes its deferred work as slow tasks and waits for all of them
+	 */
+	private static class TaskFactory implements ConsumerProviderFunctionFactory {
+
+		private final AtomicInteger completedTasks = new AtomicInteger();
+		private final AtomicInteger concurrentTasks = new AtomicInteger();
+		private final AtomicInteger maxConcurrentTasks = new AtomicInteger();
+
+		@Override
+		public ConsumerProviderFunction createConsumerFunction() {
+			return new ConsumerProviderFunction() {
+
+				@Override
+				public void accept(FileInfo fileInfo) {
+				}
+
+				@Override
+				public void complete() {
+					complete(Runnable::run);
+				}
+
+				@Override
+				public void complete(Executor taskExecutor) {
+					CountDownLatch tasks = new CountDownLatch(TASKS_PER_FUNCTION);
+					for (int index = 0; index < TASKS_PER_FUNCTION; index++) {
+						taskExecutor.execute(() -> {
+							maxConcurrentTasks.accumulateAndGet(concurrentTasks.incrementAndGet(), Math::max);
+							try {
+								Thread.sleep(20);
+							}
+							catch(InterruptedException ex) {
+								Thread.currentThread().interrupt();
+							}
+							concurrentTasks.decrementAndGet();
+							completedTasks.incrementAndGet();
+							tasks.countDown();
+						});
+					}
+					try {
+						tasks.await();
+					}
+					catch(InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+		}
+
+		@Override
+		public void allFilesAccepted() {
+		}
+	}
+
+}
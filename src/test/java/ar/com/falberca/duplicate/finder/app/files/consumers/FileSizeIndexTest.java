@@ -0,0 +1,110 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+public class FileSizeIndexTest {
+
+	@Test
+	public void testFilesAreGroupedBySize() throws Exception {
+		FileSizeIndex fileSizeIndex = new FileSizeIndex();
+		FileInfo first = fileInfo("first", 4096);
+		FileInfo second = fileInfo("second", 4096);
+		FileInfo third = fileInfo("third", 4096);
+		fileSizeIndex.add(first);
+		fileSizeIndex.add(fileInfo("unique", 10));
+		fileSizeIndex.add(second);
+		fileSizeIndex.add(third);
+
+		List<List<FileInfo>> candidateGroups = fileSizeIndex.getCandidateGroups();
+		assertEquals(1, candidateGroups.size());
+		assertEquals(Arrays.asList(first, second, third), candidateGroups.get(0));
+		assertEquals(1, fileSizeIndex.getUniqueSizeFiles());
+	}
+
+	@Test
+	public void testConcurrentAdds() throws Exception {
+		FileRegistry fileRegistry = new FileRegistry();
+		FileSizeIndex fileSizeIndex = new FileSizeIndex(fileRegistry);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		//Sizes 0 to 4999 twice plus 5000 to 9999 once, enough for growing the stripes and the registry chunks
+		IntStream.range(0, 15000).forEach(index -> executor.submit(() -> 
+			fileSizeIndex.add(fileInfo("file" + index, index < 10000 ? index % 5000 : index - 5000))));
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		List<List<FileInfo>> candidateGroups = fileSizeIndex.getCandidateGroups();
+		assertEquals(5000, candidateGroups.size());
+		candidateGroups.forEach(group -> {
+			assertEquals(2, group.size());
+			assertEquals(group.get(0).getSize(), group.get(1).getSize());
+		});
+		assertEquals(5000, fileSizeIndex.getUniqueSizeFiles());
+		assertEquals(15000, fileRegistry.size());
+	}
+
+	private static FileInfo fileInfo(String name, long size) {
+		return new FileInfo(Paths.get("/nonexistent", name), new BasicFileAttributes() {
+			
+			@Override
+			public long size() {
+				return size;
+			}
+			
+			@Override
+			public FileTime lastModifiedTime() {
+				return FileTime.fromMillis(0);
+			}
+			
+			@Override
+			public FileTime lastAccessTime() {
+				return lastModifiedTime();
+			}
+			
+			@Override
+			public FileTime creationTime() {
+				return lastModifiedTime();
+			}
+			
+			@Override
+			public boolean isRegularFile() {
+				return true;
+			}
+			
+			@Override
+			public boolean isDirectory() {
+				return false;
+			}
+			
+			@Override
+			public boolean isSymbolicLink() {
+				return false;
+			}
+			
+			@Override
+			public boolean isOther() {
+				return false;
+			}
+			
+			@Override
+			public Object fileKey() {
+				return null;
+			}
+		});
+	}
+
+}
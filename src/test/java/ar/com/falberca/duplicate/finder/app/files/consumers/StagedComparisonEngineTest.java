@@ -0,0 +1,194 @@
+package ar.com.falberca.duplicate.finder.app.files.consumers;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.devices.DeviceReadScheduler;
+import ar.com.falberca.duplicate.finder.app.files.hashing.AsyncHashingPipeline;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashAlgorithm;
+
+public class StagedComparisonEngineTest {
+
+	private static final int FILE_SIZE = 64 * 1024;
+
+	private List<File> files = new ArrayList<>();
+
+	private FileInfo original;
+	private FileInfo duplicate;
+	private FileInfo differentMiddle;
+	private FileInfo differentOutsideSamples;
+
+	@Before
+	public void setUp() throws Exception {
+		byte[] content = new byte[FILE_SIZE];
+		new Random(7).nextBytes(content);
+
+		original = createFile(content);
+		duplicate = createFile(content);
+
+		byte[] middleChanged = content.clone();
+		middleChanged[FILE_SIZE / 2] ^= 1;
+		differentMiddle = createFile(middleChanged);
+
+		byte[] unsampledChanged = content.clone();
+		unsampledChanged[FILE_SIZE / 4] ^= 1;
+		differentOutsideSamples = createFile(unsampledChanged);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		files.forEach(File::delete);
+	}
+
+	@Test
+	public void testDuplicatesSurviveAllStages() throws Exception {
+		List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+
+		StagedComparisonEngine engine = new StagedComparisonEngine(
+				() -> Arrays.asList(new SampleComparisonStage(), new DigestComparisonStage()));
+		engine.submit(Arrays.asList(original, differentMiddle, duplicate, differentOutsideSamples));
+		engine.process(duplicateGroups::add);
+
+		assertEquals(1, duplicateGroups.size());
+		assertEquals(Arrays.asList(original.getPath(), duplicate.getPath()),
+					 duplicateGroups.get(0).stream().map(FileInfo::getPath).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testAsyncDigestStage() throws Exception {
+		List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+
+		try (AsyncHashingPipeline pipeline = new AsyncHashingPipeline(HashAlgorithm.MD5::createHasher, 2, 4096, 
+																	  16 * 1024)) {
+			DeviceReadScheduler readScheduler = DeviceReadScheduler.unlimited();
+			StagedComparisonEngine engine = new StagedComparisonEngine(
+					() -> Arrays.asList(new AsyncDigestComparisonStage(pipeline, null, readScheduler)));
+			engine.submit(Arrays.asList(original, differentMiddle, duplicate, differentOutsideSamples));
+			engine.process(duplicateGroups::add);
+		}
+
+		assertEquals(1, duplicateGroups.size());
+		assertEquals(Arrays.asList(original, duplicate), duplicateGroups.get(0));
+	}
+
+	@Test
+	public void testSampleStageOnlyComparesSampledBlocks() throws Exception {
+		List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+
+		StagedComparisonEngine engine = new StagedComparisonEngine(
+				() -> Arrays.asList(new SampleComparisonStage()));
+		engine.submit(Arrays.asList(original, differentMiddle, differentOutsideSamples));
+		engine.process(duplicateGroups::add);
+
+		assertEquals(1, duplicateGroups.size());
+		assertEquals(Arrays.asList(original, differentOutsideSamples), duplicateGroups.get(0));
+	}
+
+	@Test
+	public void testDirectStageComparesSmallGroups() throws Exception {
+		List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+		CountingStage hashingStage = new CountingStage();
+
+		//Chunks smaller than the files, so the files that differ are split after the first chunk
+		StagedComparisonEngine engine = new StagedComparisonEngine(
+				() -> Arrays.asList(new DirectComparisonStage(hashingStage, 3, 4096, DeviceReadScheduler.unlimited())));
+		engine.submit(Arrays.asList(original, differentOutsideSamples, duplicate));
+		engine.process(duplicateGroups::add);
+
+		assertEquals(0, hashingStage.splitGroups);
+		assertEquals(1, duplicateGroups.size());
+		assertEquals(Arrays.asList(original, duplicate), duplicateGroups.get(0));
+	}
+
+	@Test
+	public void testDirectStageHashesBigGroups() throws Exception {
+		List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+		CountingStage hashingStage = new CountingStage();
+
+		StagedComparisonEngine engine = new StagedComparisonEngine(
+				() -> Arrays.asList(new DirectComparisonStage(hashingStage, 3, 4096, DeviceReadScheduler.unlimited())));
+		engine.submit(Arrays.asList(original, differentMiddle, duplicate, differentOutsideSamples));
+		engine.process(duplicateGroups::add);
+
+		assertEquals(1, hashingStage.splitGroups);
+		assertEquals(1, duplicateGroups.size());
+		assertEquals(Arrays.asList(original, duplicate), duplicateGroups.get(0));
+	}
+
+	@Test
+	public void testSmallFilesAreComparedWholeBySample() throws Exception {
+		byte[] content = new byte[3 * SampleComparisonStage.DEFAULT_SAMPLE_SIZE];
+		new Random(11).nextBytes(content);
+		byte[] changed = content.clone();
+		changed[content.length / 4] ^= 1;
+		List<FileInfo> candidates = Arrays.asList(createFile(content), createFile(changed), createFile(content));
+
+		List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+		CountingStage digestStage = new CountingStage();
+		StagedComparisonEngine engine = new StagedComparisonEngine(
+				() -> Arrays.asList(new SampleComparisonStage(), digestStage));
+		engine.submit(candidates);
+		engine.process(duplicateGroups::add);
+
+		//The sample covers the whole content, the group is not digested again
+		assertEquals(0, digestStage.splitGroups);
+		assertEquals(Arrays.asList(Arrays.asList(candidates.get(0), candidates.get(2))), duplicateGroups);
+
+		//Groups are still verified when it was requested
+		duplicateGroups.clear();
+		engine = new StagedComparisonEngine(
+				() -> Arrays.asList(new SampleComparisonStage(), new VerificationComparisonStage(digestStage)));
+		engine.submit(candidates);
+		engine.process(duplicateGroups::add);
+
+		assertEquals(1, digestStage.splitGroups);
+		assertEquals(Arrays.asList(Arrays.asList(candidates.get(0), candidates.get(2))), duplicateGroups);
+	}
+
+	@Test
+	public void testNoCandidates() throws Exception {
+		List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+
+		StagedComparisonEngine engine = new StagedComparisonEngine(
+				() -> Arrays.asList(new SampleComparisonStage(), new DigestComparisonStage()));
+		engine.process(duplicateGroups::add);
+
+		assertTrue(duplicateGroups.isEmpty());
+	}
+
+	/*
+	 * Digest stage that counts the groups it splits
+	 */
+	private static class CountingStage extends DigestComparisonStage {
+
+		private int splitGroups = 0;
+
+		@Override
+		public Collection<List<FileInfo>> split(List<FileInfo> candidates) {
+			splitGroups++;
+			return super.split(candidates);
+		}
+	}
+
+	private FileInfo createFile(byte[] content) throws Exception {
+		File file = File.createTempFile("staged-comparison-test", ".tmp");
+		files.add(file);
+		Path path = Files.write(file.toPath(), content);
+		return new FileInfo(path, Files.readAttributes(path, BasicFileAttributes.class));
+	}
+}
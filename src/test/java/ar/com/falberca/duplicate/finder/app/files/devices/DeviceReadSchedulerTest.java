@@ -0,0 +1,62 @@
+package ar.com.falberca.duplicate.finder.app.files.devices;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+public class DeviceReadSchedulerTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFilesOfRootsInTheSameStoreShareTheDevice() throws Exception {
+		Path first = folder.newFolder("first").toPath();
+		Path second = folder.newFolder("second").toPath();
+		Path firstFile = Files.write(first.resolve("file"), new byte[] {1});
+		Path secondFile = Files.write(second.resolve("file"), new byte[] {1});
+		Path outsideFile = Files.write(folder.getRoot().toPath().resolve("outside"), new byte[] {1});
+		
+		DeviceReadScheduler scheduler = new DeviceReadScheduler(Arrays.asList(first, second), 1, 4);
+		
+		StorageDevice device = scheduler.deviceOf(fileInfo(firstFile));
+		assertSame(device, scheduler.deviceOf(fileInfo(secondFile)));
+		assertEquals(device.isRotational() ? 1 : 4, device.getConcurrency());
+		assertNotSame(device, scheduler.deviceOf(fileInfo(outsideFile)));
+	}
+	
+	@Test
+	public void testSiblingWithRootPrefixIsNotInsideTheRoot() throws Exception {
+		Path root = folder.newFolder("data").toPath();
+		Path sibling = folder.newFolder("data2").toPath();
+		Path siblingFile = Files.write(sibling.resolve("file"), new byte[] {1});
+		
+		DeviceReadScheduler scheduler = new DeviceReadScheduler(Arrays.asList(root), 1, 1);
+		
+		assertEquals("default", scheduler.deviceOf(fileInfo(siblingFile)).getName());
+	}
+	
+	@Test
+	public void testDeviceLimitsConcurrentReads() {
+		StorageDevice device = new StorageDevice("disk", true, 1);
+		assertTrue(device.tryAcquire());
+		assertFalse(device.tryAcquire());
+		device.release();
+		assertTrue(device.tryAcquire());
+		device.release();
+	}
+	
+	private FileInfo fileInfo(Path path) throws Exception {
+		return new FileInfo(path, Files.readAttributes(path, BasicFileAttributes.class));
+	}
+
+}
@@ -0,0 +1,79 @@
+package ar.com.falberca.duplicate.finder.app.files.filters;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.Test;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+
+public class FileConditionFilterBuilderTest {
+
+	@Test
+	public void testPatternsMatchNamesAndPaths() {
+		PathPatterns patterns = PathPatterns.compile(Arrays.asList("*.tmp", "glob:cache-?", "{.git,node_modules}", 
+																   "/data/**/snapshots", "regex:/backup[0-9]+/"));
+		assertTrue(patterns.matches("/home/file.tmp", "file.tmp"));
+		assertFalse(patterns.matches("/home/file.tmp.bak", "file.tmp.bak"));
+		assertTrue(patterns.matches("/home/cache-1", "cache-1"));
+		assertFalse(patterns.matches("/home/cache-10", "cache-10"));
+		assertTrue(patterns.matches("/home/project/.git", ".git"));
+		assertTrue(patterns.matches("/home/project/node_modules", "node_modules"));
+		assertTrue(patterns.matches("/data/a/b/snapshots", "snapshots"));
+		assertFalse(patterns.matches("/home/snapshots", "snapshots"));
+		assertTrue(patterns.matches("/mnt/backup12/file", "file"));
+		assertFalse(patterns.matches("/mnt/backup/file", "file"));
+		assertTrue(PathPatterns.compile(Collections.emptyList()).isEmpty());
+	}
+
+	@Test
+	public void testEntryFiltersAreBuilt() {
+		List<FileConditionFilter> filters = FileConditionFilterBuilder.create()
+																	  .links(true)
+																	  .sizeRange(10, 100)
+																	  .include(Arrays.asList("*.jpg", "*.png"))
+																	  .exclude(Arrays.asList("thumb*"))
+																	  .excludeDirectories(Arrays.asList(".git"))
+																	  .build();
+		assertEquals(4, filters.size());
+		assertTrue(filters.get(0) instanceof SymlinksFilter);
+		
+		assertTrue(accepts(filters, new FileInfo("/photos", "beach.jpg", 50, 0, null)));
+		assertFalse(accepts(filters, new FileInfo("/photos", "beach.jpg", 5, 0, null)));
+		assertFalse(accepts(filters, new FileInfo("/photos", "beach.jpg", 101, 0, null)));
+		assertFalse(accepts(filters, new FileInfo("/photos", "beach.gif", 50, 0, null)));
+		assertFalse(accepts(filters, new FileInfo("/photos", "thumb.png", 50, 0, null)));
+		
+		Path root = Paths.get("/photos");
+		assertTrue(filters.stream()
+						  .filter(filter -> filter instanceof EntryConditionFilter)
+						  .map(filter -> (EntryConditionFilter) filter)
+						  .allMatch(filter -> filter.evaluateDirectory(root.resolve("2020"))));
+		assertFalse(filters.stream()
+						   .filter(filter -> filter instanceof EntryConditionFilter)
+						   .map(filter -> (EntryConditionFilter) filter)
+						   .allMatch(filter -> filter.evaluateDirectory(root.resolve(".git"))));
+	}
+
+	@Test
+	public void testNoPatternFiltersByDefault() {
+		assertTrue(FileConditionFilterBuilder.create().emptyFiles(true).build().get(0) instanceof EmptyFilesFilter);
+		assertEquals(1, FileConditionFilterBuilder.create().emptyFiles(true).build().size());
+	}
+
+	@Test(expected = PatternSyntaxException.class)
+	public void testInvalidRegex() {
+		FileConditionFilterBuilder.create().exclude(Arrays.asList("regex:[unclosed")).build();
+	}
+
+	private static boolean accepts(List<FileConditionFilter> filters, FileInfo fileInfo) {
+		return filters.stream().allMatch(filter -> filter.evaluate(fileInfo));
+	}
+
+}
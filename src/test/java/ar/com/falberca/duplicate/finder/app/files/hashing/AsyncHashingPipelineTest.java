@@ -0,0 +1,93 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncHashingPipelineTest {
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private List<File> files = new ArrayList<>();
+	private List<byte[]> contents = new ArrayList<>();
+	private AsyncHashingPipeline pipeline;
+
+	@Before
+	public void setUp() throws Exception {
+		Random random = new Random(13);
+		//Empty, smaller than a chunk, exactly two chunks and several chunks with a partial last one
+		for (int size : new int[] {0, 100, 2 * CHUNK_SIZE, 25 * CHUNK_SIZE + 17}) {
+			byte[] content = new byte[size];
+			random.nextBytes(content);
+			File file = File.createTempFile("async-hashing-test", ".tmp");
+			Files.write(file.toPath(), content);
+			files.add(file);
+			contents.add(content);
+		}
+		//Buffers for just two files in flight
+		pipeline = new AsyncHashingPipeline(HashAlgorithm.MD5::createHasher, 2, CHUNK_SIZE, 4 * CHUNK_SIZE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pipeline.close();
+		files.forEach(File::delete);
+	}
+
+	@Test
+	public void testDigestsMatchContent() throws Exception {
+		for (int index = 0; index < files.size(); index++) {
+			assertArrayEquals(MessageDigest.getInstance("md5").digest(contents.get(index)),
+							  pipeline.hash(files.get(index).toPath()).join());
+		}
+	}
+
+	@Test
+	public void testManyFilesInFlight() throws Exception {
+		List<CompletableFuture<byte[]>> digests = new ArrayList<>();
+		for (int round = 0; round < 20; round++) {
+			for (File file : files) {
+				digests.add(pipeline.hash(file.toPath()));
+			}
+		}
+
+		for (int index = 0; index < digests.size(); index++) {
+			assertArrayEquals(MessageDigest.getInstance("md5").digest(contents.get(index % files.size())),
+							  digests.get(index).join());
+		}
+		assertEquals(2, pipeline.getMaxFilesInFlight());
+	}
+
+	@Test
+	public void testMissingFileFailsDigest() throws Exception {
+		CompletableFuture<byte[]> digest = pipeline.hash(Paths.get(files.get(0).getPath() + ".missing"));
+		try {
+			digest.join();
+			fail("Digest of a missing file must fail");
+		}
+		catch(CompletionException ex) {
+			//Expected
+		}
+		//Buffers of the failed file were released
+		assertArrayEquals(MessageDigest.getInstance("md5").digest(contents.get(1)),
+						  pipeline.hash(files.get(1).toPath()).join());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInFlightBytesSmallerThanTwoChunks() {
+		new AsyncHashingPipeline(HashAlgorithm.MD5::createHasher, 1, CHUNK_SIZE, CHUNK_SIZE);
+	}
+
+}
@@ -0,0 +1,92 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ContentHasherTest {
+
+	@Test
+	public void testXxHash64ReferenceValues() throws Exception {
+		assertEquals("ef46db3751d8e999", hexDigest(HashAlgorithm.XXHASH64, ""));
+		assertEquals("44bc2cf5ad770999", hexDigest(HashAlgorithm.XXHASH64, "abc"));
+		assertEquals("fbcea83c8a378bf1", hexDigest(HashAlgorithm.XXHASH64, "Nobody inspects the spammish repetition"));
+	}
+	
+	@Test
+	public void testMurmur3ReferenceValues() throws Exception {
+		assertEquals("00000000000000000000000000000000", hexDigest(HashAlgorithm.MURMUR3_128, ""));
+		assertEquals("6145f501578671e2877dba2be487af7e", hexDigest(HashAlgorithm.MURMUR3_128, "foo"));
+	}
+	
+	@Test
+	public void testSha256ReferenceValue() throws Exception {
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", 
+					 hexDigest(HashAlgorithm.SHA256, "abc"));
+	}
+	
+	@Test
+	public void testUnalignedChunks() throws Exception {
+		byte[] content = new byte[1000];
+		new Random(3).nextBytes(content);
+		
+		for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+			ContentHasher hasher = algorithm.createHasher();
+			hasher.update(ByteBuffer.wrap(content));
+			byte[] expected = hasher.digest();
+			
+			//Chunks of increasing size that are not aligned to any block size
+			int position = 0;
+			for (int chunkSize = 1; position < content.length; chunkSize += 3) {
+				int length = Math.min(chunkSize, content.length - position);
+				hasher.update(ByteBuffer.wrap(content, position, length).order(ByteOrder.BIG_ENDIAN));
+				position += length;
+			}
+			
+			assertArrayEquals(algorithm.getAlgorithmName(), expected, hasher.digest());
+		}
+	}
+	
+	@Test
+	public void testDirectBuffer() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+		buffer.put("Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII));
+		buffer.flip();
+		
+		ContentHasher hasher = HashAlgorithm.XXHASH64.createHasher();
+		hasher.update(buffer);
+		
+		assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+		assertFalse(buffer.hasRemaining());
+		assertEquals("fbcea83c8a378bf1", toHex(hasher.digest()));
+	}
+	
+	@Test
+	public void testFromName() throws Exception {
+		assertEquals(HashAlgorithm.MURMUR3_128, HashAlgorithm.fromName("MurMur3"));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownName() throws Exception {
+		HashAlgorithm.fromName("crc32");
+	}
+	
+	private String hexDigest(HashAlgorithm algorithm, String content) {
+		ContentHasher hasher = algorithm.createHasher();
+		hasher.update(ByteBuffer.wrap(content.getBytes(StandardCharsets.US_ASCII)));
+		return toHex(hasher.digest());
+	}
+	
+	private String toHex(byte[] digest) {
+		StringBuilder hex = new StringBuilder();
+		for (byte value : digest) {
+			hex.append(String.format("%02x", value));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,71 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileHashingEngineTest {
+	
+	private File contentFile;
+	private File emptyFile;
+	private byte[] content;
+
+	@Before
+	public void setUp() throws Exception {
+		content = new byte[100 * 1024 + 17];
+		new Random(11).nextBytes(content);
+		
+		contentFile = File.createTempFile("hashing-engine-test", ".tmp");
+		Files.write(contentFile.toPath(), content);
+		emptyFile = File.createTempFile("empty-hashing-engine-test", ".tmp");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		contentFile.delete();
+		emptyFile.delete();
+	}
+
+	@Test
+	public void testBufferedRead() throws Exception {
+		//Buffer smaller than the file so it's read in several chunks 
+		FileHashingEngine engine = new FileHashingEngine(HashAlgorithm.MD5.createHasher(), 4096, Long.MAX_VALUE);
+		
+		assertArrayEquals(MessageDigest.getInstance("md5").digest(content), engine.hash(contentFile.toPath()));
+	}
+	
+	@Test
+	public void testMappedRead() throws Exception {
+		FileHashingEngine engine = new FileHashingEngine(HashAlgorithm.MD5.createHasher(), 4096, 1);
+		
+		assertArrayEquals(MessageDigest.getInstance("md5").digest(content), engine.hash(contentFile.toPath()));
+	}
+	
+	@Test
+	public void testEngineReuse() throws Exception {
+		FileHashingEngine engine = new FileHashingEngine();
+		
+		byte[] first = engine.hash(contentFile.toPath());
+		assertArrayEquals(MessageDigest.getInstance("md5").digest(), engine.hash(emptyFile.toPath()));
+		assertArrayEquals(first, engine.hash(contentFile.toPath()));
+	}
+
+	@Test
+	public void testNonCryptographicHasher() throws Exception {
+		ContentHasher expectedHasher = HashAlgorithm.XXHASH64.createHasher();
+		expectedHasher.update(ByteBuffer.wrap(content));
+		
+		FileHashingEngine engine = new FileHashingEngine(HashAlgorithm.XXHASH64.createHasher(), 4096, Long.MAX_VALUE);
+		
+		assertArrayEquals(expectedHasher.digest(), engine.hash(contentFile.toPath()));
+	}
+
+}
@@ -0,0 +1,127 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.hashing.HashCache.DigestType;
+
+public class HashCacheTest {
+	
+	private static final byte[] DIGEST = {1, 2, 3, 4};
+	
+	private File cacheFile;
+	private File contentFile;
+
+	@Before
+	public void setUp() throws Exception {
+		cacheFile = File.createTempFile("hash-cache-test", ".bin");
+		cacheFile.delete();
+		contentFile = File.createTempFile("hash-cache-content-test", ".tmp");
+		Files.write(contentFile.toPath(), "cached content".getBytes());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		cacheFile.delete();
+		contentFile.delete();
+	}
+
+	@Test
+	public void testDigestIsReusedByNextExecution() throws Exception {
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+			assertNull(hashCache.getDigest(fileInfo(), DigestType.FULL));
+			hashCache.putDigest(fileInfo(), DigestType.FULL, DIGEST);
+		}
+		
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+			assertArrayEquals(DIGEST, hashCache.getDigest(fileInfo(), DigestType.FULL));
+			assertNull(hashCache.getDigest(fileInfo(), DigestType.SAMPLE));
+		}
+	}
+	
+	@Test
+	public void testModifiedFileIsNotReused() throws Exception {
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+			hashCache.putDigest(fileInfo(), DigestType.FULL, DIGEST);
+		}
+		
+		Files.write(contentFile.toPath(), "!".getBytes(), StandardOpenOption.APPEND);
+		
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+			assertNull(hashCache.getDigest(fileInfo(), DigestType.FULL));
+		}
+	}
+	
+	@Test
+	public void testDifferentConfigurationDiscardsCache() throws Exception {
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+			hashCache.putDigest(fileInfo(), DigestType.FULL, DIGEST);
+		}
+		
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "xxhash64")) {
+			assertNull(hashCache.getDigest(fileInfo(), DigestType.FULL));
+		}
+	}
+	
+	@Test
+	public void testStaleEntriesAreCompacted() throws Exception {
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+			hashCache.putDigest(fileInfo(), DigestType.FULL, DIGEST);
+		}
+		long initialLength = cacheFile.length();
+		
+		//Replaced digest leaves a superseded record until the cache is closed
+		Files.setLastModifiedTime(contentFile.toPath(), FileTime.fromMillis(1000));
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+			hashCache.putDigest(fileInfo(), DigestType.FULL, DIGEST);
+		}
+		assertEquals(initialLength, cacheFile.length());
+		
+		//Entries not used in an execution are removed
+		HashCache unusedCache = HashCache.open(cacheFile.toPath(), "md5");
+		assertTrue(cacheFile.length() > 0);
+		unusedCache.close();
+		try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+			assertNull(hashCache.getDigest(fileInfo(), DigestType.FULL));
+		}
+	}
+	
+	@Test
+	public void testTruncatedCacheKeepsCompleteRecords() throws Exception {
+		Path otherFile = Files.createTempFile("hash-cache-other-test", ".tmp");
+		try {
+			try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+				hashCache.putDigest(fileInfo(), DigestType.FULL, DIGEST);
+				hashCache.putDigest(new FileInfo(otherFile, Files.readAttributes(otherFile, BasicFileAttributes.class)), 
+									DigestType.FULL, 
+									DIGEST);
+			}
+			
+			byte[] content = Files.readAllBytes(cacheFile.toPath());
+			Files.write(cacheFile.toPath(), Arrays.copyOf(content, content.length - 2));
+			
+			try (HashCache hashCache = HashCache.open(cacheFile.toPath(), "md5")) {
+				assertArrayEquals(DIGEST, hashCache.getDigest(fileInfo(), DigestType.FULL));
+			}
+		}
+		finally {
+			Files.delete(otherFile);
+		}
+	}
+	
+	private FileInfo fileInfo() throws Exception {
+		return new FileInfo(contentFile.toPath(), Files.readAttributes(contentFile.toPath(), BasicFileAttributes.class));
+	}
+}
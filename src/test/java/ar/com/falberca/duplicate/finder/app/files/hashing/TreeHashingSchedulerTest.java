@@ -0,0 +1,192 @@
+package ar.com.falberca.duplicate.finder.app.files.hashing;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ar.com.falberca.duplicate.finder.app.files.devices.StorageDevice;
+
+public class TreeHashingSchedulerTest {
+
+	private static final int SEGMENT_SIZE = 16 * 1024;
+
+	private File contentFile;
+	private byte[] content;
+
+	@Before
+	public void setUp() throws Exception {
+		//Seven segments, the last one is shorter and promoted without a pair
+		content = new byte[6 * SEGMENT_SIZE + 17];
+		new Random(13).nextBytes(content);
+
+		contentFile = File.createTempFile("tree-hashing-test", ".tmp");
+		Files.write(contentFile.toPath(), content);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		contentFile.delete();
+	}
+
+	@Test
+	public void testTreeDigest() throws Exception {
+		TreeHashingScheduler scheduler = new TreeHashingScheduler(HashAlgorithm.MD5::createHasher,
+																  SEGMENT_SIZE,
+																  2 * SEGMENT_SIZE);
+		FileHashingEngine engine = new FileHashingEngine(HashAlgorithm.MD5.createHasher(), 4096, Long.MAX_VALUE);
+		engine.setTreeHashing(scheduler);
+
+		byte[] digest = engine.hash(contentFile.toPath());
+		assertArrayEquals(expectedRoot(), digest);
+		assertArrayEquals(digest, engine.hash(contentFile.toPath()));
+		assertFalse(Arrays.equals(MessageDigest.getInstance("md5").digest(content), digest));
+		assertFalse(scheduler.hasPendingSegments());
+	}
+
+	@Test
+	public void testSmallFilesAreHashedWhole() throws Exception {
+		TreeHashingScheduler scheduler = new TreeHashingScheduler(HashAlgorithm.MD5::createHasher,
+																  SEGMENT_SIZE,
+																  content.length + 1);
+		FileHashingEngine engine = new FileHashingEngine(HashAlgorithm.MD5.createHasher(), 4096, Long.MAX_VALUE);
+		engine.setTreeHashing(scheduler);
+
+		assertArrayEquals(MessageDigest.getInstance("md5").digest(content), engine.hash(contentFile.toPath()));
+	}
+
+	@Test
+	public void testIdleThreadsHashPendingSegments() throws Exception {
+		TreeHashingScheduler scheduler = new TreeHashingScheduler(HashAlgorithm.MD5::createHasher,
+																  SEGMENT_SIZE,
+																  SEGMENT_SIZE);
+		AtomicInteger published = new AtomicInteger();
+		scheduler.setSegmentsListener(published::incrementAndGet);
+
+		AtomicBoolean finished = new AtomicBoolean();
+		Thread helper = new Thread(() -> {
+			while (!finished.get()) {
+				scheduler.runPendingSegment();
+			}
+		});
+		helper.start();
+
+		try (FileChannel channel = FileChannel.open(contentFile.toPath(), StandardOpenOption.READ)) {
+			for (int index = 0; index < 20; index++) {
+				assertArrayEquals(expectedRoot(), scheduler.hash(channel, content.length, null));
+			}
+		}
+		finally {
+			finished.set(true);
+			helper.join();
+		}
+		assertEquals(20, published.get());
+		assertFalse(scheduler.runPendingSegment());
+	}
+
+	@Test
+	public void testIdleThreadsNeedDevicePermit() throws Exception {
+		//A worker for each permit of the device
+		TreeHashingScheduler scheduler = new TreeHashingScheduler(HashAlgorithm.MD5::createHasher,
+																  SEGMENT_SIZE,
+																  SEGMENT_SIZE,
+																  2);
+		List<Boolean> helped = new ArrayList<>();
+		scheduler.setSegmentsListener(() -> helped.add(scheduler.runPendingSegment()));
+
+		//The hashing thread holds a permit and another file the second one
+		StorageDevice device = new StorageDevice("test", false, 2);
+		device.acquire();
+		device.acquire();
+		try (FileChannel channel = FileChannel.open(contentFile.toPath(), StandardOpenOption.READ)) {
+			assertArrayEquals(expectedRoot(), scheduler.hash(channel, content.length, device));
+			device.release();
+			assertArrayEquals(expectedRoot(), scheduler.hash(channel, content.length, device));
+		}
+		assertEquals(Arrays.asList(false, true), helped);
+		assertTrue(device.tryAcquire());
+		assertFalse(device.tryAcquire());
+	}
+
+	@Test
+	public void testIdleThreadsNeedFreeWorker() throws Exception {
+		TreeHashingScheduler scheduler = new TreeHashingScheduler(HashAlgorithm.MD5::createHasher,
+																  SEGMENT_SIZE,
+																  SEGMENT_SIZE,
+																  1);
+		List<Boolean> helped = new ArrayList<>();
+		scheduler.setSegmentsListener(() -> helped.add(scheduler.runPendingSegment()));
+
+		//The only worker is used by the hashing thread
+		try (FileChannel channel = FileChannel.open(contentFile.toPath(), StandardOpenOption.READ)) {
+			assertArrayEquals(expectedRoot(), scheduler.hash(channel, content.length, null));
+			assertArrayEquals(expectedRoot(), scheduler.hash(channel, content.length, null));
+		}
+		assertEquals(Arrays.asList(false, false), helped);
+	}
+
+	@Test
+	public void testSingleReadDeviceIsHashedSequentially() throws Exception {
+		TreeHashingScheduler scheduler = new TreeHashingScheduler(HashAlgorithm.MD5::createHasher,
+																  SEGMENT_SIZE,
+																  SEGMENT_SIZE);
+		AtomicInteger published = new AtomicInteger();
+		scheduler.setSegmentsListener(published::incrementAndGet);
+
+		StorageDevice device = new StorageDevice("rotational", true, 1);
+		device.acquire();
+		try (FileChannel channel = FileChannel.open(contentFile.toPath(), StandardOpenOption.READ)) {
+			assertArrayEquals(expectedRoot(), scheduler.hash(channel, content.length, device));
+		}
+		assertEquals(0, published.get());
+		assertFalse(scheduler.hasPendingSegments());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testThresholdSmallerThanSegment() {
+		new TreeHashingScheduler(HashAlgorithm.MD5::createHasher, SEGMENT_SIZE, SEGMENT_SIZE - 1);
+	}
+
+	/*
+	 * Digests the segments with the leaf prefix and combines them by pairs with the node prefix, level by level
+	 */
+	private byte[] expectedRoot() throws Exception {
+		List<byte[]> level = new ArrayList<>();
+		for (int start = 0; start < content.length; start += SEGMENT_SIZE) {
+			MessageDigest md5 = MessageDigest.getInstance("md5");
+			md5.update((byte) 0);
+			md5.update(content, start, Math.min(SEGMENT_SIZE, content.length - start));
+			level.add(md5.digest());
+		}
+		while (level.size() > 1) {
+			List<byte[]> nextLevel = new ArrayList<>();
+			for (int index = 0; index < level.size(); index += 2) {
+				if (index + 1 == level.size()) {
+					nextLevel.add(level.get(index));
+					continue;
+				}
+				MessageDigest md5 = MessageDigest.getInstance("md5");
+				md5.update((byte) 1);
+				md5.update(level.get(index));
+				md5.update(level.get(index + 1));
+				nextLevel.add(md5.digest());
+			}
+			level = nextLevel;
+		}
+		return level.get(0);
+	}
+
+}
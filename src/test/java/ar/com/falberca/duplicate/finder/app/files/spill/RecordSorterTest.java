@@ -0,0 +1,160 @@
+package ar.com.falberca.duplicate.finder.app.files.spill;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ar.com.falberca.duplicate.finder.app.files.FileInfo;
+import ar.com.falberca.duplicate.finder.app.files.spill.RecordSorter.GroupReader;
+import ar.com.falberca.duplicate.finder.app.files.spill.RecordSorter.RecordGroup;
+
+public class RecordSorterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRecordsAreGroupedByKey() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		//Runs of 7 records, more runs than a single merge reads so runs are merged first
+		try (RecordSorter sorter = new RecordSorter(directory, "sizes", 1, 7)) {
+			Random random = new Random(17);
+			for (int pathId = 0; pathId < 1000; pathId++) {
+				sorter.add(random.nextInt(300), pathId);
+			}
+			//Negative values are sorted as unsigned, after every positive value
+			sorter.add(-1, 1000);
+			sorter.add(-1, 1001);
+			assertEquals(1002, sorter.getRecords());
+			assertEquals(143, sorter.getRuns());
+
+			List<RecordGroup> groups = new ArrayList<>();
+			long records = 0;
+			try (GroupReader reader = sorter.merge()) {
+				RecordGroup group;
+				while ((group = reader.next()) != null) {
+					groups.add(group);
+					records += group.size();
+					for (int index = 1; index < group.size(); index++) {
+						assertTrue(group.getPathId(index - 1) < group.getPathId(index));
+					}
+				}
+			}
+			assertEquals(1002, records);
+			for (int index = 1; index < groups.size(); index++) {
+				assertTrue(Long.compareUnsigned(groups.get(index - 1).getKey()[0], groups.get(index).getKey()[0]) < 0);
+			}
+
+			RecordGroup last = groups.get(groups.size() - 1);
+			assertEquals(-1, last.getKey()[0]);
+			assertEquals(2, last.size());
+			assertEquals(1000, last.getPathId(0));
+			assertEquals(1001, last.getPathId(1));
+		}
+		assertEquals(0, directory.toFile().list().length);
+	}
+
+	@Test
+	public void testWideKeys() throws Exception {
+		try (RecordSorter sorter = new RecordSorter(folder.getRoot().toPath(), "digests", 3, 2)) {
+			sorter.add(new long[] {10, 1, 2}, 0);
+			sorter.add(new long[] {10, 1, 3}, 1);
+			sorter.add(new long[] {10, 1, 2}, 2);
+			sorter.add(new long[] {9, 5, 5}, 3);
+
+			try (GroupReader reader = sorter.merge()) {
+				assertArrayEquals(new long[] {9, 5, 5}, reader.next().getKey());
+				RecordGroup group = reader.next();
+				assertArrayEquals(new long[] {10, 1, 2}, group.getKey());
+				assertEquals(2, group.size());
+				assertEquals(1, reader.next().size());
+				assertNull(reader.next());
+			}
+		}
+	}
+
+	@Test
+	public void testGroupsAreReadInParts() throws Exception {
+		try (RecordSorter sorter = new RecordSorter(folder.getRoot().toPath(), "sizes", 1, 2)) {
+			for (int pathId = 0; pathId < 5; pathId++) {
+				sorter.add(10, pathId);
+			}
+			sorter.add(20, 5);
+
+			try (GroupReader reader = sorter.merge()) {
+				RecordGroup part = reader.next(2);
+				assertEquals(2, part.size());
+				assertTrue(part.isPartial());
+				part = reader.next(2);
+				assertEquals(10, part.getKey()[0]);
+				assertEquals(2, part.getPathId(0));
+				assertTrue(part.isPartial());
+				part = reader.next(2);
+				assertEquals(1, part.size());
+				assertFalse(part.isPartial());
+				part = reader.next(2);
+				assertEquals(20, part.getKey()[0]);
+				assertFalse(part.isPartial());
+				assertNull(reader.next(2));
+			}
+		}
+	}
+
+	@Test
+	public void testPathTableRestoresFiles() throws Exception {
+		File file = folder.newFile("content.txt");
+		Files.write(file.toPath(), new byte[] {1, 2, 3});
+		BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		FileInfo fileInfo = new FileInfo(file.getParent(), file.getName(), attributes);
+
+		Path tableFile = folder.getRoot().toPath().resolve("paths.table");
+		try (PathTable pathTable = new PathTable(tableFile)) {
+			long firstId = pathTable.append(fileInfo);
+			long secondId = pathTable.append(new FileInfo("/nonexistent", "other", 7, 11, null));
+			pathTable.flush();
+
+			FileInfo restored = pathTable.read(secondId);
+			assertEquals("/nonexistent" + File.separator + "other", restored.getPath());
+			assertEquals(7, restored.getSize());
+			assertEquals(11, restored.getLastModified());
+			assertNull(restored.getFileKey());
+
+			restored = pathTable.read(firstId);
+			assertEquals(fileInfo.getPath(), restored.getPath());
+			assertEquals(3, restored.getSize());
+			assertEquals(fileInfo.getLastModified(), restored.getLastModified());
+			assertEquals(String.valueOf(fileInfo.getFileKey()), String.valueOf(restored.getFileKey()));
+			assertFalse(restored.isLink());
+		}
+		assertFalse(Files.exists(tableFile));
+	}
+
+	@Test
+	public void testPathTableStoresLongPaths() throws Exception {
+		StringBuilder directory = new StringBuilder();
+		while (directory.length() <= 70000) {
+			directory.append("/directory-\u00e1");
+		}
+
+		try (PathTable pathTable = new PathTable(folder.getRoot().toPath().resolve("paths.table"))) {
+			long pathId = pathTable.append(new FileInfo(directory.toString(), "file", 7, 11, "key"));
+			pathTable.flush();
+
+			FileInfo restored = pathTable.read(pathId);
+			assertEquals(directory.toString(), restored.getDirectory());
+			assertEquals("file", restored.getName());
+			assertEquals("key", restored.getFileKey());
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ar.com.falberca.duplicate.finder.app.files.hashing.FileHashingEngine;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class ScanEventsTest {
+	
+	private static final String FILE_HASH_EVENT = "ar.com.falberca.duplicate.finder.FileHash";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testEventsAreDisabledByDefault() {
+		assertNull(ScanEvents.beginFileHash());
+		assertNull(ScanEvents.beginDirectoryVisit());
+		assertNull(ScanEvents.beginQueueWait());
+		assertNull(ScanEvents.beginIndexLockWait());
+		ScanEvents.endFileHash(null, folder.getRoot().toPath(), 0);
+	}
+	
+	@Test
+	public void testFileHashIsRecordedWhenEnabled() throws Exception {
+		assumeTrue(ScanEvents.isAvailable());
+		
+		Path file = Files.write(folder.newFile().toPath(), new byte[8192]);
+		Path recordingFile = folder.getRoot().toPath().resolve("scan.jfr");
+		
+		try (Recording recording = new Recording()) {
+			recording.enable(FILE_HASH_EVENT).withThreshold(Duration.ZERO);
+			recording.start();
+			new FileHashingEngine().hash(file);
+			recording.stop();
+			recording.dump(recordingFile);
+		}
+		
+		List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+		assertEquals(1, events.size());
+		assertEquals(FILE_HASH_EVENT, events.get(0).getEventType().getName());
+		assertEquals(file.toString(), events.get(0).getString("path"));
+		assertEquals(8192L, events.get(0).getLong("bytes"));
+	}
+
+}
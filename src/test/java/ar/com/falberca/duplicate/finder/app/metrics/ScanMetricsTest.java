@@ -0,0 +1,58 @@
+package ar.com.falberca.duplicate.finder.app.metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+import ar.com.falberca.duplicate.finder.app.files.FileTransferQueue;
+
+public class ScanMetricsTest {
+
+	@Test
+	public void testMetricsAreReadableThroughJMX() throws Exception {
+		ScanMetrics scanMetrics = ScanMetrics.start(new FileTransferQueue());
+		assertSame(scanMetrics, ScanMetrics.current());
+		
+		scanMetrics.fileWalked(1000, false);
+		scanMetrics.fileWalked(3000, true);
+		scanMetrics.fileHashed(5000, 1024);
+		scanMetrics.registerWorker().addBusy(2000000);
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(ScanMetrics.OBJECT_NAME);
+		assertEquals(2L, server.getAttribute(name, "FilesWalked"));
+		assertEquals(1L, server.getAttribute(name, "FilesFiltered"));
+		assertEquals(1024L, server.getAttribute(name, "BytesHashed"));
+		assertArrayEquals(new long[] {2}, (long[]) server.getAttribute(name, "WorkerBusyMillis"));
+		
+		CompositeData walkLatency = (CompositeData) server.getAttribute(name, "WalkLatency");
+		assertEquals(2L, walkLatency.get("count"));
+		assertEquals(3.0, (Double) walkLatency.get("maxMicros"), 0.001);
+		
+		scanMetrics.stop();
+		assertFalse(server.isRegistered(name));
+	}
+	
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int index = 0; index < 99; index++) {
+			histogram.record(100);
+		}
+		histogram.record(1000000);
+		
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(100, snapshot.getCount());
+		assertEquals(0.127, snapshot.getP50Micros(), 0.0001);
+		assertEquals(0.127, snapshot.getP99Micros(), 0.0001);
+		assertEquals(1000.0, snapshot.getMaxMicros(), 0.0001);
+		assertEquals((99 * 100 + 1000000) / 100 / 1000d, snapshot.getMeanMicros(), 0.0001);
+	}
+
+}
@@ -0,0 +1,111 @@
+package ar.com.falberca.duplicate.finder.app.results;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ResultSinkTest {
+	
+	private static final DuplicateGroup REGULAR_GROUP = new DuplicateGroup(DuplicateType.REGULAR_FILE, 
+																		   100, 
+																		   Arrays.asList("/a/x", "/b/\"x\"", "/c/x,y"));
+	
+	private static final DuplicateGroup HARDLINK_GROUP = new DuplicateGroup(DuplicateType.HARDLINK, 
+																			100, 
+																			Arrays.asList("/a/x", "/a/y"));
+
+	@Test
+	public void testReclaimableBytes() {
+		assertEquals(200, REGULAR_GROUP.getReclaimableBytes());
+		assertEquals(0, HARDLINK_GROUP.getReclaimableBytes());
+	}
+	
+	@Test
+	public void testJsonLines() throws Exception {
+		StringWriter writer = new StringWriter();
+		try (ResultSink resultSink = ResultFormat.fromName("jsonl").createSink(writer)) {
+			resultSink.accept(REGULAR_GROUP);
+			resultSink.accept(HARDLINK_GROUP);
+		}
+		
+		assertEquals("{\"type\":\"regular file\",\"size\":100,\"reclaimableBytes\":200," + 
+					 "\"files\":[\"/a/x\",\"/b/\\\"x\\\"\",\"/c/x,y\"]}\n" + 
+					 "{\"type\":\"hardlink\",\"size\":100,\"reclaimableBytes\":0,\"files\":[\"/a/x\",\"/a/y\"]}\n", 
+					 writer.toString());
+	}
+	
+	@Test
+	public void testCsv() throws Exception {
+		StringWriter writer = new StringWriter();
+		try (ResultSink resultSink = ResultFormat.fromName("CSV").createSink(writer)) {
+			resultSink.accept(REGULAR_GROUP);
+		}
+		
+		assertEquals("type,size,reclaimable_bytes,files\r\n" + 
+					 "regular file,100,200,/a/x,\"/b/\"\"x\"\"\",\"/c/x,y\"\r\n", 
+					 writer.toString());
+	}
+	
+	@Test
+	public void testAsyncSinkWritesAllGroupsInOrder() throws Exception {
+		List<DuplicateGroup> written = new ArrayList<>();
+		ResultSink delegate = new ResultSink() {
+			
+			@Override
+			public void accept(DuplicateGroup duplicateGroup) {
+				written.add(duplicateGroup);
+			}
+			
+			@Override
+			public void flush() {
+			}
+			
+			@Override
+			public void close() {
+			}
+		};
+		
+		List<DuplicateGroup> accepted = new ArrayList<>();
+		try (ResultSink resultSink = new AsyncResultSink(delegate)) {
+			for (int index = 0; index < 2000; index++) {
+				DuplicateGroup duplicateGroup = new DuplicateGroup(DuplicateType.REGULAR_FILE, 
+																   index, 
+																   Arrays.asList("/a", "/b"));
+				accepted.add(duplicateGroup);
+				resultSink.accept(duplicateGroup);
+			}
+		}
+		
+		assertEquals(accepted, written);
+	}
+	
+	@Test(expected = IOException.class)
+	public void testAsyncSinkRethrowsWriteErrors() throws Exception {
+		ResultSink failingSink = new ResultSink() {
+			
+			@Override
+			public void accept(DuplicateGroup duplicateGroup) throws IOException {
+				throw new IOException("Disk full");
+			}
+			
+			@Override
+			public void flush() {
+			}
+			
+			@Override
+			public void close() {
+			}
+		};
+		
+		try (ResultSink resultSink = new AsyncResultSink(failingSink)) {
+			resultSink.accept(HARDLINK_GROUP);
+		}
+	}
+
+}